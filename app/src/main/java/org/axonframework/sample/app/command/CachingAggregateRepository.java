@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.command;
+
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.eventsourcing.EventSourcedAggregateRoot;
+import org.axonframework.eventsourcing.EventSourcingRepository;
+import org.axonframework.eventsourcing.EventStreamDecorator;
+import org.axonframework.eventsourcing.GenericAggregateFactory;
+import org.axonframework.repository.AggregateDeletedException;
+import org.axonframework.repository.ConflictingAggregateVersionException;
+import org.axonframework.repository.PessimisticLockManager;
+import org.axonframework.sample.app.eventstore.AggregateVersionProvider;
+import org.axonframework.unitofwork.CurrentUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.axonframework.unitofwork.UnitOfWorkListenerAdapter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+import org.springframework.jmx.support.JmxUtils;
+import org.springframework.jmx.support.ObjectNameManager;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Event sourcing repository that keeps the most recently used aggregates in memory, so an aggregate that is loaded
+ * again shortly after it was changed does not need to replay its events. The cache holds at most
+ * <code>maximumSize</code> aggregates; the least recently used aggregate is evicted first.</p>
+ * <p>Aggregates are written to the cache after the unit of work in which they were saved has been committed. When a
+ * unit of work is rolled back, the aggregates it loaded are evicted, since they may contain changes that were never
+ * stored. When a version provider is configured, a cached aggregate is only used if its version matches the version
+ * in the event store, which protects against events appended by other means, such as an import.</p>
+ * <p>A load served from the cache checks the expected version like a load from the event store, and passes an empty
+ * event stream through the event stream decorators, so they see every load. The snapshotter trigger only sees loads
+ * from the event store, so its snapshot hit rate is not diluted by loads that replayed nothing. The number of cache
+ * hits is counted by this repository instead.</p>
+ * <p>Cached aggregates are shared between units of work. This repository therefore uses a pessimistic lock manager,
+ * so that only a single thread at a time can use an aggregate.</p>
+ * <p>Every web application registers its own cache with JMX. Without a configured <code>objectName</code>, the
+ * identity of the repository is added to the default name, so the caches of different applications do not hide each
+ * other.</p>
+ *
+ * @param <T> The type of aggregate this repository stores
+ */
+@ManagedResource(description = "Cache of recently used aggregates")
+public class CachingAggregateRepository<T extends EventSourcedAggregateRoot> extends EventSourcingRepository<T>
+        implements SelfNaming {
+
+    private static final String DEFAULT_OBJECT_NAME = "org.axonframework.sample:type=AggregateCache,name=contact";
+
+    private final Map<Object, T> cache = new LinkedHashMap<Object, T>(16, 0.75f, true) {
+        private static final long serialVersionUID = -2467153812064373456L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, T> eldest) {
+            if (size() > maximumSize) {
+                evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private volatile int maximumSize = 1000;
+    private AggregateVersionProvider versionProvider;
+    private final List<EventStreamDecorator> eventStreamDecorators = new ArrayList<EventStreamDecorator>();
+    private String objectName;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Initializes a repository with the default settings, which stores aggregates of the given type.
+     *
+     * @param aggregateType The type of aggregate stored in this repository
+     */
+    public CachingAggregateRepository(Class<T> aggregateType) {
+        super(new GenericAggregateFactory<T>(aggregateType), new PessimisticLockManager());
+    }
+
+    @Override
+    protected T doLoad(Object aggregateIdentifier, Long expectedVersion) {
+        T aggregate = getCached(aggregateIdentifier);
+        if (aggregate == null) {
+            missCount.incrementAndGet();
+            aggregate = super.doLoad(aggregateIdentifier, expectedVersion);
+        } else if (aggregate.isDeleted()) {
+            throw new AggregateDeletedException(aggregateIdentifier);
+        } else {
+            if (expectedVersion != null && !expectedVersion.equals(aggregate.getVersion())) {
+                throw new ConflictingAggregateVersionException(aggregateIdentifier, expectedVersion,
+                                                               aggregate.getVersion());
+            }
+            hitCount.incrementAndGet();
+            decorateCachedLoad(aggregateIdentifier);
+        }
+        final Object identifier = aggregate.getIdentifier();
+        if (CurrentUnitOfWork.isStarted()) {
+            CurrentUnitOfWork.get().registerListener(new UnitOfWorkListenerAdapter() {
+                @Override
+                public void onRollback(UnitOfWork unitOfWork, Throwable failureCause) {
+                    evict(identifier);
+                }
+            });
+        }
+        return aggregate;
+    }
+
+    @Override
+    protected void doSaveWithLock(final T aggregate) {
+        super.doSaveWithLock(aggregate);
+        if (CurrentUnitOfWork.isStarted()) {
+            CurrentUnitOfWork.get().registerListener(new UnitOfWorkListenerAdapter() {
+                @Override
+                public void afterCommit(UnitOfWork unitOfWork) {
+                    cache(aggregate);
+                }
+            });
+        } else {
+            cache(aggregate);
+        }
+    }
+
+    @Override
+    protected void doDeleteWithLock(T aggregate) {
+        evict(aggregate.getIdentifier());
+        super.doDeleteWithLock(aggregate);
+    }
+
+    /**
+     * Lets the decorators see a load that did not read any events. The snapshotter trigger is skipped, as a cached
+     * load tells it nothing about the cost of loading from the event store.
+     */
+    private void decorateCachedLoad(Object aggregateIdentifier) {
+        DomainEventStream events = new SimpleDomainEventStream();
+        for (EventStreamDecorator decorator : eventStreamDecorators) {
+            events = decorator.decorateForRead(getTypeIdentifier(), aggregateIdentifier, events);
+        }
+        while (events.hasNext()) {
+            events.next();
+        }
+    }
+
+    @Override
+    public void setEventStreamDecorators(List<? extends EventStreamDecorator> eventStreamDecorators) {
+        super.setEventStreamDecorators(eventStreamDecorators);
+        this.eventStreamDecorators.clear();
+        this.eventStreamDecorators.addAll(eventStreamDecorators);
+    }
+
+    private T getCached(Object aggregateIdentifier) {
+        T aggregate;
+        synchronized (cache) {
+            aggregate = cache.get(aggregateIdentifier);
+        }
+        if (aggregate != null && versionProvider != null) {
+            Long storedVersion = versionProvider.getLastSequenceNumber(getTypeIdentifier(), aggregateIdentifier);
+            if (storedVersion == null || !storedVersion.equals(aggregate.getVersion())) {
+                staleCount.incrementAndGet();
+                evict(aggregateIdentifier);
+                return null;
+            }
+        }
+        return aggregate;
+    }
+
+    private void cache(T aggregate) {
+        if (aggregate.isDeleted()) {
+            evict(aggregate.getIdentifier());
+            return;
+        }
+        synchronized (cache) {
+            cache.put(aggregate.getIdentifier(), aggregate);
+        }
+    }
+
+    private void evict(Object aggregateIdentifier) {
+        synchronized (cache) {
+            cache.remove(aggregateIdentifier);
+        }
+    }
+
+    /**
+     * Returns the configured object name, or the default name with the identity of this repository added.
+     *
+     * @return the name to register this cache with in JMX
+     * @throws MalformedObjectNameException if the configured object name is not valid
+     */
+    @Override
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName != null) {
+            return ObjectNameManager.getInstance(objectName);
+        }
+        return JmxUtils.appendIdentityToObjectName(ObjectNameManager.getInstance(DEFAULT_OBJECT_NAME), this);
+    }
+
+    /**
+     * Removes all aggregates from the cache.
+     */
+    @ManagedOperation(description = "Removes all aggregates from the cache")
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    @ManagedAttribute(description = "Number of loads served from the cache")
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of loads that replayed events from the event store")
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of cached aggregates that were older than the event store")
+    public long getStaleCount() {
+        return staleCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of aggregates evicted because the cache was full")
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of aggregates in the cache")
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Sets the maximum number of aggregates in the cache. Defaults to 1000.
+     *
+     * @param maximumSize the maximum number of cached aggregates
+     */
+    public void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Sets the provider of the versions of the aggregates in the event store, usually the event store itself. When
+     * set, cached aggregates are checked against the event store before they are used. Optional.
+     *
+     * @param versionProvider the provider of the versions of stored aggregates
+     */
+    public void setVersionProvider(AggregateVersionProvider versionProvider) {
+        this.versionProvider = versionProvider;
+    }
+
+    /**
+     * Sets the name to register this cache with in JMX. Defaults to
+     * <code>org.axonframework.sample:type=AggregateCache,name=contact</code> with the identity of the repository
+     * added. Must be unique for all applications in the JVM.
+     *
+     * @param objectName the JMX object name of this cache
+     */
+    public void setObjectName(String objectName) {
+        this.objectName = objectName;
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.command;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Contact name repository that keeps an index of all claimed names in memory. Names are normalized before they are
+ * compared (trimmed and lower cased), so "Allard" and " allard" are considered to be the same name.</p>
+ * <p>The index is loaded from the {@link ClaimedContactName} table at startup. Claims and cancellations are applied to
+ * the index immediately and written to the database asynchronously, in batches, by a single writer thread. The
+ * database therefore always lags slightly behind the index; all remaining changes are written when the repository is
+ * destroyed. A batch that cannot be written is kept and written again after <code>retryInterval</code> milliseconds,
+ * together with the changes made in the meantime. After <code>maxAttempts</code> failed attempts, the changes of the
+ * batch are written one per transaction, so a single change that can never be written does not block the others. A
+ * change that still fails on its own is dead-lettered: it is logged as an error, counted and dropped. When none of the
+ * changes can be written, the database is considered unavailable and the batch is retried as before.</p>
+ * <p>BEWARE: uniqueness is guaranteed by the in-memory index. This is only valid if a single application instance
+ * handles the commands that claim contact names.</p>
+ */
+public class CachingContactNameRepository implements ContactNameRepository, InitializingBean, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingContactNameRepository.class);
+
+    private final ConcurrentMap<String, String> claimedNames = new ConcurrentHashMap<String, String>();
+    private final BlockingQueue<PendingChange> pendingChanges = new LinkedBlockingQueue<PendingChange>();
+    private final Object mutationLock = new Object();
+
+    private EntityManager entityManager;
+    private TransactionTemplate transactionTemplate;
+    private int batchSize = 250;
+    private long flushInterval = 100;
+    private long retryInterval = 1000;
+    private int maxAttempts = 5;
+
+    private volatile boolean running;
+    private Thread writer;
+    private final List<PendingChange> unwrittenChanges = new ArrayList<PendingChange>();
+    private final AtomicLong deadLetterCount = new AtomicLong();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean claimContactName(String contactName) {
+        synchronized (mutationLock) {
+            if (claimedNames.putIfAbsent(normalize(contactName), contactName) != null) {
+                return false;
+            }
+            pendingChanges.add(new PendingChange(contactName, true));
+            return true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cancelContactName(String contactName) {
+        synchronized (mutationLock) {
+            String claimedName = claimedNames.remove(normalize(contactName));
+            if (claimedName == null) {
+                logger.warn("Could not cancel the contact name {}, it has not been claimed", contactName);
+                return;
+            }
+            pendingChanges.add(new PendingChange(claimedName, false));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean vacantContactName(String contactName) {
+        return !claimedNames.containsKey(normalize(contactName));
+    }
+
+    /**
+     * Loads all claimed contact names from the database and starts the thread that writes changes back.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        List<String> names = transactionTemplate.execute(new TransactionCallback<List<String>>() {
+            @SuppressWarnings({"unchecked"})
+            @Override
+            public List<String> doInTransaction(TransactionStatus status) {
+                return entityManager.createQuery("SELECT c.contactName FROM ClaimedContactName c").getResultList();
+            }
+        });
+        for (String name : names) {
+            claimedNames.put(normalize(name), name);
+        }
+        logger.info("Loaded {} claimed contact names", claimedNames.size());
+
+        running = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writePendingChanges();
+            }
+        }, "ContactNameWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops the writer thread and writes all changes that have not been written yet.
+     *
+     * @throws InterruptedException when interrupted while waiting for the writer thread to finish
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join();
+        }
+        List<PendingChange> remaining = new ArrayList<PendingChange>(unwrittenChanges);
+        unwrittenChanges.clear();
+        pendingChanges.drainTo(remaining);
+        if (!remaining.isEmpty() && !write(remaining) && !writeSeparately(remaining)) {
+            logger.error("Lost {} contact name changes, the database is out of sync with the claimed names",
+                         remaining.size());
+        }
+    }
+
+    /**
+     * Writes the pending changes in batches. A batch that fails stays in <code>unwrittenChanges</code>, so it is
+     * retried, and written on shutdown if the writer stops first. After <code>maxAttempts</code> failures the batch
+     * is written one change at a time.
+     */
+    private void writePendingChanges() {
+        int failedAttempts = 0;
+        while (running) {
+            try {
+                if (unwrittenChanges.isEmpty()) {
+                    PendingChange first = pendingChanges.poll(flushInterval, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    unwrittenChanges.add(first);
+                }
+                pendingChanges.drainTo(unwrittenChanges, batchSize - unwrittenChanges.size());
+                if (write(unwrittenChanges)
+                        || (++failedAttempts >= maxAttempts && writeSeparately(unwrittenChanges))) {
+                    unwrittenChanges.clear();
+                    failedAttempts = 0;
+                } else {
+                    Thread.sleep(retryInterval);
+                }
+            } catch (InterruptedException e) {
+                logger.debug("Contact name writer was interrupted, remaining changes are written on shutdown");
+                return;
+            }
+        }
+    }
+
+    private boolean write(List<PendingChange> batch) {
+        Map<String, Boolean> changes = merge(batch);
+        try {
+            writeChanges(changes);
+            logger.debug("Wrote {} contact name changes", changes.size());
+            return true;
+        } catch (RuntimeException e) {
+            logger.error("Unable to write contact name changes " + changes + " to the database", e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes each change of the batch in its own transaction. Changes that fail are dead-lettered, unless all of them
+     * fail: then the database is probably unavailable, and nothing is dropped.
+     *
+     * @param batch the changes to write
+     * @return <code>true</code> if the batch is done with, <code>false</code> if it should be retried
+     */
+    private boolean writeSeparately(List<PendingChange> batch) {
+        Map<String, Boolean> changes = merge(batch);
+        Map<Map.Entry<String, Boolean>, RuntimeException> failures =
+                new LinkedHashMap<Map.Entry<String, Boolean>, RuntimeException>();
+        for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+            try {
+                writeChanges(Collections.singletonMap(change.getKey(), change.getValue()));
+            } catch (RuntimeException e) {
+                failures.put(change, e);
+            }
+        }
+        if (failures.size() == changes.size()) {
+            logger.warn("None of the {} contact name changes could be written separately, retrying them later",
+                        changes.size());
+            return false;
+        }
+        for (Map.Entry<Map.Entry<String, Boolean>, RuntimeException> failure : failures.entrySet()) {
+            deadLetterCount.incrementAndGet();
+            logger.error("Dropping the " + (failure.getKey().getValue() ? "claim" : "cancellation")
+                                 + " of contact name " + failure.getKey().getKey()
+                                 + ", it cannot be written to the database", failure.getValue());
+        }
+        return true;
+    }
+
+    private void writeChanges(final Map<String, Boolean> changes) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+                    ClaimedContactName stored = entityManager.find(ClaimedContactName.class, change.getKey());
+                    if (change.getValue() && stored == null) {
+                        entityManager.persist(new ClaimedContactName(change.getKey()));
+                    } else if (!change.getValue() && stored != null) {
+                        entityManager.remove(stored);
+                    }
+                }
+            }
+        });
+    }
+
+    private Map<String, Boolean> merge(List<PendingChange> batch) {
+        // only the last change for each name matters, as long as the order between names is kept
+        Map<String, Boolean> changes = new LinkedHashMap<String, Boolean>();
+        for (PendingChange change : batch) {
+            changes.remove(change.getContactName());
+            changes.put(change.getContactName(), change.isClaim());
+        }
+        return changes;
+    }
+
+    /**
+     * Returns the number of changes that were dropped because they could not be written, even on their own.
+     *
+     * @return the number of dead-lettered changes
+     */
+    public long getDeadLetterCount() {
+        return deadLetterCount.get();
+    }
+
+    private String normalize(String contactName) {
+        return contactName.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    @PersistenceContext
+    public void setEntityManager(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Sets the transaction manager used to load the claimed names and to write changes.
+     *
+     * @param transactionManager the transaction manager for the database containing the claimed names
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Sets the maximum number of changes written in a single transaction. Defaults to 250.
+     *
+     * @param batchSize the maximum number of changes per transaction
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the number of milliseconds the writer waits for new changes before checking whether it should stop.
+     * Defaults to 100.
+     *
+     * @param flushInterval the poll interval of the writer in milliseconds
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Sets the number of milliseconds the writer waits before it writes a failed batch again. Defaults to 1000.
+     *
+     * @param retryInterval the time to wait after a failed write in milliseconds
+     */
+    public void setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Sets the number of times a batch is written before its changes are written one at a time. Defaults to 5.
+     *
+     * @param maxAttempts the number of failed batch writes after which the changes are written separately
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    private static class PendingChange {
+
+        private final String contactName;
+        private final boolean claim;
+
+        private PendingChange(String contactName, boolean claim) {
+            this.contactName = contactName;
+            this.claim = claim;
+        }
+
+        public String getContactName() {
+            return contactName;
+        }
+
+        public boolean isClaim() {
+            return claim;
+        }
+    }
+}
@@ -41,6 +41,7 @@ class Contact extends AbstractAnnotatedAggregateRoot {
 
     private Map<AddressType, Address> addresses = new HashMap<AddressType, Address>();
     private String id;
+    private String name;
 
     public Contact(String identifier, String name) {
         apply(new ContactCreatedEvent(identifier, name));
@@ -89,13 +90,24 @@ class Contact extends AbstractAnnotatedAggregateRoot {
         apply(new ContactDeletedEvent(id));
     }
 
+    /**
+     * Returns the current name of the contact
+     *
+     * @return String containing the current name
+     */
+    public String getName() {
+        return name;
+    }
+
     @EventHandler
     protected void handleContactCreatedEvent(ContactCreatedEvent event) {
         this.id = event.getContactId();
+        this.name = event.getName();
     }
 
     @EventHandler
     protected void handleContactNameChangedEvent(ContactNameChangedEvent event) {
+        this.name = event.getNewName();
     }
 
     @EventHandler
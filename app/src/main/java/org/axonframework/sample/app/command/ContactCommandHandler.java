@@ -25,8 +25,6 @@ import org.axonframework.sample.app.api.CreateContactCommand;
 import org.axonframework.sample.app.api.RegisterAddressCommand;
 import org.axonframework.sample.app.api.RemoveAddressCommand;
 import org.axonframework.sample.app.api.RemoveContactCommand;
-import org.axonframework.sample.app.query.ContactEntry;
-import org.axonframework.sample.app.query.ContactRepository;
 import org.axonframework.unitofwork.UnitOfWork;
 import org.axonframework.unitofwork.UnitOfWorkListenerAdapter;
 import org.slf4j.Logger;
@@ -47,7 +45,6 @@ public class ContactCommandHandler {
     private final static Logger logger = LoggerFactory.getLogger(ContactCommandHandler.class);
     private Repository<Contact> repository;
     private ContactNameRepository contactNameRepository;
-    private ContactRepository contactRepository;
 
     /**
      * Sets the contact domain event repository.
@@ -67,15 +64,6 @@ public class ContactCommandHandler {
         this.contactNameRepository = contactNameRepository;
     }
 
-    /**
-     * Sets the query repository for contacts
-     *
-     * @param contactRepository for the query database
-     */
-    public void setContactRepository(ContactRepository contactRepository) {
-        this.contactRepository = contactRepository;
-    }
-
     /**
      * Creates a new contact based on the provided data. The provided user name is tested for uniqueness before
      * continuing.
@@ -122,9 +110,10 @@ public class ContactCommandHandler {
         if (contactNameRepository.claimContactName(command.getContactNewName())) {
             registerUnitOfWorkListenerToCancelClaimingName(command.getContactNewName(), unitOfWork);
             Contact contact = repository.load(command.getContactId());
+            String oldName = contact.getName();
             contact.changeName(command.getContactNewName());
 
-            cancelClaimedContactName(command.getContactId(), unitOfWork);
+            cancelClaimedContactName(oldName, unitOfWork);
         } else {
             throw new ContactNameAlreadyTakenException(command.getContactNewName());
         }
@@ -142,7 +131,7 @@ public class ContactCommandHandler {
         Contact contact = repository.load(command.getContactId());
         contact.delete();
 
-        cancelClaimedContactName(command.getContactId(), unitOfWork);
+        cancelClaimedContactName(contact.getName(), unitOfWork);
     }
 
     /**
@@ -176,13 +165,17 @@ public class ContactCommandHandler {
         contact.removeAddress(command.getAddressType());
     }
 
-    private void cancelClaimedContactName(String contactIdentifier, UnitOfWork unitOfWork) {
-        final ContactEntry contactEntry = contactRepository.loadContactDetails(contactIdentifier);
+    private void cancelClaimedContactName(final String contactName, UnitOfWork unitOfWork) {
+        if (contactName == null) {
+            // snapshots taken before contacts kept their name do not contain it
+            logger.warn("The name of the contact is unknown, its claimed name cannot be cancelled");
+            return;
+        }
         unitOfWork.registerListener(new UnitOfWorkListenerAdapter() {
             @Override
             public void afterCommit(UnitOfWork uow) {
-                logger.debug("About to cancel the name {}", contactEntry.getName());
-                contactNameRepository.cancelContactName(contactEntry.getName());
+                logger.debug("About to cancel the name {}", contactName);
+                contactNameRepository.cancelContactName(contactName);
             }
         });
     }
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.command;
+
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.CommandHandler;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.sample.app.api.AbstractOrderCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Command bus that dispatches commands asynchronously on a fixed number of worker threads, called stripes. All
+ * commands for the same contact are handled by the same stripe, in the order they were dispatched. Commands for
+ * different contacts are handled in parallel. Commands without a contact identifier are spread over the stripes.</p>
+ * <p>Each stripe has a bounded queue. When the queue of a stripe is full, the dispatching thread blocks until there is
+ * room again. Commands dispatched from within a command handler are handled directly on the current stripe, to prevent
+ * a stripe from waiting for itself.</p>
+ * <p>The actual handling is done by the provided delegate, usually a {@code SimpleCommandBus} that starts a
+ * transaction for each command. Handlers subscribe to this bus and are registered with the delegate.</p>
+ * <p>Commands dispatched after the bus was stopped fail with an {@link IllegalStateException}, reported to their
+ * callback. Every command that is accepted is handled before the bus has stopped.</p>
+ * <p>BEWARE: exceptions thrown by command handlers are only reported to the callback. Commands dispatched without a
+ * callback fail silently, apart from a log statement.</p>
+ */
+public class StripedCommandBus implements CommandBus, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(StripedCommandBus.class);
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final CommandBus delegate;
+    private final Stripe[] stripes;
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    private final ThreadLocal<Boolean> handlingCommand = new ThreadLocal<Boolean>();
+    private volatile boolean running = true;
+
+    /**
+     * Creates a bus with a stripe per available processor.
+     *
+     * @param delegate the command bus that invokes the command handlers
+     */
+    public StripedCommandBus(CommandBus delegate) {
+        this(delegate, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a bus with the provided number of stripes, each with a queue of the given capacity.
+     *
+     * @param delegate      the command bus that invokes the command handlers
+     * @param stripeCount   the number of worker threads
+     * @param queueCapacity the maximum number of waiting commands per stripe
+     */
+    public StripedCommandBus(CommandBus delegate, int stripeCount, int queueCapacity) {
+        this.delegate = delegate;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(i, queueCapacity);
+            stripes[i].start();
+        }
+    }
+
+    @Override
+    public void dispatch(CommandMessage<?> command) {
+        dispatch(command, new LoggingCallback(command));
+    }
+
+    @Override
+    public <R> void dispatch(CommandMessage<?> command, CommandCallback<R> callback) {
+        if (!running) {
+            callback.onFailure(new IllegalStateException("The command bus has been stopped"));
+            return;
+        }
+        if (Boolean.TRUE.equals(handlingCommand.get())) {
+            delegate.dispatch(command, callback);
+            return;
+        }
+        try {
+            if (!stripeFor(command).submit(new DispatchTask<R>(command, callback))) {
+                callback.onFailure(new IllegalStateException("The command bus has been stopped"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callback.onFailure(e);
+        }
+    }
+
+    @Override
+    public <C> void subscribe(String commandName, CommandHandler<? super C> handler) {
+        delegate.subscribe(commandName, handler);
+    }
+
+    @Override
+    public <C> boolean unsubscribe(String commandName, CommandHandler<? super C> handler) {
+        return delegate.unsubscribe(commandName, handler);
+    }
+
+    /**
+     * Stops accepting new commands and waits until all stripes have handled the commands in their queue.
+     *
+     * @throws InterruptedException when interrupted while waiting for the stripes to finish
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        for (Stripe stripe : stripes) {
+            stripe.shutdown();
+        }
+        for (Stripe stripe : stripes) {
+            stripe.join();
+        }
+    }
+
+    private Stripe stripeFor(CommandMessage<?> command) {
+        Object payload = command.getPayload();
+        if (payload instanceof AbstractOrderCommand) {
+            String contactId = ((AbstractOrderCommand) payload).getContactId();
+            if (contactId != null) {
+                return stripes[(contactId.hashCode() & Integer.MAX_VALUE) % stripes.length];
+            }
+        }
+        return stripes[(nextStripe.getAndIncrement() & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    private class Stripe extends Thread {
+
+        private final BlockingQueue<DispatchTask<?>> queue;
+        private volatile boolean accepting = true;
+
+        private Stripe(int index, int queueCapacity) {
+            super("CommandStripe-" + index);
+            this.queue = new ArrayBlockingQueue<DispatchTask<?>>(queueCapacity);
+            setDaemon(true);
+        }
+
+        /**
+         * Adds the task to the queue of this stripe, waiting for room if the queue is full.
+         *
+         * @param task the task to execute
+         * @return <code>true</code> if the stripe will execute the task, <code>false</code> if the stripe stopped
+         * @throws InterruptedException when interrupted while waiting for room in the queue
+         */
+        public boolean submit(DispatchTask<?> task) throws InterruptedException {
+            while (!queue.offer(task, 100, TimeUnit.MILLISECONDS)) {
+                if (!accepting) {
+                    return false;
+                }
+            }
+            // the stripe may have seen an empty queue and stopped just before the task was added
+            return accepting || !queue.remove(task);
+        }
+
+        public void shutdown() {
+            accepting = false;
+        }
+
+        @Override
+        public void run() {
+            handlingCommand.set(Boolean.TRUE);
+            while (accepting || !queue.isEmpty()) {
+                DispatchTask<?> task;
+                try {
+                    task = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    accepting = false;
+                    logger.warn("Command stripe {} was interrupted, {} commands are not handled", getName(),
+                                queue.size());
+                    failQueuedTasks();
+                    return;
+                }
+                if (task == null) {
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Unexpected exception while dispatching a command", e);
+                }
+            }
+        }
+
+        private void failQueuedTasks() {
+            DispatchTask<?> task;
+            while ((task = queue.poll()) != null) {
+                task.fail(new IllegalStateException("The command stripe " + getName() + " was interrupted"));
+            }
+        }
+    }
+
+    private class DispatchTask<R> implements Runnable {
+
+        private final CommandMessage<?> command;
+        private final CommandCallback<R> callback;
+
+        private DispatchTask(CommandMessage<?> command, CommandCallback<R> callback) {
+            this.command = command;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            delegate.dispatch(command, callback);
+        }
+
+        public void fail(Throwable cause) {
+            callback.onFailure(cause);
+        }
+    }
+
+    private static class LoggingCallback implements CommandCallback<Object> {
+
+        private final CommandMessage<?> command;
+
+        private LoggingCallback(CommandMessage<?> command) {
+            this.command = command;
+        }
+
+        @Override
+        public void onSuccess(Object result) {
+        }
+
+        @Override
+        public void onFailure(Throwable cause) {
+            logger.warn("Command of type " + command.getCommandName() + " failed", cause);
+        }
+    }
+}
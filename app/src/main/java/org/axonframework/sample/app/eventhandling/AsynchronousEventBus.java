@@ -0,0 +1,447 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.sample.app.eventhandling;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.EventMessage;
+import org.axonframework.eventhandling.EventBus;
+import org.axonframework.eventhandling.EventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+import org.springframework.jmx.support.JmxUtils;
+import org.springframework.jmx.support.ObjectNameManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Event bus that delivers events asynchronously. Each subscribed listener gets its own
+ * <code>threadsPerListener</code> threads, each with a queue of at most <code>queueCapacity</code> events. Events of
+ * the same aggregate are handled by the same thread, in the order they were published. Publishing only puts the event
+ * in the queues, so the time to publish does not depend on the number of listeners or on the time they take. When a
+ * queue is full, the publishing thread waits until there is room again.</p>
+ * <p>When a transaction manager is set, a thread handles up to <code>batchSize</code> waiting events in a single
+ * transaction. If one of them fails, the transaction is rolled back and the events are handled again, each in a
+ * transaction of its own.</p>
+ * <p>An event that a listener fails to handle is retried <code>maxRetries</code> times, <code>retryInterval</code>
+ * milliseconds apart. When it still fails, the listener is stopped: it receives no further events, so its state stays
+ * consistent with the events it has handled instead of silently missing one. A stopped listener is reported through
+ * JMX and needs to be rebuilt, for instance by the <code>ContactProjectionRebuilder</code>.</p>
+ * <p>For each listener, the bus counts the events that were handled since startup and the events that are still
+ * waiting. These are available through JMX. The counts are kept in memory only, they are not a durable position.</p>
+ * <p>BEWARE: listeners see the events after the command has completed, so the query tables may lag behind. There is
+ * no ordering between listeners: two listeners handle the same event on different threads, in any order. Listeners
+ * that depend on each other's state must not be used with this bus. That is why it is not enabled in any of the
+ * webapps, see async-event-bus-context.xml. Listeners must not publish events themselves, as their thread could end
+ * up waiting for room in its own queue.</p>
+ * <p>Every web application registers its own event bus with JMX. Without a configured <code>objectName</code>, the
+ * identity of the event bus is added to the default name, so the event buses of different applications do not hide each
+ * other.</p>
+ */
+@ManagedResource(description = "Delivers events asynchronously to the listeners")
+public class AsynchronousEventBus implements EventBus, DisposableBean, SelfNaming {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsynchronousEventBus.class);
+    private static final String DEFAULT_OBJECT_NAME = "org.axonframework.sample:type=EventBus,name=asynchronous";
+
+    private final Map<EventListener, ListenerProcessor> processors =
+            new ConcurrentHashMap<EventListener, ListenerProcessor>();
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    private TransactionTemplate transactionTemplate;
+    private int threadsPerListener = 2;
+    private int queueCapacity = 1000;
+    private int batchSize = 100;
+    private int maxRetries = 3;
+    private long retryInterval = 1000;
+    private volatile boolean running = true;
+    private String objectName;
+
+    @Override
+    public void publish(EventMessage... events) {
+        if (!running) {
+            throw new IllegalStateException("The event bus has been stopped");
+        }
+        for (EventMessage event : events) {
+            int hash = event instanceof DomainEventMessage
+                    ? ((DomainEventMessage) event).getAggregateIdentifier().hashCode()
+                    : nextThread.getAndIncrement();
+            for (ListenerProcessor processor : processors.values()) {
+                processor.add(event, hash & Integer.MAX_VALUE);
+            }
+            publishedCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void subscribe(EventListener eventListener) {
+        synchronized (processors) {
+            if (!processors.containsKey(eventListener)) {
+                processors.put(eventListener, new ListenerProcessor(eventListener));
+            }
+        }
+    }
+
+    @Override
+    public void unsubscribe(EventListener eventListener) {
+        ListenerProcessor processor;
+        synchronized (processors) {
+            processor = processors.remove(eventListener);
+        }
+        if (processor != null) {
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * Stops accepting events and waits until the listeners have handled the events in their queues.
+     *
+     * @throws InterruptedException when interrupted while waiting for the listeners
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        for (ListenerProcessor processor : processors.values()) {
+            processor.shutdown();
+        }
+        for (ListenerProcessor processor : processors.values()) {
+            processor.join();
+        }
+    }
+
+    /**
+     * Returns the configured object name, or the default name with the identity of this event bus added.
+     *
+     * @return the name to register this event bus with in JMX
+     * @throws MalformedObjectNameException if the configured object name is not valid
+     */
+    @Override
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName != null) {
+            return ObjectNameManager.getInstance(objectName);
+        }
+        return JmxUtils.appendIdentityToObjectName(ObjectNameManager.getInstance(DEFAULT_OBJECT_NAME), this);
+    }
+
+    @ManagedAttribute(description = "Number of events published")
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of events waiting to be handled, over all listeners")
+    public int getBacklog() {
+        int backlog = 0;
+        for (ListenerProcessor processor : processors.values()) {
+            backlog += processor.getBacklog();
+        }
+        return backlog;
+    }
+
+    /**
+     * Returns, per listener, the number of events it has handled and the number of events waiting for it, and
+     * whether it has been stopped.
+     *
+     * @return a description of the position of each listener
+     */
+    @ManagedAttribute(description = "Number of events handled and waiting per listener")
+    public String[] getListenerPositions() {
+        List<String> positions = new ArrayList<String>();
+        for (ListenerProcessor processor : processors.values()) {
+            positions.add(processor.name + ": " + processor.getProcessedPosition() + " handled, "
+                                  + processor.getBacklog() + " waiting, " + processor.failedCount.get() + " failed"
+                                  + (processor.stopped ? ", STOPPED" : ""));
+        }
+        return positions.toArray(new String[positions.size()]);
+    }
+
+    /**
+     * Returns the number of events the given listener has handled successfully since startup.
+     *
+     * @param eventListener the listener to return the position of
+     * @return the number of handled events, or -1 if the listener is not subscribed
+     */
+    public long getProcessedPosition(EventListener eventListener) {
+        ListenerProcessor processor = processors.get(eventListener);
+        return processor == null ? -1 : processor.getProcessedPosition();
+    }
+
+    /**
+     * Indicates whether the given listener has been stopped because it failed to handle an event.
+     *
+     * @param eventListener the listener to check
+     * @return <code>true</code> if the listener is subscribed and stopped
+     */
+    public boolean isStopped(EventListener eventListener) {
+        ListenerProcessor processor = processors.get(eventListener);
+        return processor != null && processor.stopped;
+    }
+
+    /**
+     * Sets the transaction manager to handle the events in. Defaults to none, in which case the listeners are
+     * invoked without a transaction.
+     *
+     * @param transactionManager the transaction manager to handle events in
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Sets the number of threads per listener. Only applies to listeners that subscribe afterwards. Defaults to 2.
+     *
+     * @param threadsPerListener the number of threads handling the events of a listener
+     */
+    public void setThreadsPerListener(int threadsPerListener) {
+        this.threadsPerListener = threadsPerListener;
+    }
+
+    /**
+     * Sets the maximum number of events waiting per thread. Only applies to listeners that subscribe afterwards.
+     * Defaults to 1000.
+     *
+     * @param queueCapacity the maximum number of waiting events per thread
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of events handled in one transaction. Defaults to 100.
+     *
+     * @param batchSize the maximum number of events per transaction
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the number of times a failed event is handled again before the listener is stopped. Defaults to 3.
+     *
+     * @param maxRetries the number of retries of a failed event
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait before a failed event is handled again. Defaults to 1000.
+     *
+     * @param retryInterval the time between attempts to handle an event
+     */
+    public void setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Sets the name to register this event bus with in JMX. Defaults to
+     * <code>org.axonframework.sample:type=EventBus,name=asynchronous</code> with the identity of the event bus added.
+     * Must be unique for all applications in the JVM.
+     *
+     * @param objectName the JMX object name of this event bus
+     */
+    public void setObjectName(String objectName) {
+        this.objectName = objectName;
+    }
+
+    /**
+     * The threads that handle the events of a single listener.
+     */
+    private class ListenerProcessor {
+
+        private final EventListener listener;
+        private final String name;
+        private final Worker[] workers;
+        private final AtomicLong processedCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+        private volatile boolean stopped;
+
+        private ListenerProcessor(EventListener listener) {
+            this.listener = listener;
+            this.name = listener.getClass().getSimpleName() + "@" + Integer.toHexString(listener.hashCode());
+            this.workers = new Worker[threadsPerListener];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Worker(this, "EventProcessor-" + name + "-" + i);
+                workers[i].start();
+            }
+        }
+
+        private void add(EventMessage event, int hash) {
+            if (stopped) {
+                return;
+            }
+            try {
+                workers[hash % workers.length].queue.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for room in the queue of " + name, e);
+            }
+        }
+
+        private void shutdown() {
+            for (Worker worker : workers) {
+                worker.accepting = false;
+            }
+        }
+
+        private void join() throws InterruptedException {
+            for (Worker worker : workers) {
+                worker.join();
+            }
+        }
+
+        private long getProcessedPosition() {
+            return processedCount.get();
+        }
+
+        private int getBacklog() {
+            int backlog = 0;
+            for (Worker worker : workers) {
+                backlog += worker.queue.size();
+            }
+            return backlog;
+        }
+
+        private void handle(final List<EventMessage> batch) {
+            if (transactionTemplate == null) {
+                handleOneByOne(batch);
+                return;
+            }
+            try {
+                transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        for (EventMessage event : batch) {
+                            listener.handle(event);
+                        }
+                    }
+                });
+                processedCount.addAndGet(batch.size());
+            } catch (RuntimeException e) {
+                logger.debug("A batch of {} events failed for {}, handling them one by one", batch.size(), name);
+                handleOneByOne(batch);
+            }
+        }
+
+        private void handleOneByOne(List<EventMessage> batch) {
+            for (EventMessage event : batch) {
+                if (stopped || !handle(event)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Handles the event, retrying it when it fails. Stops the listener when all attempts fail.
+         *
+         * @return <code>true</code> if the event was handled, <code>false</code> if the listener was stopped
+         */
+        private boolean handle(final EventMessage event) {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    if (transactionTemplate == null) {
+                        listener.handle(event);
+                    } else {
+                        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                            @Override
+                            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                                listener.handle(event);
+                            }
+                        });
+                    }
+                    processedCount.incrementAndGet();
+                    return true;
+                } catch (RuntimeException e) {
+                    failedCount.incrementAndGet();
+                    if (attempt >= maxRetries) {
+                        stop(event, e);
+                        return false;
+                    }
+                    logger.warn("Listener {} failed to handle an event of type {}, retrying", name,
+                                event.getPayloadType().getSimpleName());
+                }
+                try {
+                    Thread.sleep(retryInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stop(event, e);
+                    return false;
+                }
+            }
+        }
+
+        private void stop(EventMessage event, Exception cause) {
+            stopped = true;
+            logger.error("Listener " + name + " failed to handle an event of type "
+                                 + event.getPayloadType().getSimpleName() + " after " + processedCount.get()
+                                 + " events and has been stopped. It will not receive any more events.", cause);
+        }
+    }
+
+    private class Worker extends Thread {
+
+        private final ListenerProcessor processor;
+        private final BlockingQueue<EventMessage> queue = new ArrayBlockingQueue<EventMessage>(queueCapacity);
+        private volatile boolean accepting = true;
+
+        private Worker(ListenerProcessor processor, String name) {
+            super(name);
+            this.processor = processor;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<EventMessage> batch = new ArrayList<EventMessage>(batchSize);
+            while ((accepting || !queue.isEmpty()) && !processor.stopped) {
+                try {
+                    EventMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    processor.handle(batch);
+                } catch (InterruptedException e) {
+                    logger.warn("Event processor {} was interrupted, {} events are not handled", getName(),
+                                queue.size());
+                    return;
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+}
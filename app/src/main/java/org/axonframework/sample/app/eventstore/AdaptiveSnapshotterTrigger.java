@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.eventsourcing.EventSourcedAggregateRoot;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.eventsourcing.SnapshotterTrigger;
+import org.axonframework.unitofwork.CurrentUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.axonframework.unitofwork.UnitOfWorkListenerAdapter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+import org.springframework.jmx.support.JmxUtils;
+import org.springframework.jmx.support.ObjectNameManager;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Snapshotter trigger that decides for each aggregate whether a snapshot is worth creating. The decision is made
+ * when the events of an aggregate have been committed, based on the events stored since the latest snapshot:</p>
+ * <ul>
+ * <li>below <code>minimumEventCount</code> events, no snapshot is created;</li>
+ * <li>at or above <code>maximumEventCount</code> events, a snapshot is always created;</li>
+ * <li>in between, a snapshot is created if loading the aggregate took longer than <code>loadTimeThreshold</code>,
+ * or if the events take more than <code>byteThreshold</code> bytes in the event store.</li>
+ * </ul>
+ * <p>The number of bytes is only known when an {@link AggregateSizeProvider} is configured, usually the event store
+ * itself. The provider also knows the number of events since the latest snapshot of an aggregate that was served from
+ * a cache, without replaying its events.</p>
+ * <p>The trigger measures every load of an aggregate from the event store. Loads served from a cache do not reach the
+ * trigger. The snapshot hit rate is the fraction of loads that started from a snapshot. The rebuild time saved is an
+ * estimate: the number of events replaced by the snapshot, multiplied by the average time needed to replay an event
+ * when loading without a snapshot.</p>
+ * <p>A load is matched with the append of the same aggregate in the same unit of work, so concurrent commands on one
+ * aggregate each see their own load. Loads outside a unit of work are measured, but not kept for the decision.</p>
+ * <p>Every web application registers its own trigger with JMX. Without a configured <code>objectName</code>, the
+ * identity of the trigger is added to the default name, so the triggers of different applications do not hide each
+ * other.</p>
+ */
+@ManagedResource(description = "Decides when to snapshot aggregates")
+public class AdaptiveSnapshotterTrigger implements SnapshotterTrigger, SelfNaming {
+
+    private static final double SMOOTHING_FACTOR = 0.1;
+    private static final String DEFAULT_OBJECT_NAME = "org.axonframework.sample:type=SnapshotterTrigger,name=contact";
+
+    private final ConcurrentMap<UnitOfWork, Map<String, LoadStatistics>> loadsInProgress =
+            new ConcurrentHashMap<UnitOfWork, Map<String, LoadStatistics>>();
+
+    private Snapshotter snapshotter;
+    private AggregateSizeProvider sizeProvider;
+    private int minimumEventCount = 5;
+    private int maximumEventCount = 100;
+    private long loadTimeThreshold = TimeUnit.MILLISECONDS.toNanos(2);
+    private long byteThreshold = 16 * 1024;
+    private String objectName;
+
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong snapshotLoadCount = new AtomicLong();
+    private final AtomicLong replayedEventCount = new AtomicLong();
+    private final AtomicLong scheduledSnapshotCount = new AtomicLong();
+    private final AtomicLong rebuildNanosSaved = new AtomicLong();
+    private volatile double nanosPerEvent;
+
+    @Override
+    public DomainEventStream decorateForRead(String aggregateType, Object aggregateIdentifier,
+                                             DomainEventStream eventStream) {
+        LoadStatistics statistics = new LoadStatistics();
+        if (CurrentUnitOfWork.isStarted()) {
+            loadsOf(CurrentUnitOfWork.get()).put(key(aggregateType, aggregateIdentifier), statistics);
+        }
+        return new MeasuringEventStream(eventStream, statistics);
+    }
+
+    private Map<String, LoadStatistics> loadsOf(UnitOfWork unitOfWork) {
+        Map<String, LoadStatistics> loads = loadsInProgress.get(unitOfWork);
+        if (loads == null) {
+            // a unit of work is only used by the thread that started it
+            loads = new HashMap<String, LoadStatistics>();
+            loadsInProgress.put(unitOfWork, loads);
+            unitOfWork.registerListener(new UnitOfWorkListenerAdapter() {
+                @Override
+                public void onCleanup(UnitOfWork unitOfWork) {
+                    loadsInProgress.remove(unitOfWork);
+                }
+            });
+        }
+        return loads;
+    }
+
+    @Override
+    public DomainEventStream decorateForAppend(final String aggregateType, EventSourcedAggregateRoot aggregate,
+                                               DomainEventStream eventStream) {
+        final Object aggregateIdentifier = aggregate.getIdentifier();
+        final int appendedEvents = aggregate.getUncommittedEventCount();
+        if (CurrentUnitOfWork.isStarted()) {
+            UnitOfWork unitOfWork = CurrentUnitOfWork.get();
+            Map<String, LoadStatistics> loads = loadsInProgress.get(unitOfWork);
+            final LoadStatistics statistics = loads == null ? null : loads.remove(key(aggregateType,
+                                                                                     aggregateIdentifier));
+            unitOfWork.registerListener(new UnitOfWorkListenerAdapter() {
+                @Override
+                public void afterCommit(UnitOfWork unitOfWork) {
+                    decide(aggregateType, aggregateIdentifier, appendedEvents, statistics);
+                }
+            });
+        } else {
+            decide(aggregateType, aggregateIdentifier, appendedEvents, null);
+        }
+        return eventStream;
+    }
+
+    private void decide(String aggregateType, Object aggregateIdentifier, int appendedEvents,
+                        LoadStatistics statistics) {
+        long eventCount = appendedEvents + (statistics == null ? 0 : statistics.getReplayedEvents());
+        if (sizeProvider != null) {
+            eventCount = Math.max(eventCount, sizeProvider.getEventCountSinceSnapshot(aggregateType,
+                                                                                      aggregateIdentifier));
+        }
+        if (eventCount < minimumEventCount) {
+            return;
+        }
+        boolean slowLoad = statistics != null && statistics.getElapsedNanos() >= loadTimeThreshold;
+        boolean largeStream = sizeProvider != null
+                && sizeProvider.getBytesSinceSnapshot(aggregateType, aggregateIdentifier) >= byteThreshold;
+        if (eventCount >= maximumEventCount || slowLoad || largeStream) {
+            scheduledSnapshotCount.incrementAndGet();
+            snapshotter.scheduleSnapshot(aggregateType, aggregateIdentifier);
+        }
+    }
+
+    private void recordLoad(LoadStatistics statistics) {
+        loadCount.incrementAndGet();
+        replayedEventCount.addAndGet(statistics.getReplayedEvents());
+        if (statistics.getSnapshotSequenceNumber() >= 0) {
+            snapshotLoadCount.incrementAndGet();
+            rebuildNanosSaved.addAndGet((long) ((statistics.getSnapshotSequenceNumber() + 1) * nanosPerEvent));
+        } else if (statistics.getReplayedEvents() > 0) {
+            double measured = (double) statistics.getElapsedNanos() / statistics.getReplayedEvents();
+            double current = nanosPerEvent;
+            nanosPerEvent = current == 0 ? measured : current + SMOOTHING_FACTOR * (measured - current);
+        }
+    }
+
+    private static String key(String aggregateType, Object aggregateIdentifier) {
+        return aggregateType + '/' + aggregateIdentifier;
+    }
+
+    /**
+     * Returns the configured object name, or the default name with the identity of this trigger added.
+     *
+     * @return the name to register this trigger with in JMX
+     * @throws MalformedObjectNameException if the configured object name is not valid
+     */
+    @Override
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName != null) {
+            return ObjectNameManager.getInstance(objectName);
+        }
+        return JmxUtils.appendIdentityToObjectName(ObjectNameManager.getInstance(DEFAULT_OBJECT_NAME), this);
+    }
+
+    @ManagedAttribute(description = "Number of aggregates loaded from the event store")
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    @ManagedAttribute(description = "Fraction of loads that started from a snapshot")
+    public double getSnapshotHitRate() {
+        long loads = loadCount.get();
+        return loads == 0 ? 0 : (double) snapshotLoadCount.get() / loads;
+    }
+
+    @ManagedAttribute(description = "Number of events replayed while loading aggregates")
+    public long getReplayedEventCount() {
+        return replayedEventCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of snapshots requested")
+    public long getScheduledSnapshotCount() {
+        return scheduledSnapshotCount.get();
+    }
+
+    @ManagedAttribute(description = "Average time to replay an event without snapshot, in microseconds")
+    public double getReplayTimePerEventMicros() {
+        return nanosPerEvent / 1000;
+    }
+
+    @ManagedAttribute(description = "Estimated time saved by loading from snapshots, in milliseconds")
+    public long getRebuildTimeSavedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(rebuildNanosSaved.get());
+    }
+
+    /**
+     * Sets the snapshotter that creates the snapshots.
+     *
+     * @param snapshotter the snapshotter to schedule snapshots with
+     */
+    public void setSnapshotter(Snapshotter snapshotter) {
+        this.snapshotter = snapshotter;
+    }
+
+    /**
+     * Sets the provider of the number of bytes stored for an aggregate since its latest snapshot. Optional.
+     *
+     * @param sizeProvider the provider of the size of the event streams
+     */
+    public void setSizeProvider(AggregateSizeProvider sizeProvider) {
+        this.sizeProvider = sizeProvider;
+    }
+
+    /**
+     * Sets the number of events since the latest snapshot below which no snapshot is created. Defaults to 5.
+     *
+     * @param minimumEventCount the minimum number of events for a snapshot
+     */
+    public void setMinimumEventCount(int minimumEventCount) {
+        this.minimumEventCount = minimumEventCount;
+    }
+
+    /**
+     * Sets the number of events since the latest snapshot at which a snapshot is always created. Defaults to 100.
+     *
+     * @param maximumEventCount the number of events that always triggers a snapshot
+     */
+    public void setMaximumEventCount(int maximumEventCount) {
+        this.maximumEventCount = maximumEventCount;
+    }
+
+    /**
+     * Sets the load time in milliseconds above which a snapshot is created. Defaults to 2.
+     *
+     * @param loadTimeThreshold the load time that triggers a snapshot, in milliseconds
+     */
+    public void setLoadTimeThreshold(long loadTimeThreshold) {
+        this.loadTimeThreshold = TimeUnit.MILLISECONDS.toNanos(loadTimeThreshold);
+    }
+
+    /**
+     * Sets the number of bytes stored since the latest snapshot above which a snapshot is created. Defaults to 16kB.
+     *
+     * @param byteThreshold the number of bytes that triggers a snapshot
+     */
+    public void setByteThreshold(long byteThreshold) {
+        this.byteThreshold = byteThreshold;
+    }
+
+    /**
+     * Sets the name to register this trigger with in JMX. Defaults to
+     * <code>org.axonframework.sample:type=SnapshotterTrigger,name=contact</code> with the identity of the trigger
+     * added. Must be unique for all applications in the JVM.
+     *
+     * @param objectName the JMX object name of this trigger
+     */
+    public void setObjectName(String objectName) {
+        this.objectName = objectName;
+    }
+
+    private static class LoadStatistics {
+
+        private final long startTime = System.nanoTime();
+        private volatile long elapsedNanos = -1;
+        private volatile int replayedEvents;
+        private volatile long snapshotSequenceNumber = -1;
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public int getReplayedEvents() {
+            return replayedEvents;
+        }
+
+        public long getSnapshotSequenceNumber() {
+            return snapshotSequenceNumber;
+        }
+    }
+
+    private class MeasuringEventStream implements DomainEventStream {
+
+        private final DomainEventStream delegate;
+        private final LoadStatistics statistics;
+        private boolean first = true;
+
+        private MeasuringEventStream(DomainEventStream delegate, LoadStatistics statistics) {
+            this.delegate = delegate;
+            this.statistics = statistics;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = delegate.hasNext();
+            if (!hasNext && statistics.elapsedNanos < 0) {
+                statistics.elapsedNanos = System.nanoTime() - statistics.startTime;
+                recordLoad(statistics);
+            }
+            return hasNext;
+        }
+
+        @Override
+        public DomainEventMessage next() {
+            DomainEventMessage event = delegate.next();
+            if (first && event.getPayload() instanceof EventSourcedAggregateRoot) {
+                statistics.snapshotSequenceNumber = event.getSequenceNumber();
+            } else {
+                statistics.replayedEvents++;
+            }
+            first = false;
+            return event;
+        }
+
+        @Override
+        public DomainEventMessage peek() {
+            return delegate.peek();
+        }
+    }
+}
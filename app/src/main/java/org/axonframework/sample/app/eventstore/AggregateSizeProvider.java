@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.eventstore;
+
+/**
+ * <p>Implemented by event stores that know how much data must be read to load an aggregate.</p>
+ */
+public interface AggregateSizeProvider {
+
+    /**
+     * Returns the number of bytes of the events stored for the given aggregate after its latest snapshot. Returns 0
+     * for unknown aggregates.
+     *
+     * @param type       the type of the aggregate
+     * @param identifier the identifier of the aggregate
+     * @return the number of bytes stored since the latest snapshot
+     */
+    long getBytesSinceSnapshot(String type, Object identifier);
+
+    /**
+     * Returns the number of events stored for the given aggregate after its latest snapshot. Returns 0 for unknown
+     * aggregates.
+     *
+     * @param type       the type of the aggregate
+     * @param identifier the identifier of the aggregate
+     * @return the number of events stored since the latest snapshot
+     */
+    long getEventCountSinceSnapshot(String type, Object identifier);
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.eventstore;
+
+/**
+ * <p>Implemented by event stores that can tell the version of an aggregate without reading its events.</p>
+ */
+public interface AggregateVersionProvider {
+
+    /**
+     * Returns the sequence number of the last event stored for the given aggregate, or <code>null</code> if the
+     * aggregate is unknown.
+     *
+     * @param type       the type of the aggregate
+     * @param identifier the identifier of the aggregate
+     * @return the last sequence number of the aggregate, or <code>null</code>
+     */
+    Long getLastSequenceNumber(String type, Object identifier);
+}
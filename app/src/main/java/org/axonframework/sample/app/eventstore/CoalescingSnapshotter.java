@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.eventsourcing.Snapshotter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+import org.springframework.jmx.support.JmxUtils;
+import org.springframework.jmx.support.ObjectNameManager;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Snapshotter that creates snapshots on an executor, with at most one waiting snapshot per aggregate. When a
+ * snapshot is requested for an aggregate that is already waiting for one, the request is dropped: the waiting
+ * snapshot will include the latest events anyway. When the executor rejects a snapshot, it is dropped as well and
+ * will be requested again by a later change to the aggregate.</p>
+ * <p>The actual snapshot is created by the delegate, which should create it in the calling thread.</p>
+ * <p>Every web application registers its own snapshotter with JMX. Without a configured <code>objectName</code>, the
+ * identity of the snapshotter is added to the default name, so the snapshotters of different applications do not
+ * hide each other.</p>
+ */
+@ManagedResource(description = "Creates snapshots, at most one waiting snapshot per aggregate")
+public class CoalescingSnapshotter implements Snapshotter, SelfNaming {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoalescingSnapshotter.class);
+    private static final String DEFAULT_OBJECT_NAME = "org.axonframework.sample:type=Snapshotter,name=contact";
+
+    private final Snapshotter delegate;
+    private final Executor executor;
+    private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private String objectName;
+
+    /**
+     * Creates a snapshotter that runs the given delegate on the given executor.
+     *
+     * @param delegate the snapshotter that creates the snapshot in the calling thread
+     * @param executor the executor to create snapshots on
+     */
+    public CoalescingSnapshotter(Snapshotter delegate, Executor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public void scheduleSnapshot(final String typeIdentifier, final Object aggregateIdentifier) {
+        final String key = typeIdentifier + '/' + aggregateIdentifier;
+        if (!pending.add(key)) {
+            coalescedCount.incrementAndGet();
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    pending.remove(key);
+                    try {
+                        delegate.scheduleSnapshot(typeIdentifier, aggregateIdentifier);
+                        createdCount.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        logger.warn("Unable to create a snapshot of aggregate " + aggregateIdentifier, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+            rejectedCount.incrementAndGet();
+            logger.debug("Snapshot of aggregate {} rejected, the executor is saturated", aggregateIdentifier);
+        }
+    }
+
+    /**
+     * Returns the configured object name, or the default name with the identity of this snapshotter added.
+     *
+     * @return the name to register this snapshotter with in JMX
+     * @throws MalformedObjectNameException if the configured object name is not valid
+     */
+    @Override
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName != null) {
+            return ObjectNameManager.getInstance(objectName);
+        }
+        return JmxUtils.appendIdentityToObjectName(ObjectNameManager.getInstance(DEFAULT_OBJECT_NAME), this);
+    }
+
+    @ManagedAttribute(description = "Number of snapshots created")
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of requests merged with a waiting snapshot")
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of requests rejected by the executor")
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of snapshots waiting to be created")
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Sets the name to register this snapshotter with in JMX. Defaults to
+     * <code>org.axonframework.sample:type=Snapshotter,name=contact</code> with the identity of the snapshotter added.
+     * Must be unique for all applications in the JVM.
+     *
+     * @param objectName the JMX object name of this snapshotter
+     */
+    public void setObjectName(String objectName) {
+        this.objectName = objectName;
+    }
+}
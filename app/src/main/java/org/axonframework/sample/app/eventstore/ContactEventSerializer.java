@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressChangedEvent;
+import org.axonframework.sample.app.api.AddressRegisteredEvent;
+import org.axonframework.sample.app.api.AddressRemovedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.serializer.ConverterFactory;
+import org.axonframework.serializer.SerializationException;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.SerializedType;
+import org.axonframework.serializer.Serializer;
+import org.axonframework.serializer.SimpleSerializedObject;
+import org.axonframework.serializer.UnknownSerializedTypeException;
+import org.axonframework.serializer.xml.XStreamSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Serializer that writes the contact events in a compact binary format. All other objects, such as snapshots and
+ * meta data, are serialized by a fallback serializer, an XStream serializer by default.</p>
+ * <p>A binary payload starts with a marker byte, followed by the schema version and a code for the event type. The
+ * fields follow in a fixed order; the address type is stored as its ordinal. When deserializing, payloads that do not
+ * start with the marker are passed to the fallback serializer, so events stored before this serializer was used can
+ * still be read.</p>
+ * <p>BEWARE: since the address type is stored as an ordinal, new address types must be added at the end of the
+ * enum. When the fields of an event change, increase the schema version and keep reading the older versions.</p>
+ */
+public class ContactEventSerializer implements Serializer {
+
+    private static final byte MARKER = (byte) 0xCE;
+    private static final byte SCHEMA_VERSION = 1;
+
+    private static final byte CONTACT_CREATED = 1;
+    private static final byte CONTACT_NAME_CHANGED = 2;
+    private static final byte CONTACT_DELETED = 3;
+    private static final byte ADDRESS_ADDED = 4;
+    private static final byte ADDRESS_CHANGED = 5;
+    private static final byte ADDRESS_REMOVED = 6;
+
+    private final Serializer fallback;
+
+    /**
+     * Creates a serializer that uses an XStream serializer for all other objects.
+     */
+    public ContactEventSerializer() {
+        this(new XStreamSerializer());
+    }
+
+    /**
+     * Creates a serializer that uses the given serializer for all other objects.
+     *
+     * @param fallback the serializer for objects that are not contact events
+     */
+    public ContactEventSerializer(Serializer fallback) {
+        this.fallback = fallback;
+    }
+
+    @SuppressWarnings({"unchecked"})
+    @Override
+    public <T> SerializedObject<T> serialize(Object object, Class<T> expectedRepresentation) {
+        if (!byte[].class.equals(expectedRepresentation) || typeCode(object) == 0) {
+            return fallback.serialize(object, expectedRepresentation);
+        }
+        byte[] data = encode(object);
+        return (SerializedObject<T>) new SimpleSerializedObject<byte[]>(data, byte[].class,
+                                                                        object.getClass().getName(), null);
+    }
+
+    @Override
+    public <T> boolean canSerializeTo(Class<T> expectedRepresentation) {
+        return fallback.canSerializeTo(expectedRepresentation);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    @Override
+    public <S, T> T deserialize(SerializedObject<S> serializedObject) {
+        Object data = serializedObject.getData();
+        if (data instanceof byte[] && isBinary((byte[]) data)) {
+            return (T) decode((byte[]) data);
+        }
+        return (T) fallback.deserialize(serializedObject);
+    }
+
+    @Override
+    public Class classForType(SerializedType type) throws UnknownSerializedTypeException {
+        return fallback.classForType(type);
+    }
+
+    @Override
+    public SerializedType typeForClass(Class type) {
+        return fallback.typeForClass(type);
+    }
+
+    @Override
+    public ConverterFactory getConverterFactory() {
+        return fallback.getConverterFactory();
+    }
+
+    /**
+     * Indicates whether the given data contains an event in the binary format of this serializer.
+     *
+     * @param data the serialized data
+     * @return <code>true</code> if the data is in the binary format
+     */
+    public static boolean isBinary(byte[] data) {
+        return data.length > 2 && data[0] == MARKER;
+    }
+
+    private static byte typeCode(Object object) {
+        if (object == null) {
+            return 0;
+        }
+        Class<?> type = object.getClass();
+        if (type == ContactCreatedEvent.class) {
+            return CONTACT_CREATED;
+        } else if (type == ContactNameChangedEvent.class) {
+            return CONTACT_NAME_CHANGED;
+        } else if (type == ContactDeletedEvent.class) {
+            return CONTACT_DELETED;
+        } else if (type == AddressAddedEvent.class) {
+            return ADDRESS_ADDED;
+        } else if (type == AddressChangedEvent.class) {
+            return ADDRESS_CHANGED;
+        } else if (type == AddressRemovedEvent.class) {
+            return ADDRESS_REMOVED;
+        }
+        return 0;
+    }
+
+    private byte[] encode(Object event) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            byte typeCode = typeCode(event);
+            out.writeByte(MARKER);
+            out.writeByte(SCHEMA_VERSION);
+            out.writeByte(typeCode);
+            switch (typeCode) {
+                case CONTACT_CREATED:
+                    ContactCreatedEvent created = (ContactCreatedEvent) event;
+                    writeString(out, created.getContactId());
+                    writeString(out, created.getName());
+                    break;
+                case CONTACT_NAME_CHANGED:
+                    ContactNameChangedEvent nameChanged = (ContactNameChangedEvent) event;
+                    writeString(out, nameChanged.getContactId());
+                    writeString(out, nameChanged.getNewName());
+                    break;
+                case CONTACT_DELETED:
+                    writeString(out, ((ContactDeletedEvent) event).getContactId());
+                    break;
+                case ADDRESS_ADDED:
+                case ADDRESS_CHANGED:
+                    AddressRegisteredEvent registered = (AddressRegisteredEvent) event;
+                    writeString(out, registered.getContactId());
+                    writeAddressType(out, registered.getType());
+                    Address address = registered.getAddress();
+                    out.writeBoolean(address != null);
+                    if (address != null) {
+                        writeString(out, address.getStreetAndNumber());
+                        writeString(out, address.getZipCode());
+                        writeString(out, address.getCity());
+                    }
+                    break;
+                case ADDRESS_REMOVED:
+                    AddressRemovedEvent removed = (AddressRemovedEvent) event;
+                    writeString(out, removed.getContactId());
+                    writeAddressType(out, removed.getType());
+                    break;
+                default:
+                    throw new SerializationException("No binary format for " + event.getClass().getName());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Unable to write to a byte array", e);
+        }
+    }
+
+    private Object decode(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 1, data.length - 1));
+            byte version = in.readByte();
+            if (version != SCHEMA_VERSION) {
+                throw new SerializationException("Unsupported schema version " + version + " of a contact event");
+            }
+            byte typeCode = in.readByte();
+            switch (typeCode) {
+                case CONTACT_CREATED:
+                    return new ContactCreatedEvent(readString(in), readString(in));
+                case CONTACT_NAME_CHANGED:
+                    return new ContactNameChangedEvent(readString(in), readString(in));
+                case CONTACT_DELETED:
+                    return new ContactDeletedEvent(readString(in));
+                case ADDRESS_ADDED:
+                    return new AddressAddedEvent(readString(in), readAddressType(in), readAddress(in));
+                case ADDRESS_CHANGED:
+                    return new AddressChangedEvent(readString(in), readAddressType(in), readAddress(in));
+                case ADDRESS_REMOVED:
+                    return new AddressRemovedEvent(readString(in), readAddressType(in));
+                default:
+                    throw new SerializationException("Unknown contact event type " + typeCode);
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Unable to read a contact event", e);
+        }
+    }
+
+    private static void writeAddressType(DataOutputStream out, AddressType type) throws IOException {
+        out.writeByte(type == null ? -1 : type.ordinal());
+    }
+
+    private static AddressType readAddressType(DataInputStream in) throws IOException {
+        byte ordinal = in.readByte();
+        return ordinal < 0 ? null : AddressType.values()[ordinal];
+    }
+
+    private static Address readAddress(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new Address(readString(in), readString(in), readString(in));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.MetaData;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.Serializer;
+import org.axonframework.serializer.SimpleSerializedObject;
+import org.joda.time.DateTime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * <p>Encodes and decodes the body of the records in the {@link Segment segments} of the {@link
+ * MappedSegmentEventStore}. The header of a record contains the kind of record and the aggregate it belongs to, so
+ * the index can be rebuilt without deserializing the payload.</p>
+ */
+class EventRecord {
+
+    static final byte EVENT = 1;
+    static final byte SNAPSHOT = 2;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final byte kind;
+    private final String aggregateType;
+    private final String aggregateIdentifier;
+    private final long sequenceNumber;
+
+    private EventRecord(byte kind, String aggregateType, String aggregateIdentifier, long sequenceNumber) {
+        this.kind = kind;
+        this.aggregateType = aggregateType;
+        this.aggregateIdentifier = aggregateIdentifier;
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * Encodes the given event into the body of a record.
+     *
+     * @param kind          {@link #EVENT} or {@link #SNAPSHOT}
+     * @param aggregateType the type of aggregate the event belongs to
+     * @param event         the event to encode
+     * @param serializer    the serializer for the payload and meta data
+     * @return the body of the record
+     */
+    static byte[] encode(byte kind, String aggregateType, DomainEventMessage<?> event, Serializer serializer) {
+        SerializedObject<byte[]> payload = serializer.serialize(event.getPayload(), byte[].class);
+        SerializedObject<byte[]> metaData = serializer.serialize(event.getMetaData(), byte[].class);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + payload.getData().length);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(kind);
+            writeString(out, aggregateType);
+            writeString(out, event.getAggregateIdentifier().toString());
+            out.writeLong(event.getSequenceNumber());
+            writeString(out, event.getIdentifier());
+            out.writeLong(event.getTimestamp().getMillis());
+            writeSerializedObject(out, payload);
+            writeSerializedObject(out, metaData);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write to a byte array", e);
+        }
+    }
+
+    /**
+     * Reads the header of a record, which identifies the aggregate the record belongs to.
+     *
+     * @param body the body of the record
+     * @return the header of the record
+     */
+    static EventRecord readHeader(ByteBuffer body) {
+        ByteBuffer in = body.duplicate();
+        byte kind = in.get();
+        String aggregateType = readString(in);
+        String aggregateIdentifier = readString(in);
+        long sequenceNumber = in.getLong();
+        return new EventRecord(kind, aggregateType, aggregateIdentifier, sequenceNumber);
+    }
+
+    /**
+     * Decodes the event in the given record. The aggregate identifier of the event is the String representation of
+     * the original identifier.
+     *
+     * @param body       the body of the record
+     * @param serializer the serializer for the payload and meta data
+     * @return the event in the record
+     */
+    static DomainEventMessage<?> decode(ByteBuffer body, Serializer serializer) {
+        ByteBuffer in = body.duplicate();
+        in.get();
+        readString(in);
+        String aggregateIdentifier = readString(in);
+        long sequenceNumber = in.getLong();
+        String identifier = readString(in);
+        long timestamp = in.getLong();
+        Object payload = serializer.deserialize(readSerializedObject(in));
+        MetaData metaData = (MetaData) serializer.deserialize(readSerializedObject(in));
+        return new GenericDomainEventMessage<Object>(identifier, new DateTime(timestamp), aggregateIdentifier,
+                                                     sequenceNumber, payload, metaData);
+    }
+
+    byte getKind() {
+        return kind;
+    }
+
+    String getAggregateType() {
+        return aggregateType;
+    }
+
+    String getAggregateIdentifier() {
+        return aggregateIdentifier;
+    }
+
+    long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    private static void writeSerializedObject(DataOutputStream out, SerializedObject<byte[]> serializedObject)
+            throws IOException {
+        writeString(out, serializedObject.getType().getName());
+        String revision = serializedObject.getType().getRevision();
+        writeString(out, revision == null ? "" : revision);
+        out.writeInt(serializedObject.getData().length);
+        out.write(serializedObject.getData());
+    }
+
+    private static SerializedObject<byte[]> readSerializedObject(ByteBuffer in) {
+        String type = readString(in);
+        String revision = readString(in);
+        byte[] data = new byte[in.getInt()];
+        in.get(data);
+        return new SimpleSerializedObject<byte[]>(data, byte[].class, type, revision.length() == 0 ? null : revision);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
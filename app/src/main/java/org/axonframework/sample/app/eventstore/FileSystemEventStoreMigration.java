@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.eventstore.fs.EventFileResolver;
+import org.axonframework.eventstore.fs.FileSystemEventStore;
+import org.axonframework.eventstore.fs.SimpleEventFileResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Copies the events of the file system event store, used by earlier versions of the address book, into the {@link
+ * MappedSegmentEventStore}. The file system store keeps a file per aggregate in <code>baseDir/aggregateType</code>.
+ * The complete history of each aggregate is copied, the snapshots are not: the new store creates its own snapshots
+ * when they pay off.</p>
+ * <p>The migration runs at startup and can be interrupted at any time: only events with a sequence number above the
+ * last one in the new store are copied, so running it again completes an interrupted migration. When all aggregates
+ * are copied, the directory of the aggregate type is renamed to <code>aggregateType.migrated</code>, which keeps the
+ * old events but prevents them from being read again at the next startup.</p>
+ * <p>The events are copied one aggregate at a time. The order of events of different aggregates is therefore not kept
+ * in the new store, the order of the events of a single aggregate is.</p>
+ */
+public class FileSystemEventStoreMigration implements InitializingBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileSystemEventStoreMigration.class);
+    private static final String EVENTS_SUFFIX = ".events";
+    private static final String MIGRATED_SUFFIX = ".migrated";
+
+    private final File baseDir;
+    private final MappedSegmentEventStore eventStore;
+    private String aggregateType = "Contact";
+
+    /**
+     * Creates a migration of the file system event store in the given directory.
+     *
+     * @param baseDir    the base directory of the file system event store
+     * @param eventStore the event store to copy the events into
+     */
+    public FileSystemEventStoreMigration(File baseDir, MappedSegmentEventStore eventStore) {
+        this.baseDir = baseDir;
+        this.eventStore = eventStore;
+    }
+
+    /**
+     * Copies the events that are not in the new event store yet. Does nothing when there is no file system event
+     * store, or when it was migrated before.
+     *
+     * @throws IOException when the old events cannot be read, or the directory cannot be renamed
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        File typeDir = new File(baseDir, aggregateType);
+        File[] eventFiles = typeDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(EVENTS_SUFFIX);
+            }
+        });
+        if (eventFiles == null) {
+            return;
+        }
+        logger.info("Migrating the events of {} aggregates from {}", eventFiles.length, typeDir);
+        FileSystemEventStore source = new FileSystemEventStore(
+                new EventsOnlyFileResolver(new SimpleEventFileResolver(baseDir)));
+        long copiedEvents = 0;
+        for (File eventFile : eventFiles) {
+            String fileName = eventFile.getName();
+            String identifier = URLDecoder.decode(fileName.substring(0, fileName.length() - EVENTS_SUFFIX.length()),
+                                                  "UTF-8");
+            copiedEvents += copy(source, identifier);
+        }
+        File migratedDir = new File(baseDir, aggregateType + MIGRATED_SUFFIX);
+        if (!typeDir.renameTo(migratedDir)) {
+            throw new IOException("Unable to rename " + typeDir + " to " + migratedDir + " after the migration");
+        }
+        logger.info("Migrated {} events of {} aggregates, the old events are kept in {}",
+                    new Object[]{copiedEvents, eventFiles.length, migratedDir});
+    }
+
+    private int copy(FileSystemEventStore source, String identifier) {
+        Long lastSequenceNumber = eventStore.getLastSequenceNumber(aggregateType, identifier);
+        List<DomainEventMessage> events = new ArrayList<DomainEventMessage>();
+        DomainEventStream stream = source.readEvents(aggregateType, identifier);
+        while (stream.hasNext()) {
+            DomainEventMessage event = stream.next();
+            if (lastSequenceNumber == null || event.getSequenceNumber() > lastSequenceNumber) {
+                events.add(event);
+            }
+        }
+        if (!events.isEmpty()) {
+            eventStore.appendEvents(aggregateType, new SimpleDomainEventStream(events));
+        }
+        return events.size();
+    }
+
+    /**
+     * Sets the type of the aggregates to migrate. Defaults to <code>Contact</code>.
+     *
+     * @param aggregateType the type identifier of the aggregates
+     */
+    public void setAggregateType(String aggregateType) {
+        this.aggregateType = aggregateType;
+    }
+
+    /**
+     * Hides the snapshots of the file system event store, so reading an aggregate returns all of its events.
+     */
+    private static class EventsOnlyFileResolver implements EventFileResolver {
+
+        private final EventFileResolver delegate;
+
+        private EventsOnlyFileResolver(EventFileResolver delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public OutputStream openEventFileForWriting(String type, Object aggregateIdentifier) throws IOException {
+            throw new UnsupportedOperationException("The migration does not write to the file system event store");
+        }
+
+        @Override
+        public OutputStream openSnapshotFileForWriting(String type, Object aggregateIdentifier) throws IOException {
+            throw new UnsupportedOperationException("The migration does not write to the file system event store");
+        }
+
+        @Override
+        public InputStream openEventFileForReading(String type, Object aggregateIdentifier) throws IOException {
+            return delegate.openEventFileForReading(type, aggregateIdentifier);
+        }
+
+        @Override
+        public InputStream openSnapshotFileForReading(String type, Object aggregateIdentifier) throws IOException {
+            throw new UnsupportedOperationException("Snapshots are not migrated");
+        }
+
+        @Override
+        public boolean eventFileExists(String type, Object aggregateIdentifier) throws IOException {
+            return delegate.eventFileExists(type, aggregateIdentifier);
+        }
+
+        @Override
+        public boolean snapshotFileExists(String type, Object aggregateIdentifier) throws IOException {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.eventstore.EventStoreException;
+import org.axonframework.eventstore.EventStreamNotFoundException;
+import org.axonframework.eventstore.SnapshotEventStore;
+import org.axonframework.repository.ConcurrencyException;
+import org.axonframework.serializer.Serializer;
+import org.axonframework.serializer.xml.XStreamSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Event store that appends all events to a log of memory-mapped segment files. When a segment is full, a new one
+ * is started. The store keeps an index in memory with the position of every event and of the latest snapshot of each
+ * aggregate, so loading an aggregate reads exactly the records it needs. Records are decoded directly from the mapped
+ * memory; only the payload is copied, to hand it to the serializer.</p>
+ * <p>The index is rebuilt at startup by scanning all segments. Each record contains a checksum, so a record that was
+ * only partially written before a crash is detected. Everything from the first invalid record in a segment onwards is
+ * discarded.</p>
+ * <p>Appends are serialized on a single lock; reads don't block each other or the appends. By default, the operating
+ * system decides when the changes are written to disk, which survives a crash of the application but not of the
+ * machine. Use {@link #setSyncOnAppend(boolean)} to force every append to disk.</p>
+ * <p>BEWARE: aggregate identifiers are stored as Strings. Events read from this store have the String representation
+ * of the original aggregate identifier.</p>
+ */
+public class MappedSegmentEventStore implements SnapshotEventStore, AggregateSizeProvider, AggregateVersionProvider,
+                                                InitializingBean, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedSegmentEventStore.class);
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{10})\\.log");
+
+    private final File baseDir;
+    private final List<Segment> segments = new CopyOnWriteArrayList<Segment>();
+    private final ConcurrentMap<String, AggregateIndex> index = new ConcurrentHashMap<String, AggregateIndex>();
+    private final Object writeLock = new Object();
+
+    private Serializer serializer = new XStreamSerializer();
+    private int segmentSize = 64 * 1024 * 1024;
+    private boolean syncOnAppend = false;
+
+    /**
+     * Creates an event store that keeps its segments in the given directory. The directory is created if it does not
+     * exist.
+     *
+     * @param baseDir the directory containing the segment files
+     */
+    public MappedSegmentEventStore(File baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    /**
+     * Opens all existing segments and rebuilds the index.
+     *
+     * @throws IOException when the segments cannot be opened
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        if (!baseDir.exists() && !baseDir.mkdirs()) {
+            throw new IOException("Unable to create the event store directory " + baseDir);
+        }
+        File[] files = baseDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return SEGMENT_NAME.matcher(name).matches();
+            }
+        });
+        Arrays.sort(files);
+        for (int i = 0; i < files.length; i++) {
+            Matcher matcher = SEGMENT_NAME.matcher(files[i].getName());
+            matcher.matches();
+            if (Long.parseLong(matcher.group(1)) != i) {
+                throw new IOException("Segment " + i + " is missing from the event store in " + baseDir);
+            }
+            final Segment segment = new Segment(files[i], i, segmentSize);
+            boolean cleared = segment.recover(new Segment.RecordVisitor() {
+                @Override
+                public void visit(int offset, ByteBuffer body) {
+                    register(EventRecord.readHeader(body), segment, offset, body.remaining());
+                }
+            });
+            if (cleared) {
+                logger.warn("Discarded invalid data at the end of segment {}, starting at offset {}",
+                            segment.getFile(), segment.getWritePosition());
+            }
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.add(createSegment(0, segmentSize));
+        }
+        logger.info("Opened {} segments containing {} aggregates", segments.size(), index.size());
+    }
+
+    /**
+     * Writes all changes to disk and closes the segments.
+     *
+     * @throws IOException when a segment cannot be closed
+     */
+    @Override
+    public void destroy() throws IOException {
+        synchronized (writeLock) {
+            for (Segment segment : segments) {
+                segment.close();
+            }
+        }
+    }
+
+    @Override
+    public void appendEvents(String type, DomainEventStream events) {
+        List<DomainEventMessage<?>> messages = new ArrayList<DomainEventMessage<?>>();
+        List<byte[]> records = new ArrayList<byte[]>();
+        while (events.hasNext()) {
+            DomainEventMessage<?> event = events.next();
+            messages.add(event);
+            records.add(EventRecord.encode(EventRecord.EVENT, type, event, serializer));
+        }
+        synchronized (writeLock) {
+            for (DomainEventMessage<?> event : messages) {
+                AggregateIndex aggregateIndex = index.get(key(type, event.getAggregateIdentifier().toString()));
+                if (aggregateIndex != null && event.getSequenceNumber() <= aggregateIndex.getLastSequenceNumber()) {
+                    throw new ConcurrencyException(String.format(
+                            "An event for aggregate [%s] with sequence number [%s] was already stored",
+                            event.getAggregateIdentifier(), event.getSequenceNumber()));
+                }
+            }
+            for (byte[] record : records) {
+                write(record);
+            }
+        }
+    }
+
+    @Override
+    public void appendSnapshotEvent(String type, DomainEventMessage snapshotEvent) {
+        byte[] record = EventRecord.encode(EventRecord.SNAPSHOT, type, snapshotEvent, serializer);
+        synchronized (writeLock) {
+            write(record);
+        }
+    }
+
+    @Override
+    public DomainEventStream readEvents(String type, Object identifier) {
+        AggregateIndex aggregateIndex = index.get(key(type, identifier.toString()));
+        long[] positions = aggregateIndex == null ? new long[0] : aggregateIndex.positionsToRead();
+        if (positions.length == 0) {
+            throw new EventStreamNotFoundException(type, identifier);
+        }
+        List<DomainEventMessage> events = new ArrayList<DomainEventMessage>(positions.length);
+        for (long position : positions) {
+            events.add(EventRecord.decode(readRecord(position), serializer));
+        }
+        return new SimpleDomainEventStream(events);
+    }
+
+    /**
+     * Visits the events of the given aggregate type in the order they were appended, starting at the given position.
+     * Snapshots are skipped. Only the header of a record is read during the visit; the event itself is deserialized
+     * when the visitor calls {@link StoredEvent#decode()}, which may be done by another thread. Events appended while
+     * visiting are not visited; visit again from the returned position to visit them.
+     *
+     * @param type         the type of aggregate to visit the events of
+     * @param fromPosition the position returned by a previous visit, or 0 to start at the first event
+     * @param visitor      the visitor to invoke for each event
+     * @return the position after the last visited event
+     */
+    public long visitEvents(final String type, long fromPosition, final EventVisitor visitor) {
+        long endSegment;
+        int endOffset;
+        synchronized (writeLock) {
+            Segment last = segments.get(segments.size() - 1);
+            endSegment = last.getNumber();
+            endOffset = last.getWritePosition();
+        }
+        for (long number = fromPosition >>> 32; number <= endSegment; number++) {
+            final long segmentNumber = number;
+            Segment segment = segments.get((int) number);
+            int from = number == fromPosition >>> 32 ? (int) fromPosition : 0;
+            int to = number == endSegment ? endOffset : segment.getWritePosition();
+            segment.visitRecords(from, to, new Segment.RecordVisitor() {
+                @Override
+                public void visit(int offset, ByteBuffer body) {
+                    EventRecord record = EventRecord.readHeader(body);
+                    if (record.getKind() == EventRecord.EVENT && record.getAggregateType().equals(type)) {
+                        long nextPosition = (segmentNumber << 32) | (offset + Segment.HEADER_SIZE + body.remaining());
+                        visitor.visit(new StoredEvent(record.getAggregateIdentifier(), nextPosition, body,
+                                                      serializer));
+                    }
+                }
+            });
+        }
+        return (endSegment << 32) | endOffset;
+    }
+
+    /**
+     * Runs the given task while no events can be appended. Appends wait until the task has completed. Use it to
+     * visit the last events and act on them before new events arrive.
+     *
+     * @param task the task to run
+     */
+    public void runWhileAppendsBlocked(Runnable task) {
+        synchronized (writeLock) {
+            task.run();
+        }
+    }
+
+    /**
+     * Returns the position of the given event of an aggregate. An event was visited by a visit that returned a
+     * position greater than the position of the event.
+     *
+     * @param type           the type of the aggregate
+     * @param identifier     the identifier of the aggregate
+     * @param sequenceNumber the sequence number of the event
+     * @return the position of the event, or -1 if the event is not in the store
+     */
+    public long getPosition(String type, Object identifier, long sequenceNumber) {
+        AggregateIndex aggregateIndex = index.get(key(type, identifier.toString()));
+        return aggregateIndex == null ? -1 : aggregateIndex.positionOf(sequenceNumber);
+    }
+
+    @Override
+    public Long getLastSequenceNumber(String type, Object identifier) {
+        AggregateIndex aggregateIndex = index.get(key(type, identifier.toString()));
+        return aggregateIndex == null ? null : aggregateIndex.getLastSequenceNumber();
+    }
+
+    @Override
+    public long getBytesSinceSnapshot(String type, Object identifier) {
+        AggregateIndex aggregateIndex = index.get(key(type, identifier.toString()));
+        return aggregateIndex == null ? 0 : aggregateIndex.getBytesSinceSnapshot();
+    }
+
+    @Override
+    public long getEventCountSinceSnapshot(String type, Object identifier) {
+        AggregateIndex aggregateIndex = index.get(key(type, identifier.toString()));
+        return aggregateIndex == null ? 0 : aggregateIndex.getEventCountSinceSnapshot();
+    }
+
+    /**
+     * Returns the body of the record at the given position. Must only be called for positions found in the index.
+     */
+    private ByteBuffer readRecord(long position) {
+        return segments.get((int) (position >>> 32)).read((int) position);
+    }
+
+    /**
+     * Writes the record to the current segment, starting a new segment if it is full. Must be called while holding
+     * the write lock.
+     */
+    private void write(byte[] record) {
+        Segment segment = segments.get(segments.size() - 1);
+        if (!segment.hasRoomFor(record.length)) {
+            segment.force();
+            segment = createSegment(segment.getNumber() + 1,
+                                    Math.max(segmentSize, record.length + Segment.HEADER_SIZE));
+            segments.add(segment);
+        }
+        int offset = segment.append(record);
+        if (syncOnAppend) {
+            segment.force();
+        }
+        register(EventRecord.readHeader(ByteBuffer.wrap(record)), segment, offset, record.length);
+    }
+
+    private void register(EventRecord record, Segment segment, int offset, int size) {
+        String key = key(record.getAggregateType(), record.getAggregateIdentifier());
+        AggregateIndex aggregateIndex = index.get(key);
+        if (aggregateIndex == null) {
+            aggregateIndex = new AggregateIndex();
+            AggregateIndex existing = index.putIfAbsent(key, aggregateIndex);
+            if (existing != null) {
+                aggregateIndex = existing;
+            }
+        }
+        long position = (segment.getNumber() << 32) | offset;
+        if (record.getKind() == EventRecord.SNAPSHOT) {
+            aggregateIndex.addSnapshot(position, record.getSequenceNumber());
+        } else {
+            aggregateIndex.addEvent(position, record.getSequenceNumber(), size);
+        }
+    }
+
+    private Segment createSegment(long number, int size) {
+        File file = new File(baseDir, String.format("segment-%010d.log", number));
+        try {
+            logger.debug("Starting event store segment {}", file);
+            return new Segment(file, number, size);
+        } catch (IOException e) {
+            throw new EventStoreException("Unable to create event store segment " + file, e);
+        }
+    }
+
+    private static String key(String type, String identifier) {
+        return type + '/' + identifier;
+    }
+
+    /**
+     * Sets the serializer for the payload and meta data of the events. Defaults to an XStream serializer.
+     *
+     * @param serializer the serializer to use
+     */
+    public void setSerializer(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * Sets the size of new segments in bytes. Defaults to 64MB. A record that does not fit in a segment of this size
+     * gets a segment of its own.
+     *
+     * @param segmentSize the size of new segments in bytes
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Sets whether every append should be forced to disk before it returns. Defaults to <code>false</code>.
+     *
+     * @param syncOnAppend whether to force each append to disk
+     */
+    public void setSyncOnAppend(boolean syncOnAppend) {
+        this.syncOnAppend = syncOnAppend;
+    }
+
+    /**
+     * Callback for the events visited by {@link MappedSegmentEventStore#visitEvents(String, long, EventVisitor)}.
+     */
+    public interface EventVisitor {
+
+        void visit(StoredEvent event);
+    }
+
+    /**
+     * An event in the store that has not been deserialized yet.
+     */
+    public static final class StoredEvent {
+
+        private final String aggregateIdentifier;
+        private final long nextPosition;
+        private final ByteBuffer body;
+        private final Serializer serializer;
+
+        private StoredEvent(String aggregateIdentifier, long nextPosition, ByteBuffer body, Serializer serializer) {
+            this.aggregateIdentifier = aggregateIdentifier;
+            this.nextPosition = nextPosition;
+            this.body = body;
+            this.serializer = serializer;
+        }
+
+        public String getAggregateIdentifier() {
+            return aggregateIdentifier;
+        }
+
+        /**
+         * Returns the position to visit from to continue after this event.
+         *
+         * @return the position after this event
+         */
+        public long getNextPosition() {
+            return nextPosition;
+        }
+
+        /**
+         * Deserializes the event. Every call deserializes it again.
+         *
+         * @return the event
+         */
+        public DomainEventMessage<?> decode() {
+            return EventRecord.decode(body, serializer);
+        }
+    }
+
+    /**
+     * The positions of the events and the latest snapshot of a single aggregate. Positions combine the number of the
+     * segment (high 32 bits) and the offset in that segment (low 32 bits).
+     */
+    private static class AggregateIndex {
+
+        private long[] positions = new long[4];
+        private long[] sequenceNumbers = new long[4];
+        private int count;
+        private long snapshotPosition = -1;
+        private long snapshotSequenceNumber = -1;
+        private long bytesSinceSnapshot;
+
+        public synchronized void addEvent(long position, long sequenceNumber, int size) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                sequenceNumbers = Arrays.copyOf(sequenceNumbers, count * 2);
+            }
+            positions[count] = position;
+            sequenceNumbers[count] = sequenceNumber;
+            count++;
+            bytesSinceSnapshot += size;
+        }
+
+        public synchronized void addSnapshot(long position, long sequenceNumber) {
+            snapshotPosition = position;
+            snapshotSequenceNumber = sequenceNumber;
+            bytesSinceSnapshot = 0;
+        }
+
+        public synchronized long getBytesSinceSnapshot() {
+            return bytesSinceSnapshot;
+        }
+
+        public synchronized long getEventCountSinceSnapshot() {
+            return getLastSequenceNumber() - snapshotSequenceNumber;
+        }
+
+        /**
+         * Returns the position of the event with the given sequence number, or -1. Recent events are found first.
+         */
+        public synchronized long positionOf(long sequenceNumber) {
+            for (int i = count - 1; i >= 0; i--) {
+                if (sequenceNumbers[i] == sequenceNumber) {
+                    return positions[i];
+                }
+            }
+            return -1;
+        }
+
+        public synchronized long getLastSequenceNumber() {
+            return count == 0 ? snapshotSequenceNumber : Math.max(snapshotSequenceNumber,
+                                                                  sequenceNumbers[count - 1]);
+        }
+
+        /**
+         * Returns the position of the latest snapshot, if any, followed by the positions of the events after it.
+         */
+        public synchronized long[] positionsToRead() {
+            int first = 0;
+            while (first < count && sequenceNumbers[first] <= snapshotSequenceNumber) {
+                first++;
+            }
+            int offset = snapshotPosition < 0 ? 0 : 1;
+            long[] result = new long[offset + count - first];
+            if (offset == 1) {
+                result[0] = snapshotPosition;
+            }
+            System.arraycopy(positions, first, result, offset, count - first);
+            return result;
+        }
+    }
+}
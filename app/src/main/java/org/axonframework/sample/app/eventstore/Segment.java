@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.eventstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * <p>A single log file of the {@link MappedSegmentEventStore}, mapped into memory as a whole. The segment contains a
+ * sequence of records, each consisting of the length of the body, the CRC32 checksum of the body and the body itself.
+ * A length of 0 marks the end of the records.</p>
+ * <p>Appending is not thread safe. Records may be read concurrently with appends, provided that the reader obtained
+ * the offset of the record in a thread safe way after it was appended.</p>
+ */
+class Segment {
+
+    static final int HEADER_SIZE = 8;
+
+    private final long number;
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+
+    /**
+     * Opens or creates the segment file and maps it into memory. If the file is smaller than the given size, it is
+     * extended.
+     *
+     * @param file   the segment file
+     * @param number the sequence number of the segment
+     * @param size   the minimum size of the segment in bytes
+     * @throws IOException when the file cannot be opened or mapped
+     */
+    Segment(File file, long number, int size) throws IOException {
+        this.file = file;
+        this.number = number;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        FileChannel channel = randomAccessFile.getChannel();
+        long mappedSize = Math.max(size, channel.size());
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+    }
+
+    /**
+     * Scans the segment for valid records, starting at the first record. The scan stops at the end marker or at the
+     * first record that is incomplete or has an invalid checksum; everything after that point is cleared. The write
+     * position is set to the end of the last valid record.
+     *
+     * @param visitor the visitor to invoke for each valid record
+     * @return <code>true</code> if invalid data was found and cleared
+     */
+    boolean recover(RecordVisitor visitor) {
+        int position = 0;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            byte[] body = new byte[length];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(position + HEADER_SIZE);
+            slice.get(body);
+            if (checksum(body) != buffer.getInt(position + 4)) {
+                break;
+            }
+            visitor.visit(position, read(position));
+            position += HEADER_SIZE + length;
+        }
+        writePosition = position;
+        boolean cleared = false;
+        for (int i = position; i < buffer.capacity() && i < position + HEADER_SIZE; i++) {
+            cleared |= buffer.get(i) != 0;
+        }
+        if (cleared) {
+            for (int i = position; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        return cleared;
+    }
+
+    /**
+     * Visits the records between the given offsets. The records must have been appended, and the offsets must have
+     * been obtained, in a thread safe way. The checksums are not verified again.
+     *
+     * @param from    the offset of the first record to visit
+     * @param to      the offset after the last record to visit
+     * @param visitor the visitor to invoke for each record
+     */
+    void visitRecords(int from, int to, RecordVisitor visitor) {
+        int position = from;
+        while (position < to) {
+            visitor.visit(position, read(position));
+            position += HEADER_SIZE + buffer.getInt(position);
+        }
+    }
+
+    /**
+     * Indicates whether a record with a body of the given length fits in this segment.
+     *
+     * @param length the length of the body
+     * @return <code>true</code> if the record fits
+     */
+    boolean hasRoomFor(int length) {
+        return writePosition + HEADER_SIZE + length <= buffer.capacity();
+    }
+
+    /**
+     * Appends a record with the given body. The length is written last, so a partially written record is recognized
+     * as the end of the segment.
+     *
+     * @param body the body of the record
+     * @return the offset of the record in this segment
+     */
+    int append(byte[] body) {
+        int offset = writePosition;
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset + HEADER_SIZE);
+        slice.put(body);
+        buffer.putInt(offset + 4, checksum(body));
+        buffer.putInt(offset, body.length);
+        writePosition = offset + HEADER_SIZE + body.length;
+        return offset;
+    }
+
+    /**
+     * Returns a read only view of the body of the record at the given offset. The view shares the memory of the
+     * segment, no data is copied.
+     *
+     * @param offset the offset of the record
+     * @return a buffer containing the body of the record
+     */
+    ByteBuffer read(int offset) {
+        ByteBuffer slice = buffer.asReadOnlyBuffer();
+        int length = slice.getInt(offset);
+        slice.limit(offset + HEADER_SIZE + length);
+        slice.position(offset + HEADER_SIZE);
+        return slice.slice();
+    }
+
+    /**
+     * Writes all changes to the underlying storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Writes all changes and closes the file.
+     *
+     * @throws IOException when the file cannot be closed
+     */
+    void close() throws IOException {
+        buffer.force();
+        randomAccessFile.close();
+    }
+
+    long getNumber() {
+        return number;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    private static int checksum(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Callback for the records found while recovering or visiting a segment.
+     */
+    interface RecordVisitor {
+
+        void visit(int offset, ByteBuffer body);
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.query;
+
+import org.axonframework.eventhandling.annotation.EventHandler;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressChangedEvent;
+import org.axonframework.sample.app.api.AddressRegisteredEvent;
+import org.axonframework.sample.app.api.AddressRemovedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>In-memory index of all addresses, used to search addresses by (part of) the contact name, city, zip code and
+ * street. Every value is split in trigrams, the substrings of three characters. A search term of at least three
+ * characters only needs to inspect the addresses that contain all trigrams of the term. Matching is case
+ * insensitive.</p>
+ * <p>When all terms are shorter than three characters, or empty, the index cannot narrow the search. The addresses
+ * are then inspected in result order, and the search stops when <code>maxResults</code> addresses are found or
+ * <code>scanLimit</code> addresses were inspected, whichever comes first. A search for rare short terms may therefore
+ * miss addresses; adding a longer term makes it complete.</p>
+ * <p>The index is loaded from the database at startup and kept up to date using the same events as the {@link
+ * AddressTableUpdater}.</p>
+ */
+public class AddressSearchIndex implements InitializingBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(AddressSearchIndex.class);
+    private static final int GRAM_LENGTH = 3;
+    private static final Comparator<IndexedAddress> RESULT_ORDER = new Comparator<IndexedAddress>() {
+        @Override
+        public int compare(IndexedAddress o1, IndexedAddress o2) {
+            int result = o1.values.get(Field.NAME).compareTo(o2.values.get(Field.NAME));
+            if (result == 0) {
+                result = o1.type.compareTo(o2.type);
+            }
+            return result != 0 ? result : o1.contactId.compareTo(o2.contactId);
+        }
+    };
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, String> contactNames = new HashMap<String, String>();
+    private final Map<String, Map<AddressType, IndexedAddress>> addressesByContact =
+            new HashMap<String, Map<AddressType, IndexedAddress>>();
+    private final Map<Field, Map<String, Set<IndexedAddress>>> postings =
+            new EnumMap<Field, Map<String, Set<IndexedAddress>>>(Field.class);
+    private final Set<IndexedAddress> allAddresses = new TreeSet<IndexedAddress>(RESULT_ORDER);
+    private int scanLimit = 10000;
+
+    private EntityManager entityManager;
+    private TransactionTemplate transactionTemplate;
+
+    public AddressSearchIndex() {
+        for (Field field : Field.values()) {
+            postings.put(field, new HashMap<String, Set<IndexedAddress>>());
+        }
+    }
+
+    /**
+     * Returns the addresses that match all provided terms, ordered by contact name and address type. A term matches
+     * when it is contained in the corresponding value. Terms that are null or empty are ignored.
+     *
+     * @param name            part of the name of the contact
+     * @param city            part of the city
+     * @param zipCode         part of the zip code
+     * @param streetAndNumber part of the street and number
+     * @param maxResults      the maximum number of addresses to return
+     * @return List containing the matching addresses
+     */
+    public List<AddressEntry> search(String name, String city, String zipCode, String streetAndNumber,
+                                     int maxResults) {
+        Map<Field, String> terms = new EnumMap<Field, String>(Field.class);
+        addTerm(terms, Field.NAME, name);
+        addTerm(terms, Field.CITY, city);
+        addTerm(terms, Field.ZIP_CODE, zipCode);
+        addTerm(terms, Field.STREET, streetAndNumber);
+
+        if (maxResults <= 0) {
+            return Collections.emptyList();
+        }
+        List<IndexedAddress> matches;
+        lock.readLock().lock();
+        try {
+            Collection<IndexedAddress> candidates = candidatesFor(terms);
+            if (candidates == allAddresses) {
+                matches = scan(terms, maxResults);
+            } else {
+                matches = select(candidates, terms, maxResults);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<AddressEntry> result = new ArrayList<AddressEntry>(matches.size());
+        for (IndexedAddress match : matches) {
+            result.add(match.toAddressEntry());
+        }
+        return result;
+    }
+
+    /**
+     * Inspects all addresses in result order, until enough matches are found or the scan limit is reached. Must be
+     * called while holding the lock.
+     */
+    private List<IndexedAddress> scan(Map<Field, String> terms, int maxResults) {
+        List<IndexedAddress> matches = new ArrayList<IndexedAddress>();
+        int scanned = 0;
+        for (IndexedAddress candidate : allAddresses) {
+            if (matches.size() >= maxResults || scanned++ >= scanLimit) {
+                break;
+            }
+            if (candidate.matches(terms)) {
+                matches.add(candidate);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the first matching candidates in result order, keeping only <code>maxResults</code> of them while
+     * inspecting the candidates. Must be called while holding the lock.
+     */
+    private List<IndexedAddress> select(Collection<IndexedAddress> candidates, Map<Field, String> terms,
+                                        int maxResults) {
+        PriorityQueue<IndexedAddress> best = new PriorityQueue<IndexedAddress>(
+                Math.min(maxResults, candidates.size()) + 1, Collections.reverseOrder(RESULT_ORDER));
+        for (IndexedAddress candidate : candidates) {
+            if (candidate.matches(terms)) {
+                best.add(candidate);
+                if (best.size() > maxResults) {
+                    best.poll();
+                }
+            }
+        }
+        List<IndexedAddress> matches = new ArrayList<IndexedAddress>(best);
+        Collections.sort(matches, RESULT_ORDER);
+        return matches;
+    }
+
+    /**
+     * Loads all contacts and addresses from the database.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @SuppressWarnings({"unchecked"})
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                List<ContactEntry> contacts = entityManager.createQuery("SELECT e FROM ContactEntry e")
+                                                           .getResultList();
+                List<AddressEntry> addresses = entityManager.createQuery("SELECT e FROM AddressEntry e")
+                                                            .getResultList();
+                lock.writeLock().lock();
+                try {
+                    for (ContactEntry contact : contacts) {
+                        contactNames.put(contact.getIdentifier(), contact.getName());
+                    }
+                    for (AddressEntry address : addresses) {
+                        add(new IndexedAddress(address.getIdentifier(), address.getName(), address.getAddressType(),
+                                               address.getStreetAndNumber(), address.getZipCode(),
+                                               address.getCity()));
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                logger.info("Indexed {} addresses of {} contacts", addresses.size(), contacts.size());
+            }
+        });
+    }
+
+    @EventHandler
+    public void handleContactCreatedEvent(ContactCreatedEvent event) {
+        lock.writeLock().lock();
+        try {
+            contactNames.put(event.getContactId(), event.getName());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventHandler
+    public void handleContactNameChangedEvent(ContactNameChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            contactNames.put(event.getContactId(), event.getNewName());
+            Map<AddressType, IndexedAddress> addresses = addressesByContact.get(event.getContactId());
+            if (addresses != null) {
+                for (IndexedAddress address : new ArrayList<IndexedAddress>(addresses.values())) {
+                    remove(address);
+                    add(address.withName(event.getNewName()));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventHandler
+    public void handleContactDeletedEvent(ContactDeletedEvent event) {
+        lock.writeLock().lock();
+        try {
+            contactNames.remove(event.getContactId());
+            Map<AddressType, IndexedAddress> addresses = addressesByContact.get(event.getContactId());
+            if (addresses != null) {
+                for (IndexedAddress address : new ArrayList<IndexedAddress>(addresses.values())) {
+                    remove(address);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventHandler
+    public void handleAddressAddedEvent(AddressAddedEvent event) {
+        register(event);
+    }
+
+    @EventHandler
+    public void handleAddressChangedEvent(AddressChangedEvent event) {
+        register(event);
+    }
+
+    @EventHandler
+    public void handleAddressRemovedEvent(AddressRemovedEvent event) {
+        lock.writeLock().lock();
+        try {
+            Map<AddressType, IndexedAddress> addresses = addressesByContact.get(event.getContactId());
+            if (addresses != null && addresses.containsKey(event.getType())) {
+                remove(addresses.get(event.getType()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void register(AddressRegisteredEvent event) {
+        lock.writeLock().lock();
+        try {
+            Map<AddressType, IndexedAddress> addresses = addressesByContact.get(event.getContactId());
+            if (addresses != null && addresses.containsKey(event.getType())) {
+                remove(addresses.get(event.getType()));
+            }
+            add(new IndexedAddress(event.getContactId(), contactNames.get(event.getContactId()), event.getType(),
+                                   event.getAddress().getStreetAndNumber(), event.getAddress().getZipCode(),
+                                   event.getAddress().getCity()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the addresses that may match the given terms. Returns all addresses only when no term is long enough to
+     * use the index. Must be called while holding the lock.
+     */
+    private Collection<IndexedAddress> candidatesFor(Map<Field, String> terms) {
+        Collection<IndexedAddress> smallest = allAddresses;
+        for (Map.Entry<Field, String> term : terms.entrySet()) {
+            for (String gram : grams(term.getValue())) {
+                Set<IndexedAddress> posting = postings.get(term.getKey()).get(gram);
+                if (posting == null) {
+                    return Collections.emptySet();
+                }
+                if (smallest == allAddresses || posting.size() < smallest.size()) {
+                    smallest = posting;
+                }
+            }
+        }
+        return smallest;
+    }
+
+    /**
+     * Adds the address to the index. Must be called while holding the write lock.
+     */
+    private void add(IndexedAddress address) {
+        Map<AddressType, IndexedAddress> addresses = addressesByContact.get(address.contactId);
+        if (addresses == null) {
+            addresses = new EnumMap<AddressType, IndexedAddress>(AddressType.class);
+            addressesByContact.put(address.contactId, addresses);
+        }
+        addresses.put(address.type, address);
+        allAddresses.add(address);
+        for (Map.Entry<Field, String> value : address.values.entrySet()) {
+            Map<String, Set<IndexedAddress>> fieldPostings = postings.get(value.getKey());
+            for (String gram : grams(value.getValue())) {
+                Set<IndexedAddress> posting = fieldPostings.get(gram);
+                if (posting == null) {
+                    posting = new HashSet<IndexedAddress>();
+                    fieldPostings.put(gram, posting);
+                }
+                posting.add(address);
+            }
+        }
+    }
+
+    /**
+     * Removes the address from the index. Must be called while holding the write lock.
+     */
+    private void remove(IndexedAddress address) {
+        Map<AddressType, IndexedAddress> addresses = addressesByContact.get(address.contactId);
+        addresses.remove(address.type);
+        if (addresses.isEmpty()) {
+            addressesByContact.remove(address.contactId);
+        }
+        allAddresses.remove(address);
+        for (Map.Entry<Field, String> value : address.values.entrySet()) {
+            Map<String, Set<IndexedAddress>> fieldPostings = postings.get(value.getKey());
+            for (String gram : grams(value.getValue())) {
+                Set<IndexedAddress> posting = fieldPostings.get(gram);
+                if (posting != null) {
+                    posting.remove(address);
+                    if (posting.isEmpty()) {
+                        fieldPostings.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Set<String> grams(String value) {
+        Set<String> grams = new HashSet<String>();
+        for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+            grams.add(value.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    private static void addTerm(Map<Field, String> terms, Field field, String term) {
+        String normalized = normalize(term);
+        if (normalized.length() > 0) {
+            terms.put(field, normalized);
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    @PersistenceContext
+    public void setEntityManager(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Sets the transaction manager used to load the index at startup.
+     *
+     * @param transactionManager the transaction manager for the database containing the address table
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Sets the maximum number of addresses inspected by a search that the index cannot narrow, because all its terms
+     * are shorter than three characters. Defaults to 10000.
+     *
+     * @param scanLimit the maximum number of addresses to inspect without index
+     */
+    public void setScanLimit(int scanLimit) {
+        this.scanLimit = scanLimit;
+    }
+
+    private static enum Field {
+        NAME, CITY, ZIP_CODE, STREET
+    }
+
+    private static class IndexedAddress {
+
+        private final String contactId;
+        private final String name;
+        private final AddressType type;
+        private final String streetAndNumber;
+        private final String zipCode;
+        private final String city;
+        private final Map<Field, String> values = new EnumMap<Field, String>(Field.class);
+
+        private IndexedAddress(String contactId, String name, AddressType type, String streetAndNumber,
+                               String zipCode, String city) {
+            this.contactId = contactId;
+            this.name = name;
+            this.type = type;
+            this.streetAndNumber = streetAndNumber;
+            this.zipCode = zipCode;
+            this.city = city;
+            values.put(Field.NAME, normalize(name));
+            values.put(Field.CITY, normalize(city));
+            values.put(Field.ZIP_CODE, normalize(zipCode));
+            values.put(Field.STREET, normalize(streetAndNumber));
+        }
+
+        public IndexedAddress withName(String newName) {
+            return new IndexedAddress(contactId, newName, type, streetAndNumber, zipCode, city);
+        }
+
+        public boolean matches(Map<Field, String> terms) {
+            for (Map.Entry<Field, String> term : terms.entrySet()) {
+                if (!values.get(term.getKey()).contains(term.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public AddressEntry toAddressEntry() {
+            AddressEntry entry = new AddressEntry();
+            entry.setIdentifier(contactId);
+            entry.setName(name);
+            entry.setAddressType(type);
+            entry.setStreetAndNumber(streetAndNumber);
+            entry.setZipCode(zipCode);
+            entry.setCity(city);
+            return entry;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.axonframework.sample.app.query;
 
+import org.axonframework.domain.DomainEventMessage;
 import org.axonframework.eventhandling.annotation.EventHandler;
 import org.axonframework.sample.app.api.AddressAddedEvent;
 import org.axonframework.sample.app.api.AddressChangedEvent;
@@ -28,6 +29,10 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
 /**
+ * Updates the contact and address tables from the events, and the {@link ContactDetailsView} through the optional
+ * {@link ContactDetailsViewUpdater}. Events that are already contained in rebuilt tables, as indicated by the optional
+ * {@link ProjectionFence}, are skipped.
+ *
  * @author Allard Buijze
  */
 public class AddressTableUpdater {
@@ -35,16 +40,30 @@ public class AddressTableUpdater {
     @PersistenceContext
     private EntityManager entityManager;
 
+    private CachingContactRepository contactCache;
+    private ProjectionFence projectionFence;
+    private ContactDetailsViewUpdater contactDetailsViewUpdater;
+
     @EventHandler
-    public void handleContactCreatedEvent(ContactCreatedEvent event) {
+    public void handleContactCreatedEvent(ContactCreatedEvent event, DomainEventMessage<?> message) {
+        if (isBehindFence(message)) {
+            return;
+        }
         ContactEntry entry = new ContactEntry();
         entry.setIdentifier(event.getContactId());
         entry.setName(event.getName());
         entityManager.persist(entry);
+        if (contactDetailsViewUpdater != null) {
+            contactDetailsViewUpdater.handleContactCreatedEvent(event);
+        }
+        evict(event.getContactId());
     }
 
     @EventHandler
-    public void handleContactNameChangedEvent(ContactNameChangedEvent event) {
+    public void handleContactNameChangedEvent(ContactNameChangedEvent event, DomainEventMessage<?> message) {
+        if (isBehindFence(message)) {
+            return;
+        }
         entityManager.createQuery("UPDATE ContactEntry e SET e.name = :newName WHERE e.identifier = :id")
                      .setParameter("newName", event.getNewName())
                      .setParameter("id", event.getContactId())
@@ -53,10 +72,17 @@ public class AddressTableUpdater {
                      .setParameter("newName", event.getNewName())
                      .setParameter("id", event.getContactId())
                      .executeUpdate();
+        if (contactDetailsViewUpdater != null) {
+            contactDetailsViewUpdater.handleContactNameChangedEvent(event);
+        }
+        evict(event.getContactId());
     }
 
     @EventHandler
-    public void handleContactDeletedEvent(ContactDeletedEvent event) {
+    public void handleContactDeletedEvent(ContactDeletedEvent event, DomainEventMessage<?> message) {
+        if (isBehindFence(message)) {
+            return;
+        }
         entityManager.createQuery("DELETE FROM AddressEntry e WHERE e.identifier = :id")
                      .setParameter("id", event.getContactId())
                      .executeUpdate();
@@ -64,18 +90,32 @@ public class AddressTableUpdater {
         entityManager.createQuery("DELETE FROM ContactEntry e WHERE e.identifier = :id")
                      .setParameter("id", event.getContactId())
                      .executeUpdate();
+        if (contactDetailsViewUpdater != null) {
+            contactDetailsViewUpdater.handleContactDeletedEvent(event);
+        }
+        evict(event.getContactId());
     }
 
     @EventHandler
-    public void handleAddressDeletedEvent(AddressRemovedEvent event) {
+    public void handleAddressDeletedEvent(AddressRemovedEvent event, DomainEventMessage<?> message) {
+        if (isBehindFence(message)) {
+            return;
+        }
         entityManager.createQuery("DELETE FROM AddressEntry e WHERE e.identifier = :id and e.addressType = :type")
                      .setParameter("id", event.getContactId())
                      .setParameter("type", event.getType())
                      .executeUpdate();
+        if (contactDetailsViewUpdater != null) {
+            contactDetailsViewUpdater.handleAddressRemovedEvent(event);
+        }
+        evict(event.getContactId());
     }
 
     @EventHandler
-    public void handleAddressChangedEvent(AddressChangedEvent event) {
+    public void handleAddressChangedEvent(AddressChangedEvent event, DomainEventMessage<?> message) {
+        if (isBehindFence(message)) {
+            return;
+        }
         AddressEntry entry = (AddressEntry) entityManager.createQuery(
                 "SELECT e from AddressEntry e WHERE e.identifier = :id and e.addressType = :type")
                                                          .setParameter("id", event.getContactId())
@@ -86,10 +126,17 @@ public class AddressTableUpdater {
         entry.setZipCode(event.getAddress().getZipCode());
         entry.setCity(event.getAddress().getCity());
         entityManager.persist(entry);
+        if (contactDetailsViewUpdater != null) {
+            contactDetailsViewUpdater.handleAddressRegisteredEvent(event);
+        }
+        evict(event.getContactId());
     }
 
     @EventHandler
-    public void handleAddressAddedEvent(AddressAddedEvent event) {
+    public void handleAddressAddedEvent(AddressAddedEvent event, DomainEventMessage<?> message) {
+        if (isBehindFence(message)) {
+            return;
+        }
         ContactEntry contact = (ContactEntry)
                 entityManager.createQuery("SELECT e from ContactEntry e WHERE e.identifier = :id")
                              .setParameter("id", event.getContactId())
@@ -102,5 +149,47 @@ public class AddressTableUpdater {
         entry.setCity(event.getAddress().getCity());
         entry.setZipCode(event.getAddress().getZipCode());
         entityManager.persist(entry);
+        if (contactDetailsViewUpdater != null) {
+            contactDetailsViewUpdater.handleAddressRegisteredEvent(event);
+        }
+        evict(event.getContactId());
+    }
+
+    private boolean isBehindFence(DomainEventMessage<?> message) {
+        return projectionFence != null && projectionFence.isBehind(message);
+    }
+
+    private void evict(String contactId) {
+        if (contactCache != null) {
+            contactCache.evictAfterCommit(contactId);
+        }
+    }
+
+    /**
+     * Sets the cache to remove the changed contacts from. Optional.
+     *
+     * @param contactCache the cache of contact details and addresses
+     */
+    public void setContactCache(CachingContactRepository contactCache) {
+        this.contactCache = contactCache;
+    }
+
+    /**
+     * Sets the fence of the events already contained in rebuilt tables. Optional.
+     *
+     * @param projectionFence the fence moved by the {@link ContactProjectionRebuilder}
+     */
+    public void setProjectionFence(ProjectionFence projectionFence) {
+        this.projectionFence = projectionFence;
+    }
+
+    /**
+     * Sets the updater of the contact details view, which is then updated in the same transaction as the tables.
+     * Optional.
+     *
+     * @param contactDetailsViewUpdater the updater of the {@link ContactDetailsView} rows
+     */
+    public void setContactDetailsViewUpdater(ContactDetailsViewUpdater contactDetailsViewUpdater) {
+        this.contactDetailsViewUpdater = contactDetailsViewUpdater;
     }
 }
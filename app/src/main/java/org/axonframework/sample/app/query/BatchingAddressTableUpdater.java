@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.query;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.eventhandling.annotation.EventHandler;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressChangedEvent;
+import org.axonframework.sample.app.api.AddressRemovedEvent;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Alternative to the {@link AddressTableUpdater} that buffers events and writes them in batches. A batch is written
+ * when it contains <code>batchSize</code> events, or when the oldest event in it has waited for
+ * <code>batchWindow</code> milliseconds. Events for the same contact are merged before they are written (see {@link
+ * ContactChangeSet}), and each batch is written in a single transaction using JDBC batch statements. The {@link
+ * ContactDetailsView} is written in the same transaction.</p>
+ * <p>Batches are written by a single thread, in the order the events were received. When more than
+ * <code>maxPendingEvents</code> events are waiting, the threads publishing events are blocked until the writer has
+ * caught up.</p>
+ * <p>Events that are already contained in rebuilt tables, as indicated by the optional {@link ProjectionFence}, are
+ * skipped when the batch is written.</p>
+ * <p>When a batch cannot be written, its events are written again one per transaction, like the asynchronous event bus
+ * does. An event that fails is retried <code>maxRetries</code> times, <code>retryInterval</code> milliseconds apart.
+ * When it still fails, it is skipped: the error is logged and the event is counted, see {@link
+ * #getSkippedEventCount()}. The other events of the batch are written, so one bad event, like a duplicate insert,
+ * does not take the whole batch with it. A skipped event leaves the tables behind; rebuild them with the {@link
+ * ContactProjectionRebuilder}.</p>
+ * <p>BEWARE: the tables are updated after the command has completed, so a query executed directly after a command may
+ * not see its effects yet.</p>
+ */
+public class BatchingAddressTableUpdater implements InitializingBean, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingAddressTableUpdater.class);
+
+    private final Object lock = new Object();
+    private List<DomainEventMessage<?>> pendingEvents = new ArrayList<DomainEventMessage<?>>();
+    private long oldestEventTime;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private String contactTable = "ContactEntry";
+    private String addressTable = "AddressEntry";
+    private String viewTable = "ContactDetailsView";
+    private int batchSize = 500;
+    private long batchWindow = 50;
+    private int maxPendingEvents = 10000;
+    private int maxRetries = 3;
+    private long retryInterval = 1000;
+    private CachingContactRepository contactCache;
+    private ProjectionFence projectionFence;
+
+    private volatile boolean running;
+    private Thread writer;
+    private final AtomicLong skippedEventCount = new AtomicLong();
+
+    @EventHandler
+    public void handleContactCreatedEvent(ContactCreatedEvent event, DomainEventMessage<?> message) {
+        add(message);
+    }
+
+    @EventHandler
+    public void handleContactNameChangedEvent(ContactNameChangedEvent event, DomainEventMessage<?> message) {
+        add(message);
+    }
+
+    @EventHandler
+    public void handleContactDeletedEvent(ContactDeletedEvent event, DomainEventMessage<?> message) {
+        add(message);
+    }
+
+    @EventHandler
+    public void handleAddressDeletedEvent(AddressRemovedEvent event, DomainEventMessage<?> message) {
+        add(message);
+    }
+
+    @EventHandler
+    public void handleAddressChangedEvent(AddressChangedEvent event, DomainEventMessage<?> message) {
+        add(message);
+    }
+
+    @EventHandler
+    public void handleAddressAddedEvent(AddressAddedEvent event, DomainEventMessage<?> message) {
+        add(message);
+    }
+
+    /**
+     * Starts the thread that writes the batches.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        running = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBatches();
+            }
+        }, "AddressTableWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Writes all pending events and stops the writer thread.
+     *
+     * @throws InterruptedException when interrupted while waiting for the writer thread to finish
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        if (writer != null) {
+            writer.join();
+        }
+    }
+
+    private void add(DomainEventMessage<?> event) {
+        synchronized (lock) {
+            while (running && pendingEvents.size() >= maxPendingEvents) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (pendingEvents.isEmpty()) {
+                oldestEventTime = System.currentTimeMillis();
+            }
+            pendingEvents.add(event);
+            if (pendingEvents.size() == batchSize) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void writeBatches() {
+        while (true) {
+            List<DomainEventMessage<?>> batch;
+            synchronized (lock) {
+                try {
+                    long waitTime = timeUntilNextBatch();
+                    while (running && waitTime > 0) {
+                        lock.wait(waitTime);
+                        waitTime = timeUntilNextBatch();
+                    }
+                } catch (InterruptedException e) {
+                    logger.warn("Address table writer was interrupted, {} events are not written",
+                                pendingEvents.size());
+                    return;
+                }
+                if (pendingEvents.isEmpty()) {
+                    return;
+                }
+                batch = pendingEvents;
+                pendingEvents = new ArrayList<DomainEventMessage<?>>(batchSize);
+                lock.notifyAll();
+            }
+            write(batch);
+        }
+    }
+
+    /**
+     * Returns the number of milliseconds to wait before the pending events should be written, or 0 if they should be
+     * written now. Must be called while holding the lock.
+     */
+    private long timeUntilNextBatch() {
+        if (pendingEvents.isEmpty()) {
+            return batchWindow;
+        }
+        if (pendingEvents.size() >= batchSize) {
+            return 0;
+        }
+        return Math.max(0, oldestEventTime + batchWindow - System.currentTimeMillis());
+    }
+
+    private void write(List<DomainEventMessage<?>> batch) {
+        ContactChangeSet changes = new ContactChangeSet();
+        for (DomainEventMessage<?> event : batch) {
+            if (projectionFence == null || !projectionFence.isBehind(event)) {
+                changes.apply(event.getPayload());
+            }
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        try {
+            write(changes);
+            logger.debug("Wrote a batch of {} events", batch.size());
+        } catch (RuntimeException e) {
+            logger.warn("Unable to write a batch of {} events to the address tables, writing them one by one",
+                        batch.size());
+            writeOneByOne(batch);
+        }
+    }
+
+    private void writeOneByOne(List<DomainEventMessage<?>> batch) {
+        for (DomainEventMessage<?> event : batch) {
+            if (projectionFence != null && projectionFence.isBehind(event)) {
+                continue;
+            }
+            ContactChangeSet changes = new ContactChangeSet();
+            changes.apply(event.getPayload());
+            if (!changes.isEmpty() && !writeEvent(changes, event)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the changes of a single event, retrying it when it fails. Skips the event when all attempts fail.
+     *
+     * @return <code>false</code> if the writer was interrupted, <code>true</code> otherwise
+     */
+    private boolean writeEvent(ContactChangeSet changes, DomainEventMessage<?> event) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                write(changes);
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt >= maxRetries) {
+                    skippedEventCount.incrementAndGet();
+                    logger.error("Skipped an event of type " + event.getPayloadType().getSimpleName()
+                                         + " for contact " + event.getAggregateIdentifier() + " with sequence number "
+                                         + event.getSequenceNumber() + ", the address tables are missing its "
+                                         + "changes and need to be rebuilt", e);
+                    return true;
+                }
+                logger.warn("Unable to write an event of type {} to the address tables, retrying",
+                            event.getPayloadType().getSimpleName());
+            }
+            try {
+                Thread.sleep(retryInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Address table writer was interrupted, an event of type {} for contact {} is not "
+                                     + "written", event.getPayloadType().getSimpleName(),
+                             event.getAggregateIdentifier());
+                return false;
+            }
+        }
+    }
+
+    private void write(final ContactChangeSet changes) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                changes.writeTo(jdbcTemplate, contactTable, addressTable);
+                if (viewTable != null) {
+                    changes.writeViewTo(jdbcTemplate, viewTable);
+                }
+                if (contactCache != null) {
+                    for (String contactId : changes.getContactIds()) {
+                        contactCache.evictAfterCommit(contactId);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the number of events that were skipped because they could not be written, even on their own.
+     *
+     * @return the number of skipped events
+     */
+    public long getSkippedEventCount() {
+        return skippedEventCount.get();
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Sets the transaction manager used to write the batches. It must manage transactions for the data source.
+     *
+     * @param transactionManager the transaction manager to write the batches with
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Sets the number of events after which a batch is written. Defaults to 500.
+     *
+     * @param batchSize the number of events that triggers a write
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the maximum number of milliseconds an event waits before it is written. Defaults to 50.
+     *
+     * @param batchWindow the maximum delay of an event in milliseconds
+     */
+    public void setBatchWindow(long batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    /**
+     * Sets the number of waiting events at which publishing threads are blocked. Defaults to 10000.
+     *
+     * @param maxPendingEvents the maximum number of events waiting to be written
+     */
+    public void setMaxPendingEvents(int maxPendingEvents) {
+        this.maxPendingEvents = maxPendingEvents;
+    }
+
+    /**
+     * Sets the number of times an event that cannot be written on its own is written again before it is skipped.
+     * Defaults to 3.
+     *
+     * @param maxRetries the number of retries of a failed event
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait before a failed event is written again. Defaults to 1000.
+     *
+     * @param retryInterval the time to wait after a failed write in milliseconds
+     */
+    public void setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Sets the name of the table containing the {@link ContactEntry} rows. Defaults to "ContactEntry".
+     *
+     * @param contactTable the name of the contact table
+     */
+    public void setContactTable(String contactTable) {
+        this.contactTable = contactTable;
+    }
+
+    /**
+     * Sets the name of the table containing the {@link AddressEntry} rows. Defaults to "AddressEntry".
+     *
+     * @param addressTable the name of the address table
+     */
+    public void setAddressTable(String addressTable) {
+        this.addressTable = addressTable;
+    }
+
+    /**
+     * Sets the name of the table containing the {@link ContactDetailsView} rows, or <code>null</code> to leave the view
+     * alone. Defaults to "ContactDetailsView".
+     *
+     * @param viewTable the name of the contact details table
+     */
+    public void setViewTable(String viewTable) {
+        this.viewTable = viewTable;
+    }
+
+    /**
+     * Sets the cache to remove the changed contacts from. Optional.
+     *
+     * @param contactCache the cache of contact details and addresses
+     */
+    public void setContactCache(CachingContactRepository contactCache) {
+        this.contactCache = contactCache;
+    }
+
+    /**
+     * Sets the fence of the events already contained in rebuilt tables. Optional.
+     *
+     * @param projectionFence the fence moved by the {@link ContactProjectionRebuilder}
+     */
+    public void setProjectionFence(ProjectionFence projectionFence) {
+        this.projectionFence = projectionFence;
+    }
+}
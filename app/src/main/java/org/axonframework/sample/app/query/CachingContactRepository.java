@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.sample.app.query;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+import org.springframework.jmx.support.JmxUtils;
+import org.springframework.jmx.support.ObjectNameManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Read-through cache in front of a {@link ContactRepository}. The details, the addresses and the {@link
+ * ContactDetailsView} of a contact are cached by contact identifier, all other queries go to the repository. The
+ * cache holds at most <code>maximumSize</code> contacts, the least recently used contact is dropped first. Cached data
+ * is used for at most <code>timeToLive</code> milliseconds.</p>
+ * <p>The updaters of the contact tables evict a contact when they change its rows, see {@link
+ * #evictAfterCommit(String)}. Data loaded while the same contact was evicted is returned, but not cached, so the cache
+ * never keeps data that was read before a change was committed. Evicting a contact does not affect loads of other
+ * contacts: each contact that is being loaded has its own eviction generation.</p>
+ * <p>BEWARE: cached entries are shared between callers and must not be modified. The lists of addresses cannot be
+ * modified. The addresses of a cached view are read before the view is cached, so readers do not parse them
+ * concurrently.</p>
+ * <p>Every web application registers its own cache with JMX. Without a configured <code>objectName</code>, the
+ * identity of the cache is added to the default name, so the caches of different applications do not hide each
+ * other.</p>
+ */
+@ManagedResource(description = "Cache of contact details, addresses and details views")
+public class CachingContactRepository implements ContactRepository, SelfNaming {
+
+    private static final String DEFAULT_OBJECT_NAME = "org.axonframework.sample:type=QueryCache,name=contact";
+
+    private final ContactRepository delegate;
+    private final Map<String, CachedContact> cache = new LinkedHashMap<String, CachedContact>(16, 0.75f, true) {
+        private static final long serialVersionUID = -5196452345227330962L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedContact> eldest) {
+            if (size() > maximumSize) {
+                evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private int maximumSize = 10000;
+    private long timeToLive = 60000;
+    private String objectName;
+    // guarded by cache, only holds the contacts that are being loaded
+    private final Map<String, PendingLoads> pendingLoads = new HashMap<String, PendingLoads>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a cache in front of the given repository.
+     *
+     * @param delegate the repository that executes the queries
+     */
+    public CachingContactRepository(ContactRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ContactEntry loadContactDetails(String contactId) {
+        PendingLoads pending;
+        long generation;
+        synchronized (cache) {
+            CachedContact cached = cache.get(contactId);
+            if (cached != null && cached.details != null && cached.detailsExpiry > System.currentTimeMillis()) {
+                hitCount.incrementAndGet();
+                return cached.details;
+            }
+            pending = startLoad(contactId);
+            generation = pending.generation;
+        }
+        ContactEntry details = null;
+        try {
+            long start = System.nanoTime();
+            details = delegate.loadContactDetails(contactId);
+            recordMiss(start);
+        } finally {
+            synchronized (cache) {
+                if (finishLoad(contactId, pending) == generation && details != null) {
+                    CachedContact cached = cachedContact(contactId);
+                    cached.details = details;
+                    cached.detailsExpiry = System.currentTimeMillis() + timeToLive;
+                }
+            }
+        }
+        return details;
+    }
+
+    @Override
+    public List<AddressEntry> findAllAddressesForContact(String contactId) {
+        PendingLoads pending;
+        long generation;
+        synchronized (cache) {
+            CachedContact cached = cache.get(contactId);
+            if (cached != null && cached.addresses != null && cached.addressesExpiry > System.currentTimeMillis()) {
+                hitCount.incrementAndGet();
+                return cached.addresses;
+            }
+            pending = startLoad(contactId);
+            generation = pending.generation;
+        }
+        List<AddressEntry> addresses = null;
+        try {
+            long start = System.nanoTime();
+            addresses = Collections.unmodifiableList(delegate.findAllAddressesForContact(contactId));
+            recordMiss(start);
+        } finally {
+            synchronized (cache) {
+                if (finishLoad(contactId, pending) == generation && addresses != null) {
+                    CachedContact cached = cachedContact(contactId);
+                    cached.addresses = addresses;
+                    cached.addressesExpiry = System.currentTimeMillis() + timeToLive;
+                }
+            }
+        }
+        return addresses;
+    }
+
+    @Override
+    public ContactDetailsView loadContactDetailsView(String contactId) {
+        PendingLoads pending;
+        long generation;
+        synchronized (cache) {
+            CachedContact cached = cache.get(contactId);
+            if (cached != null && cached.view != null && cached.viewExpiry > System.currentTimeMillis()) {
+                hitCount.incrementAndGet();
+                return cached.view;
+            }
+            pending = startLoad(contactId);
+            generation = pending.generation;
+        }
+        ContactDetailsView view = null;
+        try {
+            long start = System.nanoTime();
+            view = delegate.loadContactDetailsView(contactId);
+            view.getAddresses();
+            recordMiss(start);
+        } finally {
+            synchronized (cache) {
+                if (finishLoad(contactId, pending) == generation && view != null) {
+                    CachedContact cached = cachedContact(contactId);
+                    cached.view = view;
+                    cached.viewExpiry = System.currentTimeMillis() + timeToLive;
+                }
+            }
+        }
+        return view;
+    }
+
+    @Override
+    public List<ContactEntry> findAllContacts() {
+        return delegate.findAllContacts();
+    }
+
+    @Override
+    public ContactPage findContacts(String continuationToken, int pageSize) {
+        return delegate.findContacts(continuationToken, pageSize);
+    }
+
+    @Override
+    public int countContacts() {
+        return delegate.countContacts();
+    }
+
+    @Override
+    public List<ContactEntry> findContactsInRange(int firstResult, int maxResults) {
+        return delegate.findContactsInRange(firstResult, maxResults);
+    }
+
+    @Override
+    public List<String> findContactIdentifiers(String propertyId, String prefix, int maxResults) {
+        return delegate.findContactIdentifiers(propertyId, prefix, maxResults);
+    }
+
+    @Override
+    public ContactIdentifierPage findContactIdentifiers(String propertyId, String prefix, String continuationToken,
+                                                        int pageSize) {
+        return delegate.findContactIdentifiers(propertyId, prefix, continuationToken, pageSize);
+    }
+
+    @Override
+    public List<AddressEntry> findAllAddressesInCityForContact(String name, String city) {
+        return delegate.findAllAddressesInCityForContact(name, city);
+    }
+
+    @Override
+    public List<AddressEntry> searchAddresses(String name, String city, String zipCode, String streetAndNumber,
+                                              int maxResults) {
+        return delegate.searchAddresses(name, city, zipCode, streetAndNumber, maxResults);
+    }
+
+    /**
+     * Removes the contact from the cache.
+     *
+     * @param contactId the identifier of the contact to remove
+     */
+    public void evict(String contactId) {
+        synchronized (cache) {
+            cache.remove(contactId);
+            PendingLoads pending = pendingLoads.get(contactId);
+            if (pending != null) {
+                pending.generation++;
+            }
+        }
+    }
+
+    /**
+     * Removes the contact from the cache now, and again when the current transaction completes, so data read before
+     * the transaction committed its changes is not kept. Without a transaction, the contact is only removed now.
+     *
+     * @param contactId the identifier of the contact that is changed
+     */
+    public void evictAfterCommit(final String contactId) {
+        evict(contactId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(contactId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes all contacts from the cache.
+     */
+    @ManagedOperation(description = "Removes all contacts from the cache")
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            for (PendingLoads pending : pendingLoads.values()) {
+                pending.generation++;
+            }
+        }
+    }
+
+    private CachedContact cachedContact(String contactId) {
+        CachedContact cached = cache.get(contactId);
+        if (cached == null) {
+            cached = new CachedContact();
+            cache.put(contactId, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Registers a load of the contact. Must be called while holding the lock on the cache.
+     *
+     * @param contactId the identifier of the contact to load
+     * @return the loads in progress of the contact
+     */
+    private PendingLoads startLoad(String contactId) {
+        PendingLoads pending = pendingLoads.get(contactId);
+        if (pending == null) {
+            pending = new PendingLoads();
+            pendingLoads.put(contactId, pending);
+        }
+        pending.count++;
+        return pending;
+    }
+
+    /**
+     * Registers the end of a load of the contact. Must be called while holding the lock on the cache.
+     *
+     * @param contactId the identifier of the loaded contact
+     * @param pending   the loads in progress of the contact, as returned by {@link #startLoad(String)}
+     * @return the eviction generation of the contact, equal to the generation at the start of the load if the contact
+     *         was not evicted while loading
+     */
+    private long finishLoad(String contactId, PendingLoads pending) {
+        if (--pending.count == 0) {
+            pendingLoads.remove(contactId);
+        }
+        return pending.generation;
+    }
+
+    private void recordMiss(long start) {
+        missCount.incrementAndGet();
+        loadNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the configured object name, or the default name with the identity of this cache added.
+     *
+     * @return the name to register this cache with in JMX
+     * @throws MalformedObjectNameException if the configured object name is not valid
+     */
+    @Override
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName != null) {
+            return ObjectNameManager.getInstance(objectName);
+        }
+        return JmxUtils.appendIdentityToObjectName(ObjectNameManager.getInstance(DEFAULT_OBJECT_NAME), this);
+    }
+
+    @ManagedAttribute(description = "Number of reads served from the cache")
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of reads that queried the database")
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @ManagedAttribute(description = "Fraction of the reads served from the cache")
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @ManagedAttribute(description = "Average time in microseconds of a read that queried the database")
+    public long getAverageLoadTime() {
+        long misses = missCount.get();
+        return misses == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(loadNanos.get() / misses);
+    }
+
+    @ManagedAttribute(description = "Number of contacts evicted because the cache was full")
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of contacts in the cache")
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Sets the maximum number of contacts in the cache. Defaults to 10000.
+     *
+     * @param maximumSize the maximum number of cached contacts
+     */
+    public void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Sets the time in milliseconds cached data is used. Defaults to 60000.
+     *
+     * @param timeToLive the maximum age of cached data
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Sets the name to register this cache with in JMX. Defaults to
+     * <code>org.axonframework.sample:type=QueryCache,name=contact</code> with the identity of the cache added. Must be
+     * unique for all applications in the JVM.
+     *
+     * @param objectName the JMX object name of this cache
+     */
+    public void setObjectName(String objectName) {
+        this.objectName = objectName;
+    }
+
+    /**
+     * The cached details, addresses and view of a contact, each with the time until which it may be used.
+     */
+    private static class CachedContact {
+
+        private ContactEntry details;
+        private long detailsExpiry;
+        private List<AddressEntry> addresses;
+        private long addressesExpiry;
+        private ContactDetailsView view;
+        private long viewExpiry;
+    }
+
+    /**
+     * The number of loads in progress of a contact, and the number of times the contact was evicted during them.
+     */
+    private static class PendingLoads {
+
+        private int count;
+        private long generation;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.query;
+
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressChangedEvent;
+import org.axonframework.sample.app.api.AddressRegisteredEvent;
+import org.axonframework.sample.app.api.AddressRemovedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Collects the net effect of a series of contact events on the {@link ContactEntry} and {@link AddressEntry}
+ * tables and the {@link ContactDetailsView}. Events for the same contact are merged: a contact that is renamed twice
+ * results in a single update, an address that is added and removed again results in no statement at all.</p>
+ * <p>The changes are written using JDBC batch statements, one batch per kind of statement. The caller is responsible
+ * for the transaction. Events must be applied in the order they were published.</p>
+ */
+public class ContactChangeSet {
+
+    private static final int MAX_IN_PARAMETERS = 500;
+
+    private final Map<String, ContactChanges> contacts = new LinkedHashMap<String, ContactChanges>();
+
+    /**
+     * Applies the given event to this change set. Events that do not affect the contact tables are ignored.
+     *
+     * @param event the event to apply
+     */
+    public void apply(Object event) {
+        if (event instanceof ContactCreatedEvent) {
+            ContactCreatedEvent created = (ContactCreatedEvent) event;
+            ContactChanges changes = changesFor(created.getContactId());
+            changes.created = true;
+            changes.name = created.getName();
+        } else if (event instanceof ContactNameChangedEvent) {
+            ContactNameChangedEvent changed = (ContactNameChangedEvent) event;
+            changesFor(changed.getContactId()).name = changed.getNewName();
+        } else if (event instanceof ContactDeletedEvent) {
+            String contactId = ((ContactDeletedEvent) event).getContactId();
+            ContactChanges changes = changesFor(contactId);
+            if (changes.created) {
+                contacts.remove(contactId);
+            } else {
+                changes.deleted = true;
+                changes.name = null;
+                changes.addresses.clear();
+            }
+        } else if (event instanceof AddressRegisteredEvent) {
+            AddressRegisteredEvent registered = (AddressRegisteredEvent) event;
+            ContactChanges changes = changesFor(registered.getContactId());
+            AddressChange change = changes.addresses.get(registered.getType());
+            if (change == null) {
+                change = new AddressChange(event instanceof AddressChangedEvent);
+                changes.addresses.put(registered.getType(), change);
+            }
+            change.address = registered.getAddress();
+        } else if (event instanceof AddressRemovedEvent) {
+            AddressRemovedEvent removed = (AddressRemovedEvent) event;
+            ContactChanges changes = changesFor(removed.getContactId());
+            AddressChange change = changes.addresses.get(removed.getType());
+            if (change == null) {
+                changes.addresses.put(removed.getType(), new AddressChange(true));
+            } else if (!change.existedBefore) {
+                changes.addresses.remove(removed.getType());
+            } else {
+                change.address = null;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether this change set contains any changes.
+     *
+     * @return <code>true</code> if there is nothing to write
+     */
+    public boolean isEmpty() {
+        return contacts.isEmpty();
+    }
+
+    /**
+     * Returns the identifiers of the contacts whose rows are changed by this change set.
+     *
+     * @return the identifiers of the changed contacts
+     */
+    public Set<String> getContactIds() {
+        return Collections.unmodifiableSet(contacts.keySet());
+    }
+
+    /**
+     * Writes the changes to the given tables, which must have the same columns as the tables of {@link ContactEntry}
+     * and {@link AddressEntry}.
+     *
+     * @param jdbcTemplate the template to execute the statements with
+     * @param contactTable the name of the table containing the contacts
+     * @param addressTable the name of the table containing the addresses
+     */
+    public void writeTo(JdbcTemplate jdbcTemplate, String contactTable, String addressTable) {
+        List<Object[]> deletedContacts = new ArrayList<Object[]>();
+        List<Object[]> createdContacts = new ArrayList<Object[]>();
+        List<Object[]> renamedContacts = new ArrayList<Object[]>();
+        List<Object[]> removedAddresses = new ArrayList<Object[]>();
+        List<Object[]> changedAddresses = new ArrayList<Object[]>();
+        List<Object[]> addedAddresses = new ArrayList<Object[]>();
+        List<String> unknownNames = new ArrayList<String>();
+
+        for (ContactChanges changes : contacts.values()) {
+            if (changes.deleted) {
+                deletedContacts.add(new Object[]{changes.contactId});
+                continue;
+            }
+            if (changes.created) {
+                createdContacts.add(new Object[]{changes.contactId, changes.name});
+            } else if (changes.name != null) {
+                renamedContacts.add(new Object[]{changes.name, changes.contactId});
+            }
+            for (Map.Entry<AddressType, AddressChange> entry : changes.addresses.entrySet()) {
+                AddressChange change = entry.getValue();
+                String type = entry.getKey().name();
+                if (change.address == null) {
+                    removedAddresses.add(new Object[]{changes.contactId, type});
+                } else if (change.existedBefore) {
+                    changedAddresses.add(new Object[]{change.address.getStreetAndNumber(),
+                            change.address.getZipCode(), change.address.getCity(), changes.contactId, type});
+                } else {
+                    if (changes.name == null) {
+                        unknownNames.add(changes.contactId);
+                    }
+                    addedAddresses.add(new Object[]{changes.contactId, null, type, change.address.getStreetAndNumber(),
+                            change.address.getZipCode(), change.address.getCity()});
+                }
+            }
+        }
+
+        Map<String, String> storedNames = loadColumn(jdbcTemplate, contactTable, "name", unknownNames);
+        for (Object[] address : addedAddresses) {
+            String contactId = (String) address[0];
+            String name = contacts.get(contactId).name;
+            address[1] = name != null ? name : storedNames.get(contactId);
+        }
+
+        batchUpdate(jdbcTemplate, "DELETE FROM " + addressTable + " WHERE identifier = ?", deletedContacts);
+        batchUpdate(jdbcTemplate, "DELETE FROM " + contactTable + " WHERE identifier = ?", deletedContacts);
+        batchUpdate(jdbcTemplate, "INSERT INTO " + contactTable + " (identifier, name) VALUES (?, ?)", createdContacts);
+        batchUpdate(jdbcTemplate, "UPDATE " + contactTable + " SET name = ? WHERE identifier = ?", renamedContacts);
+        batchUpdate(jdbcTemplate, "UPDATE " + addressTable + " SET name = ? WHERE identifier = ?", renamedContacts);
+        batchUpdate(jdbcTemplate, "DELETE FROM " + addressTable + " WHERE identifier = ? AND addressType = ?",
+                    removedAddresses);
+        batchUpdate(jdbcTemplate, "UPDATE " + addressTable + " SET streetAndNumber = ?, zipCode = ?, city = ? "
+                + "WHERE identifier = ? AND addressType = ?", changedAddresses);
+        batchUpdate(jdbcTemplate, "INSERT INTO " + addressTable
+                + " (identifier, name, addressType, streetAndNumber, zipCode, city) VALUES (?, ?, ?, ?, ?, ?)",
+                    addedAddresses);
+    }
+
+    /**
+     * Writes the changes to the given table, which must have the same columns as the table of {@link
+     * ContactDetailsView}. Changes to contacts without a row in the table are ignored, like the {@link
+     * ContactDetailsViewUpdater} does.
+     *
+     * @param jdbcTemplate the template to execute the statements with
+     * @param viewTable    the name of the table containing the contact details
+     */
+    public void writeViewTo(JdbcTemplate jdbcTemplate, String viewTable) {
+        List<Object[]> deletedViews = new ArrayList<Object[]>();
+        List<Object[]> createdViews = new ArrayList<Object[]>();
+        List<Object[]> renamedViews = new ArrayList<Object[]>();
+        List<Object[]> changedDocuments = new ArrayList<Object[]>();
+        List<String> changedAddresses = new ArrayList<String>();
+
+        for (ContactChanges changes : contacts.values()) {
+            if (changes.deleted) {
+                deletedViews.add(new Object[]{changes.contactId});
+            } else if (changes.created) {
+                ContactDetailsView view = new ContactDetailsView();
+                changes.applyAddressesTo(view);
+                createdViews.add(new Object[]{changes.contactId, changes.name, view.getAddressDocument()});
+            } else {
+                if (changes.name != null) {
+                    renamedViews.add(new Object[]{changes.name, changes.contactId});
+                }
+                if (!changes.addresses.isEmpty()) {
+                    changedAddresses.add(changes.contactId);
+                }
+            }
+        }
+
+        Map<String, String> storedDocuments = loadColumn(jdbcTemplate, viewTable, "addresses", changedAddresses);
+        for (String contactId : changedAddresses) {
+            if (storedDocuments.containsKey(contactId)) {
+                ContactDetailsView view = new ContactDetailsView();
+                view.setAddressDocument(storedDocuments.get(contactId));
+                contacts.get(contactId).applyAddressesTo(view);
+                changedDocuments.add(new Object[]{view.getAddressDocument(), contactId});
+            }
+        }
+
+        batchUpdate(jdbcTemplate, "DELETE FROM " + viewTable + " WHERE identifier = ?", deletedViews);
+        batchUpdate(jdbcTemplate, "INSERT INTO " + viewTable + " (identifier, name, addresses) VALUES (?, ?, ?)",
+                    createdViews);
+        batchUpdate(jdbcTemplate, "UPDATE " + viewTable + " SET name = ? WHERE identifier = ?", renamedViews);
+        batchUpdate(jdbcTemplate, "UPDATE " + viewTable + " SET addresses = ? WHERE identifier = ?",
+                    changedDocuments);
+    }
+
+    private Map<String, String> loadColumn(JdbcTemplate jdbcTemplate, String table, String column,
+                                           List<String> contactIds) {
+        final Map<String, String> values = new HashMap<String, String>();
+        for (int start = 0; start < contactIds.size(); start += MAX_IN_PARAMETERS) {
+            List<String> chunk = contactIds.subList(start, Math.min(start + MAX_IN_PARAMETERS, contactIds.size()));
+            StringBuilder sql = new StringBuilder("SELECT identifier, ").append(column)
+                                                                       .append(" FROM ").append(table)
+                                                                       .append(" WHERE identifier IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+            jdbcTemplate.query(sql.toString(), chunk.toArray(), new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    values.put(rs.getString(1), rs.getString(2));
+                }
+            });
+        }
+        return values;
+    }
+
+    private void batchUpdate(JdbcTemplate jdbcTemplate, String sql, final List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Object[] row = rows.get(i);
+                for (int column = 0; column < row.length; column++) {
+                    ps.setObject(column + 1, row[column]);
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+    }
+
+    private ContactChanges changesFor(String contactId) {
+        ContactChanges changes = contacts.get(contactId);
+        if (changes == null) {
+            changes = new ContactChanges(contactId);
+            contacts.put(contactId, changes);
+        }
+        return changes;
+    }
+
+    private static class ContactChanges {
+
+        private final String contactId;
+        private final Map<AddressType, AddressChange> addresses = new LinkedHashMap<AddressType, AddressChange>();
+        private boolean created;
+        private boolean deleted;
+        private String name;
+
+        private ContactChanges(String contactId) {
+            this.contactId = contactId;
+        }
+
+        private void applyAddressesTo(ContactDetailsView view) {
+            for (Map.Entry<AddressType, AddressChange> entry : addresses.entrySet()) {
+                Address address = entry.getValue().address;
+                if (address == null) {
+                    view.removeAddress(entry.getKey());
+                } else {
+                    view.registerAddress(entry.getKey(), address);
+                }
+            }
+        }
+    }
+
+    private static class AddressChange {
+
+        private final boolean existedBefore;
+        private Address address;
+
+        private AddressChange(boolean existedBefore) {
+            this.existedBefore = existedBefore;
+        }
+    }
+}
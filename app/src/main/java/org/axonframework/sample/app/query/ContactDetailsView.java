@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.sample.app.query;
+
+import com.thoughtworks.xstream.XStream;
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressType;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Transient;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>A contact with all of its addresses in a single row, so the details of a contact are read with one primary key
+ * lookup. The addresses are stored as an xml document in the <code>addresses</code> column. The name of the contact
+ * is not repeated in the document, so a name change updates a single column.</p>
+ * <p>The view is part of the contact projection: it is maintained by the {@link ContactDetailsViewUpdater} along with
+ * the {@link AddressTableUpdater}, or written by the {@link ContactChangeSet} along with the contact and address
+ * tables.</p>
+ */
+@Entity
+public class ContactDetailsView {
+
+    private static final XStream xStream = new XStream();
+
+    static {
+        xStream.alias("addresses", ArrayList.class);
+        xStream.alias("address", AddressEntry.class);
+        xStream.omitField(AddressEntry.class, "db_identifier");
+        xStream.omitField(AddressEntry.class, "identifier");
+        xStream.omitField(AddressEntry.class, "name");
+    }
+
+    @Id
+    @Column(length = 36)
+    private String identifier;
+
+    @Basic
+    private String name;
+
+    @Lob
+    @Column(name = "addresses")
+    private String addressDocument;
+
+    @Transient
+    private List<AddressEntry> addresses;
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public void setIdentifier(String identifier) {
+        this.identifier = identifier;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the addresses of the contact, in the order they were registered. The entries carry the identifier and
+     * the name of the contact, like the rows of the {@link AddressEntry} table.
+     *
+     * @return an unmodifiable list with the addresses of the contact
+     */
+    public List<AddressEntry> getAddresses() {
+        return Collections.unmodifiableList(addresses());
+    }
+
+    /**
+     * Adds the address of the given type, or replaces it if the contact already has an address of that type.
+     *
+     * @param type    the type of the address
+     * @param address the street and number, zip code and city of the address
+     */
+    public void registerAddress(AddressType type, Address address) {
+        AddressEntry entry = new AddressEntry();
+        entry.setAddressType(type);
+        entry.setStreetAndNumber(address.getStreetAndNumber());
+        entry.setZipCode(address.getZipCode());
+        entry.setCity(address.getCity());
+        List<AddressEntry> current = addresses();
+        int index = indexOf(current, type);
+        if (index < 0) {
+            current.add(entry);
+        } else {
+            current.set(index, entry);
+        }
+        addressDocument = xStream.toXML(current);
+    }
+
+    /**
+     * Removes the address of the given type, if the contact has one.
+     *
+     * @param type the type of the address to remove
+     */
+    public void removeAddress(AddressType type) {
+        List<AddressEntry> current = addresses();
+        int index = indexOf(current, type);
+        if (index >= 0) {
+            current.remove(index);
+            addressDocument = xStream.toXML(current);
+        }
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private List<AddressEntry> addresses() {
+        if (addresses == null) {
+            addresses = addressDocument == null
+                    ? new ArrayList<AddressEntry>()
+                    : (List<AddressEntry>) xStream.fromXML(addressDocument);
+        }
+        for (AddressEntry entry : addresses) {
+            entry.setIdentifier(identifier);
+            entry.setName(name);
+        }
+        return addresses;
+    }
+
+    /**
+     * Creates a view from the rows of the contact and address tables, for a contact that has no row in the view.
+     *
+     * @param contact   the row of the contact
+     * @param addresses the rows of the addresses of the contact, in the order they were registered
+     * @return a new view of the contact, that is not stored yet
+     */
+    static ContactDetailsView createFrom(ContactEntry contact, List<AddressEntry> addresses) {
+        ContactDetailsView view = new ContactDetailsView();
+        view.setIdentifier(contact.getIdentifier());
+        view.setName(contact.getName());
+        for (AddressEntry address : addresses) {
+            view.registerAddress(address.getAddressType(), new Address(address.getStreetAndNumber(),
+                                                                       address.getZipCode(), address.getCity()));
+        }
+        return view;
+    }
+
+    String getAddressDocument() {
+        return addressDocument;
+    }
+
+    void setAddressDocument(String addressDocument) {
+        this.addressDocument = addressDocument;
+        this.addresses = null;
+    }
+
+    private static int indexOf(List<AddressEntry> addresses, AddressType type) {
+        for (int i = 0; i < addresses.size(); i++) {
+            if (addresses.get(i).getAddressType() == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.query;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Creates the missing {@link ContactDetailsView} rows at startup, from the contact and address tables. Contacts
+ * created before the view existed have no row, and the {@link ContactDetailsViewUpdater} ignores their events, so
+ * without this their details would never be read from the view.</p>
+ * <p>The rows are created in transactions of <code>batchSize</code> contacts. The backfill runs while the application
+ * context starts, before the sample data is generated and before commands are accepted. A failure is logged, the
+ * details of the contacts without a row are then read from the contact and address tables by the {@link
+ * ContactRepositoryImpl}.</p>
+ */
+public class ContactDetailsViewBackfill implements InitializingBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContactDetailsViewBackfill.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private TransactionTemplate transactionTemplate;
+    private int batchSize = 500;
+
+    /**
+     * Creates the rows of all contacts that have none.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        long start = System.currentTimeMillis();
+        int created = 0;
+        try {
+            int batch;
+            do {
+                batch = transactionTemplate.execute(new TransactionCallback<Integer>() {
+                    @Override
+                    public Integer doInTransaction(TransactionStatus status) {
+                        return createMissingViews();
+                    }
+                });
+                created += batch;
+            } while (batch == batchSize);
+        } catch (RuntimeException e) {
+            logger.error("Unable to create the missing contact details views after creating " + created
+                                 + ", the details of the other contacts are read from the contact tables", e);
+            return;
+        }
+        if (created > 0) {
+            logger.info("Created {} missing contact details views in {} ms",
+                        created, System.currentTimeMillis() - start);
+        }
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private int createMissingViews() {
+        List<ContactEntry> contacts = entityManager.createQuery(
+                "SELECT c FROM ContactEntry c WHERE NOT EXISTS "
+                        + "(SELECT v.identifier FROM ContactDetailsView v WHERE v.identifier = c.identifier)")
+                .setMaxResults(batchSize)
+                .getResultList();
+        if (contacts.isEmpty()) {
+            return 0;
+        }
+        List<String> contactIds = new ArrayList<String>(contacts.size());
+        Map<String, List<AddressEntry>> addresses = new HashMap<String, List<AddressEntry>>();
+        for (ContactEntry contact : contacts) {
+            contactIds.add(contact.getIdentifier());
+            addresses.put(contact.getIdentifier(), new ArrayList<AddressEntry>());
+        }
+        List<AddressEntry> addressEntries = entityManager.createQuery(
+                "SELECT a FROM AddressEntry a WHERE a.identifier IN (:ids) ORDER BY a.db_identifier")
+                .setParameter("ids", contactIds)
+                .getResultList();
+        for (AddressEntry address : addressEntries) {
+            addresses.get(address.getIdentifier()).add(address);
+        }
+        for (ContactEntry contact : contacts) {
+            entityManager.persist(ContactDetailsView.createFrom(contact, addresses.get(contact.getIdentifier())));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return contacts.size();
+    }
+
+    /**
+     * Sets the transaction manager used to create the rows.
+     *
+     * @param transactionManager the transaction manager of the query database
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Sets the number of rows created in a single transaction. Defaults to 500.
+     *
+     * @param batchSize the number of contacts per transaction
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+}
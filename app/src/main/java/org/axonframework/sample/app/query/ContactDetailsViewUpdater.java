@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.sample.app.query;
+
+import org.axonframework.sample.app.api.AddressRegisteredEvent;
+import org.axonframework.sample.app.api.AddressRemovedEvent;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * <p>Maintains the {@link ContactDetailsView} rows. Every event reads and writes the row of its contact by primary
+ * key. Events for contacts without a row, for instance contacts created before the view existed, are ignored.</p>
+ * <p>The updater is not an event listener itself. It is called by the {@link AddressTableUpdater}, so the view is
+ * updated in the same transaction as the contact and address tables, and is rebuilt and tracked along with them.</p>
+ */
+public class ContactDetailsViewUpdater {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Creates the row of the contact. Does nothing if the row already exists, so an event that is delivered again
+     * does not fail.
+     *
+     * @param event the event describing the new contact
+     */
+    public void handleContactCreatedEvent(ContactCreatedEvent event) {
+        if (entityManager.find(ContactDetailsView.class, event.getContactId()) != null) {
+            return;
+        }
+        ContactDetailsView view = new ContactDetailsView();
+        view.setIdentifier(event.getContactId());
+        view.setName(event.getName());
+        entityManager.persist(view);
+    }
+
+    public void handleContactNameChangedEvent(ContactNameChangedEvent event) {
+        ContactDetailsView view = entityManager.find(ContactDetailsView.class, event.getContactId());
+        if (view != null) {
+            view.setName(event.getNewName());
+        }
+    }
+
+    public void handleContactDeletedEvent(ContactDeletedEvent event) {
+        ContactDetailsView view = entityManager.find(ContactDetailsView.class, event.getContactId());
+        if (view != null) {
+            entityManager.remove(view);
+        }
+    }
+
+    public void handleAddressRegisteredEvent(AddressRegisteredEvent event) {
+        ContactDetailsView view = entityManager.find(ContactDetailsView.class, event.getContactId());
+        if (view != null) {
+            view.registerAddress(event.getType(), event.getAddress());
+        }
+    }
+
+    public void handleAddressRemovedEvent(AddressRemovedEvent event) {
+        ContactDetailsView view = entityManager.find(ContactDetailsView.class, event.getContactId());
+        if (view != null) {
+            view.removeAddress(event.getType());
+        }
+    }
+}
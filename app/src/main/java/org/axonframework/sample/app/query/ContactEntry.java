@@ -16,6 +16,9 @@
 
 package org.axonframework.sample.app.query;
 
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.Table;
+
 import javax.persistence.Basic;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -27,6 +30,9 @@ import javax.validation.constraints.Size;
  * @author Allard Buijze
  */
 @Entity
+@Table(appliesTo = "ContactEntry",
+       indexes = {@Index(name = "contact_name_identifier", columnNames = {"name", "identifier"}),
+               @Index(name = "contact_identifier", columnNames = {"identifier"})})
 public class ContactEntry {
 
     @Id
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.query;
+
+import java.util.List;
+
+/**
+ * <p>A page of contacts, ordered by name and identifier. The continuation token can be passed to {@link
+ * ContactRepository#findContacts(String, int)} to obtain the next page. It is <code>null</code> for the last page.</p>
+ */
+public class ContactPage {
+
+    private final List<ContactEntry> contacts;
+    private final String continuationToken;
+
+    public ContactPage(List<ContactEntry> contacts, String continuationToken) {
+        this.contacts = contacts;
+        this.continuationToken = continuationToken;
+    }
+
+    public List<ContactEntry> getContacts() {
+        return contacts;
+    }
+
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public boolean isLastPage() {
+        return continuationToken == null;
+    }
+}
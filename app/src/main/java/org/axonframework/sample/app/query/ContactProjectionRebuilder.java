@@ -0,0 +1,645 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.sample.app.query;
+
+import org.axonframework.sample.app.eventstore.MappedSegmentEventStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+import org.springframework.jmx.support.JmxUtils;
+import org.springframework.jmx.support.ObjectNameManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Rebuilds the {@link ContactEntry} and {@link AddressEntry} tables and the {@link ContactDetailsView} from the
+ * events in the event store, for when the tables are lost or their structure has changed. Set the
+ * <code>viewTable</code> to <code>null</code> to rebuild the tables only. The events are applied to shadow tables,
+ * which replace the live tables once the rebuild has caught up with the event store. The live tables remain available
+ * while the rebuild runs.</p>
+ * <p>The events are partitioned by contact identifier over <code>threadCount</code> threads. Each thread deserializes
+ * the events of its contacts, merges them in a {@link ContactChangeSet} and writes them to the shadow tables in batches
+ * of <code>batchSize</code> events, so the events of a contact are applied by a single thread in the order they were
+ * stored.</p>
+ * <p>Events appended during a pass over the event store are applied in a next pass, until a pass finds fewer than
+ * <code>catchUpThreshold</code> events. Only the last pass, over those few events, runs while the event store blocks
+ * appends. The shadow tables then replace the live tables by renaming them, which takes the same short time whatever
+ * the number of contacts. The old tables are dropped after appends have resumed.</p>
+ * <p>With <code>multiTableRename</code>, all tables are renamed by a single <code>RENAME TABLE</code> statement, which
+ * MySQL executes atomically. Databases without that statement, like HSQLDB, rename the tables one by one. If one of
+ * those renames fails, the tables renamed so far are renamed back, so the live tables stay in place. In both cases
+ * the fence and the token are moved back when the tables could not be replaced, and a token created by the rebuild is
+ * removed.</p>
+ * <p>Events appended before the end of the last pass may still reach the live table updaters after the tables have
+ * been replaced. The {@link ProjectionFence} is moved to the end of the rebuild before the tables are renamed, so the
+ * updaters skip those events instead of applying them twice.</p>
+ * <p>BEWARE: without <code>multiTableRename</code>, queries executed while the tables are renamed one by one may fail.
+ * Events that reach the live updaters during a swap that fails are skipped, as they are behind the fence at that
+ * time; rebuild again in that case. The shadow tables are created with the <code>identityColumnDefinition</code>,
+ * which must match the database.</p>
+ * <p>Every web application registers its own rebuilder with JMX. Without a configured <code>objectName</code>, the
+ * identity of the rebuilder is added to the default name, so the rebuilders of different applications do not hide each
+ * other.</p>
+ */
+@ManagedResource(description = "Rebuilds the contact and address tables from the event store")
+public class ContactProjectionRebuilder implements SelfNaming {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContactProjectionRebuilder.class);
+    private static final String DEFAULT_OBJECT_NAME = "org.axonframework.sample:type=ProjectionRebuilder,name=contact";
+    private static final String OLD_SUFFIX = "_old";
+    private static final AtomicLong rebuildCount = new AtomicLong();
+
+    private final MappedSegmentEventStore eventStore;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    private String aggregateType = "Contact";
+    private String contactTable = "ContactEntry";
+    private String addressTable = "AddressEntry";
+    private String shadowContactTable = "ContactEntry_rebuild";
+    private String shadowAddressTable = "AddressEntry_rebuild";
+    private String viewTable = "ContactDetailsView";
+    private String shadowViewTable = "ContactDetailsView_rebuild";
+    private String documentColumnType = "LONGVARCHAR";
+    private String identityColumnDefinition = "BIGINT GENERATED BY DEFAULT AS IDENTITY (START WITH 1) PRIMARY KEY";
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 1000;
+    private int queueCapacity = 10000;
+    private int catchUpThreshold = 1000;
+    private String trackingProjectionName;
+    private String tokenTable = "ProjectionToken";
+    private boolean multiTableRename;
+    private CachingContactRepository contactCache;
+    private ProjectionFence projectionFence;
+    private String objectName;
+
+    private final AtomicLong eventCount = new AtomicLong();
+    private volatile boolean running;
+    private volatile RuntimeException failure;
+
+    /**
+     * Creates a rebuilder that reads the events from the given event store.
+     *
+     * @param eventStore the event store containing the contact events
+     */
+    public ContactProjectionRebuilder(MappedSegmentEventStore eventStore) {
+        this.eventStore = eventStore;
+    }
+
+    /**
+     * Rebuilds the tables. Returns when the live tables have been replaced.
+     *
+     * @throws InterruptedException when interrupted while rebuilding. The live tables are not changed.
+     */
+    @ManagedOperation(description = "Rebuilds the contact and address tables from the event store")
+    public synchronized void rebuild() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        running = true;
+        failure = null;
+        eventCount.set(0);
+        createShadowTables();
+        final Partition[] partitions = new Partition[threadCount];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition("ProjectionRebuilder-" + i);
+        }
+        try {
+            long position = 0;
+            long visitedEvents;
+            do {
+                long before = eventCount.get();
+                position = pass(position, partitions);
+                visitedEvents = eventCount.get() - before;
+                logger.info("Applied {} events to the shadow tables, {} in total", visitedEvents, eventCount.get());
+            } while (visitedEvents >= catchUpThreshold);
+            final long lastPosition = position;
+            eventStore.runWhileAppendsBlocked(new Runnable() {
+                @Override
+                public void run() {
+                    long endPosition;
+                    try {
+                        endPosition = pass(lastPosition, partitions);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while applying the last events", e);
+                    }
+                    replaceLiveTables(endPosition);
+                }
+            });
+        } finally {
+            for (Partition partition : partitions) {
+                partition.thread.interrupt();
+            }
+            running = false;
+        }
+        dropTables(contactTable + OLD_SUFFIX, addressTable + OLD_SUFFIX, viewTable + OLD_SUFFIX);
+        if (contactCache != null) {
+            contactCache.clear();
+        }
+        logger.info("Rebuilt the contact tables from {} events in {} ms",
+                    eventCount.get(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Applies the events after the given position to the shadow tables and waits until they have been written.
+     */
+    private long pass(long position, final Partition[] partitions) throws InterruptedException {
+        MappedSegmentEventStore.EventVisitor router = new MappedSegmentEventStore.EventVisitor() {
+            @Override
+            public void visit(MappedSegmentEventStore.StoredEvent event) {
+                eventCount.incrementAndGet();
+                int hash = event.getAggregateIdentifier().hashCode();
+                partitions[(hash & Integer.MAX_VALUE) % partitions.length].add(event);
+            }
+        };
+        long nextPosition = eventStore.visitEvents(aggregateType, position, router);
+        CountDownLatch written = new CountDownLatch(partitions.length);
+        for (Partition partition : partitions) {
+            partition.add(written);
+        }
+        while (!written.await(1, TimeUnit.SECONDS)) {
+            for (Partition partition : partitions) {
+                partition.checkAlive();
+            }
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Unable to rebuild the contact tables", failure);
+        }
+        return nextPosition;
+    }
+
+    /**
+     * Replaces the live tables by the shadow tables. Must be called while appends are blocked, so no event after the
+     * given position reaches the live updaters before the tables are renamed.
+     */
+    private void replaceLiveTables(long endPosition) {
+        List<Long> tokenPositions = new ArrayList<Long>();
+        boolean tokenCreated = false;
+        if (projectionFence != null) {
+            projectionFence.moveTo(eventStore, aggregateType, endPosition);
+        }
+        if (trackingProjectionName != null) {
+            tokenPositions = jdbcTemplate.queryForList(
+                    "SELECT eventPosition FROM " + tokenTable + " WHERE projectionName = ?", Long.class,
+                    trackingProjectionName);
+            if (tokenPositions.isEmpty()) {
+                jdbcTemplate.update("INSERT INTO " + tokenTable + " (projectionName, eventPosition) VALUES (?, ?)",
+                                    trackingProjectionName, endPosition);
+                tokenCreated = true;
+            } else {
+                jdbcTemplate.update("UPDATE " + tokenTable + " SET eventPosition = ? WHERE projectionName = ?",
+                                    endPosition, trackingProjectionName);
+            }
+        }
+        try {
+            swapTables();
+        } catch (RuntimeException e) {
+            if (projectionFence != null) {
+                projectionFence.moveBack();
+            }
+            for (Long tokenPosition : tokenPositions) {
+                jdbcTemplate.update("UPDATE " + tokenTable + " SET eventPosition = ? WHERE projectionName = ?",
+                                    tokenPosition, trackingProjectionName);
+            }
+            if (tokenCreated) {
+                jdbcTemplate.update("DELETE FROM " + tokenTable + " WHERE projectionName = ?", trackingProjectionName);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Renames the live tables to their old names and the shadow tables to the live names. When the tables are renamed
+     * one by one and a rename fails, the completed renames are undone in reverse order.
+     */
+    private void swapTables() {
+        List<String[]> renames = new ArrayList<String[]>();
+        renames.add(new String[]{addressTable, addressTable + OLD_SUFFIX});
+        renames.add(new String[]{shadowAddressTable, addressTable});
+        renames.add(new String[]{contactTable, contactTable + OLD_SUFFIX});
+        renames.add(new String[]{shadowContactTable, contactTable});
+        if (viewTable != null) {
+            renames.add(new String[]{viewTable, viewTable + OLD_SUFFIX});
+            renames.add(new String[]{shadowViewTable, viewTable});
+        }
+        if (multiTableRename) {
+            StringBuilder sql = new StringBuilder("RENAME TABLE ");
+            for (int i = 0; i < renames.size(); i++) {
+                sql.append(i == 0 ? "" : ", ").append(renames.get(i)[0]).append(" TO ").append(renames.get(i)[1]);
+            }
+            jdbcTemplate.execute(sql.toString());
+            return;
+        }
+        int completed = 0;
+        try {
+            for (String[] rename : renames) {
+                rename(rename[0], rename[1]);
+                completed++;
+            }
+        } catch (RuntimeException e) {
+            logger.error("Unable to replace the live tables, renaming the {} renamed tables back", completed);
+            for (int i = completed - 1; i >= 0; i--) {
+                String[] rename = renames.get(i);
+                try {
+                    rename(rename[1], rename[0]);
+                } catch (RuntimeException undoFailure) {
+                    logger.error("Unable to rename table " + rename[1] + " back to " + rename[0] + ". Undo the "
+                                         + "remaining " + (i + 1) + " renames by hand, in reverse order: "
+                                         + describe(renames.subList(0, i + 1)), undoFailure);
+                    break;
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void rename(String table, String newName) {
+        jdbcTemplate.execute("ALTER TABLE " + table + " RENAME TO " + newName);
+    }
+
+    private static String describe(List<String[]> renames) {
+        StringBuilder description = new StringBuilder();
+        for (String[] rename : renames) {
+            description.append(description.length() == 0 ? "" : ", ").append(rename[0]).append(" to ")
+                       .append(rename[1]);
+        }
+        return description.toString();
+    }
+
+    /**
+     * Creates the shadow tables with the columns and indexes of {@link ContactEntry}, {@link AddressEntry} and {@link
+     * ContactDetailsView}, as they replace the live tables. The names of the indexes get a suffix unique to this
+     * rebuild, as the indexes keep their names when the tables are renamed.
+     */
+    private void createShadowTables() {
+        dropTables(shadowContactTable, shadowAddressTable, shadowViewTable,
+                   contactTable + OLD_SUFFIX, addressTable + OLD_SUFFIX, viewTable + OLD_SUFFIX);
+        String suffix = Long.toString(System.currentTimeMillis(), 36) + "_" + rebuildCount.incrementAndGet();
+        jdbcTemplate.execute("CREATE TABLE " + shadowContactTable + " (db_identifier " + identityColumnDefinition
+                                     + ", identifier VARCHAR(255), name VARCHAR(255))");
+        jdbcTemplate.execute("CREATE INDEX " + contactTable + "_identifier_" + suffix + " ON "
+                                     + shadowContactTable + " (identifier)");
+        jdbcTemplate.execute("CREATE INDEX " + contactTable + "_name_identifier_" + suffix + " ON "
+                                     + shadowContactTable + " (name, identifier)");
+        jdbcTemplate.execute("CREATE TABLE " + shadowAddressTable + " (db_identifier " + identityColumnDefinition
+                                     + ", identifier VARCHAR(36), name VARCHAR(255), addressType VARCHAR(255), "
+                                     + "streetAndNumber VARCHAR(255), zipCode VARCHAR(255), city VARCHAR(255))");
+        jdbcTemplate.execute("CREATE INDEX " + addressTable + "_identifier_" + suffix + " ON "
+                                     + shadowAddressTable + " (identifier)");
+        if (viewTable != null) {
+            jdbcTemplate.execute("CREATE TABLE " + shadowViewTable + " (identifier VARCHAR(36) PRIMARY KEY, "
+                                         + "name VARCHAR(255), addresses " + documentColumnType + ")");
+        }
+    }
+
+    private void dropTables(String... tables) {
+        for (String table : tables) {
+            try {
+                jdbcTemplate.execute("DROP TABLE " + table);
+            } catch (DataAccessException e) {
+                logger.debug("Table {} did not exist", table);
+            }
+        }
+    }
+
+    /**
+     * Returns the configured object name, or the default name with the identity of this rebuilder added.
+     *
+     * @return the name to register this rebuilder with in JMX
+     * @throws MalformedObjectNameException if the configured object name is not valid
+     */
+    @Override
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName != null) {
+            return ObjectNameManager.getInstance(objectName);
+        }
+        return JmxUtils.appendIdentityToObjectName(ObjectNameManager.getInstance(DEFAULT_OBJECT_NAME), this);
+    }
+
+    @ManagedAttribute(description = "Indicates whether a rebuild is running")
+    public boolean isRunning() {
+        return running;
+    }
+
+    @ManagedAttribute(description = "Number of events applied by the current or last rebuild")
+    public long getEventCount() {
+        return eventCount.get();
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Sets the transaction manager used to write the tables. It must manage transactions for the data source.
+     *
+     * @param transactionManager the transaction manager to write the tables with
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Sets the type of aggregate the contact events belong to. Defaults to "Contact".
+     *
+     * @param aggregateType the aggregate type of the contact events
+     */
+    public void setAggregateType(String aggregateType) {
+        this.aggregateType = aggregateType;
+    }
+
+    /**
+     * Sets the name of the table containing the {@link ContactEntry} rows. Defaults to "ContactEntry".
+     *
+     * @param contactTable the name of the contact table
+     */
+    public void setContactTable(String contactTable) {
+        this.contactTable = contactTable;
+    }
+
+    /**
+     * Sets the name of the table containing the {@link AddressEntry} rows. Defaults to "AddressEntry".
+     *
+     * @param addressTable the name of the address table
+     */
+    public void setAddressTable(String addressTable) {
+        this.addressTable = addressTable;
+    }
+
+    /**
+     * Sets the name of the shadow table for the contacts. It is created and dropped by the rebuild. Defaults to
+     * "ContactEntry_rebuild".
+     *
+     * @param shadowContactTable the name of the shadow contact table
+     */
+    public void setShadowContactTable(String shadowContactTable) {
+        this.shadowContactTable = shadowContactTable;
+    }
+
+    /**
+     * Sets the name of the shadow table for the addresses. It is created and dropped by the rebuild. Defaults to
+     * "AddressEntry_rebuild".
+     *
+     * @param shadowAddressTable the name of the shadow address table
+     */
+    public void setShadowAddressTable(String shadowAddressTable) {
+        this.shadowAddressTable = shadowAddressTable;
+    }
+
+    /**
+     * Sets the name of the table containing the {@link ContactDetailsView} rows, or <code>null</code> to leave the view
+     * alone. Defaults to "ContactDetailsView".
+     *
+     * @param viewTable the name of the contact details table
+     */
+    public void setViewTable(String viewTable) {
+        this.viewTable = viewTable;
+    }
+
+    /**
+     * Sets the name of the shadow table for the contact details. It is created and renamed by the rebuild. Defaults
+     * to "ContactDetailsView_rebuild".
+     *
+     * @param shadowViewTable the name of the shadow contact details table
+     */
+    public void setShadowViewTable(String shadowViewTable) {
+        this.shadowViewTable = shadowViewTable;
+    }
+
+    /**
+     * Sets the column type of the addresses document of the contact details, which must match the type of the live
+     * table. Defaults to the HSQLDB type "LONGVARCHAR". For MySQL, use "LONGTEXT".
+     *
+     * @param documentColumnType the type of the addresses column
+     */
+    public void setDocumentColumnType(String documentColumnType) {
+        this.documentColumnType = documentColumnType;
+    }
+
+    /**
+     * Sets the column definition of the generated primary key of the shadow tables. It must generate values like the
+     * primary key of the live tables, as the shadow tables replace them. Defaults to the HSQLDB definition
+     * "BIGINT GENERATED BY DEFAULT AS IDENTITY (START WITH 1) PRIMARY KEY". For MySQL, use
+     * "BIGINT AUTO_INCREMENT PRIMARY KEY".
+     *
+     * @param identityColumnDefinition the definition of the db_identifier column
+     */
+    public void setIdentityColumnDefinition(String identityColumnDefinition) {
+        this.identityColumnDefinition = identityColumnDefinition;
+    }
+
+    /**
+     * Sets the number of threads applying the events. Defaults to the number of processors.
+     *
+     * @param threadCount the number of threads applying events
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Sets the number of events a thread merges before it writes them to the shadow tables. Defaults to 1000.
+     *
+     * @param batchSize the number of events per write
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the number of events waiting for each thread, before reading the event store waits. Defaults to 10000.
+     *
+     * @param queueCapacity the maximum number of waiting events per thread
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets the number of events below which a pass is considered caught up with the event store. Defaults to 1000.
+     *
+     * @param catchUpThreshold the number of events of the last pass before the live tables are replaced
+     */
+    public void setCatchUpThreshold(int catchUpThreshold) {
+        this.catchUpThreshold = catchUpThreshold;
+    }
+
+    /**
+     * Sets the name of the {@link TrackingProjectionProcessor} that maintains the live tables, if any. Its token is
+     * moved to the end of the rebuild just before the live tables are replaced, so it continues after the events of
+     * the rebuild. When the projection has no token yet, it is created at the end of the rebuild. Defaults to none.
+     *
+     * @param trackingProjectionName the name of the projection whose token to update
+     */
+    public void setTrackingProjectionName(String trackingProjectionName) {
+        this.trackingProjectionName = trackingProjectionName;
+    }
+
+    /**
+     * Sets the name of the table containing the {@link ProjectionToken} rows. Defaults to "ProjectionToken".
+     *
+     * @param tokenTable the name of the token table
+     */
+    public void setTokenTable(String tokenTable) {
+        this.tokenTable = tokenTable;
+    }
+
+    /**
+     * Sets whether the tables are swapped by a single <code>RENAME TABLE a TO b, c TO d</code> statement, which MySQL
+     * supports and executes atomically. Otherwise, the tables are renamed one by one with <code>ALTER TABLE</code>.
+     * Defaults to <code>false</code>, as HSQLDB does not support it.
+     *
+     * @param multiTableRename whether the database renames several tables in a single statement
+     */
+    public void setMultiTableRename(boolean multiTableRename) {
+        this.multiTableRename = multiTableRename;
+    }
+
+    /**
+     * Sets the fence to move to the end of the rebuild, so the live table updaters skip the events that are contained
+     * in the rebuilt tables. Optional.
+     *
+     * @param projectionFence the fence shared with the live table updaters
+     */
+    public void setProjectionFence(ProjectionFence projectionFence) {
+        this.projectionFence = projectionFence;
+    }
+
+    /**
+     * Sets the cache to clear after the live tables have been replaced. Optional.
+     *
+     * @param contactCache the cache of contact details and addresses
+     */
+    public void setContactCache(CachingContactRepository contactCache) {
+        this.contactCache = contactCache;
+    }
+
+    /**
+     * Sets the name to register this rebuilder with in JMX. Defaults to
+     * <code>org.axonframework.sample:type=ProjectionRebuilder,name=contact</code> with the identity of the rebuilder
+     * added. Must be unique for all applications in the JVM.
+     *
+     * @param objectName the JMX object name of this rebuilder
+     */
+    public void setObjectName(String objectName) {
+        this.objectName = objectName;
+    }
+
+    /**
+     * The events of a share of the contacts, applied by a thread of its own. A {@link CountDownLatch} in the queue
+     * asks the thread to write the events it has merged so far and count down the latch.
+     */
+    private class Partition implements Runnable {
+
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(queueCapacity);
+        private final Thread thread;
+        private ContactChangeSet changes = new ContactChangeSet();
+        private int mergedEvents;
+
+        private Partition(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void add(Object item) {
+            try {
+                while (!queue.offer(item, 1, TimeUnit.SECONDS)) {
+                    checkAlive();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading the event store", e);
+            }
+        }
+
+        private void checkAlive() {
+            if (!thread.isAlive()) {
+                throw new IllegalStateException("Rebuild thread " + thread.getName() + " has stopped",
+                                                failure);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Object item = queue.take();
+                    if (item instanceof CountDownLatch) {
+                        write();
+                        ((CountDownLatch) item).countDown();
+                    } else if (failure == null) {
+                        apply((MappedSegmentEventStore.StoredEvent) item);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // the rebuild has finished
+            }
+        }
+
+        private void apply(MappedSegmentEventStore.StoredEvent event) {
+            try {
+                changes.apply(event.decode().getPayload());
+                if (++mergedEvents >= batchSize) {
+                    write();
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        private void write() {
+            final ContactChangeSet batch = changes;
+            changes = new ContactChangeSet();
+            mergedEvents = 0;
+            if (failure != null || batch.isEmpty()) {
+                return;
+            }
+            try {
+                transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        batch.writeTo(jdbcTemplate, shadowContactTable, shadowAddressTable);
+                        if (viewTable != null) {
+                            batch.writeViewTo(jdbcTemplate, shadowViewTable);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+}
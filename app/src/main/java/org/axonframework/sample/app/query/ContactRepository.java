@@ -33,6 +33,60 @@ public interface ContactRepository {
      */
     List<ContactEntry> findAllContacts();
 
+    /**
+     * Returns a page of contacts, ordered by name and identifier. The first page is returned when no continuation
+     * token is provided. Obtaining a page takes the same effort regardless of how many pages precede it.
+     *
+     * @param continuationToken the token of the previous page, or null to obtain the first page
+     * @param pageSize          the maximum number of contacts in the page
+     * @return Page containing the contacts and the token to obtain the next page
+     */
+    ContactPage findContacts(String continuationToken, int pageSize);
+
+    /**
+     * Returns the number of contacts
+     *
+     * @return the number of contacts
+     */
+    int countContacts();
+
+    /**
+     * Returns the contacts at the given positions in the list of contacts ordered by name and identifier. The database
+     * has to skip the contacts before the first position, so the effort grows with the position. Use {@link
+     * #findContacts(String, int)} to iterate over all contacts.
+     *
+     * @param firstResult the position of the first contact to return, starting at 0
+     * @param maxResults  the maximum number of contacts to return
+     * @return List with the contacts in the range
+     */
+    List<ContactEntry> findContactsInRange(int firstResult, int maxResults);
+
+    /**
+     * Returns the identifiers of the contacts of which the given property starts with the given prefix. The prefix is
+     * case sensitive, which allows the search to use the index on the property. The identifiers are ordered by the
+     * property and then by identifier.
+     *
+     * @param propertyId the property to search, either "name" or "identifier"
+     * @param prefix     the value the property should start with
+     * @param maxResults the maximum number of identifiers to return
+     * @return List containing the identifiers of the found contacts
+     */
+    List<String> findContactIdentifiers(String propertyId, String prefix, int maxResults);
+
+    /**
+     * Returns a page of the identifiers of the contacts of which the given property starts with the given prefix,
+     * ordered by the property and then by identifier. The first page is returned when no continuation token is
+     * provided. Obtaining a page takes the same effort regardless of how many pages precede it.
+     *
+     * @param propertyId        the property to search, either "name" or "identifier"
+     * @param prefix            the value the property should start with
+     * @param continuationToken the token of the previous page, or null to obtain the first page
+     * @param pageSize          the maximum number of identifiers in the page
+     * @return Page containing the identifiers and the token to obtain the next page
+     */
+    ContactIdentifierPage findContactIdentifiers(String propertyId, String prefix, String continuationToken,
+                                                 int pageSize);
+
     /**
      * Returns a list of addresses for the contact with the specified contact identifier
      *
@@ -51,6 +105,20 @@ public interface ContactRepository {
      */
     List<AddressEntry> findAllAddressesInCityForContact(String name, String city);
 
+    /**
+     * Returns the addresses that match all provided search terms, ordered by contact name. A term matches if the
+     * corresponding value contains it, ignoring case. Terms that are null or empty are not used for the search.
+     *
+     * @param name            String representing (part of) the name of the contact
+     * @param city            String representing (part of) the city of the address
+     * @param zipCode         String representing (part of) the zip code of the address
+     * @param streetAndNumber String representing (part of) the street and number of the address
+     * @param maxResults      the maximum number of addresses to return
+     * @return List containing the found addresses
+     */
+    List<AddressEntry> searchAddresses(String name, String city, String zipCode, String streetAndNumber,
+                                       int maxResults);
+
     /**
      * Returns the contact details for the contact with the provided UUID
      *
@@ -58,4 +126,14 @@ public interface ContactRepository {
      * @return Contact belonging to the provided identifier
      */
     ContactEntry loadContactDetails(String contactId);
+
+    /**
+     * Returns the contact with all of its addresses, read from the {@link ContactDetailsView} with a single primary
+     * key lookup.
+     *
+     * @param contactId UUID required field containing the contact identifier
+     * @return The view of the contact belonging to the provided identifier
+     * @throws javax.persistence.NoResultException if the contact does not exist
+     */
+    ContactDetailsView loadContactDetailsView(String contactId);
 }
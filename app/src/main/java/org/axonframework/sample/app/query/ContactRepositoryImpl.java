@@ -18,10 +18,16 @@ package org.axonframework.sample.app.query;
 
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.xml.bind.DatatypeConverter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * @author Allard Buijze
@@ -30,9 +36,15 @@ import java.util.List;
 @Transactional(readOnly = true)
 public class ContactRepositoryImpl implements ContactRepository {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final char TOKEN_SEPARATOR = '\u0000';
+    private static final char LIKE_ESCAPE = '!';
+
     @PersistenceContext
     private EntityManager entityManager;
 
+    private AddressSearchIndex searchIndex;
+
     @SuppressWarnings({"unchecked"})
     @Override
     public List<ContactEntry> findAllContacts() {
@@ -41,6 +53,99 @@ public class ContactRepositoryImpl implements ContactRepository {
                 .getResultList();
     }
 
+    @SuppressWarnings({"unchecked"})
+    @Override
+    public ContactPage findContacts(String continuationToken, int pageSize) {
+        Assert.isTrue(pageSize > 0 && pageSize <= MAX_PAGE_SIZE,
+                      "The page size must be between 1 and " + MAX_PAGE_SIZE);
+        List<ContactEntry> contacts;
+        if (continuationToken == null) {
+            contacts = entityManager.createQuery("SELECT e FROM ContactEntry e ORDER BY e.name, e.identifier")
+                    .setMaxResults(pageSize + 1)
+                    .getResultList();
+        } else {
+            String[] lastContact = decodeToken(continuationToken);
+            contacts = entityManager.createQuery("SELECT e FROM ContactEntry e "
+                    + "WHERE e.name > :name OR (e.name = :name AND e.identifier > :id) "
+                    + "ORDER BY e.name, e.identifier")
+                    .setParameter("name", lastContact[0])
+                    .setParameter("id", lastContact[1])
+                    .setMaxResults(pageSize + 1)
+                    .getResultList();
+        }
+        if (contacts.size() <= pageSize) {
+            return new ContactPage(contacts, null);
+        }
+        List<ContactEntry> page = new ArrayList<ContactEntry>(contacts.subList(0, pageSize));
+        ContactEntry lastContact = page.get(pageSize - 1);
+        return new ContactPage(page, encodeToken(lastContact.getName(), lastContact.getIdentifier()));
+    }
+
+    @Override
+    public int countContacts() {
+        return ((Number) entityManager.createQuery("SELECT COUNT(e) FROM ContactEntry e")
+                .getSingleResult()).intValue();
+    }
+
+    @SuppressWarnings({"unchecked"})
+    @Override
+    public List<ContactEntry> findContactsInRange(int firstResult, int maxResults) {
+        Assert.isTrue(maxResults > 0 && maxResults <= MAX_PAGE_SIZE,
+                      "The number of results must be between 1 and " + MAX_PAGE_SIZE);
+        return entityManager.createQuery("SELECT e FROM ContactEntry e ORDER BY e.name, e.identifier")
+                .setFirstResult(firstResult)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    @SuppressWarnings({"unchecked"})
+    @Override
+    public List<String> findContactIdentifiers(String propertyId, String prefix, int maxResults) {
+        Assert.isTrue("name".equals(propertyId) || "identifier".equals(propertyId),
+                      "Contacts can only be searched by name or identifier");
+        Assert.isTrue(maxResults > 0 && maxResults <= MAX_PAGE_SIZE,
+                      "The number of results must be between 1 and " + MAX_PAGE_SIZE);
+        return entityManager.createQuery("SELECT e.identifier FROM ContactEntry e "
+                + "WHERE e." + propertyId + " LIKE :prefix ESCAPE '" + LIKE_ESCAPE + "' "
+                + "ORDER BY e." + propertyId + ", e.identifier")
+                .setParameter("prefix", escapeLike(prefix == null ? "" : prefix) + "%")
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    @SuppressWarnings({"unchecked"})
+    @Override
+    public ContactIdentifierPage findContactIdentifiers(String propertyId, String prefix, String continuationToken,
+                                                        int pageSize) {
+        Assert.isTrue("name".equals(propertyId) || "identifier".equals(propertyId),
+                      "Contacts can only be searched by name or identifier");
+        Assert.isTrue(pageSize > 0 && pageSize <= MAX_PAGE_SIZE,
+                      "The page size must be between 1 and " + MAX_PAGE_SIZE);
+        String query = "SELECT e." + propertyId + ", e.identifier FROM ContactEntry e "
+                + "WHERE e." + propertyId + " LIKE :prefix ESCAPE '" + LIKE_ESCAPE + "' ";
+        String[] lastContact = null;
+        if (continuationToken != null) {
+            lastContact = decodeToken(continuationToken);
+            query += "AND (e." + propertyId + " > :value OR (e." + propertyId + " = :value AND e.identifier > :id)) ";
+        }
+        Query search = entityManager.createQuery(query + "ORDER BY e." + propertyId + ", e.identifier")
+                .setParameter("prefix", escapeLike(prefix == null ? "" : prefix) + "%")
+                .setMaxResults(pageSize + 1);
+        if (lastContact != null) {
+            search.setParameter("value", lastContact[0]).setParameter("id", lastContact[1]);
+        }
+        List<Object[]> rows = search.getResultList();
+        List<String> identifiers = new ArrayList<String>(Math.min(rows.size(), pageSize));
+        for (Object[] row : rows.subList(0, Math.min(rows.size(), pageSize))) {
+            identifiers.add((String) row[1]);
+        }
+        if (rows.size() <= pageSize) {
+            return new ContactIdentifierPage(identifiers, null);
+        }
+        Object[] lastRow = rows.get(pageSize - 1);
+        return new ContactIdentifierPage(identifiers, encodeToken((String) lastRow[0], (String) lastRow[1]));
+    }
+
     @SuppressWarnings({"unchecked"})
     @Override
     public List<AddressEntry> findAllAddressesForContact(String contactIdentifier) {
@@ -50,13 +155,32 @@ public class ContactRepositoryImpl implements ContactRepository {
                 .getResultList();
     }
 
-    @SuppressWarnings({"unchecked"})
     @Override
     public List<AddressEntry> findAllAddressesInCityForContact(String name, String city) {
-        return entityManager.createQuery("SELECT e FROM AddressEntry e WHERE e.name LIKE :name AND e.city LIKE :city")
-                .setParameter("name", "%" + (name == null ? "" : name) + "%")
-                .setParameter("city", "%" + (city == null ? "" : city) + "%")
-                .setMaxResults(250)
+        return searchAddresses(name, city, null, null, 250);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Uses the search index if one is configured. Otherwise the address table is queried, which requires a full scan
+     * of the table.
+     */
+    @SuppressWarnings({"unchecked"})
+    @Override
+    public List<AddressEntry> searchAddresses(String name, String city, String zipCode, String streetAndNumber,
+                                              int maxResults) {
+        if (searchIndex != null) {
+            return searchIndex.search(name, city, zipCode, streetAndNumber, maxResults);
+        }
+        return entityManager.createQuery("SELECT e FROM AddressEntry e WHERE LOWER(e.name) LIKE :name "
+                + "AND LOWER(e.city) LIKE :city AND LOWER(e.zipCode) LIKE :zipCode "
+                + "AND LOWER(e.streetAndNumber) LIKE :street ORDER BY e.name, e.addressType")
+                .setParameter("name", containsPattern(name))
+                .setParameter("city", containsPattern(city))
+                .setParameter("zipCode", containsPattern(zipCode))
+                .setParameter("street", containsPattern(streetAndNumber))
+                .setMaxResults(maxResults)
                 .getResultList();
     }
 
@@ -67,4 +191,69 @@ public class ContactRepositoryImpl implements ContactRepository {
                 .setParameter("id", contactIdentifier)
                 .getSingleResult();
     }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Contacts created before the view existed have no row until the {@link ContactDetailsViewBackfill} or a rebuild
+     * creates it. Their details are read from the contact and address tables instead. The row is not written here:
+     * an event handled while the tables are read would be missing from it, as the updaters ignore contacts without a
+     * row.
+     */
+    @Override
+    public ContactDetailsView loadContactDetailsView(String contactIdentifier) {
+        ContactDetailsView view = entityManager.find(ContactDetailsView.class, contactIdentifier);
+        if (view == null) {
+            return ContactDetailsView.createFrom(loadContactDetails(contactIdentifier),
+                                                 findAllAddressesForContact(contactIdentifier));
+        }
+        return view;
+    }
+
+    /**
+     * Sets the index used to search addresses. Without an index, searches query the address table directly.
+     *
+     * @param searchIndex the index to search addresses with
+     */
+    public void setSearchIndex(AddressSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    private String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == LIKE_ESCAPE || c == '%' || c == '_') {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private String containsPattern(String term) {
+        return "%" + (term == null ? "" : term.trim().toLowerCase(Locale.ENGLISH)) + "%";
+    }
+
+    private String encodeToken(String lastValue, String lastIdentifier) {
+        try {
+            String token = lastValue + TOKEN_SEPARATOR + lastIdentifier;
+            return DatatypeConverter.printBase64Binary(token.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+    }
+
+    private String[] decodeToken(String continuationToken) {
+        try {
+            String token = new String(DatatypeConverter.parseBase64Binary(continuationToken), "UTF-8");
+            int separator = token.lastIndexOf(TOKEN_SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid continuation token: " + continuationToken);
+            }
+            return new String[]{token.substring(0, separator), token.substring(separator + 1)};
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+    }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.query;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.sample.app.eventstore.MappedSegmentEventStore;
+
+/**
+ * <p>Marks the events that are already contained in tables rebuilt by the {@link ContactProjectionRebuilder}. An event
+ * appended just before a rebuild finished may still be on its way to a live table updater when the rebuilt tables
+ * replace the live tables. The updaters ask the fence, and skip such an event instead of applying it a second
+ * time.</p>
+ * <p>The fence is the position in the event store up to which the last rebuild read the events. The position of an
+ * event is looked up in the index of the event store. The fence is kept in memory only: after a restart, no event
+ * from before the restart is delivered to the updaters.</p>
+ */
+public class ProjectionFence {
+
+    private volatile Boundary boundary;
+    private volatile Boundary previousBoundary;
+
+    /**
+     * Moves the fence to the given position. Events of the given aggregate type before that position are behind the
+     * fence from now on.
+     *
+     * @param eventStore    the event store the position belongs to
+     * @param aggregateType the type of aggregate the events belong to
+     * @param position      the position up to which the events are contained in the rebuilt tables
+     */
+    public void moveTo(MappedSegmentEventStore eventStore, String aggregateType, long position) {
+        previousBoundary = boundary;
+        boundary = new Boundary(eventStore, aggregateType, position);
+    }
+
+    /**
+     * Moves the fence back to where it was before the last move, for when the rebuilt tables could not replace the
+     * live tables after all.
+     */
+    public void moveBack() {
+        boundary = previousBoundary;
+    }
+
+    /**
+     * Indicates whether the given event is contained in the rebuilt tables, and must not be applied again.
+     *
+     * @param event the event to check
+     * @return <code>true</code> if the event was applied by the last rebuild
+     */
+    public boolean isBehind(DomainEventMessage<?> event) {
+        Boundary current = boundary;
+        if (current == null) {
+            return false;
+        }
+        long position = current.eventStore.getPosition(current.aggregateType, event.getAggregateIdentifier(),
+                                                       event.getSequenceNumber());
+        return position >= 0 && position < current.position;
+    }
+
+    private static final class Boundary {
+
+        private final MappedSegmentEventStore eventStore;
+        private final String aggregateType;
+        private final long position;
+
+        private Boundary(MappedSegmentEventStore eventStore, String aggregateType, long position) {
+            this.eventStore = eventStore;
+            this.aggregateType = aggregateType;
+            this.position = position;
+        }
+    }
+}
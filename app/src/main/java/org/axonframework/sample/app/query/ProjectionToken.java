@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.sample.app.query;
+
+import javax.persistence.Basic;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * <p>The position in the event store up to which a projection has processed the events. The token is updated in the
+ * same transaction as the tables of the projection, so after a restart the projection continues exactly where it
+ * stopped.</p>
+ *
+ * @see TrackingProjectionProcessor
+ */
+@Entity
+public class ProjectionToken {
+
+    @Id
+    private String projectionName;
+
+    @Basic
+    private long eventPosition;
+
+    public String getProjectionName() {
+        return projectionName;
+    }
+
+    public void setProjectionName(String projectionName) {
+        this.projectionName = projectionName;
+    }
+
+    public long getEventPosition() {
+        return eventPosition;
+    }
+
+    public void setEventPosition(long eventPosition) {
+        this.eventPosition = eventPosition;
+    }
+}
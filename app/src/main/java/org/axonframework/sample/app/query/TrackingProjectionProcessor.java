@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.sample.app.query;
+
+import org.axonframework.sample.app.eventstore.MappedSegmentEventStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+import org.springframework.jmx.support.JmxUtils;
+import org.springframework.jmx.support.ObjectNameManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Alternative to the {@link AddressTableUpdater} that reads the events from the event store instead of receiving
+ * them from the event bus. The position up to which the events have been applied is kept in a {@link ProjectionToken},
+ * which is updated in the same transaction as the contact and address tables. After a restart, only the events after
+ * that position are read, so no events are lost or applied twice, and the tables do not have to be rebuilt.</p>
+ * <p>A single thread reads the events. Events are merged in a {@link ContactChangeSet} and written in batches of at
+ * most <code>batchSize</code> events. When all events have been read, the thread checks for new events every
+ * <code>pollInterval</code> milliseconds.</p>
+ * <p>The {@link ContactDetailsView} is written in the same transactions as the contact and address tables. When there
+ * is no token yet, the tables and the view are built in shadow tables by a {@link ContactProjectionRebuilder}, which
+ * replaces the live tables and creates the token at the position where it stopped. The live tables are not emptied,
+ * so they can be queried while the shadow tables are built. Tracking starts after the tables have been
+ * replaced.</p>
+ * <p>BEWARE: the tables are updated after the command has completed, so a query executed directly after a command may
+ * not see its effects yet. When a batch cannot be written, the processor reads the token again, waits
+ * <code>pollInterval</code> milliseconds and continues from the position in the token.</p>
+ * <p>Every web application registers its own processor with JMX. Without a configured <code>objectName</code>, the
+ * identity of the processor is added to the default name, so the processors of different applications do not hide each
+ * other.</p>
+ */
+@ManagedResource(description = "Updates the contact tables from the event store")
+public class TrackingProjectionProcessor implements InitializingBean, DisposableBean, SelfNaming {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackingProjectionProcessor.class);
+    private static final String DEFAULT_OBJECT_NAME = "org.axonframework.sample:type=TrackingProjection,name=contact";
+
+    private final MappedSegmentEventStore eventStore;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    private String projectionName = "contactTables";
+    private String aggregateType = "Contact";
+    private String contactTable = "ContactEntry";
+    private String addressTable = "AddressEntry";
+    private String viewTable = "ContactDetailsView";
+    private String tokenTable = "ProjectionToken";
+    private int batchSize = 500;
+    private long pollInterval = 100;
+    private CachingContactRepository contactCache;
+    private ContactProjectionRebuilder projectionRebuilder;
+    private String objectName;
+
+    private volatile long position;
+    private final AtomicLong eventCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread tracker;
+
+    /**
+     * Creates a processor that reads the events from the given event store.
+     *
+     * @param eventStore the event store containing the contact events
+     */
+    public TrackingProjectionProcessor(MappedSegmentEventStore eventStore) {
+        this.eventStore = eventStore;
+    }
+
+    /**
+     * Reads the token of the projection, building the tables first if there is no token, and starts the thread that
+     * reads the events.
+     *
+     * @throws InterruptedException when interrupted while building the tables
+     */
+    @Override
+    public void afterPropertiesSet() throws InterruptedException {
+        Long storedPosition = readToken();
+        position = storedPosition != null ? storedPosition : buildTables();
+        logger.info("Projection {} continues at event store position {}", projectionName, position);
+        running = true;
+        tracker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                track();
+            }
+        }, "ProjectionTracker-" + projectionName);
+        tracker.setDaemon(true);
+        tracker.start();
+    }
+
+    /**
+     * Stops the thread that reads the events, after it has written the batch it is working on.
+     *
+     * @throws InterruptedException when interrupted while waiting for the thread to finish
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        if (tracker != null) {
+            tracker.join();
+        }
+    }
+
+    /**
+     * Builds the tables in shadow tables and replaces the live tables. The rebuilder creates the token at the position
+     * where it stopped. When the rebuild fails because another process created the token in the meantime, tracking
+     * continues from that token.
+     */
+    private long buildTables() throws InterruptedException {
+        logger.info("Projection {} has no token yet, its tables are rebuilt from the event store", projectionName);
+        ContactProjectionRebuilder rebuilder = projectionRebuilder;
+        if (rebuilder == null) {
+            rebuilder = new ContactProjectionRebuilder(eventStore);
+            rebuilder.setDataSource(jdbcTemplate.getDataSource());
+            rebuilder.setTransactionManager(transactionTemplate.getTransactionManager());
+        }
+        rebuilder.setAggregateType(aggregateType);
+        rebuilder.setContactTable(contactTable);
+        rebuilder.setAddressTable(addressTable);
+        rebuilder.setViewTable(viewTable);
+        rebuilder.setTokenTable(tokenTable);
+        rebuilder.setTrackingProjectionName(projectionName);
+        if (contactCache != null) {
+            rebuilder.setContactCache(contactCache);
+        }
+        try {
+            rebuilder.rebuild();
+        } catch (RuntimeException e) {
+            Long storedPosition = readToken();
+            if (storedPosition == null) {
+                throw e;
+            }
+            logger.warn("Unable to rebuild the tables of projection " + projectionName
+                                + ", continuing from the token created by another process", e);
+            return storedPosition;
+        }
+        Long storedPosition = readToken();
+        if (storedPosition == null) {
+            throw new IllegalStateException("The rebuild did not create the token of projection " + projectionName);
+        }
+        return storedPosition;
+    }
+
+    private Long readToken() {
+        List<Long> positions = jdbcTemplate.queryForList(
+                "SELECT eventPosition FROM " + tokenTable + " WHERE projectionName = ?", Long.class, projectionName);
+        return positions.isEmpty() ? null : positions.get(0);
+    }
+
+    private void track() {
+        while (running) {
+            long before = position;
+            try {
+                catchUp();
+            } catch (RuntimeException e) {
+                logger.error("Unable to update projection " + projectionName, e);
+                reloadToken();
+            }
+            if (position == before) {
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException e) {
+                    logger.warn("Projection tracker {} was interrupted", projectionName);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Continues from the position in the token table, which may have been changed by a rebuild of the tables.
+     */
+    private void reloadToken() {
+        try {
+            Long storedPosition = readToken();
+            if (storedPosition != null) {
+                position = storedPosition;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Unable to read the token of projection {}, retrying from position {}", projectionName,
+                        position);
+        }
+    }
+
+    /**
+     * Applies all events after the current position, committing the tables and the token every
+     * <code>batchSize</code> events.
+     */
+    private void catchUp() {
+        final Batch batch = new Batch();
+        batch.position = position;
+        long end = eventStore.visitEvents(aggregateType, position, new MappedSegmentEventStore.EventVisitor() {
+            @Override
+            public void visit(MappedSegmentEventStore.StoredEvent event) {
+                if (!running) {
+                    // stop reading, but write what has been read
+                    return;
+                }
+                batch.changes.apply(event.decode().getPayload());
+                batch.eventCount++;
+                batch.position = event.getNextPosition();
+                if (batch.eventCount >= batchSize) {
+                    commit(batch);
+                }
+            }
+        });
+        if (running && end != position) {
+            batch.position = end;
+        }
+        if (batch.position != position) {
+            commit(batch);
+        }
+    }
+
+    private void commit(final Batch batch) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                if (!batch.changes.isEmpty()) {
+                    batch.changes.writeTo(jdbcTemplate, contactTable, addressTable);
+                    if (viewTable != null) {
+                        batch.changes.writeViewTo(jdbcTemplate, viewTable);
+                    }
+                    if (contactCache != null) {
+                        for (String contactId : batch.changes.getContactIds()) {
+                            contactCache.evictAfterCommit(contactId);
+                        }
+                    }
+                }
+                int updated = jdbcTemplate.update("UPDATE " + tokenTable + " SET eventPosition = ? "
+                                                          + "WHERE projectionName = ? AND eventPosition = ?",
+                                                  batch.position, projectionName, position);
+                if (updated != 1) {
+                    throw new IllegalStateException("The token of projection " + projectionName
+                                                            + " was changed by another process");
+                }
+            }
+        });
+        position = batch.position;
+        eventCount.addAndGet(batch.eventCount);
+        batchCount.incrementAndGet();
+        batch.reset();
+    }
+
+    /**
+     * Returns the configured object name, or the default name with the identity of this processor added.
+     *
+     * @return the name to register this processor with in JMX
+     * @throws MalformedObjectNameException if the configured object name is not valid
+     */
+    @Override
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName != null) {
+            return ObjectNameManager.getInstance(objectName);
+        }
+        return JmxUtils.appendIdentityToObjectName(ObjectNameManager.getInstance(DEFAULT_OBJECT_NAME), this);
+    }
+
+    @ManagedAttribute(description = "Position in the event store up to which the events have been applied")
+    public long getPosition() {
+        return position;
+    }
+
+    @ManagedAttribute(description = "Number of events applied since startup")
+    public long getEventCount() {
+        return eventCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of batches written since startup")
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Sets the transaction manager used to write the batches. It must manage transactions for the data source.
+     *
+     * @param transactionManager the transaction manager to write the batches with
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Sets the name under which the token of this projection is stored. Defaults to "contactTables".
+     *
+     * @param projectionName the name of the projection
+     */
+    public void setProjectionName(String projectionName) {
+        this.projectionName = projectionName;
+    }
+
+    /**
+     * Sets the type of aggregate the contact events belong to. Defaults to "Contact".
+     *
+     * @param aggregateType the aggregate type of the contact events
+     */
+    public void setAggregateType(String aggregateType) {
+        this.aggregateType = aggregateType;
+    }
+
+    /**
+     * Sets the name of the table containing the {@link ContactEntry} rows. Defaults to "ContactEntry".
+     *
+     * @param contactTable the name of the contact table
+     */
+    public void setContactTable(String contactTable) {
+        this.contactTable = contactTable;
+    }
+
+    /**
+     * Sets the name of the table containing the {@link AddressEntry} rows. Defaults to "AddressEntry".
+     *
+     * @param addressTable the name of the address table
+     */
+    public void setAddressTable(String addressTable) {
+        this.addressTable = addressTable;
+    }
+
+    /**
+     * Sets the name of the table containing the {@link ContactDetailsView} rows, or <code>null</code> to leave the view
+     * alone. Defaults to "ContactDetailsView".
+     *
+     * @param viewTable the name of the contact details table
+     */
+    public void setViewTable(String viewTable) {
+        this.viewTable = viewTable;
+    }
+
+    /**
+     * Sets the name of the table containing the {@link ProjectionToken} rows. Defaults to "ProjectionToken".
+     *
+     * @param tokenTable the name of the token table
+     */
+    public void setTokenTable(String tokenTable) {
+        this.tokenTable = tokenTable;
+    }
+
+    /**
+     * Sets the maximum number of events written in one transaction. Defaults to 500.
+     *
+     * @param batchSize the maximum number of events per transaction
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait before checking for new events, when all events have been applied.
+     * Defaults to 100.
+     *
+     * @param pollInterval the time between checks for new events
+     */
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Sets the cache to remove the changed contacts from. Optional.
+     *
+     * @param contactCache the cache of contact details and addresses
+     */
+    public void setContactCache(CachingContactRepository contactCache) {
+        this.contactCache = contactCache;
+    }
+
+    /**
+     * Sets the rebuilder that builds the tables when there is no token yet. The tables, the token table and the
+     * projection name of this processor are set on the rebuilder before it is used. Defaults to a rebuilder with the
+     * default settings, which match HSQLDB.
+     *
+     * @param projectionRebuilder the rebuilder that builds the tables of a new projection
+     */
+    public void setProjectionRebuilder(ContactProjectionRebuilder projectionRebuilder) {
+        this.projectionRebuilder = projectionRebuilder;
+    }
+
+    /**
+     * Sets the name to register this processor with in JMX. Defaults to
+     * <code>org.axonframework.sample:type=TrackingProjection,name=contact</code> with the identity of the processor
+     * added. Must be unique for all applications in the JVM.
+     *
+     * @param objectName the JMX object name of this processor
+     */
+    public void setObjectName(String objectName) {
+        this.objectName = objectName;
+    }
+
+    /**
+     * The events read since the last commit.
+     */
+    private static class Batch {
+
+        private ContactChangeSet changes = new ContactChangeSet();
+        private int eventCount;
+        private long position;
+
+        private void reset() {
+            changes = new ContactChangeSet();
+            eventCount = 0;
+        }
+    }
+}
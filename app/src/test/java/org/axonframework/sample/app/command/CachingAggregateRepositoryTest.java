@@ -0,0 +1,169 @@
+package org.axonframework.sample.app.command;
+
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.eventhandling.SimpleEventBus;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.repository.ConflictingAggregateVersionException;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.sample.app.eventstore.AdaptiveSnapshotterTrigger;
+import org.axonframework.sample.app.eventstore.MappedSegmentEventStore;
+import org.axonframework.unitofwork.DefaultUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.io.File;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the event sourcing repository that caches recently used aggregates
+ */
+public class CachingAggregateRepositoryTest {
+
+    private File baseDir;
+    private MappedSegmentEventStore eventStore;
+    private CachingAggregateRepository<Contact> repository;
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir = File.createTempFile("eventstore", "");
+        assertTrue(baseDir.delete());
+        eventStore = new MappedSegmentEventStore(baseDir);
+        eventStore.setSegmentSize(1024 * 1024);
+        eventStore.afterPropertiesSet();
+
+        repository = new CachingAggregateRepository<Contact>(Contact.class);
+        repository.setEventStore(eventStore);
+        repository.setEventBus(new SimpleEventBus());
+        repository.setVersionProvider(eventStore);
+        repository.setMaximumSize(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventStore.destroy();
+        File[] files = baseDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        baseDir.delete();
+    }
+
+    @Test
+    public void testRepeatedLoadIsServedFromCache() {
+        create("1");
+
+        changeName("1", "Allard");
+        changeName("1", "Allard Buijze");
+
+        assertEquals(2, repository.getHitCount());
+        assertEquals(0, repository.getMissCount());
+        assertEquals(Long.valueOf(2), eventStore.getLastSequenceNumber(repository.getTypeIdentifier(), "1"));
+    }
+
+    @Test
+    public void testRollbackEvictsAggregate() {
+        create("1");
+
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        repository.load("1").changeName("Never stored");
+        unitOfWork.rollback();
+
+        changeName("1", "Allard");
+
+        assertEquals(1, repository.getMissCount());
+        assertEquals(Long.valueOf(1), eventStore.getLastSequenceNumber(repository.getTypeIdentifier(), "1"));
+    }
+
+    @Test
+    public void testStaleAggregateIsReloaded() {
+        create("1");
+        eventStore.appendEvents(repository.getTypeIdentifier(), new SimpleDomainEventStream(
+                new GenericDomainEventMessage<Object>("1", 1, new ContactNameChangedEvent("1", "Imported"))));
+
+        changeName("1", "Allard");
+
+        assertEquals(1, repository.getStaleCount());
+        assertEquals(1, repository.getMissCount());
+        assertEquals(Long.valueOf(2), eventStore.getLastSequenceNumber(repository.getTypeIdentifier(), "1"));
+    }
+
+    @Test
+    public void testCachedLoadChecksTheExpectedVersion() {
+        create("1");
+
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        try {
+            repository.load("1", 5L);
+            fail("Expected a version conflict");
+        } catch (ConflictingAggregateVersionException e) {
+            // expected
+        } finally {
+            unitOfWork.rollback();
+        }
+        assertEquals(0, repository.getHitCount());
+    }
+
+    @Test
+    public void testCachedLoadIsNotSeenByTheSnapshotterTrigger() {
+        AdaptiveSnapshotterTrigger trigger = new AdaptiveSnapshotterTrigger();
+        trigger.setSnapshotter(mock(Snapshotter.class));
+        trigger.setMinimumEventCount(1);
+        trigger.setMaximumEventCount(1);
+        repository.setSnapshotterTrigger(trigger);
+        create("1");
+
+        changeName("1", "Allard");
+        changeName("1", "Allard Buijze");
+
+        assertEquals(2, repository.getHitCount());
+        assertEquals(0, trigger.getLoadCount());
+        assertEquals(0, trigger.getSnapshotHitRate(), 0);
+        // the appends still reach the trigger
+        assertEquals(3, trigger.getScheduledSnapshotCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAggregateIsEvicted() {
+        create("1");
+        create("2");
+        changeName("1", "Allard");
+        create("3");
+
+        assertEquals(1, repository.getEvictionCount());
+        assertEquals(2, repository.getSize());
+
+        changeName("2", "Jettro");
+        assertEquals(1, repository.getMissCount());
+    }
+
+    @Test
+    public void testObjectNameIsUniqueUnlessConfigured() throws Exception {
+        CachingAggregateRepository<Contact> other = new CachingAggregateRepository<Contact>(Contact.class);
+        assertFalse(repository.getObjectName().equals(other.getObjectName()));
+        assertEquals("AggregateCache", repository.getObjectName().getKeyProperty("type"));
+
+        other.setObjectName("org.axonframework.sample:type=AggregateCache,name=contact,application=rest");
+        assertEquals(new ObjectName("org.axonframework.sample:type=AggregateCache,name=contact,application=rest"),
+                     other.getObjectName());
+    }
+
+    private void create(String identifier) {
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        repository.add(new Contact(identifier, "Contact " + identifier));
+        unitOfWork.commit();
+    }
+
+    private void changeName(String identifier, String name) {
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        repository.load(identifier).changeName(name);
+        unitOfWork.commit();
+    }
+}
@@ -0,0 +1,195 @@
+package org.axonframework.sample.app.command;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the in-memory index of claimed contact names
+ */
+public class CachingContactNameRepositoryTest {
+    private CachingContactNameRepository repository;
+    @Mock
+    private EntityManager mockEntityManager;
+    @Mock
+    private PlatformTransactionManager mockTransactionManager;
+    @Mock
+    private Query mockQuery;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mockEntityManager.createQuery(anyString())).thenReturn(mockQuery);
+        when(mockQuery.getResultList()).thenReturn(Arrays.asList("Jettro"));
+
+        repository = new CachingContactNameRepository();
+        repository.setEntityManager(mockEntityManager);
+        repository.setTransactionManager(mockTransactionManager);
+        repository.setFlushInterval(10);
+        repository.setRetryInterval(10);
+        repository.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repository.destroy();
+    }
+
+    @Test
+    public void testClaimedNamesAreLoadedAtStartup() {
+        assertFalse(repository.vacantContactName("Jettro"));
+        assertFalse(repository.claimContactName("jettro"));
+        assertTrue(repository.vacantContactName("Allard"));
+    }
+
+    @Test
+    public void testNamesAreComparedCaseInsensitive() {
+        assertTrue(repository.claimContactName("Allard"));
+        assertFalse(repository.claimContactName(" allard"));
+        assertFalse(repository.vacantContactName("ALLARD"));
+
+        repository.cancelContactName("allard");
+
+        assertTrue(repository.vacantContactName("Allard"));
+        assertTrue(repository.claimContactName("allard"));
+    }
+
+    @Test
+    public void testOnlyOneConcurrentClaimSucceeds() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Callable<Boolean>> claims = new ArrayList<Callable<Boolean>>();
+        for (int i = 0; i < 64; i++) {
+            claims.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return repository.claimContactName("Double name");
+                }
+            });
+        }
+
+        int successfulClaims = 0;
+        for (Future<Boolean> claim : executor.invokeAll(claims)) {
+            if (claim.get()) {
+                successfulClaims++;
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(1, successfulClaims);
+    }
+
+    @Test
+    public void testClaimsAreWrittenToTheDatabase() throws Exception {
+        repository.claimContactName("Allard");
+        repository.claimContactName("Jettro");
+        repository.destroy();
+
+        verify(mockEntityManager).persist(isA(ClaimedContactName.class));
+        verify(mockEntityManager, never()).remove(any());
+    }
+
+    @Test
+    public void testFailedWritesAreRetried() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("Database unavailable");
+                }
+                return null;
+            }
+        }).when(mockEntityManager).persist(isA(ClaimedContactName.class));
+
+        repository.claimContactName("Allard");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (attempts.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        repository.destroy();
+
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void testChangeThatCannotBeWrittenIsDeadLettered() throws Exception {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ClaimedContactName name = (ClaimedContactName) invocation.getArguments()[0];
+                if ("Broken".equals(name.getContactName())) {
+                    throw new IllegalStateException("Value too long for column");
+                }
+                return null;
+            }
+        }).when(mockEntityManager).persist(isA(ClaimedContactName.class));
+        repository.setMaxAttempts(2);
+
+        repository.claimContactName("Broken");
+        repository.claimContactName("Allard");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (repository.getDeadLetterCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        repository.claimContactName("Allard Buijze");
+        repository.destroy();
+
+        assertEquals(1, repository.getDeadLetterCount());
+        assertFalse("The claim in the index is kept", repository.vacantContactName("Broken"));
+        ArgumentCaptor<ClaimedContactName> persisted = ArgumentCaptor.forClass(ClaimedContactName.class);
+        verify(mockEntityManager, atLeast(3)).persist(persisted.capture());
+        List<String> names = new ArrayList<String>();
+        for (ClaimedContactName name : persisted.getAllValues()) {
+            names.add(name.getContactName());
+        }
+        assertTrue(names.contains("Allard"));
+        assertTrue(names.contains("Allard Buijze"));
+    }
+
+    @Test
+    public void testNothingIsDeadLetteredWhileTheDatabaseIsUnavailable() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                if (attempts.incrementAndGet() <= 6) {
+                    throw new IllegalStateException("Database unavailable");
+                }
+                return null;
+            }
+        }).when(mockEntityManager).persist(isA(ClaimedContactName.class));
+        repository.setMaxAttempts(1);
+
+        repository.claimContactName("Allard");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (attempts.get() < 7 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        repository.destroy();
+
+        assertEquals(7, attempts.get());
+        assertEquals(0, repository.getDeadLetterCount());
+    }
+}
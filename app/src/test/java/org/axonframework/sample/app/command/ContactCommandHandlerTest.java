@@ -4,8 +4,6 @@ import org.axonframework.repository.Repository;
 import org.axonframework.sample.app.api.ChangeContactNameCommand;
 import org.axonframework.sample.app.api.ContactNameAlreadyTakenException;
 import org.axonframework.sample.app.api.CreateContactCommand;
-import org.axonframework.sample.app.query.ContactEntry;
-import org.axonframework.sample.app.query.ContactRepository;
 import org.axonframework.unitofwork.UnitOfWork;
 import org.axonframework.unitofwork.UnitOfWorkListener;
 import org.junit.Before;
@@ -32,8 +30,6 @@ public class ContactCommandHandlerTest {
     @Mock
     private Repository<Contact> mockRepository;
     @Mock
-    private ContactRepository mockContactRepository;
-    @Mock
     private Contact mockContact;
 
     @Before
@@ -42,7 +38,6 @@ public class ContactCommandHandlerTest {
         contactCommandHandler = new ContactCommandHandler();
         contactCommandHandler.setContactNameRepository(mockContactNameRepository);
         contactCommandHandler.setRepository(mockRepository);
-        contactCommandHandler.setContactRepository(mockContactRepository);
     }
 
     @Test
@@ -110,15 +105,11 @@ public class ContactCommandHandlerTest {
         command.setContactId(UUID.randomUUID().toString());
         command.setContactNewName("Good New Name");
 
-        ContactEntry mockContactEntry = mock(ContactEntry.class);
-
         when(mockContactNameRepository.claimContactName("Good New Name"))
                 .thenReturn(true);
         when(mockRepository.load(isA(String.class)))
                 .thenReturn(mockContact);
-        when(mockContactRepository.loadContactDetails(command.getContactId()))
-                .thenReturn(mockContactEntry);
-        when(mockContactEntry.getName()).thenReturn("Good Old Name");
+        when(mockContact.getName()).thenReturn("Good Old Name");
 
         ArgumentCaptor<UnitOfWorkListener> unitOfWorkListenerArgumentCaptor =
                 ArgumentCaptor.forClass(UnitOfWorkListener.class);
@@ -143,6 +134,7 @@ public class ContactCommandHandlerTest {
 
         when(mockContactNameRepository.claimContactName("Good New Name")).thenReturn(true);
         when(mockRepository.load(isA(String.class))).thenReturn(mockContact);
+        when(mockContact.getName()).thenReturn("Good Old Name");
 
         contactCommandHandler.handle(command, mockUnitOfWork);
 
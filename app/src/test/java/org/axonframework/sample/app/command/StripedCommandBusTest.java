@@ -0,0 +1,202 @@
+package org.axonframework.sample.app.command;
+
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.CommandHandler;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.GenericCommandMessage;
+import org.axonframework.commandhandling.SimpleCommandBus;
+import org.axonframework.commandhandling.callbacks.FutureCallback;
+import org.axonframework.sample.app.api.ChangeContactNameCommand;
+import org.axonframework.sample.app.api.RegisterAddressCommand;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the command bus that handles commands for different contacts in parallel
+ */
+public class StripedCommandBusTest {
+    private static final Logger logger = LoggerFactory.getLogger(StripedCommandBusTest.class);
+
+    private StripedCommandBus stripedCommandBus;
+
+    @After
+    public void tearDown() throws Exception {
+        if (stripedCommandBus != null) {
+            stripedCommandBus.destroy();
+        }
+    }
+
+    @Test
+    public void testCommandsForTheSameContactAreHandledInOrder() throws Exception {
+        SequenceCheckingHandler handler = new SequenceCheckingHandler(0);
+        stripedCommandBus = new StripedCommandBus(new SimpleCommandBus(), 4, 16);
+        stripedCommandBus.subscribe(RegisterAddressCommand.class.getName(), handler);
+
+        dispatchAndWait(stripedCommandBus, 20, 200);
+
+        assertEquals(20 * 200, handler.getHandledCommands());
+        assertEquals(0, handler.getOutOfOrderCommands());
+    }
+
+    @Test(timeout = 10000)
+    public void testCommandsDispatchedByAHandlerDoNotWaitForTheirOwnStripe() throws Exception {
+        stripedCommandBus = new StripedCommandBus(new SimpleCommandBus(), 1, 1);
+        stripedCommandBus.subscribe(RegisterAddressCommand.class.getName(), new CommandHandler<RegisterAddressCommand>() {
+            @Override
+            public Object handle(CommandMessage<RegisterAddressCommand> commandMessage, UnitOfWork unitOfWork)
+                    throws Throwable {
+                FutureCallback<Object> callback = new FutureCallback<Object>();
+                ChangeContactNameCommand nested = new ChangeContactNameCommand();
+                nested.setContactId(commandMessage.getPayload().getContactId());
+                stripedCommandBus.dispatch(new GenericCommandMessage<Object>(nested), callback);
+                return callback.get();
+            }
+        });
+        stripedCommandBus.subscribe(ChangeContactNameCommand.class.getName(), new CommandHandler<ChangeContactNameCommand>() {
+            @Override
+            public Object handle(CommandMessage<ChangeContactNameCommand> commandMessage, UnitOfWork unitOfWork) {
+                return "nested";
+            }
+        });
+
+        FutureCallback<Object> callback = new FutureCallback<Object>();
+        stripedCommandBus.dispatch(new GenericCommandMessage<Object>(registerAddress("contact", 0)), callback);
+
+        assertEquals("nested", callback.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCommandDispatchedAfterShutdownFails() throws Exception {
+        stripedCommandBus = new StripedCommandBus(new SimpleCommandBus(), 2, 4);
+        stripedCommandBus.subscribe(RegisterAddressCommand.class.getName(), new SequenceCheckingHandler(0));
+        stripedCommandBus.destroy();
+
+        FutureCallback<Object> callback = new FutureCallback<Object>();
+        stripedCommandBus.dispatch(new GenericCommandMessage<Object>(registerAddress("contact", 0)), callback);
+        try {
+            callback.get(1, TimeUnit.SECONDS);
+            fail("Expected the command to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testEveryCallbackIsInvokedWhenStoppingWhileDispatching() throws Exception {
+        final StripedCommandBus commandBus = new StripedCommandBus(new SimpleCommandBus(), 2, 4);
+        commandBus.subscribe(RegisterAddressCommand.class.getName(), new SequenceCheckingHandler(1000));
+        final AtomicInteger dispatched = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        final CommandCallback<Object> callback = new CommandCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                completed.incrementAndGet();
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                completed.incrementAndGet();
+            }
+        };
+        Thread dispatcher = new Thread() {
+            @Override
+            public void run() {
+                for (int sequence = 0; sequence < 10000; sequence++) {
+                    dispatched.incrementAndGet();
+                    commandBus.dispatch(new GenericCommandMessage<Object>(registerAddress("contact-" + (sequence % 8),
+                                                                                          sequence / 8)), callback);
+                }
+            }
+        };
+        dispatcher.start();
+        while (dispatched.get() < 100) {
+            Thread.sleep(1);
+        }
+        commandBus.destroy();
+        dispatcher.join();
+
+        assertEquals(dispatched.get(), completed.get());
+    }
+
+    private void dispatchAndWait(CommandBus commandBus, int contacts, int commandsPerContact)
+            throws InterruptedException {
+        final CountDownLatch completed = new CountDownLatch(contacts * commandsPerContact);
+        CommandCallback<Object> callback = new CommandCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                completed.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                logger.error("Command failed", cause);
+                completed.countDown();
+            }
+        };
+        for (int sequence = 0; sequence < commandsPerContact; sequence++) {
+            for (int contact = 0; contact < contacts; contact++) {
+                commandBus.dispatch(new GenericCommandMessage<Object>(registerAddress("contact-" + contact, sequence)),
+                                    callback);
+            }
+        }
+        assertTrue("Not all commands were handled", completed.await(60, TimeUnit.SECONDS));
+    }
+
+    private static RegisterAddressCommand registerAddress(String contactId, int sequence) {
+        RegisterAddressCommand command = new RegisterAddressCommand();
+        command.setContactId(contactId);
+        command.setZipCode(String.valueOf(sequence));
+        return command;
+    }
+
+    private static class SequenceCheckingHandler implements CommandHandler<RegisterAddressCommand> {
+
+        private final ConcurrentMap<String, Integer> lastSequences = new ConcurrentHashMap<String, Integer>();
+        private final AtomicInteger handledCommands = new AtomicInteger();
+        private final AtomicInteger outOfOrderCommands = new AtomicInteger();
+        private final int work;
+        private volatile long blackHole;
+
+        private SequenceCheckingHandler(int work) {
+            this.work = work;
+        }
+
+        @Override
+        public Object handle(CommandMessage<RegisterAddressCommand> commandMessage, UnitOfWork unitOfWork) {
+            RegisterAddressCommand command = commandMessage.getPayload();
+            int sequence = Integer.parseInt(command.getZipCode());
+            Integer previous = lastSequences.put(command.getContactId(), sequence);
+            if ((previous == null && sequence != 0) || (previous != null && previous != sequence - 1)) {
+                outOfOrderCommands.incrementAndGet();
+            }
+            long result = 0;
+            for (int i = 0; i < work; i++) {
+                result += i * 31 + sequence;
+            }
+            blackHole = result;
+            handledCommands.incrementAndGet();
+            return null;
+        }
+
+        public int getHandledCommands() {
+            return handledCommands.get();
+        }
+
+        public int getOutOfOrderCommands() {
+            return outOfOrderCommands.get();
+        }
+    }
+}
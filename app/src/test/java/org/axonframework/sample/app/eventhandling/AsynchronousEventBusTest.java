@@ -0,0 +1,207 @@
+package org.axonframework.sample.app.eventhandling;
+
+import org.axonframework.domain.EventMessage;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.eventhandling.EventListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the event bus that delivers events asynchronously
+ */
+public class AsynchronousEventBusTest {
+
+    private AsynchronousEventBus eventBus;
+
+    @Before
+    public void setUp() {
+        eventBus = new AsynchronousEventBus();
+        eventBus.setThreadsPerListener(3);
+        eventBus.setQueueCapacity(100);
+        eventBus.setBatchSize(10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventBus.destroy();
+    }
+
+    @Test
+    public void testEventsOfAnAggregateAreHandledInOrder() throws Exception {
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        eventBus.subscribe(first);
+        eventBus.subscribe(second);
+
+        for (int sequenceNumber = 0; sequenceNumber < 100; sequenceNumber++) {
+            for (int aggregate = 0; aggregate < 10; aggregate++) {
+                eventBus.publish(event("contact-" + aggregate, sequenceNumber));
+            }
+        }
+        eventBus.destroy();
+
+        for (RecordingListener listener : new RecordingListener[]{first, second}) {
+            assertEquals(10, listener.sequenceNumbers.size());
+            for (List<Long> sequenceNumbers : listener.sequenceNumbers.values()) {
+                assertEquals(100, sequenceNumbers.size());
+                for (int i = 0; i < sequenceNumbers.size(); i++) {
+                    assertEquals(i, sequenceNumbers.get(i).longValue());
+                }
+            }
+            assertEquals(1000, eventBus.getProcessedPosition(listener));
+        }
+        assertEquals(1000, eventBus.getPublishedCount());
+        assertEquals(0, eventBus.getBacklog());
+    }
+
+    @Test
+    public void testPublishingDoesNotWaitForTheListeners() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        EventListener slowListener = new EventListener() {
+            @Override
+            public void handle(EventMessage event) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        eventBus.subscribe(slowListener);
+
+        for (int i = 0; i < 50; i++) {
+            eventBus.publish(event("1", i));
+        }
+        assertEquals(0, eventBus.getProcessedPosition(slowListener));
+
+        release.countDown();
+        eventBus.destroy();
+        assertEquals(50, eventBus.getProcessedPosition(slowListener));
+    }
+
+    @Test
+    public void testFailedEventIsRetriedAndTheRestOfTheBatchIsHandled() throws Exception {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any(TransactionDefinition.class)))
+                .thenReturn(mock(TransactionStatus.class));
+        eventBus.setTransactionManager(transactionManager);
+        eventBus.setThreadsPerListener(1);
+        eventBus.setRetryInterval(10);
+        final List<Long> handled = new ArrayList<Long>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        EventListener listener = new EventListener() {
+            @Override
+            public void handle(EventMessage event) {
+                try {
+                    started.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                long sequenceNumber = ((GenericDomainEventMessage) event).getSequenceNumber();
+                if (sequenceNumber == 3 && failures.incrementAndGet() <= 2) {
+                    throw new IllegalStateException("Mock");
+                }
+                handled.add(sequenceNumber);
+            }
+        };
+        eventBus.subscribe(listener);
+
+        for (int i = 0; i < 5; i++) {
+            eventBus.publish(event("1", i));
+        }
+        started.countDown();
+        eventBus.destroy();
+
+        assertTrue(handled.containsAll(Arrays.asList(0L, 1L, 2L, 3L, 4L)));
+        assertEquals(5, eventBus.getProcessedPosition(listener));
+        assertFalse(eventBus.isStopped(listener));
+        verify(transactionManager, atLeastOnce()).rollback(any(TransactionStatus.class));
+    }
+
+    @Test
+    public void testListenerIsStoppedWhenAnEventKeepsFailing() throws Exception {
+        eventBus.setThreadsPerListener(1);
+        eventBus.setMaxRetries(2);
+        eventBus.setRetryInterval(10);
+        final List<Long> handled = new ArrayList<Long>();
+        final AtomicInteger attempts = new AtomicInteger();
+        EventListener listener = new EventListener() {
+            @Override
+            public void handle(EventMessage event) {
+                long sequenceNumber = ((GenericDomainEventMessage) event).getSequenceNumber();
+                if (sequenceNumber == 2) {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("Mock");
+                }
+                handled.add(sequenceNumber);
+            }
+        };
+        eventBus.subscribe(listener);
+
+        for (int i = 0; i < 5; i++) {
+            eventBus.publish(event("1", i));
+        }
+        eventBus.destroy();
+
+        assertEquals(Arrays.asList(0L, 1L), handled);
+        assertEquals(3, attempts.get());
+        assertEquals(2, eventBus.getProcessedPosition(listener));
+        assertTrue(eventBus.isStopped(listener));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPublishingAfterDestroyFails() throws Exception {
+        eventBus.destroy();
+        eventBus.publish(event("1", 0));
+    }
+
+    @Test
+    public void testObjectNameIsUniqueUnlessConfigured() throws Exception {
+        AsynchronousEventBus other = new AsynchronousEventBus();
+        assertFalse(eventBus.getObjectName().equals(other.getObjectName()));
+        assertEquals("EventBus", eventBus.getObjectName().getKeyProperty("type"));
+
+        other.setObjectName("org.axonframework.sample:type=EventBus,name=asynchronous,application=rest");
+        assertEquals(new ObjectName("org.axonframework.sample:type=EventBus,name=asynchronous,application=rest"),
+                     other.getObjectName());
+    }
+
+    private static GenericDomainEventMessage<Object> event(String aggregateIdentifier, long sequenceNumber) {
+        return new GenericDomainEventMessage<Object>(aggregateIdentifier, sequenceNumber, "payload");
+    }
+
+    private static class RecordingListener implements EventListener {
+
+        private final Map<Object, List<Long>> sequenceNumbers = new HashMap<Object, List<Long>>();
+
+        @Override
+        public synchronized void handle(EventMessage event) {
+            GenericDomainEventMessage domainEvent = (GenericDomainEventMessage) event;
+            List<Long> numbers = sequenceNumbers.get(domainEvent.getAggregateIdentifier());
+            if (numbers == null) {
+                numbers = new ArrayList<Long>();
+                sequenceNumbers.put(domainEvent.getAggregateIdentifier(), numbers);
+            }
+            numbers.add(domainEvent.getSequenceNumber());
+        }
+    }
+}
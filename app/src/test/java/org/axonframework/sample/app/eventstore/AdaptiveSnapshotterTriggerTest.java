@@ -0,0 +1,202 @@
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.eventsourcing.EventSourcedAggregateRoot;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.unitofwork.DefaultUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the snapshotter trigger that decides per aggregate whether to snapshot
+ */
+public class AdaptiveSnapshotterTriggerTest {
+
+    private Snapshotter snapshotter;
+    private AggregateSizeProvider sizeProvider;
+    private AdaptiveSnapshotterTrigger trigger;
+
+    @Before
+    public void setUp() {
+        snapshotter = mock(Snapshotter.class);
+        sizeProvider = mock(AggregateSizeProvider.class);
+        trigger = new AdaptiveSnapshotterTrigger();
+        trigger.setSnapshotter(snapshotter);
+        trigger.setSizeProvider(sizeProvider);
+        trigger.setMinimumEventCount(5);
+        trigger.setMaximumEventCount(20);
+        trigger.setLoadTimeThreshold(60000);
+        trigger.setByteThreshold(1000);
+    }
+
+    @Test
+    public void testNoSnapshotBelowMinimumEventCount() {
+        trigger.setLoadTimeThreshold(0);
+        when(sizeProvider.getBytesSinceSnapshot("Contact", "1")).thenReturn(5000L);
+
+        loadAndAppend("1", -1, 2, 2);
+
+        verify(snapshotter, never()).scheduleSnapshot(anyString(), any());
+    }
+
+    @Test
+    public void testQuietAggregateIsNotSnapshotted() {
+        loadAndAppend("1", -1, 10, 1);
+
+        verify(snapshotter, never()).scheduleSnapshot(anyString(), any());
+    }
+
+    @Test
+    public void testSnapshotAtMaximumEventCount() {
+        loadAndAppend("1", -1, 19, 1);
+
+        verify(snapshotter).scheduleSnapshot("Contact", "1");
+        assertEquals(1, trigger.getScheduledSnapshotCount());
+    }
+
+    @Test
+    public void testSnapshotAfterSlowLoad() {
+        trigger.setLoadTimeThreshold(0);
+
+        loadAndAppend("1", -1, 5, 1);
+
+        verify(snapshotter).scheduleSnapshot("Contact", "1");
+    }
+
+    @Test
+    public void testSnapshotOfLargeEventStream() {
+        when(sizeProvider.getBytesSinceSnapshot("Contact", "1")).thenReturn(1000L);
+        when(sizeProvider.getBytesSinceSnapshot("Contact", "2")).thenReturn(999L);
+
+        loadAndAppend("1", -1, 5, 1);
+        loadAndAppend("2", -1, 5, 1);
+
+        verify(snapshotter).scheduleSnapshot("Contact", "1");
+        verify(snapshotter, never()).scheduleSnapshot("Contact", "2");
+    }
+
+    @Test
+    public void testEventsBeforeSnapshotAreNotCounted() {
+        loadAndAppend("1", 50, 3, 1);
+
+        verify(snapshotter, never()).scheduleSnapshot(anyString(), any());
+    }
+
+    @Test
+    public void testEventCountOfCachedAggregateIsTakenFromTheSizeProvider() {
+        when(sizeProvider.getEventCountSinceSnapshot("Contact", "1")).thenReturn(20L);
+
+        loadAndAppend("1", -1, 0, 1);
+
+        verify(snapshotter).scheduleSnapshot("Contact", "1");
+    }
+
+    @Test
+    public void testConcurrentLoadsOfTheSameAggregateAreKeptApart() throws Exception {
+        final CountDownLatch loaded = new CountDownLatch(1);
+        final CountDownLatch otherCommitted = new CountDownLatch(1);
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    loaded.await();
+                    loadAndAppend("1", -1, 0, 1);
+                    otherCommitted.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        other.start();
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        load("1", -1, 19);
+        loaded.countDown();
+        otherCommitted.await();
+        append("1", 1);
+        unitOfWork.commit();
+        other.join();
+
+        verify(snapshotter, times(1)).scheduleSnapshot("Contact", "1");
+    }
+
+    @Test
+    public void testLoadOutsideAUnitOfWorkIsNotKept() {
+        load("1", -1, 19);
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        append("1", 1);
+        unitOfWork.commit();
+
+        verify(snapshotter, never()).scheduleSnapshot(anyString(), any());
+    }
+
+    @Test
+    public void testObjectNameIsUniqueUnlessConfigured() throws Exception {
+        AdaptiveSnapshotterTrigger other = new AdaptiveSnapshotterTrigger();
+        assertFalse(trigger.getObjectName().equals(other.getObjectName()));
+        assertEquals("SnapshotterTrigger", trigger.getObjectName().getKeyProperty("type"));
+
+        other.setObjectName("org.axonframework.sample:type=SnapshotterTrigger,name=contact,application=rest");
+        assertEquals(new ObjectName("org.axonframework.sample:type=SnapshotterTrigger,name=contact,application=rest"),
+                     other.getObjectName());
+    }
+
+    @Test
+    public void testSnapshotHitRate() {
+        load("1", -1, 10);
+        load("1", 9, 0);
+        load("2", -1, 10);
+        load("2", 9, 2);
+
+        assertEquals(4, trigger.getLoadCount());
+        assertEquals(0.5, trigger.getSnapshotHitRate(), 0.0001);
+        assertEquals(22, trigger.getReplayedEventCount());
+    }
+
+    private void load(String aggregateIdentifier, long snapshotSequenceNumber, int eventCount) {
+        List<DomainEventMessage> events = new ArrayList<DomainEventMessage>();
+        long sequenceNumber = 0;
+        if (snapshotSequenceNumber >= 0) {
+            events.add(new GenericDomainEventMessage<Object>(aggregateIdentifier, snapshotSequenceNumber,
+                                                             mock(EventSourcedAggregateRoot.class)));
+            sequenceNumber = snapshotSequenceNumber + 1;
+        }
+        for (int i = 0; i < eventCount; i++) {
+            events.add(new GenericDomainEventMessage<Object>(aggregateIdentifier, sequenceNumber++,
+                                                             new ContactNameChangedEvent(aggregateIdentifier,
+                                                                                         "name " + i)));
+        }
+        DomainEventStream stream = trigger.decorateForRead("Contact", aggregateIdentifier,
+                                                           new SimpleDomainEventStream(events));
+        while (stream.hasNext()) {
+            stream.next();
+        }
+    }
+
+    private void loadAndAppend(String aggregateIdentifier, long snapshotSequenceNumber, int loadedEvents,
+                               int appendedEvents) {
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        load(aggregateIdentifier, snapshotSequenceNumber, loadedEvents);
+        append(aggregateIdentifier, appendedEvents);
+        unitOfWork.commit();
+    }
+
+    private void append(String aggregateIdentifier, int eventCount) {
+        EventSourcedAggregateRoot aggregate = mock(EventSourcedAggregateRoot.class);
+        when(aggregate.getIdentifier()).thenReturn(aggregateIdentifier);
+        when(aggregate.getUncommittedEventCount()).thenReturn(eventCount);
+        trigger.decorateForAppend("Contact", aggregate, new SimpleDomainEventStream());
+    }
+}
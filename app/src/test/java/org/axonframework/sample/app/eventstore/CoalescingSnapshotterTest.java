@@ -0,0 +1,128 @@
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.eventsourcing.Snapshotter;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the snapshotter that keeps at most one waiting snapshot per aggregate
+ */
+public class CoalescingSnapshotterTest {
+
+    private Snapshotter delegate;
+    private QueueingExecutor executor;
+    private CoalescingSnapshotter snapshotter;
+
+    @Before
+    public void setUp() {
+        delegate = mock(Snapshotter.class);
+        executor = new QueueingExecutor(10);
+        snapshotter = new CoalescingSnapshotter(delegate, executor);
+    }
+
+    @Test
+    public void testRequestsForWaitingSnapshotAreCoalesced() {
+        snapshotter.scheduleSnapshot("Contact", "1");
+        snapshotter.scheduleSnapshot("Contact", "1");
+        snapshotter.scheduleSnapshot("Contact", "2");
+
+        assertEquals(2, executor.tasks.size());
+        assertEquals(2, snapshotter.getPendingCount());
+        assertEquals(1, snapshotter.getCoalescedCount());
+
+        executor.runAll();
+
+        verify(delegate, times(1)).scheduleSnapshot("Contact", "1");
+        verify(delegate, times(1)).scheduleSnapshot("Contact", "2");
+        assertEquals(0, snapshotter.getPendingCount());
+        assertEquals(2, snapshotter.getCreatedCount());
+    }
+
+    @Test
+    public void testNewRequestAfterSnapshotIsCreated() {
+        snapshotter.scheduleSnapshot("Contact", "1");
+        executor.runAll();
+        snapshotter.scheduleSnapshot("Contact", "1");
+        executor.runAll();
+
+        verify(delegate, times(2)).scheduleSnapshot("Contact", "1");
+        assertEquals(0, snapshotter.getCoalescedCount());
+    }
+
+    @Test
+    public void testRejectedRequestIsDropped() {
+        executor = new QueueingExecutor(1);
+        snapshotter = new CoalescingSnapshotter(delegate, executor);
+
+        snapshotter.scheduleSnapshot("Contact", "1");
+        snapshotter.scheduleSnapshot("Contact", "2");
+
+        assertEquals(1, snapshotter.getRejectedCount());
+        assertEquals(1, snapshotter.getPendingCount());
+
+        executor.runAll();
+        snapshotter.scheduleSnapshot("Contact", "2");
+        executor.runAll();
+
+        verify(delegate).scheduleSnapshot("Contact", "2");
+    }
+
+    @Test
+    public void testFailingSnapshotDoesNotBlockLaterRequests() {
+        doThrow(new IllegalStateException("mock")).doNothing().when(delegate).scheduleSnapshot("Contact", "1");
+
+        snapshotter.scheduleSnapshot("Contact", "1");
+        executor.runAll();
+        snapshotter.scheduleSnapshot("Contact", "1");
+        executor.runAll();
+
+        verify(delegate, times(2)).scheduleSnapshot("Contact", "1");
+        assertEquals(1, snapshotter.getCreatedCount());
+    }
+
+    @Test
+    public void testObjectNameIsUniqueUnlessConfigured() throws Exception {
+        CoalescingSnapshotter other = new CoalescingSnapshotter(delegate, executor);
+        assertFalse(snapshotter.getObjectName().equals(other.getObjectName()));
+        assertEquals("Snapshotter", snapshotter.getObjectName().getKeyProperty("type"));
+
+        other.setObjectName("org.axonframework.sample:type=Snapshotter,name=contact,application=rest");
+        assertEquals(new ObjectName("org.axonframework.sample:type=Snapshotter,name=contact,application=rest"),
+                     other.getObjectName());
+    }
+
+    private static class QueueingExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+        private final int capacity;
+
+        private QueueingExecutor(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (tasks.size() >= capacity) {
+                throw new RejectedExecutionException("Queue is full");
+            }
+            tasks.add(command);
+        }
+
+        public void runAll() {
+            List<Runnable> toRun = new ArrayList<Runnable>(tasks);
+            tasks.clear();
+            for (Runnable task : toRun) {
+                task.run();
+            }
+        }
+    }
+}
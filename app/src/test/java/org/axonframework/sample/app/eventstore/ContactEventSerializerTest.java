@@ -0,0 +1,97 @@
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressChangedEvent;
+import org.axonframework.sample.app.api.AddressRemovedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.xml.XStreamSerializer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the binary serializer of the contact events
+ */
+public class ContactEventSerializerTest {
+
+    private final ContactEventSerializer serializer = new ContactEventSerializer();
+    private final XStreamSerializer xStreamSerializer = new XStreamSerializer();
+
+    @Test
+    public void testContactEventsAreWrittenInBinary() {
+        ContactCreatedEvent created = roundTrip(serializer, new ContactCreatedEvent("1", "Allard"));
+        assertEquals("1", created.getContactId());
+        assertEquals("Allard", created.getName());
+
+        ContactNameChangedEvent nameChanged = roundTrip(serializer, new ContactNameChangedEvent("1", "Jettro"));
+        assertEquals("Jettro", nameChanged.getNewName());
+
+        assertEquals("1", roundTrip(serializer, new ContactDeletedEvent("1")).getContactId());
+
+        AddressAddedEvent added = roundTrip(serializer, new AddressAddedEvent(
+                "1", AddressType.VACATION, new Address("Kerkstraat 1", "1234AB", "Amsterdam")));
+        assertEquals(AddressType.VACATION, added.getType());
+        assertEquals("Kerkstraat 1", added.getAddress().getStreetAndNumber());
+        assertEquals("1234AB", added.getAddress().getZipCode());
+        assertEquals("Amsterdam", added.getAddress().getCity());
+
+        AddressChangedEvent changed = roundTrip(serializer, new AddressChangedEvent(
+                "1", AddressType.WORK, new Address("Laan 12", "3526KS", "Utrecht")));
+        assertEquals(AddressType.WORK, changed.getType());
+        assertEquals("Utrecht", changed.getAddress().getCity());
+
+        AddressRemovedEvent removed = roundTrip(serializer, new AddressRemovedEvent("1", AddressType.PRIVATE));
+        assertEquals(AddressType.PRIVATE, removed.getType());
+    }
+
+    @Test
+    public void testXStreamPayloadsCanStillBeRead() {
+        SerializedObject<byte[]> xml = xStreamSerializer.serialize(new ContactCreatedEvent("1", "Allard"),
+                                                                   byte[].class);
+        assertFalse(ContactEventSerializer.isBinary(xml.getData()));
+
+        ContactCreatedEvent event = serializer.deserialize(xml);
+
+        assertEquals("Allard", event.getName());
+    }
+
+    @Test
+    public void testOtherObjectsAreSerializedByTheFallback() {
+        SerializedObject<byte[]> serialized = serializer.serialize(Arrays.asList("a", "b"), byte[].class);
+
+        assertFalse(ContactEventSerializer.isBinary(serialized.getData()));
+        assertEquals(Arrays.asList("a", "b"), serializer.deserialize(serialized));
+    }
+
+    @Test
+    public void testBinaryEventsAreSmallerThanXStream() {
+        List<Object> events = Arrays.<Object>asList(
+                new ContactCreatedEvent("6a7e4d2c-4e6e-4a1b-9c1f-3b6b3f0e9a11", "Allard Buijze"),
+                new ContactNameChangedEvent("6a7e4d2c-4e6e-4a1b-9c1f-3b6b3f0e9a11", "Jettro Coenradie"),
+                new AddressAddedEvent("6a7e4d2c-4e6e-4a1b-9c1f-3b6b3f0e9a11", AddressType.PRIVATE,
+                                      new Address("Kerkstraat 1", "1234AB", "Amsterdam")),
+                new AddressRemovedEvent("6a7e4d2c-4e6e-4a1b-9c1f-3b6b3f0e9a11", AddressType.PRIVATE),
+                new ContactDeletedEvent("6a7e4d2c-4e6e-4a1b-9c1f-3b6b3f0e9a11"));
+
+        for (Object event : events) {
+            int binarySize = serializer.serialize(event, byte[].class).getData().length;
+            int xmlSize = xStreamSerializer.serialize(event, byte[].class).getData().length;
+            assertTrue(event.getClass().getSimpleName() + " is not smaller in binary", binarySize < xmlSize);
+        }
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static <T> T roundTrip(ContactEventSerializer serializer, T event) {
+        SerializedObject<byte[]> serialized = serializer.serialize(event, byte[].class);
+        assertTrue(ContactEventSerializer.isBinary(serialized.getData()));
+        return (T) serializer.deserialize(serialized);
+    }
+}
@@ -0,0 +1,122 @@
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.eventstore.fs.FileSystemEventStore;
+import org.axonframework.eventstore.fs.SimpleEventFileResolver;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for copying the events of the file system event store into the memory-mapped event store
+ */
+public class FileSystemEventStoreMigrationTest {
+
+    private File oldBaseDir;
+    private File baseDir;
+    private FileSystemEventStore oldEventStore;
+    private MappedSegmentEventStore eventStore;
+
+    @Before
+    public void setUp() throws Exception {
+        oldBaseDir = createTempDirectory("oldeventstore");
+        baseDir = createTempDirectory("eventstore");
+        oldEventStore = new FileSystemEventStore(new SimpleEventFileResolver(oldBaseDir));
+        eventStore = new MappedSegmentEventStore(baseDir);
+        eventStore.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventStore.destroy();
+        delete(oldBaseDir);
+        delete(baseDir);
+    }
+
+    @Test
+    public void testAllEventsAreCopiedWithoutTheSnapshots() throws Exception {
+        oldEventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("1", 0, new ContactCreatedEvent("1", "Allard")),
+                event("1", 1, new ContactNameChangedEvent("1", "Allard Buijze"))));
+        oldEventStore.appendSnapshotEvent("Contact", event("1", 1, new ContactNameChangedEvent("1", "Snapshot")));
+        oldEventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("1", 2, new ContactNameChangedEvent("1", "Allard"))));
+        oldEventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("contact/2", 0, new ContactCreatedEvent("contact/2", "Jettro"))));
+
+        new FileSystemEventStoreMigration(oldBaseDir, eventStore).afterPropertiesSet();
+
+        List<DomainEventMessage> events = readAll("1");
+        assertEquals(3, events.size());
+        assertEquals("Allard", ((ContactCreatedEvent) events.get(0).getPayload()).getName());
+        assertEquals("Allard Buijze", ((ContactNameChangedEvent) events.get(1).getPayload()).getNewName());
+        assertEquals(2, events.get(2).getSequenceNumber());
+        assertEquals(1, readAll("contact/2").size());
+        assertFalse(new File(oldBaseDir, "Contact").exists());
+        assertTrue(new File(oldBaseDir, "Contact.migrated").isDirectory());
+    }
+
+    @Test
+    public void testInterruptedMigrationIsCompleted() throws Exception {
+        oldEventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("1", 0, new ContactCreatedEvent("1", "Allard")),
+                event("1", 1, new ContactNameChangedEvent("1", "Allard Buijze"))));
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("1", 0, new ContactCreatedEvent("1", "Allard"))));
+
+        new FileSystemEventStoreMigration(oldBaseDir, eventStore).afterPropertiesSet();
+
+        List<DomainEventMessage> events = readAll("1");
+        assertEquals(2, events.size());
+        assertEquals(1, events.get(1).getSequenceNumber());
+    }
+
+    @Test
+    public void testNothingHappensWithoutAnOldEventStore() throws Exception {
+        new FileSystemEventStoreMigration(oldBaseDir, eventStore).afterPropertiesSet();
+
+        assertNull(eventStore.getLastSequenceNumber("Contact", "1"));
+        assertFalse(new File(oldBaseDir, "Contact.migrated").exists());
+    }
+
+    private List<DomainEventMessage> readAll(String aggregateIdentifier) {
+        List<DomainEventMessage> events = new ArrayList<DomainEventMessage>();
+        DomainEventStream stream = eventStore.readEvents("Contact", aggregateIdentifier);
+        while (stream.hasNext()) {
+            events.add(stream.next());
+        }
+        return events;
+    }
+
+    private static DomainEventMessage<Object> event(String aggregateIdentifier, long sequenceNumber, Object payload) {
+        return new GenericDomainEventMessage<Object>(aggregateIdentifier, sequenceNumber, payload);
+    }
+
+    private static File createTempDirectory(String prefix) throws Exception {
+        File directory = File.createTempFile(prefix, "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        return directory;
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,226 @@
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.eventstore.EventStreamNotFoundException;
+import org.axonframework.repository.ConcurrencyException;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the event store based on memory-mapped segments
+ */
+public class MappedSegmentEventStoreTest {
+
+    private File baseDir;
+    private MappedSegmentEventStore eventStore;
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir = File.createTempFile("eventstore", "");
+        assertTrue(baseDir.delete());
+        eventStore = open(1024 * 1024);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventStore.destroy();
+        File[] files = baseDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        baseDir.delete();
+    }
+
+    @Test
+    public void testEventsAreReadInOrder() {
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("1", 0, new ContactCreatedEvent("1", "Allard")),
+                event("1", 1, new ContactNameChangedEvent("1", "Allard Buijze"))));
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("2", 0, new ContactCreatedEvent("2", "Jettro"))));
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("1", 2, new ContactNameChangedEvent("1", "Allard"))));
+
+        List<DomainEventMessage> events = readAll("1");
+
+        assertEquals(3, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(i, events.get(i).getSequenceNumber());
+            assertEquals("1", events.get(i).getAggregateIdentifier());
+        }
+        assertEquals("Allard", ((ContactCreatedEvent) events.get(0).getPayload()).getName());
+        assertEquals("Allard", ((ContactNameChangedEvent) events.get(2).getPayload()).getNewName());
+    }
+
+    @Test
+    public void testVisitEventsContinuesFromThePreviousVisit() throws Exception {
+        eventStore.destroy();
+        eventStore = open(512);
+        for (int i = 0; i < 10; i++) {
+            eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                    event("1", i, new ContactNameChangedEvent("1", "Name " + i))));
+        }
+        eventStore.appendSnapshotEvent("Contact", event("1", 9, "snapshot"));
+        eventStore.appendEvents("Other", new SimpleDomainEventStream(event("1", 0, "other")));
+
+        final List<String> names = new ArrayList<String>();
+        MappedSegmentEventStore.EventVisitor visitor = new MappedSegmentEventStore.EventVisitor() {
+            @Override
+            public void visit(MappedSegmentEventStore.StoredEvent event) {
+                assertEquals("1", event.getAggregateIdentifier());
+                names.add(((ContactNameChangedEvent) event.decode().getPayload()).getNewName());
+            }
+        };
+        long position = eventStore.visitEvents("Contact", 0, visitor);
+        assertEquals(10, names.size());
+        assertEquals("Name 0", names.get(0));
+        assertEquals("Name 9", names.get(9));
+
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("1", 10, new ContactNameChangedEvent("1", "Name 10"))));
+        position = eventStore.visitEvents("Contact", position, visitor);
+        assertEquals(11, names.size());
+        assertEquals("Name 10", names.get(10));
+
+        eventStore.visitEvents("Contact", position, visitor);
+        assertEquals(11, names.size());
+    }
+
+    @Test
+    public void testReadingStartsAtTheLatestSnapshot() {
+        for (int i = 0; i < 4; i++) {
+            eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                    event("1", i, new ContactNameChangedEvent("1", "Name " + i))));
+        }
+        eventStore.appendSnapshotEvent("Contact", event("1", 2, "snapshot"));
+
+        List<DomainEventMessage> events = readAll("1");
+
+        assertEquals(2, events.size());
+        assertEquals("snapshot", events.get(0).getPayload());
+        assertEquals(3, events.get(1).getSequenceNumber());
+    }
+
+    @Test
+    public void testBytesSinceSnapshot() {
+        assertEquals(0, eventStore.getBytesSinceSnapshot("Contact", "1"));
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("1", 0, new ContactNameChangedEvent("1", "Name 0"))));
+        long oneEvent = eventStore.getBytesSinceSnapshot("Contact", "1");
+        assertTrue(oneEvent > 0);
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("1", 1, new ContactNameChangedEvent("1", "Name 1"))));
+        assertTrue(eventStore.getBytesSinceSnapshot("Contact", "1") > oneEvent);
+
+        eventStore.appendSnapshotEvent("Contact", event("1", 1, "snapshot"));
+
+        assertEquals(0, eventStore.getBytesSinceSnapshot("Contact", "1"));
+    }
+
+    @Test(expected = EventStreamNotFoundException.class)
+    public void testUnknownAggregate() {
+        eventStore.readEvents("Contact", "unknown");
+    }
+
+    @Test(expected = ConcurrencyException.class)
+    public void testEventsWithAnExistingSequenceNumberAreRejected() {
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("1", 0, new ContactCreatedEvent("1", "Allard"))));
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("1", 0, new ContactCreatedEvent("1", "Jettro"))));
+    }
+
+    @Test
+    public void testSegmentsRollAndAreReopened() throws Exception {
+        eventStore.destroy();
+        eventStore = open(2048);
+        for (int i = 0; i < 50; i++) {
+            eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                    event("1", i, new ContactNameChangedEvent("1", "Name " + i))));
+        }
+        assertTrue(baseDir.listFiles().length > 1);
+
+        eventStore.destroy();
+        eventStore = open(2048);
+
+        List<DomainEventMessage> events = readAll("1");
+        assertEquals(50, events.size());
+        assertEquals("Name 49", ((ContactNameChangedEvent) events.get(49).getPayload()).getNewName());
+    }
+
+    @Test
+    public void testPartiallyWrittenRecordIsDiscardedOnRecovery() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                    event("1", i, new ContactNameChangedEvent("1", "Name " + i))));
+        }
+        eventStore.destroy();
+        corruptLastRecord(new File(baseDir, "segment-0000000000.log"));
+
+        eventStore = open(1024 * 1024);
+        assertEquals(2, readAll("1").size());
+
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                event("1", 2, new ContactNameChangedEvent("1", "Recovered"))));
+        eventStore.destroy();
+        eventStore = open(1024 * 1024);
+
+        List<DomainEventMessage> events = readAll("1");
+        assertEquals(3, events.size());
+        assertEquals("Recovered", ((ContactNameChangedEvent) events.get(2).getPayload()).getNewName());
+    }
+
+    private MappedSegmentEventStore open(int segmentSize) throws IOException {
+        MappedSegmentEventStore store = new MappedSegmentEventStore(baseDir);
+        store.setSegmentSize(segmentSize);
+        store.afterPropertiesSet();
+        return store;
+    }
+
+    private List<DomainEventMessage> readAll(String aggregateIdentifier) {
+        List<DomainEventMessage> events = new ArrayList<DomainEventMessage>();
+        DomainEventStream stream = eventStore.readEvents("Contact", aggregateIdentifier);
+        while (stream.hasNext()) {
+            events.add(stream.next());
+        }
+        return events;
+    }
+
+    private static DomainEventMessage<Object> event(String aggregateIdentifier, long sequenceNumber, Object payload) {
+        return new GenericDomainEventMessage<Object>(aggregateIdentifier, sequenceNumber, payload);
+    }
+
+    private static void corruptLastRecord(File segment) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            long position = file.length() - 1;
+            file.seek(position);
+            byte value = file.readByte();
+            while (position > 0 && value == 0) {
+                position--;
+                file.seek(position);
+                value = file.readByte();
+            }
+            file.seek(position);
+            file.writeByte(~value);
+        } finally {
+            file.close();
+        }
+    }
+}
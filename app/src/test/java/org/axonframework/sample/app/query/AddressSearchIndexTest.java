@@ -0,0 +1,102 @@
+package org.axonframework.sample.app.query;
+
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressChangedEvent;
+import org.axonframework.sample.app.api.AddressRemovedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the in-memory address search index
+ */
+public class AddressSearchIndexTest {
+    private AddressSearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new AddressSearchIndex();
+        index.handleContactCreatedEvent(new ContactCreatedEvent("1", "Allard Buijze"));
+        index.handleContactCreatedEvent(new ContactCreatedEvent("2", "Jettro Coenradie"));
+        index.handleAddressAddedEvent(new AddressAddedEvent("1", AddressType.PRIVATE,
+                                                            new Address("Kerkstraat 1", "1234AB", "Amsterdam")));
+        index.handleAddressAddedEvent(new AddressAddedEvent("1", AddressType.WORK,
+                                                            new Address("Laan 12", "3526KS", "Utrecht")));
+        index.handleAddressAddedEvent(new AddressAddedEvent("2", AddressType.PRIVATE,
+                                                            new Address("Dorpsstraat 5", "1000AA", "Amstelveen")));
+    }
+
+    @Test
+    public void testSubstringsOfAllFieldsAreFound() {
+        assertEquals(2, index.search(null, "amst", null, null, 10).size());
+        assertEquals(1, index.search("buijze", "dam", null, null, 10).size());
+        assertEquals(1, index.search(null, null, "3526", null, 10).size());
+        assertEquals(2, index.search(null, null, null, "straat", 10).size());
+        assertEquals(0, index.search("jettro", "utrecht", null, null, 10).size());
+    }
+
+    @Test
+    public void testShortTermsAreMatchedWithoutTheIndex() {
+        List<AddressEntry> found = index.search("co", "am", null, null, 10);
+
+        assertEquals(1, found.size());
+        assertEquals("Jettro Coenradie", found.get(0).getName());
+    }
+
+    @Test
+    public void testResultsAreOrderedAndLimited() {
+        List<AddressEntry> found = index.search(null, null, null, null, 2);
+
+        assertEquals(2, found.size());
+        assertEquals(AddressType.PRIVATE, found.get(0).getAddressType());
+        assertEquals(AddressType.WORK, found.get(1).getAddressType());
+        assertEquals("1", found.get(1).getIdentifier());
+    }
+
+    @Test
+    public void testSearchWithoutIndexStopsAtTheScanLimit() {
+        index.setScanLimit(2);
+
+        assertEquals(0, index.search("co", null, null, null, 10).size());
+        assertEquals(1, index.search("co", "amst", null, null, 10).size());
+    }
+
+    @Test
+    public void testIndexedSearchReturnsTheFirstResultsInOrder() {
+        index.handleContactCreatedEvent(new ContactCreatedEvent("3", "Bert Amsterdammer"));
+        index.handleAddressAddedEvent(new AddressAddedEvent("3", AddressType.WORK,
+                                                            new Address("Damrak 1", "1012AB", "Amsterdam")));
+
+        List<AddressEntry> found = index.search(null, "amst", null, null, 2);
+
+        assertEquals(2, found.size());
+        assertEquals("Allard Buijze", found.get(0).getName());
+        assertEquals("Bert Amsterdammer", found.get(1).getName());
+    }
+
+    @Test
+    public void testIndexFollowsTheEvents() {
+        index.handleContactNameChangedEvent(new ContactNameChangedEvent("1", "Allard"));
+        index.handleAddressChangedEvent(new AddressChangedEvent("1", AddressType.WORK,
+                                                                new Address("Laan 12", "2611AA", "Delft")));
+        index.handleAddressRemovedEvent(new AddressRemovedEvent("1", AddressType.PRIVATE));
+
+        assertEquals(0, index.search("buijze", null, null, null, 10).size());
+        assertEquals(0, index.search(null, "utrecht", null, null, 10).size());
+        List<AddressEntry> found = index.search("allard", "delft", null, null, 10);
+        assertEquals(1, found.size());
+        assertEquals("Allard", found.get(0).getName());
+
+        index.handleContactDeletedEvent(new ContactDeletedEvent("1"));
+        assertEquals(0, index.search("allard", null, null, null, 10).size());
+        assertEquals(1, index.search(null, null, null, null, 10).size());
+    }
+}
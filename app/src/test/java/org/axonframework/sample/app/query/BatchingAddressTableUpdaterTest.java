@@ -0,0 +1,184 @@
+package org.axonframework.sample.app.query;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.eventhandling.annotation.AnnotationEventListenerAdapter;
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressChangedEvent;
+import org.axonframework.sample.app.api.AddressRemovedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the address table updater that writes in batches, using an in-memory database
+ */
+public class BatchingAddressTableUpdaterTest {
+    private BatchingAddressTableUpdater updater;
+    private JdbcTemplate jdbcTemplate;
+    private long sequenceNumber;
+
+    @Before
+    public void setUp() {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource("jdbc:hsqldb:mem:batchingupdater", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE ContactEntry IF EXISTS");
+        jdbcTemplate.execute("DROP TABLE AddressEntry IF EXISTS");
+        jdbcTemplate.execute("DROP TABLE ContactDetailsView IF EXISTS");
+        jdbcTemplate.execute("CREATE TABLE ContactEntry (db_identifier BIGINT GENERATED BY DEFAULT AS IDENTITY "
+                                     + "(START WITH 1) PRIMARY KEY, identifier VARCHAR(255), name VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE AddressEntry (db_identifier BIGINT GENERATED BY DEFAULT AS IDENTITY "
+                                     + "(START WITH 1) PRIMARY KEY, identifier VARCHAR(36), name VARCHAR(255), "
+                                     + "addressType VARCHAR(255), streetAndNumber VARCHAR(255), "
+                                     + "zipCode VARCHAR(255), city VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE ContactDetailsView (identifier VARCHAR(36) PRIMARY KEY, "
+                                     + "name VARCHAR(255), addresses LONGVARCHAR)");
+        startUpdater(dataSource, 10000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        updater.destroy();
+    }
+
+    @Test
+    public void testEventsForTheSameContactAreMerged() throws Exception {
+        handle(new ContactCreatedEvent("1", "Allard"));
+        handle(new AddressAddedEvent("1", AddressType.PRIVATE, address("Amsterdam")));
+        handle(new AddressChangedEvent("1", AddressType.PRIVATE, address("Utrecht")));
+        handle(new AddressAddedEvent("1", AddressType.WORK, address("Delft")));
+        handle(new AddressRemovedEvent("1", AddressType.WORK));
+        handle(new ContactNameChangedEvent("1", "Allard Buijze"));
+        updater.destroy();
+
+        assertEquals("Allard Buijze",
+                     jdbcTemplate.queryForObject("SELECT name FROM ContactEntry WHERE identifier = '1'", String.class));
+        assertEquals(1, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM AddressEntry"));
+        assertEquals("Utrecht", jdbcTemplate.queryForObject("SELECT city FROM AddressEntry", String.class));
+        assertEquals("Allard Buijze", jdbcTemplate.queryForObject("SELECT name FROM AddressEntry", String.class));
+    }
+
+    @Test
+    public void testContactCreatedAndDeletedInOneBatchIsNotWritten() throws Exception {
+        handle(new ContactCreatedEvent("1", "Allard"));
+        handle(new AddressAddedEvent("1", AddressType.PRIVATE, address("Amsterdam")));
+        handle(new ContactDeletedEvent("1"));
+        updater.destroy();
+
+        assertEquals(0, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactEntry"));
+        assertEquals(0, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM AddressEntry"));
+    }
+
+    @Test
+    public void testChangesToContactsFromEarlierBatches() throws Exception {
+        handle(new ContactCreatedEvent("1", "Allard"));
+        handle(new AddressAddedEvent("1", AddressType.PRIVATE, address("Amsterdam")));
+        handle(new ContactCreatedEvent("2", "Jettro"));
+        handle(new AddressAddedEvent("2", AddressType.WORK, address("Amsterdam")));
+        updater.destroy();
+        startUpdater(jdbcTemplate.getDataSource(), 10000);
+
+        handle(new ContactNameChangedEvent("1", "Allard Buijze"));
+        handle(new AddressChangedEvent("1", AddressType.PRIVATE, address("Utrecht")));
+        handle(new AddressAddedEvent("1", AddressType.WORK, address("Delft")));
+        handle(new ContactDeletedEvent("2"));
+        updater.destroy();
+
+        assertEquals(1, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactEntry"));
+        assertEquals(2, jdbcTemplate.queryForInt(
+                "SELECT COUNT(*) FROM AddressEntry WHERE identifier = '1' AND name = 'Allard Buijze'"));
+        assertEquals("Utrecht", jdbcTemplate.queryForObject(
+                "SELECT city FROM AddressEntry WHERE addressType = 'PRIVATE'", String.class));
+        assertEquals("Delft", jdbcTemplate.queryForObject(
+                "SELECT city FROM AddressEntry WHERE addressType = 'WORK'", String.class));
+        assertEquals(1, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactDetailsView"));
+        String addresses = jdbcTemplate.queryForObject(
+                "SELECT addresses FROM ContactDetailsView WHERE name = 'Allard Buijze'", String.class);
+        assertTrue(addresses.contains("Utrecht"));
+        assertTrue(addresses.contains("Delft"));
+    }
+
+    @Test
+    public void testEventsBehindTheFenceAreSkipped() throws Exception {
+        ProjectionFence fence = mock(ProjectionFence.class);
+        when(fence.isBehind(argThat(new ArgumentMatcher<DomainEventMessage<?>>() {
+            @Override
+            public boolean matches(Object message) {
+                return ((DomainEventMessage<?>) message).getSequenceNumber() == 0;
+            }
+        }))).thenReturn(true);
+        updater.setProjectionFence(fence);
+
+        handle(new ContactCreatedEvent("1", "Allard"));
+        handle(new AddressAddedEvent("1", AddressType.PRIVATE, address("Amsterdam")));
+        updater.destroy();
+
+        assertEquals(0, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactEntry"));
+        assertEquals(1, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM AddressEntry"));
+    }
+
+    @Test
+    public void testBatchIsWrittenWhenTheWindowExpires() throws Exception {
+        updater.destroy();
+        startUpdater(jdbcTemplate.getDataSource(), 20);
+        handle(new ContactCreatedEvent("1", "Allard"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactEntry") == 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactEntry"));
+    }
+
+    @Test
+    public void testEventThatCannotBeWrittenDoesNotTakeTheBatchWithIt() throws Exception {
+        jdbcTemplate.execute("CREATE UNIQUE INDEX contact_identifier ON ContactEntry (identifier)");
+        jdbcTemplate.update("INSERT INTO ContactEntry (identifier, name) VALUES ('1', 'Allard')");
+        updater.setMaxRetries(1);
+        updater.setRetryInterval(0);
+
+        handle(new ContactCreatedEvent("1", "Allard"));
+        handle(new ContactCreatedEvent("2", "Jettro"));
+        handle(new AddressAddedEvent("2", AddressType.WORK, address("Amsterdam")));
+        updater.destroy();
+
+        assertEquals(1, updater.getSkippedEventCount());
+        assertEquals(2, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactEntry"));
+        assertEquals("Jettro", jdbcTemplate.queryForObject("SELECT name FROM AddressEntry", String.class));
+        assertEquals(1, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactDetailsView WHERE identifier = '2'"));
+    }
+
+    private void startUpdater(DataSource dataSource, long batchWindow) {
+        updater = new BatchingAddressTableUpdater();
+        updater.setDataSource(dataSource);
+        updater.setTransactionManager(new DataSourceTransactionManager(dataSource));
+        updater.setBatchWindow(batchWindow);
+        updater.afterPropertiesSet();
+    }
+
+    private void handle(Object event) {
+        new AnnotationEventListenerAdapter(updater).handle(
+                new GenericDomainEventMessage<Object>("contact", sequenceNumber++, event));
+    }
+
+    private static Address address(String city) {
+        return new Address("Street 1", "1234AB", city);
+    }
+}
@@ -0,0 +1,237 @@
+package org.axonframework.sample.app.query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.management.ObjectName;
+import javax.persistence.NoResultException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the cache of contact details and addresses
+ */
+public class CachingContactRepositoryTest {
+
+    private ContactRepository delegate;
+    private CachingContactRepository cache;
+
+    @Before
+    public void setUp() {
+        delegate = mock(ContactRepository.class);
+        cache = new CachingContactRepository(delegate);
+        when(delegate.loadContactDetails("1")).thenReturn(contact("1", "Allard"));
+        when(delegate.loadContactDetails("2")).thenReturn(contact("2", "Jettro"));
+        when(delegate.findAllAddressesForContact("1")).thenReturn(Arrays.asList(new AddressEntry()));
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testRepeatedReadsAreServedFromTheCache() {
+        assertEquals("Allard", cache.loadContactDetails("1").getName());
+        assertEquals("Allard", cache.loadContactDetails("1").getName());
+        assertEquals(1, cache.findAllAddressesForContact("1").size());
+        assertEquals(1, cache.findAllAddressesForContact("1").size());
+
+        verify(delegate, times(1)).loadContactDetails("1");
+        verify(delegate, times(1)).findAllAddressesForContact("1");
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testOtherQueriesAreNotCached() {
+        cache.countContacts();
+        cache.countContacts();
+
+        verify(delegate, times(2)).countContacts();
+    }
+
+    @Test
+    public void testExpiredEntriesAreLoadedAgain() throws InterruptedException {
+        cache.setTimeToLive(10);
+        cache.loadContactDetails("1");
+        Thread.sleep(20);
+        cache.loadContactDetails("1");
+
+        verify(delegate, times(2)).loadContactDetails("1");
+    }
+
+    @Test
+    public void testLeastRecentlyUsedContactIsDropped() {
+        cache.setMaximumSize(1);
+        cache.loadContactDetails("1");
+        cache.loadContactDetails("2");
+        cache.loadContactDetails("1");
+
+        verify(delegate, times(2)).loadContactDetails("1");
+        assertEquals(1, cache.getSize());
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testEvictedContactIsLoadedAgain() {
+        cache.loadContactDetails("1");
+        cache.findAllAddressesForContact("1");
+        cache.evict("1");
+        cache.loadContactDetails("1");
+        cache.findAllAddressesForContact("1");
+
+        verify(delegate, times(2)).loadContactDetails("1");
+        verify(delegate, times(2)).findAllAddressesForContact("1");
+    }
+
+    @Test
+    public void testDataLoadedDuringAnEvictionIsNotCached() {
+        when(delegate.loadContactDetails("1")).thenAnswer(new Answer<ContactEntry>() {
+            @Override
+            public ContactEntry answer(InvocationOnMock invocation) {
+                cache.evict("1");
+                return contact("1", "Allard");
+            }
+        });
+        cache.loadContactDetails("1");
+        cache.loadContactDetails("1");
+
+        verify(delegate, times(2)).loadContactDetails("1");
+    }
+
+    @Test
+    public void testEvictingAnotherContactDuringALoadKeepsTheLoadedData() {
+        when(delegate.loadContactDetails("1")).thenAnswer(new Answer<ContactEntry>() {
+            @Override
+            public ContactEntry answer(InvocationOnMock invocation) {
+                cache.evict("2");
+                cache.findAllAddressesForContact("1");
+                return contact("1", "Allard");
+            }
+        });
+        cache.loadContactDetails("1");
+        cache.loadContactDetails("1");
+        cache.findAllAddressesForContact("1");
+
+        verify(delegate, times(1)).loadContactDetails("1");
+        verify(delegate, times(1)).findAllAddressesForContact("1");
+    }
+
+    @Test
+    public void testLoadStartedAfterAnEvictionIsCached() {
+        when(delegate.loadContactDetails("1")).thenAnswer(new Answer<ContactEntry>() {
+            private boolean first = true;
+
+            @Override
+            public ContactEntry answer(InvocationOnMock invocation) {
+                if (first) {
+                    first = false;
+                    cache.evict("1");
+                    // a load that starts after the eviction reads the changed data
+                    cache.loadContactDetails("1");
+                }
+                return contact("1", "Allard");
+            }
+        });
+        cache.loadContactDetails("1");
+        cache.loadContactDetails("1");
+
+        verify(delegate, times(2)).loadContactDetails("1");
+    }
+
+    @Test
+    public void testContactIsEvictedAgainWhenTheTransactionCompletes() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.evictAfterCommit("1");
+        cache.loadContactDetails("1");
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        cache.loadContactDetails("1");
+
+        verify(delegate, times(2)).loadContactDetails("1");
+    }
+
+    @Test
+    public void testMissingContactIsNotCached() {
+        when(delegate.loadContactDetails("3")).thenThrow(new NoResultException());
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.loadContactDetails("3");
+                fail("Expected a NoResultException");
+            } catch (NoResultException e) {
+                // expected
+            }
+        }
+
+        verify(delegate, times(2)).loadContactDetails("3");
+    }
+
+    @Test
+    public void testDetailsViewIsCachedAndEvicted() {
+        ContactDetailsView view = new ContactDetailsView();
+        view.setIdentifier("1");
+        view.setName("Allard");
+        when(delegate.loadContactDetailsView("1")).thenReturn(view);
+
+        assertSame(view, cache.loadContactDetailsView("1"));
+        assertSame(view, cache.loadContactDetailsView("1"));
+        cache.evictAfterCommit("1");
+        assertSame(view, cache.loadContactDetailsView("1"));
+
+        verify(delegate, times(2)).loadContactDetailsView("1");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testMissingDetailsViewIsNotCached() {
+        when(delegate.loadContactDetailsView("3")).thenThrow(new NoResultException());
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.loadContactDetailsView("3");
+                fail("Expected a NoResultException");
+            } catch (NoResultException e) {
+                // expected
+            }
+        }
+
+        verify(delegate, times(2)).loadContactDetailsView("3");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCachedAddressesCannotBeModified() {
+        cache.findAllAddressesForContact("1").clear();
+    }
+
+    @Test
+    public void testObjectNameIsUniqueUnlessConfigured() throws Exception {
+        CachingContactRepository other = new CachingContactRepository(delegate);
+        assertFalse(cache.getObjectName().equals(other.getObjectName()));
+        assertEquals("QueryCache", cache.getObjectName().getKeyProperty("type"));
+
+        other.setObjectName("org.axonframework.sample:type=QueryCache,name=contact,application=rest");
+        assertEquals(new ObjectName("org.axonframework.sample:type=QueryCache,name=contact,application=rest"),
+                     other.getObjectName());
+    }
+
+    private static ContactEntry contact(String identifier, String name) {
+        ContactEntry contact = new ContactEntry();
+        contact.setIdentifier(identifier);
+        contact.setName(name);
+        return contact;
+    }
+}
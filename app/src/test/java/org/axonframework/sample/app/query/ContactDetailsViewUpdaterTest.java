@@ -0,0 +1,160 @@
+package org.axonframework.sample.app.query;
+
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressChangedEvent;
+import org.axonframework.sample.app.api.AddressRemovedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.NoResultException;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the view with the details of a contact against the in-memory database
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath:/META-INF/spring/database-context.xml"})
+@Transactional
+public class ContactDetailsViewUpdaterTest {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ContactDetailsViewUpdater updater;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private ContactDetailsViewBackfill backfill;
+
+    @Test
+    public void testViewContainsTheContactWithItsAddresses() {
+        updater.handleContactCreatedEvent(new ContactCreatedEvent("view-1", "Allard"));
+        updater.handleAddressRegisteredEvent(
+                new AddressAddedEvent("view-1", AddressType.PRIVATE, new Address("Street 1", "1234AB", "Amsterdam")));
+        updater.handleAddressRegisteredEvent(
+                new AddressAddedEvent("view-1", AddressType.WORK, new Address("Office 2", "5678CD", "Utrecht")));
+        updater.handleAddressRegisteredEvent(
+                new AddressChangedEvent("view-1", AddressType.PRIVATE, new Address("Street 3", "1234AB", "Amsterdam")));
+        updater.handleContactNameChangedEvent(new ContactNameChangedEvent("view-1", "Jettro"));
+        reload();
+
+        ContactDetailsView view = contactRepository.loadContactDetailsView("view-1");
+        assertEquals("Jettro", view.getName());
+        List<AddressEntry> addresses = view.getAddresses();
+        assertEquals(2, addresses.size());
+        assertEquals(AddressType.PRIVATE, addresses.get(0).getAddressType());
+        assertEquals("Street 3", addresses.get(0).getStreetAndNumber());
+        assertEquals("view-1", addresses.get(0).getIdentifier());
+        assertEquals("Jettro", addresses.get(0).getName());
+        assertEquals(AddressType.WORK, addresses.get(1).getAddressType());
+        assertEquals("Utrecht", addresses.get(1).getCity());
+    }
+
+    @Test
+    public void testRemovedAddressIsRemovedFromTheView() {
+        updater.handleContactCreatedEvent(new ContactCreatedEvent("view-2", "Allard"));
+        updater.handleAddressRegisteredEvent(
+                new AddressAddedEvent("view-2", AddressType.PRIVATE, new Address("Street 1", "1234AB", "Amsterdam")));
+        reload();
+        updater.handleAddressRemovedEvent(new AddressRemovedEvent("view-2", AddressType.PRIVATE));
+        reload();
+
+        assertTrue(contactRepository.loadContactDetailsView("view-2").getAddresses().isEmpty());
+    }
+
+    @Test(expected = NoResultException.class)
+    public void testDeletedContactIsRemovedFromTheView() {
+        updater.handleContactCreatedEvent(new ContactCreatedEvent("view-3", "Allard"));
+        reload();
+        updater.handleContactDeletedEvent(new ContactDeletedEvent("view-3"));
+        reload();
+
+        contactRepository.loadContactDetailsView("view-3");
+    }
+
+    @Test
+    public void testContactCreatedAgainKeepsTheRow() {
+        updater.handleContactCreatedEvent(new ContactCreatedEvent("view-4", "Allard"));
+        updater.handleContactNameChangedEvent(new ContactNameChangedEvent("view-4", "Jettro"));
+        reload();
+        updater.handleContactCreatedEvent(new ContactCreatedEvent("view-4", "Allard"));
+        reload();
+
+        assertEquals("Jettro", contactRepository.loadContactDetailsView("view-4").getName());
+    }
+
+    @Test
+    public void testEventsOfUnknownContactsAreIgnored() {
+        updater.handleContactNameChangedEvent(new ContactNameChangedEvent("view-unknown", "Allard"));
+        updater.handleAddressRemovedEvent(new AddressRemovedEvent("view-unknown", AddressType.WORK));
+        reload();
+
+        assertNull(entityManager.find(ContactDetailsView.class, "view-unknown"));
+    }
+
+    @Test
+    public void testContactWithoutViewIsReadFromTheTables() {
+        storeContactWithoutView("view-5", "Allard");
+        reload();
+
+        ContactDetailsView view = contactRepository.loadContactDetailsView("view-5");
+        assertEquals("Allard", view.getName());
+        assertEquals(1, view.getAddresses().size());
+        assertEquals("Amsterdam", view.getAddresses().get(0).getCity());
+        assertEquals("Allard", view.getAddresses().get(0).getName());
+    }
+
+    @Test
+    public void testMissingViewsAreCreatedByTheBackfill() {
+        storeContactWithoutView("view-6", "Allard");
+        storeContactWithoutView("view-7", "Jettro");
+        updater.handleContactCreatedEvent(new ContactCreatedEvent("view-8", "Existing"));
+        reload();
+
+        backfill.afterPropertiesSet();
+        reload();
+
+        ContactDetailsView view = entityManager.find(ContactDetailsView.class, "view-7");
+        assertNotNull(view);
+        assertEquals("Jettro", view.getName());
+        assertEquals("Amsterdam", view.getAddresses().get(0).getCity());
+        assertNotNull(entityManager.find(ContactDetailsView.class, "view-6"));
+        assertEquals("Existing", entityManager.find(ContactDetailsView.class, "view-8").getName());
+    }
+
+    private void storeContactWithoutView(String identifier, String name) {
+        ContactEntry contact = new ContactEntry();
+        contact.setIdentifier(identifier);
+        contact.setName(name);
+        entityManager.persist(contact);
+        AddressEntry address = new AddressEntry();
+        address.setIdentifier(identifier);
+        address.setName(name);
+        address.setAddressType(AddressType.PRIVATE);
+        address.setStreetAndNumber("Street 1");
+        address.setZipCode("1234AB");
+        address.setCity("Amsterdam");
+        entityManager.persist(address);
+    }
+
+    private void reload() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
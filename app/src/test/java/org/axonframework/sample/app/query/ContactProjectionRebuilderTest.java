@@ -0,0 +1,238 @@
+package org.axonframework.sample.app.query;
+
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressChangedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.sample.app.eventstore.MappedSegmentEventStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for rebuilding the contact and address tables from the event store, using an in-memory database
+ */
+public class ContactProjectionRebuilderTest {
+
+    private File baseDir;
+    private MappedSegmentEventStore eventStore;
+    private JdbcTemplate jdbcTemplate;
+    private ContactProjectionRebuilder rebuilder;
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir = File.createTempFile("eventstore", "");
+        assertTrue(baseDir.delete());
+        eventStore = new MappedSegmentEventStore(baseDir);
+        eventStore.setSegmentSize(64 * 1024);
+        eventStore.afterPropertiesSet();
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:rebuilder", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE ContactEntry IF EXISTS");
+        jdbcTemplate.execute("DROP TABLE AddressEntry IF EXISTS");
+        jdbcTemplate.execute("DROP TABLE ContactDetailsView IF EXISTS");
+        jdbcTemplate.execute("DROP TABLE ProjectionToken IF EXISTS");
+        jdbcTemplate.execute("CREATE TABLE ContactEntry (db_identifier BIGINT GENERATED BY DEFAULT AS IDENTITY "
+                                     + "(START WITH 1) PRIMARY KEY, identifier VARCHAR(255), name VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE AddressEntry (db_identifier BIGINT GENERATED BY DEFAULT AS IDENTITY "
+                                     + "(START WITH 1) PRIMARY KEY, identifier VARCHAR(36), name VARCHAR(255), "
+                                     + "addressType VARCHAR(255), streetAndNumber VARCHAR(255), "
+                                     + "zipCode VARCHAR(255), city VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE ContactDetailsView (identifier VARCHAR(36) PRIMARY KEY, "
+                                     + "name VARCHAR(255), addresses LONGVARCHAR)");
+        jdbcTemplate.execute("CREATE TABLE ProjectionToken (projectionName VARCHAR(255) PRIMARY KEY, "
+                                     + "eventPosition BIGINT NOT NULL)");
+
+        rebuilder = new ContactProjectionRebuilder(eventStore);
+        rebuilder.setDataSource(dataSource);
+        rebuilder.setTransactionManager(new DataSourceTransactionManager(dataSource));
+        rebuilder.setThreadCount(3);
+        rebuilder.setBatchSize(7);
+        rebuilder.setCatchUpThreshold(10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventStore.destroy();
+        File[] files = baseDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        baseDir.delete();
+    }
+
+    @Test
+    public void testTablesAreRebuiltFromTheEvents() throws Exception {
+        jdbcTemplate.update("INSERT INTO ContactEntry (identifier, name) VALUES ('lost', 'Outdated')");
+        for (int i = 0; i < 50; i++) {
+            String id = "contact-" + i;
+            append(id, 0, new ContactCreatedEvent(id, "Contact " + i));
+            append(id, 1, new AddressAddedEvent(id, AddressType.PRIVATE, address("Amsterdam")));
+        }
+        for (int i = 0; i < 50; i++) {
+            String id = "contact-" + i;
+            if (i % 10 == 0) {
+                append(id, 2, new ContactDeletedEvent(id));
+            } else {
+                append(id, 2, new ContactNameChangedEvent(id, "Renamed " + i));
+                append(id, 3, new AddressChangedEvent(id, AddressType.PRIVATE, address("Utrecht")));
+            }
+        }
+
+        rebuilder.rebuild();
+
+        assertEquals(45, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactEntry"));
+        assertEquals(0, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactEntry WHERE identifier = 'lost'"));
+        assertEquals("Renamed 1", jdbcTemplate.queryForObject(
+                "SELECT name FROM ContactEntry WHERE identifier = 'contact-1'", String.class));
+        assertEquals(45, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM AddressEntry WHERE city = 'Utrecht'"));
+        assertEquals(45, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM AddressEntry WHERE name LIKE 'Renamed %'"));
+        assertEquals(45, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactDetailsView"));
+        assertEquals("Renamed 1", jdbcTemplate.queryForObject(
+                "SELECT name FROM ContactDetailsView WHERE identifier = 'contact-1'", String.class));
+        String addresses = jdbcTemplate.queryForObject(
+                "SELECT addresses FROM ContactDetailsView WHERE identifier = 'contact-1'", String.class);
+        assertTrue(addresses.contains("Utrecht"));
+        assertFalse(addresses.contains("Amsterdam"));
+        assertEquals(100 + 95, rebuilder.getEventCount());
+        assertFalse(rebuilder.isRunning());
+    }
+
+    @Test
+    public void testRebuildCanBeRepeated() throws Exception {
+        append("1", 0, new ContactCreatedEvent("1", "Allard"));
+        rebuilder.rebuild();
+        append("1", 1, new ContactNameChangedEvent("1", "Allard Buijze"));
+
+        rebuilder.rebuild();
+
+        assertEquals(1, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactEntry"));
+        assertEquals("Allard Buijze", jdbcTemplate.queryForObject("SELECT name FROM ContactEntry", String.class));
+    }
+
+    @Test
+    public void testFenceIsMovedToTheEndOfTheRebuild() throws Exception {
+        ProjectionFence fence = new ProjectionFence();
+        rebuilder.setProjectionFence(fence);
+        GenericDomainEventMessage<Object> rebuilt = append("1", 0, new ContactCreatedEvent("1", "Allard"));
+        assertFalse(fence.isBehind(rebuilt));
+
+        rebuilder.rebuild();
+        GenericDomainEventMessage<Object> later = append("1", 1, new ContactNameChangedEvent("1", "Allard Buijze"));
+
+        assertTrue(fence.isBehind(rebuilt));
+        assertFalse(fence.isBehind(later));
+    }
+
+    @Test
+    public void testRebuiltTablesReplaceTheLiveTables() throws Exception {
+        append("1", 0, new ContactCreatedEvent("1", "Allard"));
+        rebuilder.rebuild();
+
+        jdbcTemplate.update("INSERT INTO ContactEntry (identifier, name) VALUES ('2', 'Jettro')");
+        jdbcTemplate.update("INSERT INTO AddressEntry (identifier, name, addressType, streetAndNumber, zipCode, city) "
+                                    + "VALUES ('2', 'Jettro', 'WORK', 'Street 1', '1234 AB', 'Amsterdam')");
+
+        assertEquals(2, jdbcTemplate.queryForInt("SELECT COUNT(DISTINCT db_identifier) FROM ContactEntry"));
+        assertEquals(1, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM AddressEntry"));
+        assertEquals(0, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_TABLES "
+                                                         + "WHERE TABLE_NAME LIKE '%_OLD' "
+                                                         + "OR TABLE_NAME LIKE '%_REBUILD'"));
+    }
+
+    @Test
+    public void testMissingTokenIsCreatedAtTheEndOfTheRebuild() throws Exception {
+        rebuilder.setTrackingProjectionName("contactTables");
+        append("1", 0, new ContactCreatedEvent("1", "Allard"));
+        rebuilder.rebuild();
+        append("1", 1, new ContactNameChangedEvent("1", "Allard Buijze"));
+
+        long tokenPosition = jdbcTemplate.queryForLong(
+                "SELECT eventPosition FROM ProjectionToken WHERE projectionName = 'contactTables'");
+        assertTrue(tokenPosition > 0);
+        final List<Object> eventsAfterToken = new ArrayList<Object>();
+        eventStore.visitEvents("Contact", tokenPosition, new MappedSegmentEventStore.EventVisitor() {
+            @Override
+            public void visit(MappedSegmentEventStore.StoredEvent event) {
+                eventsAfterToken.add(event.decode().getPayload());
+            }
+        });
+        assertEquals(1, eventsAfterToken.size());
+        assertTrue(eventsAfterToken.get(0) instanceof ContactNameChangedEvent);
+    }
+
+    @Test
+    public void testLiveTablesAreKeptWhenTheSwapFailsPartway() throws Exception {
+        ProjectionFence fence = new ProjectionFence();
+        rebuilder.setProjectionFence(fence);
+        // the address and contact tables are renamed before the missing view table fails the swap
+        rebuilder.setViewTable("MissingView");
+        rebuilder.setTrackingProjectionName("contactTables");
+        jdbcTemplate.update("INSERT INTO ContactEntry (identifier, name) VALUES ('live', 'Live contact')");
+        jdbcTemplate.update("INSERT INTO AddressEntry (identifier, name, addressType, streetAndNumber, zipCode, city) "
+                                    + "VALUES ('live', 'Live contact', 'WORK', 'Street 1', '1234 AB', 'Amsterdam')");
+        GenericDomainEventMessage<Object> rebuilt = append("1", 0, new ContactCreatedEvent("1", "Allard"));
+
+        try {
+            rebuilder.rebuild();
+            fail("Expected the swap to fail");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        assertEquals("Live contact", jdbcTemplate.queryForObject("SELECT name FROM ContactEntry", String.class));
+        assertEquals("Live contact", jdbcTemplate.queryForObject("SELECT name FROM AddressEntry", String.class));
+        assertEquals(0, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_TABLES "
+                                                         + "WHERE TABLE_NAME LIKE '%_OLD'"));
+        assertFalse(fence.isBehind(rebuilt));
+        assertEquals(0, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ProjectionToken"));
+        assertFalse(rebuilder.isRunning());
+
+        rebuilder.setViewTable("ContactDetailsView");
+        rebuilder.rebuild();
+
+        assertEquals("Allard", jdbcTemplate.queryForObject("SELECT name FROM ContactEntry", String.class));
+        assertTrue(fence.isBehind(rebuilt));
+    }
+
+    @Test
+    public void testObjectNameIsUniqueUnlessConfigured() throws Exception {
+        ContactProjectionRebuilder other = new ContactProjectionRebuilder(eventStore);
+        assertFalse(rebuilder.getObjectName().equals(other.getObjectName()));
+        assertEquals("ProjectionRebuilder", rebuilder.getObjectName().getKeyProperty("type"));
+
+        other.setObjectName("org.axonframework.sample:type=ProjectionRebuilder,name=contact,application=rest");
+        assertEquals(new ObjectName("org.axonframework.sample:type=ProjectionRebuilder,name=contact,application=rest"),
+                     other.getObjectName());
+    }
+
+    private GenericDomainEventMessage<Object> append(String contactId, long sequenceNumber, Object payload) {
+        GenericDomainEventMessage<Object> event =
+                new GenericDomainEventMessage<Object>(contactId, sequenceNumber, payload);
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(event));
+        return event;
+    }
+
+    private static Address address(String city) {
+        return new Address("Street 1", "1234 AB", city);
+    }
+}
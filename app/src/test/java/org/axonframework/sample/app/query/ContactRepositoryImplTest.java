@@ -0,0 +1,139 @@
+package org.axonframework.sample.app.query;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the queries of the contact repository against the in-memory database
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath:/META-INF/spring/database-context.xml"})
+@Transactional
+public class ContactRepositoryImplTest {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Test
+    public void testFindContactsReturnsAllContactsInPages() {
+        createContact("paging-3", "Paging Carol");
+        createContact("paging-1", "Paging Alice");
+        createContact("paging-5", "Paging Bob");
+        createContact("paging-2", "Paging Bob");
+        createContact("paging-4", "Paging Dave");
+        entityManager.flush();
+
+        List<String> identifiers = new ArrayList<String>();
+        int pages = 0;
+        ContactPage page = contactRepository.findContacts(null, 2);
+        while (true) {
+            pages++;
+            assertTrue(page.getContacts().size() <= 2);
+            for (ContactEntry contact : page.getContacts()) {
+                if (contact.getIdentifier().startsWith("paging-")) {
+                    identifiers.add(contact.getIdentifier());
+                }
+            }
+            if (page.isLastPage()) {
+                break;
+            }
+            page = contactRepository.findContacts(page.getContinuationToken(), 2);
+        }
+
+        assertEquals(Arrays.asList("paging-1", "paging-2", "paging-5", "paging-3", "paging-4"), identifiers);
+        assertTrue(pages >= 3);
+    }
+
+    @Test
+    public void testFindContactsInRange() {
+        int initialCount = contactRepository.countContacts();
+        createContact("range-2", "Range Bob");
+        createContact("range-1", "Range Alice");
+        createContact("range-3", "Range Carol");
+        entityManager.flush();
+
+        assertEquals(initialCount + 3, contactRepository.countContacts());
+        List<String> identifiers = new ArrayList<String>();
+        for (int first = 0; first < initialCount + 3; first += 2) {
+            for (ContactEntry contact : contactRepository.findContactsInRange(first, 2)) {
+                if (contact.getIdentifier().startsWith("range-")) {
+                    identifiers.add(contact.getIdentifier());
+                }
+            }
+        }
+        assertEquals(Arrays.asList("range-1", "range-2", "range-3"), identifiers);
+    }
+
+    @Test
+    public void testFindContactIdentifiersByPrefix() {
+        createContact("prefix-2", "Prefix Bob");
+        createContact("prefix-1", "Prefix Alice");
+        createContact("prefix-3", "Prefix% Carol");
+        createContact("other-1", "Other Prefix");
+        entityManager.flush();
+
+        assertEquals(Arrays.asList("prefix-1", "prefix-2", "prefix-3"),
+                     contactRepository.findContactIdentifiers("name", "Prefix", 10));
+        assertEquals(Arrays.asList("prefix-3"), contactRepository.findContactIdentifiers("name", "Prefix%", 10));
+        assertEquals(Arrays.asList("prefix-1", "prefix-2"),
+                     contactRepository.findContactIdentifiers("identifier", "prefix-", 2));
+    }
+
+    @Test
+    public void testFindContactIdentifiersReturnsAllMatchesInPages() {
+        createContact("keyset-3", "Keyset Carol");
+        createContact("keyset-1", "Keyset Alice");
+        createContact("keyset-5", "Keyset Bob");
+        createContact("keyset-2", "Keyset Bob");
+        createContact("keyset-4", "Other Dave");
+        entityManager.flush();
+
+        List<String> identifiers = new ArrayList<String>();
+        int pages = 0;
+        ContactIdentifierPage page = contactRepository.findContactIdentifiers("name", "Keyset", null, 2);
+        while (true) {
+            pages++;
+            assertTrue(page.getIdentifiers().size() <= 2);
+            identifiers.addAll(page.getIdentifiers());
+            if (page.isLastPage()) {
+                break;
+            }
+            page = contactRepository.findContactIdentifiers("name", "Keyset", page.getContinuationToken(), 2);
+        }
+
+        assertEquals(Arrays.asList("keyset-1", "keyset-2", "keyset-5", "keyset-3"), identifiers);
+        assertEquals(2, pages);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindContactIdentifiersRejectsOtherProperties() {
+        contactRepository.findContactIdentifiers("db_identifier", "1", 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindContactsRejectsInvalidToken() {
+        contactRepository.findContacts("bm90IGEgdG9rZW4=", 10);
+    }
+
+    private void createContact(String identifier, String name) {
+        ContactEntry entry = new ContactEntry();
+        entry.setIdentifier(identifier);
+        entry.setName(name);
+        entityManager.persist(entry);
+    }
+}
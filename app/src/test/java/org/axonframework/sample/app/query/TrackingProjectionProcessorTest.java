@@ -0,0 +1,171 @@
+package org.axonframework.sample.app.query;
+
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.sample.app.eventstore.MappedSegmentEventStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.management.ObjectName;
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the projection that reads the events from the event store and keeps a token, using an in-memory database
+ */
+public class TrackingProjectionProcessorTest {
+
+    private File baseDir;
+    private MappedSegmentEventStore eventStore;
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TrackingProjectionProcessor processor;
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir = File.createTempFile("eventstore", "");
+        assertTrue(baseDir.delete());
+        eventStore = new MappedSegmentEventStore(baseDir);
+        eventStore.setSegmentSize(16 * 1024);
+        eventStore.afterPropertiesSet();
+
+        dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:trackingprojection", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE ContactEntry IF EXISTS");
+        jdbcTemplate.execute("DROP TABLE AddressEntry IF EXISTS");
+        jdbcTemplate.execute("DROP TABLE ContactDetailsView IF EXISTS");
+        jdbcTemplate.execute("DROP TABLE ProjectionToken IF EXISTS");
+        jdbcTemplate.execute("CREATE TABLE ContactEntry (db_identifier BIGINT GENERATED BY DEFAULT AS IDENTITY "
+                                     + "(START WITH 1) PRIMARY KEY, identifier VARCHAR(255), name VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE AddressEntry (db_identifier BIGINT GENERATED BY DEFAULT AS IDENTITY "
+                                     + "(START WITH 1) PRIMARY KEY, identifier VARCHAR(36), name VARCHAR(255), "
+                                     + "addressType VARCHAR(255), streetAndNumber VARCHAR(255), "
+                                     + "zipCode VARCHAR(255), city VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE ContactDetailsView (identifier VARCHAR(36) PRIMARY KEY, "
+                                     + "name VARCHAR(255), addresses LONGVARCHAR)");
+        jdbcTemplate.execute("CREATE TABLE ProjectionToken (projectionName VARCHAR(255) PRIMARY KEY, "
+                                     + "eventPosition BIGINT NOT NULL)");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (processor != null) {
+            processor.destroy();
+        }
+        eventStore.destroy();
+        File[] files = baseDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        baseDir.delete();
+    }
+
+    @Test
+    public void testEventsAreAppliedAndTheTokenIsStored() throws Exception {
+        start();
+        for (int i = 0; i < 30; i++) {
+            append("contact-" + i, 0, new ContactCreatedEvent("contact-" + i, "Contact " + i));
+            append("contact-" + i, 1, new AddressAddedEvent("contact-" + i, AddressType.PRIVATE, address()));
+        }
+        waitForEvents(60);
+
+        assertEquals(30, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactEntry"));
+        assertEquals(30, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM AddressEntry"));
+        assertEquals(30, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactDetailsView"));
+        assertEquals(processor.getPosition(), jdbcTemplate.queryForLong(
+                "SELECT eventPosition FROM ProjectionToken WHERE projectionName = 'contactTables'"));
+        assertTrue(processor.getBatchCount() >= 6);
+    }
+
+    @Test
+    public void testRestartContinuesAfterTheStoredToken() throws Exception {
+        start();
+        append("1", 0, new ContactCreatedEvent("1", "Allard"));
+        waitForEvents(1);
+        processor.destroy();
+
+        append("1", 1, new ContactNameChangedEvent("1", "Allard Buijze"));
+        append("2", 0, new ContactCreatedEvent("2", "Jettro"));
+        start();
+        waitForEvents(2);
+
+        assertEquals(2, processor.getEventCount());
+        assertEquals(2, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactEntry"));
+        assertEquals("Allard Buijze", jdbcTemplate.queryForObject(
+                "SELECT name FROM ContactEntry WHERE identifier = '1'", String.class));
+        assertEquals("Allard Buijze", jdbcTemplate.queryForObject(
+                "SELECT name FROM ContactDetailsView WHERE identifier = '1'", String.class));
+    }
+
+    @Test
+    public void testTablesAreRebuiltWhenThereIsNoToken() throws Exception {
+        jdbcTemplate.update("INSERT INTO ContactEntry (identifier, name) VALUES ('1', 'Allard')");
+        append("1", 0, new ContactCreatedEvent("1", "Allard"));
+        append("2", 0, new ContactCreatedEvent("2", "Jettro"));
+
+        start();
+
+        assertEquals(0, processor.getEventCount());
+        assertEquals(2, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactEntry"));
+        assertEquals(2, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM ContactDetailsView"));
+        assertEquals(processor.getPosition(), jdbcTemplate.queryForLong(
+                "SELECT eventPosition FROM ProjectionToken WHERE projectionName = 'contactTables'"));
+
+        append("2", 1, new ContactNameChangedEvent("2", "Jettro Coenradie"));
+        waitForEvents(1);
+
+        assertEquals("Jettro Coenradie", jdbcTemplate.queryForObject(
+                "SELECT name FROM ContactEntry WHERE identifier = '2'", String.class));
+    }
+
+    @Test
+    public void testObjectNameIsUniqueUnlessConfigured() throws Exception {
+        TrackingProjectionProcessor first = new TrackingProjectionProcessor(eventStore);
+        TrackingProjectionProcessor other = new TrackingProjectionProcessor(eventStore);
+        assertFalse(first.getObjectName().equals(other.getObjectName()));
+        assertEquals("TrackingProjection", first.getObjectName().getKeyProperty("type"));
+
+        other.setObjectName("org.axonframework.sample:type=TrackingProjection,name=contact,application=rest");
+        assertEquals(new ObjectName("org.axonframework.sample:type=TrackingProjection,name=contact,application=rest"),
+                     other.getObjectName());
+    }
+
+    private void start() throws InterruptedException {
+        processor = new TrackingProjectionProcessor(eventStore);
+        processor.setDataSource(dataSource);
+        processor.setTransactionManager(new DataSourceTransactionManager(dataSource));
+        processor.setBatchSize(10);
+        processor.setPollInterval(10);
+        processor.afterPropertiesSet();
+    }
+
+    private void waitForEvents(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (processor.getEventCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, processor.getEventCount());
+    }
+
+    private void append(String contactId, long sequenceNumber, Object payload) {
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(
+                new GenericDomainEventMessage<Object>(contactId, sequenceNumber, payload)));
+    }
+
+    private static Address address() {
+        return new Address("Street 1", "1234AB", "Amsterdam");
+    }
+}
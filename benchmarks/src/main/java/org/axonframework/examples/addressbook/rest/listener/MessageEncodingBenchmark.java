@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.examples.addressbook.rest.listener;
+
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.query.ContactEntry;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Compares the json encoding of the push messages of the REST ui: the former path, which writes into a new
+ * StringWriter and converts the String to bytes when publishing, with the {@link MessageEncoder}. The address removed
+ * benchmarks also include creating the message content, a map before and an {@link AddressRemoval} now.</p>
+ * <p>Run with the gc profiler to compare the allocation rates, the <code>gc.alloc.rate.norm</code> metric gives the
+ * bytes allocated per message: <code>java -jar benchmarks.jar MessageEncoding -prof gc</code></p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageEncodingBenchmark {
+
+    private static final String CHARSET = "UTF-8";
+
+    private ObjectMapper mapper;
+    private MessageEncoder encoder;
+    private ContactEntry contact;
+
+    @Setup
+    public void setUp() {
+        mapper = new ObjectMapper();
+        encoder = new MessageEncoder();
+        contact = new ContactEntry();
+        contact.setIdentifier("0b5a2d3e-8a1c-4c2e-9f0a-3d5e7b9c1a2f");
+        contact.setName("Allard Buijze");
+    }
+
+    @Benchmark
+    public byte[] contactCreatedWithStringWriter() throws IOException {
+        return encodeWithStringWriter(new Message<ContactEntry>("contact-created", contact));
+    }
+
+    @Benchmark
+    public byte[] contactCreatedWithEncoder() throws IOException {
+        return encoder.encode(new Message<ContactEntry>("contact-created", contact));
+    }
+
+    @Benchmark
+    public byte[] addressRemovedWithStringWriter() throws IOException {
+        Map<String, Object> content = new HashMap<String, Object>();
+        content.put("contact", contact);
+        content.put("addressType", AddressType.PRIVATE);
+        return encodeWithStringWriter(new Message<Map<String, Object>>("address-removed", content));
+    }
+
+    @Benchmark
+    public byte[] addressRemovedWithEncoder() throws IOException {
+        return encoder.encode(new Message<AddressRemoval>("address-removed",
+                                                          new AddressRemoval(contact, AddressType.PRIVATE)));
+    }
+
+    private byte[] encodeWithStringWriter(Message<?> message) throws IOException {
+        StringWriter writer = new StringWriter();
+        mapper.writeValue(writer, message);
+        return writer.toString().getBytes(CHARSET);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * <p>Helpers for the temporary files of the benchmarks.</p>
+ */
+public final class BenchmarkFiles {
+
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * Creates an empty temporary directory.
+     *
+     * @param prefix the prefix of the name of the directory
+     * @return the new directory
+     * @throws IOException when the directory could not be created
+     */
+    public static File createTempDirectory(String prefix) throws IOException {
+        File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Unable to create temporary directory " + directory);
+        }
+        return directory;
+    }
+
+    /**
+     * Deletes the given directory and the files in it.
+     *
+     * @param directory the directory to delete
+     */
+    public static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
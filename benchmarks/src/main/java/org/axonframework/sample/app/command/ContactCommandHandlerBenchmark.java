@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.command;
+
+import org.axonframework.eventhandling.SimpleEventBus;
+import org.axonframework.eventsourcing.AggregateFactory;
+import org.axonframework.eventsourcing.AggregateSnapshotter;
+import org.axonframework.eventsourcing.EventSourcingRepository;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ChangeContactNameCommand;
+import org.axonframework.sample.app.api.CreateContactCommand;
+import org.axonframework.sample.app.api.RegisterAddressCommand;
+import org.axonframework.sample.app.api.RemoveAddressCommand;
+import org.axonframework.sample.app.api.RemoveContactCommand;
+import org.axonframework.sample.app.benchmarks.BenchmarkFiles;
+import org.axonframework.sample.app.eventstore.AdaptiveSnapshotterTrigger;
+import org.axonframework.sample.app.eventstore.CoalescingSnapshotter;
+import org.axonframework.sample.app.eventstore.ContactEventSerializer;
+import org.axonframework.sample.app.eventstore.MappedSegmentEventStore;
+import org.axonframework.unitofwork.DefaultUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the handling of each command type by the {@link ContactCommandHandler}, from loading the contact to
+ * storing its events in the memory-mapped event store. Snapshots are created in the background like in the
+ * application context. The <code>cached</code> parameter compares the plain event sourcing repository with the
+ * {@link CachingAggregateRepository}.</p>
+ * <p>Renames and address changes are spread over a fixed set of contacts. Removals need fresh contacts or addresses,
+ * which are created before each invocation of a batch.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContactCommandHandlerBenchmark {
+
+    private static final int CONTACT_COUNT = 10000;
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private File baseDir;
+    private MappedSegmentEventStore eventStore;
+    private ThreadPoolExecutor snapshotExecutor;
+    private ContactCommandHandler commandHandler;
+
+    private final List<String> contactIds = new ArrayList<String>();
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        baseDir = BenchmarkFiles.createTempDirectory("commands");
+        eventStore = new MappedSegmentEventStore(baseDir);
+        eventStore.setSerializer(new ContactEventSerializer());
+        eventStore.afterPropertiesSet();
+
+        EventSourcingRepository<Contact> repository;
+        if (cached) {
+            CachingAggregateRepository<Contact> cachingRepository =
+                    new CachingAggregateRepository<Contact>(Contact.class);
+            cachingRepository.setVersionProvider(eventStore);
+            repository = cachingRepository;
+        } else {
+            repository = new EventSourcingRepository<Contact>(Contact.class);
+        }
+        repository.setEventStore(eventStore);
+        repository.setEventBus(new SimpleEventBus());
+
+        AggregateSnapshotter aggregateSnapshotter = new AggregateSnapshotter();
+        aggregateSnapshotter.setEventStore(eventStore);
+        aggregateSnapshotter.setAggregateFactories(
+                Collections.<AggregateFactory<?>>singletonList(repository.getAggregateFactory()));
+        snapshotExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                                                  new ArrayBlockingQueue<Runnable>(100));
+        AdaptiveSnapshotterTrigger snapshotterTrigger = new AdaptiveSnapshotterTrigger();
+        snapshotterTrigger.setSnapshotter(new CoalescingSnapshotter(aggregateSnapshotter, snapshotExecutor));
+        snapshotterTrigger.setSizeProvider(eventStore);
+        repository.setSnapshotterTrigger(snapshotterTrigger);
+
+        commandHandler = new ContactCommandHandler();
+        commandHandler.setRepository(repository);
+        commandHandler.setContactNameRepository(new InMemoryContactNameRepository());
+
+        for (int i = 0; i < CONTACT_COUNT; i++) {
+            contactIds.add(createNewContact());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        snapshotExecutor.shutdown();
+        snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        eventStore.destroy();
+        BenchmarkFiles.delete(baseDir);
+    }
+
+    @Benchmark
+    public void createContact() {
+        createNewContact();
+    }
+
+    @Benchmark
+    public void changeContactName() {
+        ChangeContactNameCommand command = new ChangeContactNameCommand();
+        command.setContactId(nextContactId());
+        command.setContactNewName("Contact " + counter++);
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        commandHandler.handle(command, unitOfWork);
+        unitOfWork.commit();
+    }
+
+    @Benchmark
+    public void registerAddress() {
+        registerAddress(nextContactId(), AddressType.values()[(int) (counter % AddressType.values().length)]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void removeAddress(AddressRemovalBatch batch) {
+        for (String contactId : batch.contactIds) {
+            RemoveAddressCommand command = new RemoveAddressCommand();
+            command.setContactId(contactId);
+            command.setAddressType(AddressType.PRIVATE);
+            UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+            commandHandler.handle(command);
+            unitOfWork.commit();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void removeContact(ContactRemovalBatch batch) {
+        for (String contactId : batch.contactIds) {
+            RemoveContactCommand command = new RemoveContactCommand();
+            command.setContactId(contactId);
+            UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+            commandHandler.handle(command, unitOfWork);
+            unitOfWork.commit();
+        }
+    }
+
+    private String nextContactId() {
+        return contactIds.get((int) (counter++ % CONTACT_COUNT));
+    }
+
+    private String createNewContact() {
+        CreateContactCommand command = new CreateContactCommand();
+        String contactId = "contact-" + counter;
+        command.setContactId(contactId);
+        command.setNewContactName("Contact " + counter++);
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        commandHandler.handle(command, unitOfWork);
+        unitOfWork.commit();
+        return contactId;
+    }
+
+    private void registerAddress(String contactId, AddressType type) {
+        RegisterAddressCommand command = new RegisterAddressCommand();
+        command.setContactId(contactId);
+        command.setAddressType(type);
+        command.setStreetAndNumber("Street " + counter);
+        command.setZipCode("1234 AB");
+        command.setCity("Amsterdam");
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        commandHandler.handle(command);
+        unitOfWork.commit();
+    }
+
+    /**
+     * New contacts to remove, created before each invocation.
+     */
+    @State(Scope.Thread)
+    public static class ContactRemovalBatch {
+
+        final List<String> contactIds = new ArrayList<String>(BATCH_SIZE);
+
+        @Setup(Level.Invocation)
+        public void prepare(ContactCommandHandlerBenchmark benchmark) {
+            contactIds.clear();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                contactIds.add(benchmark.createNewContact());
+            }
+        }
+    }
+
+    /**
+     * New contacts with a private address to remove, created before each invocation.
+     */
+    @State(Scope.Thread)
+    public static class AddressRemovalBatch {
+
+        final List<String> contactIds = new ArrayList<String>(BATCH_SIZE);
+
+        @Setup(Level.Invocation)
+        public void prepare(ContactCommandHandlerBenchmark benchmark) {
+            contactIds.clear();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                String contactId = benchmark.createNewContact();
+                benchmark.registerAddress(contactId, AddressType.PRIVATE);
+                contactIds.add(contactId);
+            }
+        }
+    }
+
+    private static class InMemoryContactNameRepository implements ContactNameRepository {
+
+        private final Set<String> names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        @Override
+        public boolean claimContactName(String contactName) {
+            return names.add(contactName);
+        }
+
+        @Override
+        public void cancelContactName(String contactName) {
+            names.remove(contactName);
+        }
+
+        @Override
+        public boolean vacantContactName(String contactName) {
+            return !names.contains(contactName);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.command;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressChangedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.sample.app.benchmarks.BenchmarkFiles;
+import org.axonframework.sample.app.eventstore.ContactEventSerializer;
+import org.axonframework.sample.app.eventstore.MappedSegmentEventStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures rebuilding a {@link Contact} from its events, without snapshot. The events are a mix of name and
+ * address changes, like the history of a contact that is edited often.</p>
+ * <p><code>replay</code> only applies events that are already in memory; <code>loadFromEventStore</code> also reads
+ * and deserializes them from the memory-mapped event store.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContactReplayBenchmark {
+
+    private static final String CONTACT_ID = "contact-1";
+
+    @Param({"10", "100", "1000"})
+    public int eventCount;
+
+    private List<DomainEventMessage> events;
+    private File baseDir;
+    private MappedSegmentEventStore eventStore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        events = new ArrayList<DomainEventMessage>(eventCount);
+        events.add(new GenericDomainEventMessage<Object>(CONTACT_ID, 0, new ContactCreatedEvent(CONTACT_ID,
+                                                                                                "Contact 0")));
+        for (int i = 1; i < eventCount; i++) {
+            Object payload;
+            AddressType type = AddressType.values()[i % AddressType.values().length];
+            Address address = new Address("Street " + i, "1234 AB", "Amsterdam");
+            if (i % 4 == 0) {
+                payload = new ContactNameChangedEvent(CONTACT_ID, "Contact " + i);
+            } else if (i < 4) {
+                payload = new AddressAddedEvent(CONTACT_ID, type, address);
+            } else {
+                payload = new AddressChangedEvent(CONTACT_ID, type, address);
+            }
+            events.add(new GenericDomainEventMessage<Object>(CONTACT_ID, i, payload));
+        }
+
+        baseDir = BenchmarkFiles.createTempDirectory("replay");
+        eventStore = new MappedSegmentEventStore(baseDir);
+        eventStore.setSerializer(new ContactEventSerializer());
+        eventStore.afterPropertiesSet();
+        eventStore.appendEvents("Contact", new SimpleDomainEventStream(events));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        eventStore.destroy();
+        BenchmarkFiles.delete(baseDir);
+    }
+
+    @Benchmark
+    public Contact replay() {
+        Contact contact = new Contact();
+        contact.initializeState(new SimpleDomainEventStream(events));
+        return contact;
+    }
+
+    @Benchmark
+    public Contact loadFromEventStore() {
+        Contact contact = new Contact();
+        contact.initializeState(eventStore.readEvents("Contact", CONTACT_ID));
+        return contact;
+    }
+}
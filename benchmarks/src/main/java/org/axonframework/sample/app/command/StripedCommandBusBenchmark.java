@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.command;
+
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.CommandHandler;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.GenericCommandMessage;
+import org.axonframework.commandhandling.SimpleCommandBus;
+import org.axonframework.sample.app.api.RegisterAddressCommand;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Compares the throughput of the {@link StripedCommandBus} with the synchronous {@code SimpleCommandBus}. Each
+ * invocation dispatches commands for a fixed set of contacts and waits until all of them are handled. The handler
+ * burns <code>work</code> tokens of CPU per command, so the benchmark shows when striping pays off for the cost of a
+ * command.</p>
+ * <p>A <code>stripes</code> value of 0 dispatches on the SimpleCommandBus, any other value on a striped bus with that
+ * many stripes.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StripedCommandBusBenchmark {
+
+    private static final int CONTACT_COUNT = 64;
+    private static final int COMMANDS_PER_CONTACT = 50;
+    private static final int COMMAND_COUNT = CONTACT_COUNT * COMMANDS_PER_CONTACT;
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int stripes;
+
+    @Param({"100", "10000"})
+    public long work;
+
+    private CommandBus commandBus;
+    private final RegisterAddressCommand[] commands = new RegisterAddressCommand[COMMAND_COUNT];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimpleCommandBus simpleCommandBus = new SimpleCommandBus();
+        commandBus = stripes == 0 ? simpleCommandBus
+                : new StripedCommandBus(simpleCommandBus, stripes, 128);
+        commandBus.subscribe(RegisterAddressCommand.class.getName(), new CommandHandler<RegisterAddressCommand>() {
+            @Override
+            public Object handle(CommandMessage<RegisterAddressCommand> commandMessage, UnitOfWork unitOfWork) {
+                Blackhole.consumeCPU(work);
+                return null;
+            }
+        });
+        for (int sequence = 0; sequence < COMMANDS_PER_CONTACT; sequence++) {
+            for (int contact = 0; contact < CONTACT_COUNT; contact++) {
+                RegisterAddressCommand command = new RegisterAddressCommand();
+                command.setContactId("contact-" + contact);
+                command.setZipCode(String.valueOf(sequence));
+                commands[sequence * CONTACT_COUNT + contact] = command;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (commandBus instanceof StripedCommandBus) {
+            ((StripedCommandBus) commandBus).destroy();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMAND_COUNT)
+    public void dispatchAndWait() throws InterruptedException {
+        final CountDownLatch completed = new CountDownLatch(COMMAND_COUNT);
+        CommandCallback<Object> callback = new CommandCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                completed.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                completed.countDown();
+            }
+        };
+        for (RegisterAddressCommand command : commands) {
+            commandBus.dispatch(new GenericCommandMessage<Object>(command), callback);
+        }
+        completed.await();
+    }
+}
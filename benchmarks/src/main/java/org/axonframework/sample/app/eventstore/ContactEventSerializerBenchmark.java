@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressRemovedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.Serializer;
+import org.axonframework.serializer.xml.XStreamSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Compares the {@link ContactEventSerializer} with the XStream serializer it replaces, by serializing and
+ * deserializing each type of contact event. The sizes of the serialized events are checked by the unit tests, they do
+ * not depend on the machine.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContactEventSerializerBenchmark {
+
+    private static final String CONTACT_ID = "6a7e4d2c-4e6e-4a1b-9c1f-3b6b3f0e9a11";
+
+    @Param({"binary", "xstream"})
+    public String serializerType;
+
+    @Param({"ContactCreated", "ContactNameChanged", "AddressAdded", "AddressRemoved", "ContactDeleted"})
+    public String eventType;
+
+    private Serializer serializer;
+    private Object event;
+    private SerializedObject<byte[]> serialized;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        serializer = "binary".equals(serializerType) ? new ContactEventSerializer() : new XStreamSerializer();
+        if ("ContactCreated".equals(eventType)) {
+            event = new ContactCreatedEvent(CONTACT_ID, "Allard Buijze");
+        } else if ("ContactNameChanged".equals(eventType)) {
+            event = new ContactNameChangedEvent(CONTACT_ID, "Jettro Coenradie");
+        } else if ("AddressAdded".equals(eventType)) {
+            event = new AddressAddedEvent(CONTACT_ID, AddressType.PRIVATE,
+                                          new Address("Kerkstraat 1", "1234AB", "Amsterdam"));
+        } else if ("AddressRemoved".equals(eventType)) {
+            event = new AddressRemovedEvent(CONTACT_ID, AddressType.PRIVATE);
+        } else {
+            event = new ContactDeletedEvent(CONTACT_ID);
+        }
+        serialized = serializer.serialize(event, byte[].class);
+    }
+
+    @Benchmark
+    public SerializedObject<byte[]> serialize() {
+        return serializer.serialize(event, byte[].class);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(serialized);
+    }
+}
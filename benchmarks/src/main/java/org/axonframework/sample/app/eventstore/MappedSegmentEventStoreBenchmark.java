@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.eventstore;
+
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.sample.app.benchmarks.BenchmarkFiles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the latency of the {@link MappedSegmentEventStore}: appending a single event, and loading all events of
+ * an aggregate of <code>eventsPerAggregate</code> events. The loaded aggregates are spread over
+ * <code>aggregateCount</code> aggregates, so the index and the mapped segments are not served from a single hot
+ * entry.</p>
+ * <p>Appends keep growing the store during the measurement, like a running application does.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappedSegmentEventStoreBenchmark {
+
+    private static final String TYPE = "Contact";
+
+    @Param({"1000"})
+    public int aggregateCount;
+
+    @Param({"10", "100"})
+    public int eventsPerAggregate;
+
+    private File baseDir;
+    private MappedSegmentEventStore eventStore;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        baseDir = BenchmarkFiles.createTempDirectory("eventstore");
+        eventStore = new MappedSegmentEventStore(baseDir);
+        eventStore.setSerializer(new ContactEventSerializer());
+        eventStore.afterPropertiesSet();
+        for (int aggregate = 0; aggregate < aggregateCount; aggregate++) {
+            String id = "contact-" + aggregate;
+            eventStore.appendEvents(TYPE, new SimpleDomainEventStream(
+                    new GenericDomainEventMessage<Object>(id, 0, new ContactCreatedEvent(id, "Contact " + id))));
+            for (int sequence = 1; sequence < eventsPerAggregate; sequence++) {
+                eventStore.appendEvents(TYPE, new SimpleDomainEventStream(
+                        new GenericDomainEventMessage<Object>(id, sequence,
+                                                              new ContactNameChangedEvent(id, "Name " + sequence))));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        eventStore.destroy();
+        BenchmarkFiles.delete(baseDir);
+    }
+
+    @Benchmark
+    public void appendEvent() {
+        String id = "appended-" + counter++;
+        eventStore.appendEvents(TYPE, new SimpleDomainEventStream(
+                new GenericDomainEventMessage<Object>(id, 0, new ContactCreatedEvent(id, "Contact " + id))));
+    }
+
+    @Benchmark
+    public void loadAggregate(Blackhole blackhole) {
+        DomainEventStream events = eventStore.readEvents(TYPE, "contact-" + (counter++ % aggregateCount));
+        while (events.hasNext()) {
+            blackhole.consume(events.next());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.query;
+
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressChangedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the throughput of the {@link AddressTableUpdater} in events per second, against the in-memory HSQLDB
+ * database of database-context.xml.</p>
+ * <p>Each invocation handles the complete life of a number of contacts in one transaction: created, two addresses
+ * added, renamed, an address changed and deleted. The tables therefore do not grow during the benchmark.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AddressTableUpdaterBenchmark {
+
+    private static final int CONTACTS_PER_INVOCATION = 10;
+    private static final int EVENTS_PER_CONTACT = 6;
+
+    private ClassPathXmlApplicationContext context;
+    private AddressTableUpdater updater;
+    private TransactionTemplate transactionTemplate;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new ClassPathXmlApplicationContext("META-INF/spring/benchmark-context.xml");
+        updater = context.getBean("addressTableUpdater", AddressTableUpdater.class);
+        transactionTemplate = new TransactionTemplate(context.getBean("transactionManager",
+                                                                      PlatformTransactionManager.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONTACTS_PER_INVOCATION * EVENTS_PER_CONTACT)
+    public void handleEvents() {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                for (int i = 0; i < CONTACTS_PER_INVOCATION; i++) {
+                    String contactId = "contact-" + counter++;
+                    updater.handleContactCreatedEvent(new ContactCreatedEvent(contactId, "Contact " + counter));
+                    updater.handleAddressAddedEvent(new AddressAddedEvent(
+                            contactId, AddressType.PRIVATE, new Address("Street 1", "1234 AB", "Amsterdam")));
+                    updater.handleAddressAddedEvent(new AddressAddedEvent(
+                            contactId, AddressType.WORK, new Address("Street 2", "5678 CD", "Utrecht")));
+                    updater.handleContactNameChangedEvent(new ContactNameChangedEvent(contactId,
+                                                                                      "Renamed " + counter));
+                    updater.handleAddressChangedEvent(new AddressChangedEvent(
+                            contactId, AddressType.WORK, new Address("Street 3", "5678 CD", "Utrecht")));
+                    updater.handleContactDeletedEvent(new ContactDeletedEvent(contactId));
+                }
+            }
+        });
+    }
+}
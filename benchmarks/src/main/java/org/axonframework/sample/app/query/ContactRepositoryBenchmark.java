@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.sample.app.query;
+
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the queries of the {@link ContactRepositoryImpl} against the in-memory HSQLDB database, filled with
+ * the given number of contacts with one address each. The contacts are written with a {@link ContactChangeSet}, after
+ * which the address search index is loaded, like it is at startup. The repository is used without the {@link
+ * CachingContactRepository} in front of it, so every call runs its queries.</p>
+ * <p>The database for a million contacts needs a large heap; the forked JVM gets 6GB.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class ContactRepositoryBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContactRepositoryBenchmark.class);
+
+    private static final int WRITE_BATCH_SIZE = 10000;
+    private static final int PAGE_SIZE = 250;
+    private static final String[] CITIES = {"Amsterdam", "Rotterdam", "Utrecht", "Den Haag", "Eindhoven",
+            "Groningen", "Tilburg", "Almere", "Breda", "Nijmegen"};
+
+    @Param({"10000", "100000", "1000000"})
+    public int contactCount;
+
+    private ClassPathXmlApplicationContext context;
+    private ContactRepository repository;
+    private String middlePageToken;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new ClassPathXmlApplicationContext("META-INF/spring/benchmark-context.xml");
+        repository = context.getBean("contactRepositoryImpl", ContactRepository.class);
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(context.getBean("dataSource", DataSource.class));
+        TransactionTemplate transactionTemplate =
+                new TransactionTemplate(context.getBean("transactionManager", PlatformTransactionManager.class));
+
+        long start = System.currentTimeMillis();
+        for (int first = 0; first < contactCount; first += WRITE_BATCH_SIZE) {
+            final ContactChangeSet changes = new ContactChangeSet();
+            for (int i = first; i < Math.min(first + WRITE_BATCH_SIZE, contactCount); i++) {
+                String contactId = contactId(i);
+                changes.apply(new ContactCreatedEvent(contactId, String.format("Contact %07d", i)));
+                changes.apply(new AddressAddedEvent(contactId, AddressType.PRIVATE, new Address(
+                        "Street " + i, String.format("%04d AB", i % 10000), CITIES[i % CITIES.length])));
+            }
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    changes.writeTo(jdbcTemplate, "ContactEntry", "AddressEntry");
+                }
+            });
+        }
+        context.getBean("addressSearchIndex", AddressSearchIndex.class).afterPropertiesSet();
+        logger.info("Loaded {} contacts in {} ms", contactCount, System.currentTimeMillis() - start);
+
+        ContactPage page = repository.findContacts(null, 1000);
+        for (int i = 1000; i < contactCount / 2; i += 1000) {
+            page = repository.findContacts(page.getContinuationToken(), 1000);
+        }
+        middlePageToken = page.getContinuationToken();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ContactPage findFirstPage() {
+        return repository.findContacts(null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public ContactPage findMiddlePage() {
+        return repository.findContacts(middlePageToken, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public ContactEntry loadContactDetails() {
+        return repository.loadContactDetails(nextContactId());
+    }
+
+    @Benchmark
+    public List<AddressEntry> findAllAddressesForContact() {
+        return repository.findAllAddressesForContact(nextContactId());
+    }
+
+    @Benchmark
+    public List<AddressEntry> searchAddresses() {
+        int i = nextIndex();
+        return repository.searchAddresses(String.format("%03d", i % 1000), CITIES[i % CITIES.length], null, null,
+                                          100);
+    }
+
+    private String nextContactId() {
+        return contactId(nextIndex());
+    }
+
+    private int nextIndex() {
+        // a large prime stride visits the contacts in a scattered order
+        counter += 7919;
+        return (int) (counter % contactCount);
+    }
+
+    private static String contactId(int i) {
+        return String.format("contact-%07d", i);
+    }
+}
@@ -15,9 +15,11 @@
  */
 
 package org.axonframework.examples.addressbook.controllers {
+import mx.rpc.AsyncToken;
 import mx.rpc.Fault;
 import mx.rpc.remoting.mxml.RemoteObject;
 
+import org.axonframework.examples.addressbook.consumer.CommandResultConsumer;
 import org.axonframework.examples.addressbook.messages.notification.ErrorNotificationMessage;
 
 /**
@@ -34,11 +36,22 @@ public class BaseController {
     [Inject(id="remoteCommandReceiver")]
     public var commandReceiver:RemoteObject;
 
+    [Inject]
+    public var commandResults:CommandResultConsumer;
 
     public function BaseController() {
         // default constructor
     }
 
+    /**
+     * Sends the command to the server without keeping the server waiting for its completion. The returned token
+     * receives the result or the fault of the command once it has been executed.
+     * @param command
+     */
+    protected function sendCommand(command:Object):AsyncToken {
+        return commandResults.dispatch(commandReceiver, command);
+    }
+
     /**
      * Method to be used as error handler for remote calls. The error is placed into an ErrorNotiificationMessage
      * that is dispatched.
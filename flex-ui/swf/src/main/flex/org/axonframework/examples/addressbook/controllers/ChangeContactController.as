@@ -30,7 +30,7 @@ public class ChangeContactController extends BaseController {
         var changeContactCommand:ChangeContactNameCommand = new ChangeContactNameCommand();
         changeContactCommand.contactNewName = message.contact.name;
         changeContactCommand.contactId = message.contact.uuid;
-        return commandReceiver.sendCommand(changeContactCommand);
+        return sendCommand(changeContactCommand);
     }
 
     public function result():void {
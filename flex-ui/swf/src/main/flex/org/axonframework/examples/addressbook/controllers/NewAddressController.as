@@ -58,7 +58,7 @@ public class NewAddressController extends BaseController {
         registerAddressCommand.city = address.city;
         registerAddressCommand.addressType = address.type;
 
-        return commandReceiver.sendCommand(registerAddressCommand);
+        return sendCommand(registerAddressCommand);
     }
 
     public function result():void {
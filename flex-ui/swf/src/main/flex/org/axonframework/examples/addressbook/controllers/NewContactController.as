@@ -41,7 +41,7 @@ public class NewContactController extends BaseController {
         this.contact = message.contact;
         var addContactCommand:CreateContactCommand = new CreateContactCommand();
         addContactCommand.newContactName = message.contact.name;
-        return commandReceiver.sendCommand(addContactCommand); 
+        return sendCommand(addContactCommand); 
     }
 
     public function result():void {
@@ -39,7 +39,7 @@ public class RemoveAddressController extends BaseController {
         removeAddressCommand.contactId = address.contactUUID;
         removeAddressCommand.addressType = address.type;
 
-        return commandReceiver.sendCommand(removeAddressCommand);
+        return sendCommand(removeAddressCommand);
     }
 
     public function result():void {
@@ -33,7 +33,7 @@ public class RemoveContactController extends BaseController {
         this.contact = message.contact;
         var removeContactCommand:RemoveContactCommand = new RemoveContactCommand();
         removeContactCommand.contactId = message.contact.uuid;
-        return commandReceiver.sendCommand(removeContactCommand);
+        return sendCommand(removeContactCommand);
     }
 
     public function result():void {
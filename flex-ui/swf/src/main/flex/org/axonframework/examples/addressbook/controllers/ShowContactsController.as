@@ -15,30 +15,42 @@
  */
 
 package org.axonframework.examples.addressbook.controllers {
-import mx.collections.ArrayCollection;
 import mx.rpc.AsyncToken;
 
 import org.axonframework.examples.addressbook.messages.command.ShowContactsCommandMessage;
 import org.axonframework.examples.addressbook.model.ContactModel;
+import org.axonframework.examples.addressbook.model.ContactPage;
 
 /**
- * Command obtains all contacts from the server
+ * Command obtains a page of contacts from the server. The first page replaces the contacts in the model, the next
+ * pages are added to them. The token for the next page is kept in the model.
  */
 public class ShowContactsController  extends BaseController {
+    private static const PAGE_SIZE:int = 250;
 
     [Inject]
     public var contactModel:ContactModel;
 
+    private var nextPage:Boolean;
+
     public function ShowContactsController() {
         super();
     }
 
     public function execute(message:ShowContactsCommandMessage):AsyncToken {
-        return addressService.obtainAllContacts();
+        nextPage = message.continuationToken != null;
+        return addressService.obtainContacts(message.continuationToken, PAGE_SIZE);
     }
 
-    public function result(contacts:ArrayCollection):void {
-        contactModel.contacts = contacts;
+    public function result(page:ContactPage):void {
+        if (nextPage) {
+            for each (var contact:Object in page.contacts) {
+                contactModel.contacts.addItem(contact);
+            }
+        } else {
+            contactModel.contacts = page.contacts;
+        }
+        contactModel.continuationToken = page.continuationToken;
     }
 
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2010. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.axonframework.examples.addressbook.controllers {
+import mx.collections.ArrayCollection;
+
+import org.axonframework.examples.addressbook.messages.notification.NotificationMessage;
+import org.axonframework.examples.addressbook.messages.notification.UpdateBatchNotificationMessage;
+import org.axonframework.examples.addressbook.model.Address;
+import org.axonframework.examples.addressbook.model.Contact;
+import org.axonframework.examples.addressbook.model.ContactModel;
+import org.axonframework.examples.addressbook.model.Removed;
+import org.axonframework.examples.addressbook.model.UpdateBatch;
+
+/**
+ * Applies a batch of updates to the model. The contacts are looked up in an index that is built once per batch, and
+ * the list of contacts refreshes the views only once, after all updates have been applied.
+ */
+public class UpdateBatchController extends BaseController {
+    [Inject]
+    public var contactModel:ContactModel;
+
+    public function UpdateBatchController() {
+        super();
+    }
+
+    public function execute(message:UpdateBatchNotificationMessage):void {
+        var batch:UpdateBatch = message.batch;
+        var contacts:ArrayCollection = contactModel.contacts;
+        var index:Object = {};
+        for each (var contact:Contact in contacts) {
+            index[contact.uuid] = contact;
+        }
+        var removedContacts:Object = {};
+        var removedContactCount:int = 0;
+        contacts.disableAutoUpdate();
+        try {
+            for each (var updatedContact:Contact in batch.contacts) {
+                var existingContact:Contact = index[updatedContact.uuid];
+                if (existingContact != null) {
+                    existingContact.name = updatedContact.name;
+                } else {
+                    contacts.addItem(updatedContact);
+                    index[updatedContact.uuid] = updatedContact;
+                }
+            }
+            for each (var address:Address in batch.addresses) {
+                var addressContact:Contact = index[address.contactUUID];
+                if (addressContact != null) {
+                    addressContact.addAddress(address);
+                }
+            }
+            for each (var removed:Removed in batch.removed) {
+                var removedContact:Contact = index[removed.contactIdentifier];
+                if (removedContact == null) {
+                    continue;
+                }
+                if (removed.addressType == null || removed.addressType.length == 0) {
+                    removedContacts[removed.contactIdentifier] = true;
+                    removedContactCount++;
+                } else {
+                    removedContact.removeAddress(removed.addressType);
+                }
+            }
+            if (removedContactCount > 0) {
+                for (var i:int = contacts.length - 1; i >= 0; i--) {
+                    if (removedContacts[contacts.getItemAt(i).uuid]) {
+                        contacts.removeItemAt(i);
+                    }
+                }
+            }
+        } finally {
+            contacts.enableAutoUpdate();
+        }
+        dispatcher(new NotificationMessage("Received " + batch.contacts.length + " contact updates, "
+                + batch.addresses.length + " address updates and " + batch.removed.length + " removals"));
+    }
+
+}
+}
@@ -15,8 +15,15 @@
  */
 
 package org.axonframework.examples.addressbook.messages.command {
+/**
+ * Requests a page of contacts. Without a continuation token the first page replaces the shown contacts, with the
+ * token of the last obtained page the next page is added to them.
+ */
 public class ShowContactsCommandMessage {
-    public function ShowContactsCommandMessage() {
+    public var continuationToken:String;
+
+    public function ShowContactsCommandMessage(continuationToken:String = null) {
+        this.continuationToken = continuationToken;
     }
 }
-}
\ No newline at end of file
+}
@@ -28,6 +28,12 @@ public class ContactModel {
     [Bindable]
     public var selectedContact:Contact = new Contact();
 
+    /**
+     * Token to obtain the next page of contacts, null when all contacts have been obtained.
+     */
+    [Bindable]
+    public var continuationToken:String;
+
     public function ContactModel() {
     }
 
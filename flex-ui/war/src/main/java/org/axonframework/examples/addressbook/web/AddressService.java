@@ -18,6 +18,7 @@ package org.axonframework.examples.addressbook.web;
 
 import org.axonframework.examples.addressbook.web.dto.AddressDTO;
 import org.axonframework.examples.addressbook.web.dto.ContactDTO;
+import org.axonframework.examples.addressbook.web.dto.ContactPageDTO;
 
 import java.util.List;
 
@@ -27,8 +28,24 @@ import java.util.List;
 public interface AddressService {
     List<AddressDTO> searchAddresses(AddressDTO searchAddress);
 
+    /**
+     * Returns the first page of contacts, ordered by name.
+     *
+     * @return List with the first contacts
+     * @deprecated use {@link #obtainContacts(String, int)} to page through the contacts
+     */
+    @Deprecated
     List<ContactDTO> obtainAllContacts();
 
+    /**
+     * Returns a page of contacts, ordered by name.
+     *
+     * @param continuationToken the token of the previous page, or null for the first page
+     * @param pageSize          the maximum number of contacts to return
+     * @return ContactPageDTO with the contacts and the token for the next page
+     */
+    ContactPageDTO obtainContacts(String continuationToken, int pageSize);
+
     List<AddressDTO> obtainContactAddresses(String contactIdentifier);
 
 }
@@ -19,13 +19,26 @@ package org.axonframework.examples.addressbook.web;
 /**
  * <p>Generic command receiver which accepts all commands. By calling the sendCommand method you expect the command
  * to be put on the CommandBus</p>
+ * <p>The dispatchCommand method does not wait for the command to complete. The outcome of the command is pushed to
+ * the client on the <code>command-results</code> message destination instead.</p>
  * @author Jettro Coenradie
  */
 public interface CommandReceiver {
     /**
-     * Send a new command to the command bus. If a return value is available it is passed on.
+     * Send a new command to the command bus and wait for it to complete. If a return value is available it is passed
+     * on.
      * @param command Object representing the command to be dispatched to the command bus
      * @return Object as returned by the command bus
      */
     Object sendCommand(Object command);
+
+    /**
+     * Send a new command to the command bus without waiting for it to complete. The outcome is pushed as a
+     * {@link org.axonframework.examples.addressbook.web.dto.CommandResultDTO} to the <code>command-results</code>
+     * destination, on the subtopic given by <code>replyTo</code>.
+     * @param command Object representing the command to be dispatched to the command bus
+     * @param replyTo the subtopic the client listens to for results
+     * @param correlationId identifier of the command, chosen by the client, that is sent back with the result
+     */
+    void dispatchCommand(Object command, String replyTo, String correlationId);
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2010. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.examples.addressbook.web.dto;
+
+import java.io.Serializable;
+
+/**
+ * <p>Outcome of a command dispatched with {@link org.axonframework.examples.addressbook.web.CommandReceiver#dispatchCommand},
+ * pushed to the client that dispatched it.</p>
+ */
+public class CommandResultDTO implements Serializable {
+    private String correlationId;
+    private boolean successful;
+    private Object result;
+    private String errorMessage;
+
+    public CommandResultDTO() {
+    }
+
+    public static CommandResultDTO createSuccessFrom(String correlationId, Object result) {
+        CommandResultDTO commandResult = new CommandResultDTO();
+        commandResult.setCorrelationId(correlationId);
+        commandResult.setSuccessful(true);
+        commandResult.setResult(result);
+        return commandResult;
+    }
+
+    public static CommandResultDTO createFailureFrom(String correlationId, String errorMessage) {
+        CommandResultDTO commandResult = new CommandResultDTO();
+        commandResult.setCorrelationId(correlationId);
+        commandResult.setSuccessful(false);
+        commandResult.setErrorMessage(errorMessage);
+        return commandResult;
+    }
+
+    public String getCorrelationId() {
+        return correlationId;
+    }
+
+    public void setCorrelationId(String correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    public void setSuccessful(boolean successful) {
+        this.successful = successful;
+    }
+
+    public Object getResult() {
+        return result;
+    }
+
+    public void setResult(Object result) {
+        this.result = result;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+}
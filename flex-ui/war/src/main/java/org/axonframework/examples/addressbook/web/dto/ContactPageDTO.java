@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2010. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.examples.addressbook.web.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Page of contacts with the token to obtain the next page, the token is null for the last page.
+ */
+public class ContactPageDTO implements Serializable {
+    private List<ContactDTO> contacts;
+    private String continuationToken;
+
+    public ContactPageDTO() {
+    }
+
+    public ContactPageDTO(List<ContactDTO> contacts, String continuationToken) {
+        this.contacts = contacts;
+        this.continuationToken = continuationToken;
+    }
+
+    public List<ContactDTO> getContacts() {
+        return contacts;
+    }
+
+    public void setContacts(List<ContactDTO> contacts) {
+        this.contacts = contacts;
+    }
+
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+}
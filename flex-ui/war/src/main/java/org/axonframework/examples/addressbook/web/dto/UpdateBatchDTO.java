@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2010. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.examples.addressbook.web.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A batch of updates pushed to the flex clients in a single message. Clients apply the contacts first, then the
+ * addresses and then the removals.</p>
+ */
+public class UpdateBatchDTO implements Serializable {
+    private List<ContactDTO> contacts = new ArrayList<ContactDTO>();
+    private List<AddressDTO> addresses = new ArrayList<AddressDTO>();
+    private List<RemovedDTO> removed = new ArrayList<RemovedDTO>();
+
+    public UpdateBatchDTO() {
+    }
+
+    public int size() {
+        return contacts.size() + addresses.size() + removed.size();
+    }
+
+    public List<ContactDTO> getContacts() {
+        return contacts;
+    }
+
+    public void setContacts(List<ContactDTO> contacts) {
+        this.contacts = contacts;
+    }
+
+    public List<AddressDTO> getAddresses() {
+        return addresses;
+    }
+
+    public void setAddresses(List<AddressDTO> addresses) {
+        this.addresses = addresses;
+    }
+
+    public List<RemovedDTO> getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(List<RemovedDTO> removed) {
+        this.removed = removed;
+    }
+}
@@ -19,8 +19,10 @@ package org.axonframework.examples.addressbook.web.impl;
 import org.axonframework.examples.addressbook.web.AddressService;
 import org.axonframework.examples.addressbook.web.dto.AddressDTO;
 import org.axonframework.examples.addressbook.web.dto.ContactDTO;
+import org.axonframework.examples.addressbook.web.dto.ContactPageDTO;
 import org.axonframework.sample.app.query.AddressEntry;
 import org.axonframework.sample.app.query.ContactEntry;
+import org.axonframework.sample.app.query.ContactPage;
 import org.axonframework.sample.app.query.ContactRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.flex.remoting.RemotingDestination;
@@ -36,6 +38,9 @@ import java.util.List;
 @Service("addressService")
 @RemotingDestination(channels = {"my-amf"})
 public class AddressServiceImpl implements AddressService {
+    private static final int PAGE_SIZE = 250;
+    private static final int MAX_SEARCH_RESULTS = 250;
+
     private ContactRepository repository;
 
     @Autowired
@@ -48,25 +53,40 @@ public class AddressServiceImpl implements AddressService {
     public List<AddressDTO> searchAddresses(AddressDTO searchAddress) {
         List<AddressDTO> foundAddresses = new ArrayList<AddressDTO>();
 
-        List<AddressEntry> addresses =
-                repository.findAllAddressesInCityForContact(searchAddress.getContactName(), searchAddress.getCity());
+        List<AddressEntry> addresses = repository.searchAddresses(searchAddress.getContactName(),
+                                                                  searchAddress.getCity(),
+                                                                  searchAddress.getZipCode(),
+                                                                  searchAddress.getStreet(),
+                                                                  MAX_SEARCH_RESULTS);
         for (AddressEntry address : addresses) {
             foundAddresses.add(AddressDTO.createFrom(address));
         }
         return foundAddresses;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Only the first page is returned, so a single call never reads the whole contact table.
+     */
+    @Deprecated
     @Override
     @RemotingInclude
     public List<ContactDTO> obtainAllContacts() {
         List<ContactDTO> contacts = new ArrayList<ContactDTO>();
-        List<ContactEntry> allContacts = repository.findAllContacts();
-        for (ContactEntry contactEntry : allContacts) {
-            contacts.add(ContactDTO.createContactDTOFrom(contactEntry));
-        }
+        addContacts(contacts, repository.findContacts(null, PAGE_SIZE));
         return contacts;
     }
 
+    @Override
+    @RemotingInclude
+    public ContactPageDTO obtainContacts(String continuationToken, int pageSize) {
+        List<ContactDTO> contacts = new ArrayList<ContactDTO>();
+        ContactPage page = repository.findContacts(continuationToken, pageSize);
+        addContacts(contacts, page);
+        return new ContactPageDTO(contacts, page.getContinuationToken());
+    }
+
     @Override
     @RemotingInclude
     public List<AddressDTO> obtainContactAddresses(String contactIdentifier) {
@@ -80,4 +100,9 @@ public class AddressServiceImpl implements AddressService {
         return foundAddresses;
     }
 
+    private void addContacts(List<ContactDTO> contacts, ContactPage page) {
+        for (ContactEntry contactEntry : page.getContacts()) {
+            contacts.add(ContactDTO.createContactDTOFrom(contactEntry));
+        }
+    }
 }
@@ -17,43 +17,269 @@
 package org.axonframework.examples.addressbook.web.impl;
 
 import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandCallback;
 import org.axonframework.commandhandling.GenericCommandMessage;
 import org.axonframework.commandhandling.callbacks.FutureCallback;
 import org.axonframework.examples.addressbook.web.CommandReceiver;
+import org.axonframework.examples.addressbook.web.dto.CommandResultDTO;
+import org.axonframework.examples.addressbook.web.listener.UpdateMessageProducerForFlex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.flex.remoting.RemotingDestination;
 import org.springframework.flex.remoting.RemotingInclude;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * <p>Implementation of the CommandReceiver interface to be used as an endpoint for flex clients</p>
+ * <p>Commands are executed by a pool of <code>threadCount</code> threads, not by the thread of the remoting request.
+ * At most <code>maxCommandsInProgress</code> commands are accepted at the same time; more commands are refused with
+ * an error, so a burst of commands cannot exhaust the threads of the servlet container. A command that does not
+ * complete within <code>commandTimeout</code> milliseconds is reported as failed. If it did not start yet, it is not
+ * executed at all.</p>
  *
  * @author Jettro Coenradie
  */
 @Service("commandReceiver")
 @RemotingDestination(channels = {"my-amf"})
-public class CommandReceiverImpl implements CommandReceiver {
+@ManagedResource(objectName = "org.axonframework.examples.addressbook:type=CommandReceiver,name=flex",
+                 description = "Receives the commands of the flex clients")
+public class CommandReceiverImpl implements CommandReceiver, InitializingBean, DisposableBean {
 
     private final static Logger logger = LoggerFactory.getLogger(CommandReceiverImpl.class);
     private CommandBus commandBus;
+    private UpdateMessageProducerForFlex messageProducer;
+
+    private int threadCount = 10;
+    private int maxCommandsInProgress = 100;
+    private long commandTimeout = 30000;
+
+    private Semaphore commandsInProgress;
+    private ExecutorService executor;
+    private ScheduledThreadPoolExecutor timeoutScheduler;
+
+    private final AtomicLong succeededCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+    private final AtomicLong refusedCount = new AtomicLong();
 
     @Autowired
-    public CommandReceiverImpl(CommandBus commandBus) {
+    public CommandReceiverImpl(CommandBus commandBus, UpdateMessageProducerForFlex messageProducer) {
         this.commandBus = commandBus;
+        this.messageProducer = messageProducer;
     }
 
     @RemotingInclude
     @Override
     public Object sendCommand(Object command) {
         logger.debug("Received a command of type : {}", command.getClass().getSimpleName());
-        FutureCallback callback = new FutureCallback();
-        commandBus.dispatch(new GenericCommandMessage<Object>(command), callback);
+        FutureCallback<Object> callback = new FutureCallback<Object>();
+        execute(command, callback);
         try {
             return callback.get();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
+
+    @RemotingInclude
+    @Override
+    public void dispatchCommand(Object command, final String replyTo, final String correlationId) {
+        logger.debug("Received a command of type {} with correlation id {}",
+                     command.getClass().getSimpleName(), correlationId);
+        execute(command, new CommandCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                messageProducer.sendCommandResult(replyTo, CommandResultDTO.createSuccessFrom(correlationId, result));
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                messageProducer.sendCommandResult(replyTo,
+                                                  CommandResultDTO.createFailureFrom(correlationId, cause.getMessage()));
+            }
+        });
+    }
+
+    private void execute(Object command, CommandCallback<Object> callback) {
+        if (!commandsInProgress.tryAcquire()) {
+            refusedCount.incrementAndGet();
+            throw new IllegalStateException("The server is too busy to handle the command, please try again later");
+        }
+        final PendingCommand pendingCommand = new PendingCommand(command, callback);
+        // the timeout is scheduled first, so a command that completes right away can always cancel it
+        try {
+            pendingCommand.timeout = timeoutScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    pendingCommand.onTimeout();
+                }
+            }, commandTimeout, TimeUnit.MILLISECONDS);
+            pendingCommand.task = executor.submit(pendingCommand);
+        } catch (RejectedExecutionException e) {
+            pendingCommand.cancelTimeout();
+            commandsInProgress.release();
+            throw new IllegalStateException("The command receiver has been stopped", e);
+        }
+    }
+
+    /**
+     * Starts the threads that execute the commands.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        commandsInProgress = new Semaphore(maxCommandsInProgress);
+        executor = Executors.newFixedThreadPool(threadCount);
+        timeoutScheduler = new ScheduledThreadPoolExecutor(1);
+    }
+
+    /**
+     * Stops the threads that execute the commands, after the commands in progress have completed.
+     *
+     * @throws InterruptedException when interrupted while waiting for the commands in progress
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(commandTimeout, TimeUnit.MILLISECONDS);
+        timeoutScheduler.shutdownNow();
+    }
+
+    @ManagedAttribute(description = "Number of commands that completed successfully")
+    public long getSucceededCount() {
+        return succeededCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of commands that failed")
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of commands that did not complete in time")
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of commands refused because too many commands were in progress")
+    public long getRefusedCount() {
+        return refusedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of commands waiting or executing")
+    public int getCommandsInProgress() {
+        return commandsInProgress == null ? 0 : maxCommandsInProgress - commandsInProgress.availablePermits();
+    }
+
+    /**
+     * Sets the number of threads that execute commands. Defaults to 10.
+     *
+     * @param threadCount the number of threads executing commands
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Sets the maximum number of commands waiting or executing at the same time. Defaults to 100.
+     *
+     * @param maxCommandsInProgress the maximum number of commands in progress
+     */
+    public void setMaxCommandsInProgress(int maxCommandsInProgress) {
+        this.maxCommandsInProgress = maxCommandsInProgress;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a command that has not completed is reported as failed. Defaults to
+     * 30000.
+     *
+     * @param commandTimeout the maximum time for a command to complete
+     */
+    public void setCommandTimeout(long commandTimeout) {
+        this.commandTimeout = commandTimeout;
+    }
+
+    /**
+     * A command accepted by the receiver. The callback is invoked exactly once: with the outcome of the command, or
+     * with a timeout, whichever comes first.
+     */
+    private class PendingCommand implements Runnable, CommandCallback<Object> {
+
+        private final Object command;
+        private final CommandCallback<Object> callback;
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile Future<?> task;
+        private volatile Future<?> timeout;
+
+        private PendingCommand(Object command, CommandCallback<Object> callback) {
+            this.command = command;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            try {
+                commandBus.dispatch(new GenericCommandMessage<Object>(command), this);
+            } finally {
+                commandsInProgress.release();
+            }
+        }
+
+        @Override
+        public void onSuccess(Object result) {
+            if (completed.compareAndSet(false, true)) {
+                cancelTimeout();
+                succeededCount.incrementAndGet();
+                callback.onSuccess(result);
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable cause) {
+            if (completed.compareAndSet(false, true)) {
+                cancelTimeout();
+                failedCount.incrementAndGet();
+                callback.onFailure(cause);
+            }
+        }
+
+        private void onTimeout() {
+            if (completed.compareAndSet(false, true)) {
+                timedOutCount.incrementAndGet();
+                Future<?> submittedTask = task;
+                if (submittedTask != null && submittedTask.cancel(false)) {
+                    // the command never started, so run() will not release its permit
+                    commandsInProgress.release();
+                }
+                logger.warn("Command of type {} did not complete within {} ms",
+                            command.getClass().getSimpleName(), commandTimeout);
+                callback.onFailure(new TimeoutException("The command did not complete in time"));
+            }
+        }
+
+        /**
+         * Cancels the timeout and removes it from the scheduler, which would otherwise keep cancelled tasks queued
+         * until their delay has passed.
+         */
+        private void cancelTimeout() {
+            Future<?> scheduledTimeout = timeout;
+            if (scheduledTimeout != null && scheduledTimeout.cancel(false)) {
+                timeoutScheduler.remove((Runnable) scheduledTimeout);
+            }
+        }
+    }
 }
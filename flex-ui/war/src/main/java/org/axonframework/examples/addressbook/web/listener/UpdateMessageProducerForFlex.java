@@ -16,20 +16,69 @@
 
 package org.axonframework.examples.addressbook.web.listener;
 
+import flex.messaging.messages.AsyncMessage;
 import org.axonframework.examples.addressbook.web.dto.AddressDTO;
+import org.axonframework.examples.addressbook.web.dto.CommandResultDTO;
 import org.axonframework.examples.addressbook.web.dto.ContactDTO;
 import org.axonframework.examples.addressbook.web.dto.RemovedDTO;
+import org.axonframework.examples.addressbook.web.dto.UpdateBatchDTO;
+import org.axonframework.sample.app.api.AddressType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.flex.messaging.MessageCreator;
 import org.springframework.flex.messaging.MessageTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Component;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
+ * <p>Pushes the updates of contacts and addresses to the flex clients on the <code>event-bus</code> destination.</p>
+ * <p>Updates are not sent one by one. They are collected for <code>windowLength</code> milliseconds and then sent as
+ * {@link UpdateBatchDTO} messages of at most <code>maxBatchSize</code> updates. Within a window only the latest state
+ * of a contact is kept: a second name change replaces the first, a new address replaces an earlier address of the
+ * same type, and the removal of a contact replaces all its other updates. A bulk import therefore results in a few
+ * large messages instead of thousands of small ones.</p>
+ *
  * @author Jettro Coenradie
  */
 @Component
-public class UpdateMessageProducerForFlex {
+@ManagedResource(objectName = "org.axonframework.examples.addressbook:type=Publisher,name=flex",
+                 description = "Pushes batched updates to the flex clients")
+public class UpdateMessageProducerForFlex implements DisposableBean {
+
+    public static final String COMMAND_RESULTS_DESTINATION = "command-results";
+
+    private final static Logger logger = LoggerFactory.getLogger(UpdateMessageProducerForFlex.class);
 
     private MessageTemplate template;
+    private long windowLength = 250;
+    private int maxBatchSize = 500;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FlexUpdatePusher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final Object lock = new Object();
+    private Map<String, PendingContact> pendingContacts = new LinkedHashMap<String, PendingContact>();
+    private boolean flushScheduled;
+
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong messageCount = new AtomicLong();
 
     @Autowired
     public UpdateMessageProducerForFlex(MessageTemplate template) {
@@ -37,14 +86,163 @@ public class UpdateMessageProducerForFlex {
     }
 
     public void sendContactUpdate(final ContactDTO contactDTO) {
-        template.send(contactDTO);
+        synchronized (lock) {
+            pendingContact(contactDTO.getUuid()).contact = contactDTO;
+        }
     }
 
     public void sendAddressUpdate(final AddressDTO addressDTO) {
-        template.send(addressDTO);
+        synchronized (lock) {
+            pendingContact(addressDTO.getContactUUID()).addresses.put(addressDTO.getType(), addressDTO);
+        }
     }
 
     public void sendRemovedUpdate(final RemovedDTO removedDTO) {
-        template.send(removedDTO);
+        synchronized (lock) {
+            PendingContact pendingContact = pendingContact(removedDTO.getContactIdentifier());
+            if (removedDTO.getAddressType() == null) {
+                pendingContact.contact = null;
+                pendingContact.addresses.clear();
+                pendingContact.removedContact = removedDTO;
+            } else {
+                pendingContact.addresses.put(removedDTO.getAddressType(), removedDTO);
+            }
+        }
+    }
+
+    /**
+     * Sends the result of a command to the client that dispatched it. Command results are sent immediately.
+     *
+     * @param replyTo          the subtopic the client listens to
+     * @param commandResultDTO the result of the command
+     */
+    public void sendCommandResult(final String replyTo, final CommandResultDTO commandResultDTO) {
+        template.send(new MessageCreator() {
+            @Override
+            public AsyncMessage createMessage() {
+                AsyncMessage message = template.createMessageForDestination(COMMAND_RESULTS_DESTINATION);
+                message.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, replyTo);
+                message.setBody(commandResultDTO);
+                return message;
+            }
+        });
+    }
+
+    private PendingContact pendingContact(String contactIdentifier) {
+        receivedCount.incrementAndGet();
+        PendingContact pendingContact = pendingContacts.get(contactIdentifier);
+        if (pendingContact == null) {
+            pendingContact = new PendingContact();
+            pendingContacts.put(contactIdentifier, pendingContact);
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, windowLength, TimeUnit.MILLISECONDS);
+        }
+        return pendingContact;
+    }
+
+    /**
+     * Sends all collected updates, in batches of at most <code>maxBatchSize</code> updates.
+     */
+    public void flush() {
+        Map<String, PendingContact> updates;
+        synchronized (lock) {
+            updates = pendingContacts;
+            pendingContacts = new LinkedHashMap<String, PendingContact>();
+            flushScheduled = false;
+        }
+        UpdateBatchDTO batch = new UpdateBatchDTO();
+        for (PendingContact pendingContact : updates.values()) {
+            if (pendingContact.removedContact != null) {
+                batch.getRemoved().add(pendingContact.removedContact);
+            }
+            if (pendingContact.contact != null) {
+                batch.getContacts().add(pendingContact.contact);
+            }
+            for (Object address : pendingContact.addresses.values()) {
+                if (address instanceof AddressDTO) {
+                    batch.getAddresses().add((AddressDTO) address);
+                } else {
+                    batch.getRemoved().add((RemovedDTO) address);
+                }
+            }
+            if (batch.size() >= maxBatchSize) {
+                send(batch);
+                batch = new UpdateBatchDTO();
+            }
+        }
+        if (batch.size() > 0) {
+            send(batch);
+        }
+    }
+
+    private void send(UpdateBatchDTO batch) {
+        try {
+            template.send(batch);
+            sentCount.addAndGet(batch.size());
+            messageCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            logger.warn("Unable to push " + batch.size() + " updates to the flex clients", e);
+        }
+    }
+
+    /**
+     * Sends the updates that are still waiting and stops the thread that sends the batches.
+     */
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        flush();
+    }
+
+    @ManagedAttribute(description = "Number of updates received from the listeners")
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of updates pushed after coalescing")
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of batch messages pushed")
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    /**
+     * Sets the time in milliseconds updates are collected before they are sent. Defaults to 250.
+     *
+     * @param windowLength the time to collect updates
+     */
+    public void setWindowLength(long windowLength) {
+        this.windowLength = windowLength;
+    }
+
+    /**
+     * Sets the maximum number of updates in one message. A batch can exceed it by the updates of a single contact.
+     * Defaults to 500.
+     *
+     * @param maxBatchSize the maximum number of updates per message
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * The updates of a single contact within the current window. The addresses map holds an {@link AddressDTO} for
+     * a registered address and a {@link RemovedDTO} for a removed address.
+     */
+    private static class PendingContact {
+
+        private RemovedDTO removedContact;
+        private ContactDTO contact;
+        private final Map<AddressType, Object> addresses = new LinkedHashMap<AddressType, Object>();
     }
 }
@@ -18,6 +18,11 @@ package org.axonframework.examples.addressbook.rest;
 
 import org.axonframework.commandhandling.CommandBus;
 import org.axonframework.commandhandling.GenericCommandMessage;
+import org.axonframework.examples.addressbook.rest.bulk.ContactImporter;
+import org.axonframework.examples.addressbook.rest.bulk.CsvRecordReader;
+import org.axonframework.examples.addressbook.rest.bulk.ImportRecordReader;
+import org.axonframework.examples.addressbook.rest.bulk.ImportReport;
+import org.axonframework.examples.addressbook.rest.bulk.JsonLinesRecordReader;
 import org.axonframework.sample.app.api.ChangeContactNameCommand;
 import org.axonframework.sample.app.api.CreateContactCommand;
 import org.axonframework.sample.app.api.RegisterAddressCommand;
@@ -25,40 +30,51 @@ import org.axonframework.sample.app.api.RemoveAddressCommand;
 import org.axonframework.sample.app.api.RemoveContactCommand;
 import org.axonframework.sample.app.command.ContactNameRepository;
 import org.axonframework.sample.app.query.AddressEntry;
+import org.axonframework.sample.app.query.ContactDetailsView;
 import org.axonframework.sample.app.query.ContactEntry;
+import org.axonframework.sample.app.query.ContactPage;
 import org.axonframework.sample.app.query.ContactRepository;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.MissingServletRequestParameterException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
 
 /**
  * <p>Controller that facilitates the rest based interface for contacts. You can use the following methods:</p>
  * <ul>
- * <li>/contacts : GET, returns the list of all contacts</li>
+ * <li>/contacts : GET, returns a page of contacts ordered by name, see {@link #list}</li>
  * <li>/contacts : POST, creates a new contact</li>
  * <li>/contacts : PUT, changes an existing contact</li>
  * <li>/contacts : DELETE, removes a contact</li>
+ * <li>/contacts/import : POST, imports contacts in bulk, see {@link #importContacts}</li>
  * <li>/contacts/{identifier} : GET, returns the details of a contact</li>
  * <li>/contacts/{identifier}/address : PUT, creates a new address or updates an existing one based on address type</li>
  * <li>/contacts/{identifier}/address : DELETE, removes the address of provided type</li>
  * </ul>
  * <p>These are all the contacts related methods that this rest interface currently supports. We expect all provided
  * data to be in json format and all data is returned in json format as well. Exceptions are returned as html error
- * pages.</p>
+ * pages, invalid parameters like an unknown continuation token result in a 400 (Bad Request).</p>
  *
  * @author Jettro Coenradie
  */
@@ -76,16 +92,33 @@ public class ContactsController {
     @Autowired
     private CommandBus commandBus;
 
+    @Autowired
+    private ContactImporter contactImporter;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
     /**
-     * Returns a list of all contacts
+     * Returns a page of contacts, ordered by name. When there are more contacts, the token to obtain the next page is
+     * returned in the X-Continuation-Token header. Pass it as the continuationToken parameter to obtain that page.
      *
+     * @param continuationToken String containing the token of the previous page, or null for the first page
+     * @param size              the maximum number of contacts to return
+     * @param response          the response to add the continuation token to
      * @return List containing the contacts
+     * @throws IllegalArgumentException when the size is out of range or the continuation token is invalid, answered
+     *                                  with a 400 by {@link #handleInvalidArgument}
      */
     @RequestMapping(method = RequestMethod.GET)
     public
     @ResponseBody
-    List<ContactEntry> list() {
-        return repository.findAllContacts();
+    List<ContactEntry> list(@RequestParam(value = "continuationToken", required = false) String continuationToken,
+                            @RequestParam(value = "size", defaultValue = "250") int size,
+                            HttpServletResponse response) {
+        ContactPage page = repository.findContacts(continuationToken, size);
+        if (!page.isLastPage()) {
+            response.setHeader("X-Continuation-Token", page.getContinuationToken());
+        }
+        return page.getContacts();
     }
 
     /**
@@ -98,17 +131,11 @@ public class ContactsController {
     public
     @ResponseBody
     Map<String, Object> details(@PathVariable String identifier) {
-        List<AddressEntry> addressesForContact = repository.findAllAddressesForContact(identifier);
-        String name;
-        if (addressesForContact.size() > 0) {
-            name = addressesForContact.get(0).getName();
-        } else {
-            name = repository.loadContactDetails(identifier).getName();
-        }
+        ContactDetailsView contact = repository.loadContactDetailsView(identifier);
         Map<String, Object> map = new HashMap<String, Object>();
-        map.put("addresses", addressesForContact);
+        map.put("addresses", contact.getAddresses());
         map.put("identifier", identifier);
-        map.put("name", name);
+        map.put("name", contact.getName());
         return map;
     }
 
@@ -129,6 +156,45 @@ public class ContactsController {
         commandBus.dispatch(new GenericCommandMessage<Object>(command));
     }
 
+    /**
+     * Imports the contacts in the request body and returns a report with the number of imported contacts and the
+     * errors of the records that could not be imported. The body is read while the contacts are imported, it is not
+     * loaded in memory first. Two formats are supported:
+     * <ul>
+     * <li>json : newline delimited json, one contact per line, see
+     * {@link org.axonframework.examples.addressbook.rest.bulk.ImportRecord}</li>
+     * <li>csv : one address per line as name,addressType,streetAndNumber,zipCode,city, see {@link CsvRecordReader}</li>
+     * </ul>
+     * <p>The format is taken from the format parameter. Without it, a text/csv content type means csv, anything else
+     * json.</p>
+     *
+     * @param format  String containing the format of the body, json or csv
+     * @param request the request to read the contacts from
+     * @return ImportReport with the outcome of the import
+     * @throws IOException          when the request body cannot be read
+     * @throws InterruptedException when interrupted while the contacts are imported
+     */
+    @RequestMapping(value = "import", method = RequestMethod.POST)
+    public
+    @ResponseBody
+    ImportReport importContacts(@RequestParam(value = "format", required = false) String format,
+                                HttpServletRequest request) throws IOException, InterruptedException {
+        if (format == null) {
+            String contentType = request.getContentType();
+            format = contentType != null && contentType.startsWith("text/csv") ? "csv" : "json";
+        }
+        String encoding = request.getCharacterEncoding() != null ? request.getCharacterEncoding() : "UTF-8";
+        BufferedReader bodyReader = new BufferedReader(new InputStreamReader(request.getInputStream(), encoding));
+        ImportRecordReader recordReader;
+        if ("csv".equalsIgnoreCase(format)) {
+            recordReader = new CsvRecordReader(bodyReader);
+        } else {
+            recordReader = new JsonLinesRecordReader(bodyReader, objectMapper);
+        }
+        logger.info("Starting a {} import of contacts", format);
+        return contactImporter.importContacts(recordReader);
+    }
+
     /**
      * Change the name of a contact
      *
@@ -204,6 +270,21 @@ public class ContactsController {
     }
 
 
+    /**
+     * Answers requests with invalid parameters, like a page size out of range or a continuation token that was not
+     * issued by this service, with a 400 (Bad Request) instead of a server error.
+     *
+     * @param exception the exception describing the invalid parameter
+     * @param response  the response to send the error with
+     * @throws IOException when the error cannot be sent
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public void handleInvalidArgument(IllegalArgumentException exception, HttpServletResponse response)
+            throws IOException {
+        logger.debug("Rejecting a request with an invalid argument: {}", exception.getMessage());
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, exception.getMessage());
+    }
+
     /**
      * Checks if the entered data for a contact is valid and if the provided contact has not yet been taken.
      *
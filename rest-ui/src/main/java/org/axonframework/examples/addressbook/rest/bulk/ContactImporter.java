@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.examples.addressbook.rest.bulk;
+
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.GenericCommandMessage;
+import org.axonframework.commandhandling.callbacks.FutureCallback;
+import org.axonframework.sample.app.api.CreateContactCommand;
+import org.axonframework.sample.app.api.RegisterAddressCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Imports contacts by sending a {@link CreateContactCommand} for each record, followed by a
+ * {@link RegisterAddressCommand} for each of its addresses. The records are read one at a time and handed to a pool of
+ * <code>threadCount</code> threads in batches of <code>batchSize</code> records. At most
+ * <code>maxBatchesInProgress</code> batches of one import are waiting or executing; when that many batches are in
+ * progress, reading the next records waits. The records in memory are therefore limited, however large the import
+ * is.</p>
+ * <p>A record that cannot be read or whose contact cannot be created is reported as failed with its line number, the
+ * import continues with the next record. When the contact is created, but some of its addresses or lines are not, the
+ * record is reported as partially imported: the contact is kept and the remaining addresses are still registered. The
+ * order of the records is not kept: records in different batches are imported concurrently.</p>
+ */
+@Component
+@ManagedResource(objectName = "org.axonframework.examples.addressbook:type=Importer,name=contacts",
+                 description = "Imports contacts in bulk")
+public class ContactImporter implements InitializingBean, DisposableBean {
+
+    private final static Logger logger = LoggerFactory.getLogger(ContactImporter.class);
+
+    private final CommandBus commandBus;
+
+    private int threadCount = 4;
+    private int batchSize = 100;
+    private int maxBatchesInProgress = 8;
+    private int maxReportedErrors = 100;
+    private long progressInterval = 10000;
+
+    private ExecutorService executor;
+
+    private final AtomicLong importedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong partialCount = new AtomicLong();
+
+    @Autowired
+    public ContactImporter(CommandBus commandBus) {
+        this.commandBus = commandBus;
+    }
+
+    /**
+     * Imports all records of the reader. Returns when all records have been imported.
+     *
+     * @param reader the reader to take the records from
+     * @return the report of the import
+     * @throws IOException          when reading the records fails. The records read so far are still imported, without
+     *                              waiting for them.
+     * @throws InterruptedException when interrupted while waiting for the records to be imported
+     */
+    public ImportReport importContacts(ImportRecordReader reader) throws IOException, InterruptedException {
+        ImportReport report = new ImportReport(maxReportedErrors);
+        Semaphore batchesInProgress = new Semaphore(maxBatchesInProgress);
+        long nextProgress = progressInterval;
+        List<ImportRecord> batch = new ArrayList<ImportRecord>(batchSize);
+        ImportRecord record;
+        while ((record = readRecord(reader, report)) != null) {
+            batch.add(record);
+            if (batch.size() >= batchSize) {
+                submit(batch, report, batchesInProgress);
+                batch = new ArrayList<ImportRecord>(batchSize);
+            }
+            if (report.getRecordCount() >= nextProgress) {
+                nextProgress += progressInterval;
+                logProgress(report);
+            }
+        }
+        if (!batch.isEmpty()) {
+            submit(batch, report, batchesInProgress);
+        }
+        // waits for the batches in progress, only once all records have been submitted
+        batchesInProgress.acquire(maxBatchesInProgress);
+        report.finished();
+        logger.info("Imported {} contacts with {} addresses in {} ms, {} records failed, {} partially imported",
+                    new Object[]{report.getContactsCreated(), report.getAddressesRegistered(),
+                            report.getElapsedMillis(), report.getFailedRecords(), report.getPartialRecords()});
+        return report;
+    }
+
+    private ImportRecord readRecord(ImportRecordReader reader, ImportReport report) throws IOException {
+        while (true) {
+            try {
+                ImportRecord record = reader.next();
+                if (record != null) {
+                    report.recordRead();
+                }
+                return record;
+            } catch (InvalidRecordException e) {
+                report.recordRead();
+                report.recordFailed(e.getLineNumber(), e.getMessage());
+                failedCount.incrementAndGet();
+            }
+        }
+    }
+
+    private void submit(final List<ImportRecord> batch, final ImportReport report,
+                        final Semaphore batchesInProgress) throws InterruptedException {
+        batchesInProgress.acquire();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (ImportRecord record : batch) {
+                            importRecord(record, report);
+                        }
+                    } finally {
+                        batchesInProgress.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            batchesInProgress.release();
+            throw new IllegalStateException("The importer has been stopped", e);
+        }
+    }
+
+    private void importRecord(ImportRecord record, ImportReport report) {
+        String contactId = UUID.randomUUID().toString();
+        try {
+            CreateContactCommand createCommand = new CreateContactCommand();
+            createCommand.setContactId(contactId);
+            createCommand.setNewContactName(record.getName());
+            dispatch(createCommand);
+            report.contactCreated();
+        } catch (Exception e) {
+            failedCount.incrementAndGet();
+            report.recordFailed(record.getLineNumber(), messageOf(e));
+            return;
+        }
+        List<ImportReport.ImportError> errors = new ArrayList<ImportReport.ImportError>();
+        for (InvalidRecordException skippedLine : record.getSkippedLines()) {
+            errors.add(new ImportReport.ImportError(skippedLine.getLineNumber(), skippedLine.getMessage(), true));
+        }
+        for (ImportRecord.Address address : record.getAddresses()) {
+            RegisterAddressCommand addressCommand = new RegisterAddressCommand();
+            addressCommand.setContactId(contactId);
+            addressCommand.setAddressType(address.getAddressType());
+            addressCommand.setStreetAndNumber(address.getStreetAndNumber());
+            addressCommand.setZipCode(address.getZipCode());
+            addressCommand.setCity(address.getCity());
+            try {
+                dispatch(addressCommand);
+                report.addressRegistered();
+            } catch (Exception e) {
+                errors.add(new ImportReport.ImportError(record.getLineNumber(), messageOf(e), true));
+                if (e instanceof InterruptedException) {
+                    break;
+                }
+            }
+        }
+        if (errors.isEmpty()) {
+            importedCount.incrementAndGet();
+        } else {
+            partialCount.incrementAndGet();
+            report.recordPartiallyImported(errors);
+        }
+    }
+
+    private static String messageOf(Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            return "Interrupted while importing the record";
+        }
+        Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+        return cause.getMessage();
+    }
+
+    private void dispatch(Object command) throws InterruptedException, ExecutionException {
+        FutureCallback<Object> callback = new FutureCallback<Object>();
+        commandBus.dispatch(new GenericCommandMessage<Object>(command), callback);
+        callback.get();
+    }
+
+    private void logProgress(ImportReport report) {
+        logger.info("Import in progress: {} records read, {} contacts created, {} per second",
+                    new Object[]{report.getRecordCount(), report.getContactsCreated(),
+                            Math.round(report.getContactsPerSecond())});
+    }
+
+    /**
+     * Starts the threads that import the records.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        executor = Executors.newFixedThreadPool(threadCount);
+    }
+
+    /**
+     * Stops the threads that import the records, after the batches in progress have been imported.
+     */
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    @ManagedAttribute(description = "Number of records imported")
+    public long getImportedCount() {
+        return importedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of records that could not be imported")
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of records of which the contact was imported, but not all addresses")
+    public long getPartialCount() {
+        return partialCount.get();
+    }
+
+    /**
+     * Sets the number of threads that import records, shared by all imports. Defaults to 4.
+     *
+     * @param threadCount the number of threads importing records
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Sets the number of records handed to a thread at a time. Defaults to 100.
+     *
+     * @param batchSize the number of records per batch
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the maximum number of batches of one import that are waiting or executing. Defaults to 8.
+     *
+     * @param maxBatchesInProgress the maximum number of batches in progress per import
+     */
+    public void setMaxBatchesInProgress(int maxBatchesInProgress) {
+        this.maxBatchesInProgress = maxBatchesInProgress;
+    }
+
+    /**
+     * Sets the maximum number of errors in the report of an import. Defaults to 100.
+     *
+     * @param maxReportedErrors the maximum number of reported errors
+     */
+    public void setMaxReportedErrors(int maxReportedErrors) {
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    /**
+     * Sets the number of records after which the progress of an import is logged. Defaults to 10000.
+     *
+     * @param progressInterval the number of records between progress messages
+     */
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.examples.addressbook.rest.bulk;
+
+import org.axonframework.sample.app.api.AddressType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Reads records from comma separated values. Each line holds a contact name, optionally followed by one address:
+ * <code>name,addressType,streetAndNumber,zipCode,city</code>. Consecutive lines with the same name add addresses to
+ * the same contact. Values may be quoted with double quotes, a quote within a quoted value is written twice. Quoted
+ * values cannot span multiple lines. A first line that starts with <code>name</code> is taken as header and
+ * skipped.</p>
+ * <p>An invalid address on a following line of a contact is left out of the record and kept as skipped line, the
+ * addresses read so far are kept. A following line that cannot be read at all is reported on its own, by the next
+ * call to {@link #next()}.</p>
+ */
+public class CsvRecordReader implements ImportRecordReader {
+
+    private final BufferedReader reader;
+    private long lineNumber;
+    private String[] nextValues;
+    private long nextLineNumber;
+    private InvalidRecordException nextError;
+
+    public CsvRecordReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public ImportRecord next() throws IOException {
+        if (nextError != null) {
+            InvalidRecordException error = nextError;
+            nextError = null;
+            throw error;
+        }
+        String[] values = nextValues != null ? nextValues : readValues();
+        long recordLineNumber = nextValues != null ? nextLineNumber : lineNumber;
+        nextValues = null;
+        if (values == null) {
+            return null;
+        }
+        ImportRecord record = new ImportRecord();
+        record.setLineNumber(recordLineNumber);
+        record.setName(values[0]);
+        addAddress(record, values, recordLineNumber);
+        String[] following;
+        while ((following = readFollowingValues()) != null) {
+            if (!following[0].equals(record.getName())) {
+                nextValues = following;
+                nextLineNumber = lineNumber;
+                break;
+            }
+            try {
+                addAddress(record, following, lineNumber);
+            } catch (InvalidRecordException e) {
+                record.addSkippedLine(e);
+            }
+        }
+        return record;
+    }
+
+    private void addAddress(ImportRecord record, String[] values, long line) {
+        if (values.length == 1) {
+            return;
+        }
+        if (values.length != 5) {
+            throw new InvalidRecordException(line, "Expected a name and optionally an address type, street and "
+                    + "number, zip code and city, but found " + values.length + " values");
+        }
+        ImportRecord.Address address = new ImportRecord.Address();
+        try {
+            address.setAddressType(AddressType.valueOf(values[1].trim().toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRecordException(line, "Unknown address type: " + values[1]);
+        }
+        address.setStreetAndNumber(values[2]);
+        address.setZipCode(values[3]);
+        address.setCity(values[4]);
+        record.getAddresses().add(address);
+    }
+
+    private String[] readFollowingValues() throws IOException {
+        try {
+            return readValues();
+        } catch (InvalidRecordException e) {
+            // the line may belong to another contact, so it is reported as a record of its own
+            nextError = e;
+            return null;
+        }
+    }
+
+    private String[] readValues() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+        } while (line.trim().length() == 0 || (lineNumber == 1 && line.startsWith("name")));
+        return split(line);
+    }
+
+    private String[] split(String line) {
+        List<String> values = new ArrayList<String>(5);
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new InvalidRecordException(lineNumber, "Quoted value is not closed");
+        }
+        values.add(value.toString());
+        return values.toArray(new String[values.size()]);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.examples.addressbook.rest.bulk;
+
+import org.axonframework.sample.app.api.AddressType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A contact to import, with its addresses. In newline delimited json, each line holds one record:</p>
+ * <pre>
+ * {"name":"Allard","addresses":[{"addressType":"PRIVATE","streetAndNumber":"Street 1","zipCode":"1234 AB","city":"Amsterdam"}]}
+ * </pre>
+ */
+public class ImportRecord {
+
+    private long lineNumber;
+    private String name;
+    private List<Address> addresses = new ArrayList<Address>();
+    private final List<InvalidRecordException> skippedLines = new ArrayList<InvalidRecordException>();
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public void setLineNumber(long lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<Address> getAddresses() {
+        return addresses;
+    }
+
+    public void setAddresses(List<Address> addresses) {
+        this.addresses = addresses;
+    }
+
+    /**
+     * Returns the lines of this record that were not valid and have been left out, like an address with an unknown
+     * type on a following line of the same contact.
+     *
+     * @return the errors of the lines left out of this record
+     */
+    List<InvalidRecordException> getSkippedLines() {
+        return skippedLines;
+    }
+
+    void addSkippedLine(InvalidRecordException error) {
+        skippedLines.add(error);
+    }
+
+    /**
+     * An address of the contact to import.
+     */
+    public static class Address {
+
+        private AddressType addressType;
+        private String streetAndNumber;
+        private String zipCode;
+        private String city;
+
+        public AddressType getAddressType() {
+            return addressType;
+        }
+
+        public void setAddressType(AddressType addressType) {
+            this.addressType = addressType;
+        }
+
+        public String getStreetAndNumber() {
+            return streetAndNumber;
+        }
+
+        public void setStreetAndNumber(String streetAndNumber) {
+            this.streetAndNumber = streetAndNumber;
+        }
+
+        public String getZipCode() {
+            return zipCode;
+        }
+
+        public void setZipCode(String zipCode) {
+            this.zipCode = zipCode;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public void setCity(String city) {
+            this.city = city;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.examples.addressbook.rest.bulk;
+
+import java.io.IOException;
+
+/**
+ * <p>Reads the records to import one at a time from a stream, so the stream is never held in memory as a whole.</p>
+ */
+public interface ImportRecordReader {
+
+    /**
+     * Reads the next record.
+     *
+     * @return the next record, or <code>null</code> at the end of the stream
+     * @throws InvalidRecordException when the next record cannot be read. The reader skips that record, so the next
+     *                                call reads the record after it.
+     * @throws IOException            when reading from the stream fails
+     */
+    ImportRecord next() throws IOException;
+}
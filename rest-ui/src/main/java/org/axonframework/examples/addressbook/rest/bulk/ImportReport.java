@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.examples.addressbook.rest.bulk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>The outcome of an import: the number of records read, contacts created and addresses registered, and the errors
+ * of the records that could not be imported. Only the first <code>maxErrors</code> errors are kept, all failed records
+ * are counted.</p>
+ * <p>A record is partially imported when its contact was created, but some of its lines or addresses were not. Its
+ * errors are marked as partial; the contact is not removed again.</p>
+ * <p>The report is updated by the threads that import the records while the import is running.</p>
+ */
+public class ImportReport {
+
+    private final int maxErrors;
+    private final long startTime = System.currentTimeMillis();
+    private volatile long endTime;
+
+    private final AtomicLong recordCount = new AtomicLong();
+    private final AtomicLong contactsCreated = new AtomicLong();
+    private final AtomicLong addressesRegistered = new AtomicLong();
+    private final AtomicLong failedRecords = new AtomicLong();
+    private final AtomicLong partialRecords = new AtomicLong();
+    private final List<ImportError> errors = new ArrayList<ImportError>();
+
+    public ImportReport(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    void recordRead() {
+        recordCount.incrementAndGet();
+    }
+
+    void contactCreated() {
+        contactsCreated.incrementAndGet();
+    }
+
+    void addressRegistered() {
+        addressesRegistered.incrementAndGet();
+    }
+
+    void recordFailed(long lineNumber, String message) {
+        failedRecords.incrementAndGet();
+        addError(new ImportError(lineNumber, message, false));
+    }
+
+    void recordPartiallyImported(List<ImportError> recordErrors) {
+        partialRecords.incrementAndGet();
+        for (ImportError error : recordErrors) {
+            addError(error);
+        }
+    }
+
+    private void addError(ImportError error) {
+        synchronized (errors) {
+            if (errors.size() < maxErrors) {
+                errors.add(error);
+            }
+        }
+    }
+
+    void finished() {
+        endTime = System.currentTimeMillis();
+    }
+
+    public long getRecordCount() {
+        return recordCount.get();
+    }
+
+    public long getContactsCreated() {
+        return contactsCreated.get();
+    }
+
+    public long getAddressesRegistered() {
+        return addressesRegistered.get();
+    }
+
+    public long getFailedRecords() {
+        return failedRecords.get();
+    }
+
+    public long getPartialRecords() {
+        return partialRecords.get();
+    }
+
+    /**
+     * Returns the errors of the failed and partially imported records, at most <code>maxErrors</code>, in the order
+     * they occurred.
+     *
+     * @return the errors of the failed and partially imported records
+     */
+    public List<ImportError> getErrors() {
+        synchronized (errors) {
+            return Collections.unmodifiableList(new ArrayList<ImportError>(errors));
+        }
+    }
+
+    public boolean isFinished() {
+        return endTime != 0;
+    }
+
+    /**
+     * Returns the duration of the import, or the time since the import started when it is still running.
+     *
+     * @return the duration of the import in milliseconds
+     */
+    public long getElapsedMillis() {
+        return (endTime != 0 ? endTime : System.currentTimeMillis()) - startTime;
+    }
+
+    public double getContactsPerSecond() {
+        long elapsedMillis = getElapsedMillis();
+        return elapsedMillis == 0 ? 0 : contactsCreated.get() * 1000d / elapsedMillis;
+    }
+
+    /**
+     * A record, or part of a record, that could not be imported.
+     */
+    public static class ImportError {
+
+        private final long lineNumber;
+        private final String message;
+        private final boolean partial;
+
+        public ImportError(long lineNumber, String message, boolean partial) {
+            this.lineNumber = lineNumber;
+            this.message = message;
+            this.partial = partial;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Indicates whether the contact of the record was created, and only this part of it was not imported.
+         *
+         * @return <code>true</code> if the record was partially imported, <code>false</code> if it failed
+         */
+        public boolean isPartial() {
+            return partial;
+        }
+    }
+}
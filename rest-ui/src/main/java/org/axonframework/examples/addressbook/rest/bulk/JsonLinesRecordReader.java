@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.examples.addressbook.rest.bulk;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * <p>Reads records from newline delimited json: one json object per line. Empty lines are skipped.</p>
+ */
+public class JsonLinesRecordReader implements ImportRecordReader {
+
+    private final BufferedReader reader;
+    private final ObjectMapper mapper;
+    private long lineNumber;
+
+    public JsonLinesRecordReader(BufferedReader reader, ObjectMapper mapper) {
+        this.reader = reader;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public ImportRecord next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+        } while (line.trim().length() == 0);
+        ImportRecord record;
+        try {
+            record = mapper.readValue(line, ImportRecord.class);
+        } catch (IOException e) {
+            throw new InvalidRecordException(lineNumber, "Not a valid contact: " + e.getMessage());
+        }
+        record.setLineNumber(lineNumber);
+        return record;
+    }
+}
@@ -19,19 +19,20 @@ package org.axonframework.examples.addressbook.rest.listener;
 import org.axonframework.eventhandling.annotation.EventHandler;
 import org.axonframework.sample.app.api.AddressRegisteredEvent;
 import org.axonframework.sample.app.api.AddressRemovedEvent;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
 import org.axonframework.sample.app.query.AddressEntry;
 import org.axonframework.sample.app.query.ContactEntry;
-import org.axonframework.sample.app.query.ContactRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
- * <p>Listener for address related events. All events are pushed to the provided Publisher.</p>
+ * <p>Listener for address related events. All events are pushed to the provided Publisher. The names of the contacts
+ * are taken from the {@link ContactNameCache}. This listener also handles the contact events to keep that cache up to
+ * date, so the names are always updated in the same order as the addresses are published.</p>
  *
  * @author Jettro Coenradie
  */
@@ -40,16 +41,30 @@ public class AddressListener {
 
     private final static Logger logger = LoggerFactory.getLogger(AddressListener.class);
     private Publisher publisher;
-    private ContactRepository contactRepository;
+    private ContactNameCache contactNameCache;
+
+    @EventHandler
+    public void handleContactCreatedEvent(ContactCreatedEvent event) {
+        contactNameCache.setName(event.getContactId(), event.getName());
+    }
+
+    @EventHandler
+    public void handleContactNameChangedEvent(ContactNameChangedEvent event) {
+        contactNameCache.setName(event.getContactId(), event.getNewName());
+    }
+
+    @EventHandler
+    public void handleContactDeletedEvent(ContactDeletedEvent event) {
+        contactNameCache.remove(event.getContactId());
+    }
 
     @EventHandler
     public void handleAddressCreatedEvent(AddressRegisteredEvent event) {
         logger.debug("Received a address created event with type {} for contactId {}",
                      event.getType().toString(), event.getContactId());
-        ContactEntry contactEntry = obtainContactByIdentifier(event.getContactId());
         AddressEntry value = new AddressEntry();
         value.setIdentifier(event.getContactId());
-        value.setName(contactEntry.getName());
+        value.setName(contactNameCache.getName(event.getContactId()));
         value.setAddressType(event.getType());
         value.setStreetAndNumber(event.getAddress().getStreetAndNumber());
         value.setZipCode(event.getAddress().getZipCode());
@@ -59,18 +74,12 @@ public class AddressListener {
 
     @EventHandler
     public void handleAddressRemovedEvent(AddressRemovedEvent event) {
-        ContactEntry contactEntry = obtainContactByIdentifier(event.getContactId());
+        ContactEntry contactEntry = contactNameCache.getContact(event.getContactId());
         logger.debug("Received an address removed event with type {} for contact {}",
                      event.getType(),
                      contactEntry.getIdentifier());
-        Map<String, Object> message = new HashMap<String, Object>();
-        message.put("contact", contactEntry);
-        message.put("addressType", event.getType());
-        publisher.publish(new Message<Map<String, Object>>("address-removed", message));
-    }
-
-    private ContactEntry obtainContactByIdentifier(String identifier) {
-        return contactRepository.loadContactDetails(identifier);
+        AddressRemoval value = new AddressRemoval(contactEntry, event.getType());
+        publisher.publish(new Message<AddressRemoval>("address-removed", value));
     }
 
     @Autowired
@@ -79,7 +88,7 @@ public class AddressListener {
     }
 
     @Autowired
-    public void setContactRepository(ContactRepository contactRepository) {
-        this.contactRepository = contactRepository;
+    public void setContactNameCache(ContactNameCache contactNameCache) {
+        this.contactNameCache = contactNameCache;
     }
 }
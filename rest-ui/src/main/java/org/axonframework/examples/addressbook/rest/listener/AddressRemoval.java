@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.examples.addressbook.rest.listener;
+
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.query.ContactEntry;
+
+/**
+ * <p>Content of the message that is published when an address is removed from a contact.</p>
+ */
+public class AddressRemoval {
+    private final ContactEntry contact;
+    private final AddressType addressType;
+
+    public AddressRemoval(ContactEntry contact, AddressType addressType) {
+        this.contact = contact;
+        this.addressType = addressType;
+    }
+
+    public ContactEntry getContact() {
+        return contact;
+    }
+
+    public AddressType getAddressType() {
+        return addressType;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.examples.addressbook.rest.listener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Publisher that sends messages to redis from a separate thread, so a slow or unavailable redis store does not
+ * slow down the event handling. Messages are queued in a bounded buffer. The sender thread takes all queued messages,
+ * up to <code>maxBatchSize</code>, and publishes them in a single jedis pipeline.</p>
+ * <p>When the buffer is full, the {@link OverflowPolicy} decides which message is dropped. Dropped messages and
+ * messages that could not be sent to redis are counted, not retried. When a batch could not be sent, for whatever
+ * reason, the sender waits <code>retryInterval</code> milliseconds before it takes the next messages.</p>
+ */
+@ManagedResource(objectName = "org.axonframework.examples.addressbook:type=Publisher,name=redis",
+                 description = "Asynchronous redis publisher")
+public class AsyncRedisPublisher implements Publisher, InitializingBean, DisposableBean {
+
+    /**
+     * Decides what happens to a message that is published when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The new message is dropped.
+         */
+        DROP_NEWEST,
+        /**
+         * The oldest message in the buffer is dropped to make room for the new message.
+         */
+        DROP_OLDEST,
+        /**
+         * The publishing thread waits for room in the buffer, at most <code>blockTimeout</code> milliseconds. If there
+         * is still no room, the new message is dropped.
+         */
+        BLOCK
+    }
+
+    private final static Logger logger = LoggerFactory.getLogger(AsyncRedisPublisher.class);
+
+    private final MessageEncoder encoder = new MessageEncoder();
+    private final JedisPool jedisPool;
+
+    private BlockingQueue<Message<?>> buffer;
+    private int capacity = 10000;
+    private int maxBatchSize = 500;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private long blockTimeout = 100;
+    private long retryInterval = 1000;
+    private byte[] channel = RedisPublisher.CHANNEL_BYTES;
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread sender;
+
+    /**
+     * Creates a publisher that takes its connections from the given pool.
+     *
+     * @param jedisPool the pool of redis connections
+     */
+    public AsyncRedisPublisher(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    /**
+     * Queues the message for publication. Never blocks longer than the <code>blockTimeout</code>, and only with the
+     * {@link OverflowPolicy#BLOCK} policy.
+     *
+     * @param message Message to be stored
+     */
+    @Override
+    public void publish(Message<?> message) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!buffer.offer(message)) {
+                    if (buffer.poll() != null) {
+                        droppedCount.incrementAndGet();
+                    }
+                }
+                break;
+            case BLOCK:
+                try {
+                    if (!buffer.offer(message, blockTimeout, TimeUnit.MILLISECONDS)) {
+                        droppedCount.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    droppedCount.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            default:
+                if (!buffer.offer(message)) {
+                    droppedCount.incrementAndGet();
+                }
+        }
+    }
+
+    /**
+     * Creates the buffer and starts the sender thread.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        buffer = new ArrayBlockingQueue<Message<?>>(capacity);
+        running = true;
+        sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sendMessages();
+            }
+        }, "RedisPublisher");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Stops the sender thread, after it has sent the messages in the buffer.
+     *
+     * @throws InterruptedException when interrupted while waiting for the sender thread to finish
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        if (sender != null) {
+            sender.join();
+        }
+    }
+
+    private void sendMessages() {
+        List<Message<?>> batch = new ArrayList<Message<?>>(maxBatchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                Message<?> first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    buffer.drainTo(batch, maxBatchSize - 1);
+                    if (!trySend(batch) && running) {
+                        Thread.sleep(retryInterval);
+                    }
+                }
+            } catch (InterruptedException e) {
+                logger.debug("Redis publisher was interrupted, {} messages are not sent", buffer.size());
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Sends the batch, making sure no exception stops the sender thread.
+     */
+    private boolean trySend(List<Message<?>> batch) {
+        try {
+            return send(batch);
+        } catch (RuntimeException e) {
+            logger.error("Unable to send " + batch.size() + " messages to redis, dropping them", e);
+            failedCount.addAndGet(batch.size());
+            return false;
+        }
+    }
+
+    private boolean send(List<Message<?>> batch) {
+        List<byte[]> values = new ArrayList<byte[]>(batch.size());
+        for (Message<?> message : batch) {
+            try {
+                values.add(encoder.encode(message));
+            } catch (IOException e) {
+                logger.warn("Problem while writing a message of type " + message.getType() + " as json", e);
+                failedCount.incrementAndGet();
+            }
+        }
+        Jedis jedis;
+        try {
+            jedis = jedisPool.getResource();
+        } catch (JedisConnectionException e) {
+            logger.debug("Could not obtain redis connection from the pool, dropping {} messages", values.size());
+            failedCount.addAndGet(values.size());
+            return false;
+        }
+        try {
+            Pipeline pipeline = jedis.pipelined();
+            for (byte[] value : values) {
+                pipeline.publish(channel, value);
+            }
+            pipeline.sync();
+        } catch (JedisConnectionException e) {
+            logger.debug("Lost the redis connection, dropping {} messages", values.size());
+            return failed(jedis, values.size());
+        } catch (RuntimeException e) {
+            logger.warn("Unable to send " + values.size() + " messages to redis, dropping them", e);
+            return failed(jedis, values.size());
+        }
+        jedisPool.returnResource(jedis);
+        publishedCount.addAndGet(values.size());
+        batchCount.incrementAndGet();
+        return true;
+    }
+
+    private boolean failed(Jedis jedis, int messageCount) {
+        failedCount.addAndGet(messageCount);
+        jedisPool.returnBrokenResource(jedis);
+        return false;
+    }
+
+    @ManagedAttribute(description = "Number of messages published to redis")
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of messages dropped because the buffer was full")
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of messages that could not be sent to redis")
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of pipelines sent to redis")
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of messages waiting to be sent")
+    public int getQueuedCount() {
+        return buffer == null ? 0 : buffer.size();
+    }
+
+    /**
+     * Sets the maximum number of messages waiting to be sent. Defaults to 10000.
+     *
+     * @param capacity the capacity of the buffer
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the maximum number of messages sent in one pipeline. Defaults to 500.
+     *
+     * @param maxBatchSize the maximum number of messages per pipeline
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Sets the policy for messages published when the buffer is full. Defaults to {@link OverflowPolicy#DROP_OLDEST}.
+     *
+     * @param overflowPolicy the policy for a full buffer
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Sets the time in milliseconds the {@link OverflowPolicy#BLOCK} policy waits for room in the buffer. Defaults to
+     * 100.
+     *
+     * @param blockTimeout the maximum time to wait for room in the buffer
+     */
+    public void setBlockTimeout(long blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait after redis was not available. Defaults to 1000.
+     *
+     * @param retryInterval the time to wait before sending again
+     */
+    public void setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Sets the channel to publish the messages on. Defaults to the channel of the {@link RedisPublisher}.
+     *
+     * @param channel the redis channel
+     */
+    public void setChannel(String channel) {
+        this.channel = channel.getBytes(Charset.forName("UTF-8"));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.examples.addressbook.rest.listener;
+
+import org.axonframework.sample.app.query.ContactEntry;
+import org.axonframework.sample.app.query.ContactPage;
+import org.axonframework.sample.app.query.ContactRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Keeps the name of every contact in memory, so the listeners can publish the name of a contact without querying
+ * the database. At startup the names of the existing contacts are loaded from the query database, page by page. From
+ * then on the names are taken from the contact events. The {@link AddressListener} handles the contact events and
+ * updates this cache, so the name of a contact is updated by the same listener, and in the same order, as its address
+ * events. A contact is therefore known before its address events are published, whichever event bus delivers the
+ * events.</p>
+ * <p>Events received while the names are loaded are more recent than the query database, so a loaded name never
+ * replaces the name of a created or renamed contact, and a contact deleted while loading is not loaded again.</p>
+ */
+@Component
+public class ContactNameCache implements InitializingBean {
+
+    private final static Logger logger = LoggerFactory.getLogger(ContactNameCache.class);
+    private static final int PAGE_SIZE = 1000;
+
+    private final ConcurrentMap<String, String> names = new ConcurrentHashMap<String, String>();
+    private final Set<String> removedWhileLoading =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean loading;
+    private ContactRepository contactRepository;
+
+    /**
+     * Returns the name of the contact with the given identifier.
+     *
+     * @param contactId the identifier of the contact
+     * @return the name of the contact, or <code>null</code> if the contact does not exist
+     */
+    public String getName(String contactId) {
+        return names.get(contactId);
+    }
+
+    /**
+     * Returns a contact entry with the identifier and the name of the contact, to be published as message content.
+     *
+     * @param contactId the identifier of the contact
+     * @return a contact entry with the identifier and name of the contact
+     */
+    public ContactEntry getContact(String contactId) {
+        ContactEntry contact = new ContactEntry();
+        contact.setIdentifier(contactId);
+        contact.setName(getName(contactId));
+        return contact;
+    }
+
+    /**
+     * Records the name of a contact that was created or renamed.
+     *
+     * @param contactId the identifier of the contact
+     * @param name      the current name of the contact
+     */
+    public void setName(String contactId, String name) {
+        names.put(contactId, name);
+    }
+
+    /**
+     * Forgets a contact that was deleted.
+     *
+     * @param contactId the identifier of the contact
+     */
+    public void remove(String contactId) {
+        if (loading) {
+            removedWhileLoading.add(contactId);
+        }
+        names.remove(contactId);
+    }
+
+    /**
+     * Loads the names of the existing contacts from the query database. Names set or removed by events in the
+     * meantime are left as they are.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        loading = true;
+        try {
+            int loaded = 0;
+            ContactPage page = null;
+            do {
+                page = contactRepository.findContacts(page == null ? null : page.getContinuationToken(), PAGE_SIZE);
+                for (ContactEntry contact : page.getContacts()) {
+                    if (!removedWhileLoading.contains(contact.getIdentifier())
+                            && names.putIfAbsent(contact.getIdentifier(), contact.getName()) == null) {
+                        loaded++;
+                    }
+                }
+            } while (!page.isLastPage());
+            logger.info("Loaded the names of {} contacts", loaded);
+        } finally {
+            loading = false;
+            removedWhileLoading.clear();
+        }
+    }
+
+    @Autowired
+    public void setContactRepository(ContactRepository contactRepository) {
+        this.contactRepository = contactRepository;
+    }
+}
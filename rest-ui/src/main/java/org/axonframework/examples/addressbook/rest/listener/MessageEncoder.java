@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2010-2011. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.examples.addressbook.rest.listener;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Encodes messages as UTF-8 json. Each thread writes into its own buffer, which is reused for the next message, so
+ * the only allocation left per message is the resulting byte array. The json writer is prepared once and is safe to
+ * share between threads.</p>
+ * <p>A buffer that grew beyond <code>maxRetainedBufferSize</code> for a large message is not kept, so a single large
+ * message does not keep memory allocated for every thread.</p>
+ */
+public class MessageEncoder {
+
+    private static final int INITIAL_BUFFER_SIZE = 512;
+
+    private final ObjectWriter writer;
+    private final int maxRetainedBufferSize;
+    private final ThreadLocal<ReusableBuffer> buffers = new ThreadLocal<ReusableBuffer>() {
+        @Override
+        protected ReusableBuffer initialValue() {
+            return new ReusableBuffer();
+        }
+    };
+
+    /**
+     * Creates an encoder with a default object mapper, that keeps buffers of at most 64kB.
+     */
+    public MessageEncoder() {
+        this(new ObjectMapper(), 64 * 1024);
+    }
+
+    /**
+     * Creates an encoder that writes with the given mapper and keeps buffers of at most the given size.
+     *
+     * @param mapper                the mapper to write the json with
+     * @param maxRetainedBufferSize the maximum size in bytes of a buffer that is reused
+     */
+    public MessageEncoder(ObjectMapper mapper, int maxRetainedBufferSize) {
+        this.writer = mapper.writer();
+        this.maxRetainedBufferSize = maxRetainedBufferSize;
+    }
+
+    /**
+     * Encodes the given message as json.
+     *
+     * @param message the message to encode
+     * @return the UTF-8 bytes of the json representation of the message
+     * @throws IOException when the message cannot be written as json
+     */
+    public byte[] encode(Message<?> message) throws IOException {
+        ReusableBuffer buffer = buffers.get();
+        try {
+            writer.writeValue(buffer, message);
+            return buffer.toByteArray();
+        } finally {
+            if (buffer.capacity() > maxRetainedBufferSize) {
+                buffers.remove();
+            } else {
+                buffer.reset();
+            }
+        }
+    }
+
+    private static class ReusableBuffer extends ByteArrayOutputStream {
+
+        private ReusableBuffer() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        public int capacity() {
+            return buf.length;
+        }
+
+        @Override
+        public void close() {
+            // the writer closes its target, but the buffer is reused
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.axonframework.examples.addressbook.rest.listener;
 
-import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,7 +9,7 @@ import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 
 import java.io.IOException;
-import java.io.StringWriter;
+import java.nio.charset.Charset;
 
 /**
  * <p>The redis publisher is used to publish messages to a redis store to be used in a Pub/Sub mechanism. Connections
@@ -23,21 +22,23 @@ import java.io.StringWriter;
  */
 @Component
 public class RedisPublisher implements Publisher {
+    static final String CHANNEL = "nl.axonframework.examples.addressbook";
+    static final byte[] CHANNEL_BYTES = CHANNEL.getBytes(Charset.forName("UTF-8"));
     private final static Logger logger = LoggerFactory.getLogger(RedisPublisher.class);
     private JedisPool jedisPool;
-    private ObjectMapper mapper;
+    private MessageEncoder encoder;
 
     public RedisPublisher() {
-        mapper = new ObjectMapper();
+        encoder = new MessageEncoder();
     }
 
     @Override
     public void publish(Message<?> message) {
-        StringWriter writer = new StringWriter();
+        byte[] value;
         try {
-            mapper.writeValue(writer, message);
+            value = encoder.encode(message);
         } catch (IOException e) {
-            logger.warn("Problem while writing ContactEntry to a string writer", e);
+            logger.warn("Problem while writing a message of type " + message.getType() + " as json", e);
             return;
         }
 
@@ -49,7 +50,7 @@ public class RedisPublisher implements Publisher {
             return;
         }
         try {
-            jedis.publish("nl.axonframework.examples.addressbook", writer.toString());
+            jedis.publish(CHANNEL_BYTES, value);
         } finally {
             jedisPool.returnResource(jedis);
         }
@@ -0,0 +1,50 @@
+package org.axonframework.examples.addressbook.rest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.annotation.AnnotationMethodHandlerExceptionResolver;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the way the contacts controller answers requests with invalid parameters
+ */
+public class ContactsControllerTest {
+
+    private ContactsController controller;
+    private AnnotationMethodHandlerExceptionResolver resolver;
+
+    @Before
+    public void setUp() {
+        controller = new ContactsController();
+        resolver = new AnnotationMethodHandlerExceptionResolver();
+    }
+
+    @Test
+    public void testInvalidArgumentIsAnsweredWithBadRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/contacts");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        ModelAndView modelAndView = resolver.resolveException(
+                request, response, controller, new IllegalArgumentException("Invalid continuation token: abc"));
+
+        assertNotNull("The exception should be handled by the controller", modelAndView);
+        assertEquals(400, response.getStatus());
+        assertEquals("Invalid continuation token: abc", response.getErrorMessage());
+    }
+
+    @Test
+    public void testOtherExceptionsAreNotHandled() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/contacts");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        ModelAndView modelAndView = resolver.resolveException(
+                request, response, controller, new IllegalStateException("Something went wrong"));
+
+        assertNull(modelAndView);
+        assertEquals(200, response.getStatus());
+    }
+}
@@ -0,0 +1,179 @@
+package org.axonframework.examples.addressbook.rest.bulk;
+
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.sample.app.api.ContactNameAlreadyTakenException;
+import org.axonframework.sample.app.api.CreateContactCommand;
+import org.axonframework.sample.app.api.RegisterAddressCommand;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for importing contacts in bulk through the command bus
+ */
+public class ContactImporterTest {
+
+    private CommandBus commandBus;
+    private ContactImporter importer;
+    private Set<String> createdNames;
+    private Set<String> contactsWithAddress;
+
+    @Before
+    public void setUp() {
+        createdNames = Collections.synchronizedSet(new HashSet<String>());
+        contactsWithAddress = Collections.synchronizedSet(new HashSet<String>());
+        commandBus = mock(CommandBus.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object answer(InvocationOnMock invocation) {
+                Object command = ((CommandMessage<?>) invocation.getArguments()[0]).getPayload();
+                CommandCallback<Object> callback = (CommandCallback<Object>) invocation.getArguments()[1];
+                if (command instanceof CreateContactCommand) {
+                    CreateContactCommand createCommand = (CreateContactCommand) command;
+                    if (!createdNames.add(createCommand.getNewContactName())) {
+                        callback.onFailure(new ContactNameAlreadyTakenException(createCommand.getNewContactName()));
+                        return null;
+                    }
+                } else {
+                    RegisterAddressCommand addressCommand = (RegisterAddressCommand) command;
+                    if ("Nowhere".equals(addressCommand.getCity())) {
+                        callback.onFailure(new IllegalArgumentException("Unknown city"));
+                        return null;
+                    }
+                    contactsWithAddress.add(addressCommand.getContactId());
+                }
+                callback.onSuccess(null);
+                return null;
+            }
+        }).when(commandBus).dispatch(isA(CommandMessage.class), isA(CommandCallback.class));
+        importer = new ContactImporter(commandBus);
+        importer.setBatchSize(2);
+        importer.setMaxBatchesInProgress(2);
+        importer.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        importer.destroy();
+    }
+
+    @Test
+    public void testAllRecordsAreImported() throws Exception {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            json.append("{\"name\":\"Contact ").append(i).append("\",\"addresses\":[{\"addressType\":\"PRIVATE\",")
+                .append("\"streetAndNumber\":\"Street ").append(i).append("\",\"city\":\"Amsterdam\"}]}\n");
+        }
+
+        ImportReport report = importer.importContacts(jsonReader(json.toString()));
+
+        assertTrue(report.isFinished());
+        assertEquals(25, report.getRecordCount());
+        assertEquals(25, report.getContactsCreated());
+        assertEquals(25, report.getAddressesRegistered());
+        assertEquals(0, report.getFailedRecords());
+        assertEquals(25, createdNames.size());
+        assertEquals(25, contactsWithAddress.size());
+    }
+
+    @Test
+    public void testFailedRecordsAreReportedWithTheirLine() throws Exception {
+        String json = "{\"name\":\"Allard\"}\n"
+                + "not json\n"
+                + "{\"name\":\"Allard\",\"addresses\":[{\"addressType\":\"WORK\"}]}\n"
+                + "{\"name\":\"Jettro\"}\n";
+
+        ImportReport report = importer.importContacts(jsonReader(json));
+
+        assertEquals(4, report.getRecordCount());
+        assertEquals(2, report.getContactsCreated());
+        assertEquals(0, report.getAddressesRegistered());
+        assertEquals(2, report.getFailedRecords());
+        assertEquals(2, report.getErrors().size());
+        Set<Long> failedLines = new HashSet<Long>();
+        for (ImportReport.ImportError error : report.getErrors()) {
+            failedLines.add(error.getLineNumber());
+        }
+        assertTrue(failedLines.contains(2L));
+        assertTrue(failedLines.contains(3L));
+        assertTrue(contactsWithAddress.isEmpty());
+    }
+
+    @Test
+    public void testReportedErrorsAreLimited() throws Exception {
+        importer.setMaxReportedErrors(3);
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            json.append("{\"name\":\"\"}\n");
+        }
+
+        ImportReport report = importer.importContacts(jsonReader(json.toString()));
+
+        assertEquals(10, report.getFailedRecords());
+        assertEquals(3, report.getErrors().size());
+        verify(commandBus, never()).dispatch(isA(CommandMessage.class), isA(CommandCallback.class));
+    }
+
+    @Test
+    public void testRecordWithFailedAddressesIsReportedAsPartiallyImported() throws Exception {
+        String csv = "Allard,PRIVATE,Street 1,1234 AB,Nowhere\n"
+                + "Allard,HOLIDAY,Street 2,5678 CD,Utrecht\n"
+                + "Allard,WORK,Street 3,9012 EF,Rotterdam\n"
+                + "Jettro,PRIVATE,Street 4,3456 GH,Amsterdam\n";
+
+        ImportReport report = importer.importContacts(
+                new CsvRecordReader(new BufferedReader(new StringReader(csv))));
+
+        assertEquals(2, report.getRecordCount());
+        assertEquals(2, report.getContactsCreated());
+        assertEquals(2, report.getAddressesRegistered());
+        assertEquals(0, report.getFailedRecords());
+        assertEquals(1, report.getPartialRecords());
+        assertEquals(2, report.getErrors().size());
+        Set<Long> partialLines = new HashSet<Long>();
+        for (ImportReport.ImportError error : report.getErrors()) {
+            assertTrue(error.isPartial());
+            partialLines.add(error.getLineNumber());
+        }
+        assertTrue(partialLines.contains(1L));
+        assertTrue(partialLines.contains(2L));
+        assertEquals(2, contactsWithAddress.size());
+        assertEquals(1, importer.getPartialCount());
+    }
+
+    @Test
+    public void testReadFailureIsThrownWithoutWaitingForTheImport() throws Exception {
+        ImportRecordReader reader = mock(ImportRecordReader.class);
+        ImportRecord record = new ImportRecord();
+        record.setName("Allard");
+        when(reader.next()).thenReturn(record).thenThrow(new IOException("Connection reset"));
+
+        try {
+            importer.importContacts(reader);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("Connection reset", e.getMessage());
+        }
+    }
+
+    private JsonLinesRecordReader jsonReader(String json) {
+        return new JsonLinesRecordReader(new BufferedReader(new StringReader(json)), new ObjectMapper());
+    }
+}
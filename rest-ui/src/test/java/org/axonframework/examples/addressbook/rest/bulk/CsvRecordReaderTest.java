@@ -0,0 +1,106 @@
+package org.axonframework.examples.addressbook.rest.bulk;
+
+import org.axonframework.sample.app.api.AddressType;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for reading contacts to import from comma separated values
+ */
+public class CsvRecordReaderTest {
+
+    @Test
+    public void testAddressesOfTheSameContactAreCombined() throws Exception {
+        CsvRecordReader reader = reader("name,addressType,streetAndNumber,zipCode,city\n"
+                                                + "Allard,PRIVATE,Street 1,1234 AB,Amsterdam\n"
+                                                + "Allard,work,Street 2,5678 CD,Utrecht\n"
+                                                + "Jettro\n");
+
+        ImportRecord allard = reader.next();
+        assertEquals("Allard", allard.getName());
+        assertEquals(2, allard.getLineNumber());
+        assertEquals(2, allard.getAddresses().size());
+        assertEquals(AddressType.PRIVATE, allard.getAddresses().get(0).getAddressType());
+        assertEquals("1234 AB", allard.getAddresses().get(0).getZipCode());
+        assertEquals(AddressType.WORK, allard.getAddresses().get(1).getAddressType());
+        assertEquals("Utrecht", allard.getAddresses().get(1).getCity());
+
+        ImportRecord jettro = reader.next();
+        assertEquals("Jettro", jettro.getName());
+        assertEquals(4, jettro.getLineNumber());
+        assertTrue(jettro.getAddresses().isEmpty());
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testQuotedValues() throws Exception {
+        CsvRecordReader reader = reader("\"Coenradie, Jettro\",PRIVATE,\"The \"\"Street\"\" 1\",,Amsterdam\n");
+
+        ImportRecord record = reader.next();
+        assertEquals("Coenradie, Jettro", record.getName());
+        assertEquals("The \"Street\" 1", record.getAddresses().get(0).getStreetAndNumber());
+        assertEquals("", record.getAddresses().get(0).getZipCode());
+    }
+
+    @Test
+    public void testInvalidLineIsSkipped() throws Exception {
+        CsvRecordReader reader = reader("Allard,HOLIDAY,Street 1,1234 AB,Amsterdam\n"
+                                                + "Jettro\n");
+
+        try {
+            reader.next();
+            fail("Expected an InvalidRecordException");
+        } catch (InvalidRecordException e) {
+            assertEquals(1, e.getLineNumber());
+        }
+        assertEquals("Jettro", reader.next().getName());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testInvalidFollowingLineIsSkippedAndTheRecordKept() throws Exception {
+        CsvRecordReader reader = reader("Allard,PRIVATE,Street 1,1234 AB,Amsterdam\n"
+                                                + "Allard,HOLIDAY,Street 2,5678 CD,Utrecht\n"
+                                                + "Allard,WORK,Street 3,9012 EF,Rotterdam\n"
+                                                + "Jettro\n");
+
+        ImportRecord allard = reader.next();
+        assertEquals("Allard", allard.getName());
+        assertEquals(2, allard.getAddresses().size());
+        assertEquals("Rotterdam", allard.getAddresses().get(1).getCity());
+        assertEquals(1, allard.getSkippedLines().size());
+        assertEquals(2, allard.getSkippedLines().get(0).getLineNumber());
+
+        assertEquals("Jettro", reader.next().getName());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testUnreadableFollowingLineIsReportedOnItsOwn() throws Exception {
+        CsvRecordReader reader = reader("Allard,PRIVATE,Street 1,1234 AB,Amsterdam\n"
+                                                + "\"Jettro,PRIVATE\n"
+                                                + "Jettro\n");
+
+        ImportRecord allard = reader.next();
+        assertEquals("Allard", allard.getName());
+        assertEquals(1, allard.getAddresses().size());
+        assertTrue(allard.getSkippedLines().isEmpty());
+        try {
+            reader.next();
+            fail("Expected an InvalidRecordException");
+        } catch (InvalidRecordException e) {
+            assertEquals(2, e.getLineNumber());
+        }
+        assertEquals("Jettro", reader.next().getName());
+        assertNull(reader.next());
+    }
+
+    private CsvRecordReader reader(String csv) {
+        return new CsvRecordReader(new BufferedReader(new StringReader(csv)));
+    }
+}
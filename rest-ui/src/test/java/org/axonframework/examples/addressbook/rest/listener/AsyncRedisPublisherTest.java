@@ -0,0 +1,286 @@
+package org.axonframework.examples.addressbook.rest.listener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the asynchronous redis publisher, against a stand-in redis server
+ */
+public class AsyncRedisPublisherTest {
+
+    private FakeRedisServer server;
+    private JedisPool jedisPool;
+    private AsyncRedisPublisher publisher;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        jedisPool = new JedisPool(new JedisPoolConfig(), "localhost", server.getPort(), 5000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.release();
+        if (publisher != null) {
+            publisher.destroy();
+        }
+        jedisPool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void testMessagesArePublishedInOrderInPipelines() throws Exception {
+        server.stall();
+        publisher = start(AsyncRedisPublisher.OverflowPolicy.DROP_NEWEST, 10000);
+
+        for (int i = 0; i < 1000; i++) {
+            publisher.publish(new Message<String>("test", "message " + i));
+        }
+        server.release();
+        waitFor(1000, server.published);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(server.published.get(i).contains("\"message " + i + "\""));
+        }
+        assertEquals(1000, publisher.getPublishedCount());
+        assertEquals(0, publisher.getDroppedCount());
+        assertTrue("Expected the messages to be sent in a few pipelines", publisher.getBatchCount() <= 4);
+    }
+
+    @Test
+    public void testFullBufferDropsNewMessagesWithoutBlocking() throws Exception {
+        server.stall();
+        publisher = start(AsyncRedisPublisher.OverflowPolicy.DROP_NEWEST, 10);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            publisher.publish(new Message<String>("test", "message " + i));
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertTrue(publisher.getDroppedCount() >= 80);
+
+        server.release();
+        publisher.destroy();
+        assertEquals(100, publisher.getPublishedCount() + publisher.getDroppedCount());
+        assertTrue(server.published.get(0).contains("\"message 0\""));
+    }
+
+    @Test
+    public void testFullBufferDropsOldestMessages() throws Exception {
+        server.stall();
+        publisher = start(AsyncRedisPublisher.OverflowPolicy.DROP_OLDEST, 10);
+
+        for (int i = 0; i < 100; i++) {
+            publisher.publish(new Message<String>("test", "message " + i));
+        }
+        server.release();
+        publisher.destroy();
+
+        assertEquals(100, publisher.getPublishedCount() + publisher.getDroppedCount());
+        String last = server.published.get(server.published.size() - 1);
+        assertTrue(last.contains("\"message 99\""));
+    }
+
+    @Test
+    public void testUnavailableRedisDoesNotBlockPublishing() throws Exception {
+        int port = server.getPort();
+        server.close();
+        jedisPool.destroy();
+        jedisPool = new JedisPool(new JedisPoolConfig(), "localhost", port, 500);
+        publisher = start(AsyncRedisPublisher.OverflowPolicy.DROP_OLDEST, 100);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            publisher.publish(new Message<String>("test", "message " + i));
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (publisher.getFailedCount() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(5, publisher.getFailedCount());
+        assertEquals(0, publisher.getPublishedCount());
+    }
+
+    @Test
+    public void testSenderKeepsRunningWhenABatchFails() throws Exception {
+        Jedis failingJedis = mock(Jedis.class);
+        when(failingJedis.pipelined()).thenThrow(new JedisDataException("ERR unexpected reply"));
+        JedisPool pool = mock(JedisPool.class);
+        when(pool.getResource()).thenReturn(failingJedis).thenReturn(jedisPool.getResource());
+        publisher = start(pool, AsyncRedisPublisher.OverflowPolicy.DROP_NEWEST, 100);
+
+        publisher.publish(new Message<String>("test", "message 0"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (publisher.getFailedCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        publisher.publish(new Message<String>("test", "message 1"));
+        waitFor(1, server.published);
+
+        assertEquals(1, publisher.getFailedCount());
+        assertTrue(server.published.get(0).contains("\"message 1\""));
+        verify(pool).returnBrokenResource(failingJedis);
+    }
+
+    private AsyncRedisPublisher start(AsyncRedisPublisher.OverflowPolicy overflowPolicy, int capacity) {
+        return start(jedisPool, overflowPolicy, capacity);
+    }
+
+    private AsyncRedisPublisher start(JedisPool pool, AsyncRedisPublisher.OverflowPolicy overflowPolicy,
+                                      int capacity) {
+        AsyncRedisPublisher asyncRedisPublisher = new AsyncRedisPublisher(pool);
+        asyncRedisPublisher.setOverflowPolicy(overflowPolicy);
+        asyncRedisPublisher.setCapacity(capacity);
+        asyncRedisPublisher.setRetryInterval(10);
+        asyncRedisPublisher.afterPropertiesSet();
+        return asyncRedisPublisher;
+    }
+
+    private static void waitFor(int count, List<String> published) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (published.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, published.size());
+    }
+
+    /**
+     * Understands just enough of the redis protocol to receive published messages. When stalled, it does not read
+     * any commands until it is released.
+     */
+    private static class FakeRedisServer implements Runnable {
+
+        private final ServerSocket serverSocket;
+        private final List<String> published = new CopyOnWriteArrayList<String>();
+        private volatile CountDownLatch stall = new CountDownLatch(0);
+
+        private FakeRedisServer() throws IOException {
+            serverSocket = new ServerSocket(0);
+            Thread acceptor = new Thread(this, "FakeRedisServer");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        public int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        public void stall() {
+            stall = new CountDownLatch(1);
+        }
+
+        public void release() {
+            stall.countDown();
+        }
+
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    Thread handler = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            handle(socket);
+                        }
+                    }, "FakeRedisConnection");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void handle(Socket socket) {
+            try {
+                stall.await();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                List<String> command;
+                while ((command = readCommand(in)) != null) {
+                    String name = command.get(0).toUpperCase();
+                    if ("PUBLISH".equals(name)) {
+                        published.add(command.get(2));
+                        out.write(":1\r\n".getBytes("UTF-8"));
+                    } else if ("PING".equals(name)) {
+                        out.write("+PONG\r\n".getBytes("UTF-8"));
+                    } else {
+                        out.write("+OK\r\n".getBytes("UTF-8"));
+                        if ("QUIT".equals(name)) {
+                            break;
+                        }
+                    }
+                    out.flush();
+                }
+                socket.close();
+            } catch (Exception e) {
+                // the client closed the connection
+            }
+        }
+
+        private List<String> readCommand(InputStream in) throws IOException {
+            String header = readLine(in);
+            if (header == null) {
+                return null;
+            }
+            int count = Integer.parseInt(header.substring(1));
+            List<String> arguments = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                int length = Integer.parseInt(readLine(in).substring(1));
+                byte[] data = new byte[length + 2];
+                int read = 0;
+                while (read < data.length) {
+                    int n = in.read(data, read, data.length - read);
+                    if (n < 0) {
+                        return null;
+                    }
+                    read += n;
+                }
+                arguments.add(new String(data, 0, length, "UTF-8"));
+            }
+            return arguments;
+        }
+
+        private String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    return null;
+                }
+                if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            return line.toString("UTF-8");
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.axonframework.examples.addressbook.rest.listener;
+
+import org.axonframework.sample.app.api.Address;
+import org.axonframework.sample.app.api.AddressAddedEvent;
+import org.axonframework.sample.app.api.AddressRemovedEvent;
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.sample.app.query.AddressEntry;
+import org.axonframework.sample.app.query.ContactEntry;
+import org.axonframework.sample.app.query.ContactPage;
+import org.axonframework.sample.app.query.ContactRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the in-memory cache of contact names, as kept up to date by the address listener
+ */
+public class ContactNameCacheTest {
+
+    private Publisher publisher;
+    private ContactRepository contactRepository;
+    private ContactNameCache cache;
+    private AddressListener listener;
+
+    @Before
+    public void setUp() {
+        publisher = mock(Publisher.class);
+        contactRepository = mock(ContactRepository.class);
+        cache = new ContactNameCache();
+        cache.setContactRepository(contactRepository);
+        listener = new AddressListener();
+        listener.setPublisher(publisher);
+        listener.setContactNameCache(cache);
+    }
+
+    @Test
+    public void testNamesFollowTheContactEvents() {
+        listener.handleContactCreatedEvent(new ContactCreatedEvent("1", "Allard"));
+        assertEquals("Allard", cache.getName("1"));
+
+        listener.handleContactNameChangedEvent(new ContactNameChangedEvent("1", "Jettro"));
+        assertEquals("1", cache.getContact("1").getIdentifier());
+        assertEquals("Jettro", cache.getContact("1").getName());
+
+        listener.handleContactDeletedEvent(new ContactDeletedEvent("1"));
+        assertNull(cache.getName("1"));
+    }
+
+    @Test
+    public void testUnknownContactHasNoName() {
+        assertNull(cache.getName("unknown"));
+        assertNull(cache.getContact("unknown").getName());
+    }
+
+    @SuppressWarnings({"unchecked"})
+    @Test
+    public void testAddressMessagesCarryTheNameAtTheTimeOfTheEvent() {
+        listener.handleContactCreatedEvent(new ContactCreatedEvent("1", "Allard"));
+        listener.handleAddressCreatedEvent(
+                new AddressAddedEvent("1", AddressType.PRIVATE, new Address("Street 1", "1234AB", "Amsterdam")));
+        listener.handleContactNameChangedEvent(new ContactNameChangedEvent("1", "Jettro"));
+        listener.handleAddressRemovedEvent(new AddressRemovedEvent("1", AddressType.PRIVATE));
+
+        ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        verify(publisher, times(2)).publish(messages.capture());
+        assertEquals("Allard", ((AddressEntry) messages.getAllValues().get(0).getContent()).getName());
+        assertEquals("Jettro", ((AddressRemoval) messages.getAllValues().get(1).getContent()).getContact().getName());
+    }
+
+    @Test
+    public void testContactCreatedBeforeStartupHasItsName() {
+        when(contactRepository.findContacts(null, 1000))
+                .thenReturn(new ContactPage(Arrays.asList(contact("1", "Allard")), "token"));
+        when(contactRepository.findContacts("token", 1000))
+                .thenReturn(new ContactPage(Arrays.asList(contact("2", "Jettro")), null));
+
+        cache.afterPropertiesSet();
+        listener.handleAddressCreatedEvent(
+                new AddressAddedEvent("2", AddressType.PRIVATE, new Address("Street 1", "1234AB", "Amsterdam")));
+
+        assertEquals("Allard", cache.getName("1"));
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(publisher).publish(message.capture());
+        assertEquals("Jettro", ((AddressEntry) message.getValue().getContent()).getName());
+    }
+
+    @Test
+    public void testEventsReceivedWhileLoadingAreKept() {
+        when(contactRepository.findContacts(null, 1000)).thenAnswer(new Answer<ContactPage>() {
+            @Override
+            public ContactPage answer(InvocationOnMock invocation) throws Throwable {
+                listener.handleContactNameChangedEvent(new ContactNameChangedEvent("1", "Jettro"));
+                listener.handleContactDeletedEvent(new ContactDeletedEvent("2"));
+                return new ContactPage(Arrays.asList(contact("1", "Allard"), contact("2", "Deleted")), null);
+            }
+        });
+
+        cache.afterPropertiesSet();
+
+        assertEquals("Jettro", cache.getName("1"));
+        assertNull(cache.getName("2"));
+        listener.handleContactCreatedEvent(new ContactCreatedEvent("2", "Recreated"));
+        assertEquals("Recreated", cache.getName("2"));
+    }
+
+    private static ContactEntry contact(String identifier, String name) {
+        ContactEntry contact = new ContactEntry();
+        contact.setIdentifier(identifier);
+        contact.setName(name);
+        return contact;
+    }
+}
@@ -0,0 +1,73 @@
+package org.axonframework.examples.addressbook.rest.listener;
+
+import org.axonframework.sample.app.api.AddressType;
+import org.axonframework.sample.app.query.ContactEntry;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the json encoder of the push messages
+ */
+public class MessageEncoderTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testEncodedMessageEqualsJson() throws Exception {
+        MessageEncoder encoder = new MessageEncoder();
+        Message<ContactEntry> message = new Message<ContactEntry>("contact-created", contact("Allard"));
+
+        byte[] encoded = encoder.encode(message);
+
+        assertEquals(mapper.writeValueAsString(message), new String(encoded, "UTF-8"));
+    }
+
+    @Test
+    public void testReusedBufferDoesNotLeakPreviousMessage() throws Exception {
+        MessageEncoder encoder = new MessageEncoder();
+        byte[] first = encoder.encode(new Message<ContactEntry>("contact-created", contact("A much longer name")));
+        byte[] second = encoder.encode(new Message<ContactEntry>("contact-created", contact("Short")));
+
+        assertTrue(second.length < first.length);
+        assertFalse(Arrays.equals(first, second));
+        Map<?, ?> decoded = mapper.readValue(second, Map.class);
+        assertEquals("Short", ((Map<?, ?>) decoded.get("content")).get("name"));
+    }
+
+    @Test
+    public void testLargeMessageIsEncoded() throws Exception {
+        MessageEncoder encoder = new MessageEncoder(mapper, 1024);
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            name.append("name ");
+        }
+        Message<ContactEntry> large = new Message<ContactEntry>("contact-created", contact(name.toString()));
+        Message<ContactEntry> small = new Message<ContactEntry>("contact-created", contact("Small"));
+
+        assertEquals(mapper.writeValueAsString(large), new String(encoder.encode(large), "UTF-8"));
+        assertEquals(mapper.writeValueAsString(small), new String(encoder.encode(small), "UTF-8"));
+    }
+
+    @Test
+    public void testAddressRemovalHasTheFieldsOfTheFormerMap() throws Exception {
+        MessageEncoder encoder = new MessageEncoder();
+        byte[] encoded = encoder.encode(new Message<AddressRemoval>(
+                "address-removed", new AddressRemoval(contact("Allard"), AddressType.PRIVATE)));
+
+        Map<?, ?> content = (Map<?, ?>) mapper.readValue(encoded, Map.class).get("content");
+        assertEquals("PRIVATE", content.get("addressType"));
+        assertEquals("Allard", ((Map<?, ?>) content.get("contact")).get("name"));
+    }
+
+    private static ContactEntry contact(String name) {
+        ContactEntry contact = new ContactEntry();
+        contact.setIdentifier("1");
+        contact.setName(name);
+        return contact;
+    }
+}
@@ -26,10 +26,17 @@ import com.vaadin.ui.themes.Runo;
 import org.axonframework.commandhandling.CommandBus;
 import org.axonframework.examples.addressbook.vaadin.data.ContactContainer;
 import org.axonframework.examples.addressbook.vaadin.data.ContactFormBean;
+import org.axonframework.examples.addressbook.vaadin.data.ContactSource;
+import org.axonframework.examples.addressbook.vaadin.data.SearchResultContactSource;
+import org.axonframework.examples.addressbook.vaadin.search.ContactSearch;
+import org.axonframework.examples.addressbook.vaadin.search.SearchFilter;
+import org.axonframework.examples.addressbook.vaadin.search.SearchResult;
 import org.axonframework.examples.addressbook.vaadin.ui.*;
 import org.axonframework.sample.app.query.ContactEntry;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.List;
+
 /**
  * @author Jettro Coenradie
  */
@@ -50,9 +57,14 @@ public class AddressbookApplication extends Application
 
     private HelpWindow helpWindow = null;
 
-    @Autowired
     private ContactContainer contactContainer;
 
+    @Autowired
+    private ContactSource contactSource;
+
+    @Autowired
+    private ContactSearch contactSearch;
+
     @Autowired
     private CommandBus commandBus;
 
@@ -106,6 +118,7 @@ public class AddressbookApplication extends Application
 
     private ListView getListView() {
         if (listView == null) {
+            contactContainer = new ContactContainer(contactSource);
             contactList = new ContactList(contactContainer);
             contactList.setContainerDataSource(contactContainer);
             contactList.addListener((Property.ValueChangeListener) this);
@@ -114,13 +127,12 @@ public class AddressbookApplication extends Application
             listView = new ListView(contactList, contactForm);
         }
         contactForm.setItemDataSource(null);
-        contactContainer.refreshContent();
         return listView;
     }
 
     private SearchView getSearchView() {
         if (searchView == null) {
-            searchView = new SearchView();
+            searchView = new SearchView(this);
         }
         return searchView;
     }
@@ -143,6 +155,37 @@ public class AddressbookApplication extends Application
 
     private void showListView() {
         setMainComponent(getListView());
+        contactList.showContacts(contactContainer);
+        contactContainer.refresh();
+    }
+
+    /**
+     * Shows the contacts found by the search in the contact list.
+     *
+     * @param searchFilter the search to run
+     */
+    public void search(SearchFilter searchFilter) {
+        SearchResult result = contactSearch.search(searchFilter);
+        List<String> identifiers = result.getIdentifiers();
+        setMainComponent(getListView());
+        contactList.showContacts(new ContactContainer(new SearchResultContactSource(identifiers, contactSource)));
+        if (result.isComplete()) {
+            getMainWindow().showNotification("Found " + identifiers.size() + " contacts for " + searchFilter.getTerm());
+        } else {
+            getMainWindow().showNotification("Found more than " + identifiers.size() + " contacts for "
+                                                     + searchFilter.getTerm() + ", showing the first "
+                                                     + identifiers.size() + ". Refine the search to see the others.");
+        }
+    }
+
+    /**
+     * Adds the search to the navigation tree, and keeps its results cached.
+     *
+     * @param searchFilter the search to save
+     */
+    public void saveSearch(SearchFilter searchFilter) {
+        contactSearch.save(searchFilter);
+        tree.addSavedSearch(searchFilter);
     }
 
     private void addNewContact() {
@@ -153,7 +196,7 @@ public class AddressbookApplication extends Application
     @Override
     public void valueChange(Property.ValueChangeEvent event) {
         Property property = event.getProperty();
-        if (property == contactList) {
+        if (property == contactList && contactList.getValue() != null) {
             @SuppressWarnings({"unchecked"})
             ContactEntry item = ((BeanItem<ContactEntry>) contactList.getItem(contactList.getValue())).getBean();
             ContactFormBean contactFormBean = new ContactFormBean(item.getIdentifier(), item.getName());
@@ -170,6 +213,8 @@ public class AddressbookApplication extends Application
                     showListView();
                 } else if (NavigationTree.SEARCH.equals(itemId)) {
                     showSearchView();
+                } else if (itemId instanceof SearchFilter) {
+                    search((SearchFilter) itemId);
                 }
             }
         }
@@ -16,35 +16,290 @@
 
 package org.axonframework.examples.addressbook.vaadin.data;
 
-import com.vaadin.data.util.BeanItemContainer;
+import com.vaadin.data.Container;
+import com.vaadin.data.Item;
+import com.vaadin.data.Property;
+import com.vaadin.data.util.BeanItem;
 import org.axonframework.sample.app.query.ContactEntry;
-import org.axonframework.sample.app.query.ContactRepository;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Component;
 
-import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
+ * <p>Read-only container with the contacts of a {@link ContactSource}. Contacts are fetched in pages of
+ * <code>pageSize</code> contacts when the table needs them. The container keeps at most
+ * <code>maxCachedPages</code> pages, the least recently used page is dropped first, so the memory used per
+ * application does not depend on the number of contacts.</p>
+ * <p>The position of a contact is only known when its page is cached. Contacts outside the cached pages are loaded
+ * one by one when requested by identifier.</p>
+ *
  * @author Jettro Coenradie
  */
-@Component
-public class ContactContainer extends BeanItemContainer<ContactEntry> implements Serializable {
+public class ContactContainer implements Container.Indexed, Container.ItemSetChangeNotifier {
     public static final Object[] NATURAL_COL_ORDER = new Object[]{"name", "identifier"};
     public static final String[] COL_HEADERS_ENGLISH = new String[]{"Name", "Identifier"};
 
-    @Autowired
-    private ContactRepository contactRepository;
+    private static final Collection<Object> PROPERTY_IDS =
+            Collections.unmodifiableList(Arrays.asList(NATURAL_COL_ORDER));
+
+    private final ContactSource contactSource;
+    private final int pageSize;
+    private final int maxCachedPages;
+    private final Map<Integer, List<BeanItem<ContactEntry>>> pages;
+    private final List<ItemSetChangeListener> listeners = new LinkedList<ItemSetChangeListener>();
+    private int size = -1;
+
+    /**
+     * Creates a container that fetches 100 contacts at a time and caches at most 5 pages.
+     *
+     * @param contactSource the source of the contacts
+     */
+    public ContactContainer(ContactSource contactSource) {
+        this(contactSource, 100, 5);
+    }
+
+    /**
+     * Creates a container that fetches <code>pageSize</code> contacts at a time and caches at most
+     * <code>maxCachedPages</code> pages.
+     *
+     * @param contactSource  the source of the contacts
+     * @param pageSize       the number of contacts fetched at a time
+     * @param maxCachedPages the maximum number of pages kept in memory
+     */
+    public ContactContainer(ContactSource contactSource, int pageSize, int maxCachedPages) {
+        this.contactSource = contactSource;
+        this.pageSize = pageSize;
+        this.maxCachedPages = maxCachedPages;
+        this.pages = new LinkedHashMap<Integer, List<BeanItem<ContactEntry>>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 4203586219413617342L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<BeanItem<ContactEntry>>> eldest) {
+                return size() > ContactContainer.this.maxCachedPages;
+            }
+        };
+    }
+
+    /**
+     * Drops the cached contacts, so the next request fetches the current contacts from the source.
+     */
+    public void refresh() {
+        pages.clear();
+        size = -1;
+        for (ItemSetChangeListener listener : new ArrayList<ItemSetChangeListener>(listeners)) {
+            listener.containerItemSetChange(new ItemSetChangeEvent() {
+                private static final long serialVersionUID = -3002746333251784195L;
+
+                @Override
+                public Container getContainer() {
+                    return ContactContainer.this;
+                }
+            });
+        }
+    }
+
+    @Override
+    public int size() {
+        if (size < 0) {
+            size = contactSource.size();
+        }
+        return size;
+    }
+
+    @Override
+    public Object getIdByIndex(int index) {
+        BeanItem<ContactEntry> item = getItemAt(index);
+        return item == null ? null : item.getBean().getIdentifier();
+    }
+
+    @Override
+    public int indexOfId(Object itemId) {
+        for (Map.Entry<Integer, List<BeanItem<ContactEntry>>> page : pages.entrySet()) {
+            List<BeanItem<ContactEntry>> items = page.getValue();
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i).getBean().getIdentifier().equals(itemId)) {
+                    return page.getKey() * pageSize + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Item getItem(Object itemId) {
+        for (List<BeanItem<ContactEntry>> items : pages.values()) {
+            for (BeanItem<ContactEntry> item : items) {
+                if (item.getBean().getIdentifier().equals(itemId)) {
+                    return item;
+                }
+            }
+        }
+        if (!(itemId instanceof String)) {
+            return null;
+        }
+        ContactEntry contact = contactSource.getContact((String) itemId);
+        return contact == null ? null : new BeanItem<ContactEntry>(contact);
+    }
+
+    private BeanItem<ContactEntry> getItemAt(int index) {
+        if (index < 0 || index >= size()) {
+            return null;
+        }
+        int pageNumber = index / pageSize;
+        List<BeanItem<ContactEntry>> items = pages.get(pageNumber);
+        if (items == null) {
+            List<ContactEntry> contacts = contactSource.getContacts(pageNumber * pageSize, pageSize);
+            items = new ArrayList<BeanItem<ContactEntry>>(contacts.size());
+            for (ContactEntry contact : contacts) {
+                items.add(new BeanItem<ContactEntry>(contact));
+            }
+            pages.put(pageNumber, items);
+        }
+        int offset = index - pageNumber * pageSize;
+        return offset < items.size() ? items.get(offset) : null;
+    }
+
+    @Override
+    public Collection<?> getContainerPropertyIds() {
+        return PROPERTY_IDS;
+    }
+
+    /**
+     * Returns a view on the identifiers of the contacts. The identifiers are fetched when they are accessed.
+     *
+     * @return a list with the identifiers of all contacts
+     */
+    @Override
+    public Collection<?> getItemIds() {
+        return new AbstractList<Object>() {
+            @Override
+            public Object get(int index) {
+                return getIdByIndex(index);
+            }
+
+            @Override
+            public int size() {
+                return ContactContainer.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Property getContainerProperty(Object itemId, Object propertyId) {
+        Item item = getItem(itemId);
+        return item == null ? null : item.getItemProperty(propertyId);
+    }
+
+    @Override
+    public Class<?> getType(Object propertyId) {
+        return PROPERTY_IDS.contains(propertyId) ? String.class : null;
+    }
+
+    @Override
+    public boolean containsId(Object itemId) {
+        return getItem(itemId) != null;
+    }
 
-    public ContactContainer() throws IllegalArgumentException {
-        super(ContactEntry.class);
+    @Override
+    public Object nextItemId(Object itemId) {
+        int index = indexOfId(itemId);
+        return index < 0 ? null : getIdByIndex(index + 1);
     }
 
-    public void refreshContent() {
-        List<ContactEntry> allContacts = contactRepository.findAllContacts();
-        removeAllItems();
-        addAll(allContacts);
+    @Override
+    public Object prevItemId(Object itemId) {
+        int index = indexOfId(itemId);
+        return index < 0 ? null : getIdByIndex(index - 1);
     }
 
+    @Override
+    public Object firstItemId() {
+        return getIdByIndex(0);
+    }
 
+    @Override
+    public Object lastItemId() {
+        return getIdByIndex(size() - 1);
+    }
+
+    @Override
+    public boolean isFirstId(Object itemId) {
+        return itemId != null && itemId.equals(firstItemId());
+    }
+
+    @Override
+    public boolean isLastId(Object itemId) {
+        return itemId != null && itemId.equals(lastItemId());
+    }
+
+    @Override
+    public void addListener(ItemSetChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(ItemSetChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public Object addItemAt(int index) {
+        throw readOnly();
+    }
+
+    @Override
+    public Item addItemAt(int index, Object newItemId) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object addItemAfter(Object previousItemId) {
+        throw readOnly();
+    }
+
+    @Override
+    public Item addItemAfter(Object previousItemId, Object newItemId) {
+        throw readOnly();
+    }
+
+    @Override
+    public Item addItem(Object itemId) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object addItem() {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean removeItem(Object itemId) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addContainerProperty(Object propertyId, Class<?> type, Object defaultValue) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean removeContainerProperty(Object propertyId) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean removeAllItems() {
+        throw readOnly();
+    }
+
+    private UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("The contacts are changed with commands, not in the container");
+    }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2010. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.examples.addressbook.vaadin.data;
+
+import org.axonframework.sample.app.query.ContactEntry;
+
+import java.util.List;
+
+/**
+ * <p>Source of the contacts shown in the contact list, in the order they are listed.</p>
+ */
+public interface ContactSource {
+
+    /**
+     * Returns the number of contacts
+     *
+     * @return the number of contacts
+     */
+    int size();
+
+    /**
+     * Returns the contacts at the given positions of the list.
+     *
+     * @param firstIndex the position of the first contact, starting at 0
+     * @param count      the maximum number of contacts to return
+     * @return the contacts in the range, fewer than count at the end of the list
+     */
+    List<ContactEntry> getContacts(int firstIndex, int count);
+
+    /**
+     * Returns the contact with the given identifier.
+     *
+     * @param identifier the identifier of the contact
+     * @return the contact, or <code>null</code> if it does not exist
+     */
+    ContactEntry getContact(String identifier);
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2010. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.examples.addressbook.vaadin.data;
+
+import org.axonframework.sample.app.query.ContactEntry;
+import org.axonframework.sample.app.query.ContactRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.NoResultException;
+import java.util.List;
+
+/**
+ * <p>Contact source that queries the query database for every request. The applications use the
+ * {@link SharedContactSnapshot} instead; this source is an alternative when the contacts do not fit in memory.</p>
+ */
+@Component
+public class RepositoryContactSource implements ContactSource {
+
+    private ContactRepository contactRepository;
+
+    @Override
+    public int size() {
+        return contactRepository.countContacts();
+    }
+
+    @Override
+    public List<ContactEntry> getContacts(int firstIndex, int count) {
+        return contactRepository.findContactsInRange(firstIndex, count);
+    }
+
+    @Override
+    public ContactEntry getContact(String identifier) {
+        try {
+            return contactRepository.loadContactDetails(identifier);
+        } catch (NoResultException e) {
+            return null;
+        }
+    }
+
+    @Autowired
+    public void setContactRepository(ContactRepository contactRepository) {
+        this.contactRepository = contactRepository;
+    }
+}
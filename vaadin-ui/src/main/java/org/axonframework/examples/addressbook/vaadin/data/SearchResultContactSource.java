@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2010. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.examples.addressbook.vaadin.data;
+
+import org.axonframework.sample.app.query.ContactEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Contact source with the contacts found by a search. The search provides the identifiers, the contacts themselves
+ * are taken from another source when the container asks for them. Contacts that no longer exist are left out.</p>
+ */
+public class SearchResultContactSource implements ContactSource {
+
+    private final List<String> identifiers;
+    private final ContactSource contactSource;
+
+    /**
+     * Creates a source with the contacts with the given identifiers, in the same order.
+     *
+     * @param identifiers   the identifiers of the found contacts
+     * @param contactSource the source to take the contacts from
+     */
+    public SearchResultContactSource(List<String> identifiers, ContactSource contactSource) {
+        this.identifiers = identifiers;
+        this.contactSource = contactSource;
+    }
+
+    @Override
+    public int size() {
+        return identifiers.size();
+    }
+
+    @Override
+    public List<ContactEntry> getContacts(int firstIndex, int count) {
+        int fromIndex = Math.min(Math.max(firstIndex, 0), identifiers.size());
+        int toIndex = Math.min(fromIndex + count, identifiers.size());
+        List<ContactEntry> contacts = new ArrayList<ContactEntry>(toIndex - fromIndex);
+        for (String identifier : identifiers.subList(fromIndex, toIndex)) {
+            ContactEntry contact = contactSource.getContact(identifier);
+            if (contact != null) {
+                contacts.add(contact);
+            }
+        }
+        return contacts;
+    }
+
+    @Override
+    public ContactEntry getContact(String identifier) {
+        return identifiers.contains(identifier) ? contactSource.getContact(identifier) : null;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2010. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.examples.addressbook.vaadin.data;
+
+import org.axonframework.eventhandling.annotation.EventHandler;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.sample.app.query.ContactEntry;
+import org.axonframework.sample.app.query.ContactPage;
+import org.axonframework.sample.app.query.ContactRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Contact source shared by all vaadin applications. It holds all contacts, ordered by name and identifier like the
+ * query database. The contacts are loaded once at startup and then kept up to date by the contact events, so showing
+ * the contact list does not query the database.</p>
+ * <p>An event only updates a sorted set and a map by identifier, which takes logarithmic time. The immutable list
+ * that readers page through is rebuilt from the sorted set when it is read after a change, so a burst of events, like
+ * a bulk import, costs a single rebuild instead of one copy per event. Readers never see a list that is being
+ * changed.</p>
+ */
+@Primary
+@Component
+public class SharedContactSnapshot implements ContactSource, InitializingBean {
+
+    private final static Logger logger = LoggerFactory.getLogger(SharedContactSnapshot.class);
+    private static final int PAGE_SIZE = 1000;
+    private static final Comparator<ContactEntry> CONTACT_ORDER = new Comparator<ContactEntry>() {
+        @Override
+        public int compare(ContactEntry first, ContactEntry second) {
+            int result = first.getName().compareTo(second.getName());
+            return result != 0 ? result : first.getIdentifier().compareTo(second.getIdentifier());
+        }
+    };
+
+    private final ConcurrentMap<String, ContactEntry> contactsByIdentifier =
+            new ConcurrentHashMap<String, ContactEntry>();
+    // guarded by this
+    private final TreeSet<ContactEntry> orderedContacts = new TreeSet<ContactEntry>(CONTACT_ORDER);
+    private volatile List<ContactEntry> snapshot = Collections.emptyList();
+    private volatile boolean changed;
+    private ContactRepository contactRepository;
+
+    @Override
+    public int size() {
+        return currentSnapshot().size();
+    }
+
+    @Override
+    public List<ContactEntry> getContacts(int firstIndex, int count) {
+        List<ContactEntry> contacts = currentSnapshot();
+        int fromIndex = Math.min(Math.max(firstIndex, 0), contacts.size());
+        return contacts.subList(fromIndex, Math.min(fromIndex + count, contacts.size()));
+    }
+
+    @Override
+    public ContactEntry getContact(String identifier) {
+        return contactsByIdentifier.get(identifier);
+    }
+
+    @EventHandler
+    public void handleContactCreatedEvent(ContactCreatedEvent event) {
+        put(event.getContactId(), event.getName());
+    }
+
+    @EventHandler
+    public void handleContactNameChangedEvent(ContactNameChangedEvent event) {
+        put(event.getContactId(), event.getNewName());
+    }
+
+    @EventHandler
+    public synchronized void handleContactDeletedEvent(ContactDeletedEvent event) {
+        ContactEntry existing = contactsByIdentifier.remove(event.getContactId());
+        if (existing != null) {
+            orderedContacts.remove(existing);
+            changed = true;
+        }
+    }
+
+    /**
+     * Loads all contacts from the query database, page by page. Contacts received from events while loading are kept,
+     * since they are more recent.
+     */
+    @Override
+    public synchronized void afterPropertiesSet() {
+        ContactPage page = null;
+        do {
+            page = contactRepository.findContacts(page == null ? null : page.getContinuationToken(), PAGE_SIZE);
+            for (ContactEntry contact : page.getContacts()) {
+                if (!contactsByIdentifier.containsKey(contact.getIdentifier())) {
+                    ContactEntry entry = contact(contact.getIdentifier(), contact.getName());
+                    contactsByIdentifier.put(entry.getIdentifier(), entry);
+                    orderedContacts.add(entry);
+                }
+            }
+        } while (!page.isLastPage());
+        changed = true;
+        logger.info("Loaded {} contacts in the shared contact snapshot", orderedContacts.size());
+    }
+
+    private synchronized void put(String identifier, String name) {
+        ContactEntry contact = contact(identifier, name);
+        ContactEntry existing = contactsByIdentifier.put(identifier, contact);
+        if (existing != null) {
+            orderedContacts.remove(existing);
+        }
+        orderedContacts.add(contact);
+        changed = true;
+    }
+
+    /**
+     * Returns the list of contacts, rebuilding it first if contacts changed since it was last built.
+     *
+     * @return the current list of contacts, in contact order
+     */
+    private List<ContactEntry> currentSnapshot() {
+        if (changed) {
+            synchronized (this) {
+                if (changed) {
+                    changed = false;
+                    snapshot = Collections.unmodifiableList(new ArrayList<ContactEntry>(orderedContacts));
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private static ContactEntry contact(String identifier, String name) {
+        ContactEntry contact = new ContactEntry();
+        contact.setIdentifier(identifier);
+        contact.setName(name);
+        return contact;
+    }
+
+    @Autowired
+    public void setContactRepository(ContactRepository contactRepository) {
+        this.contactRepository = contactRepository;
+    }
+}
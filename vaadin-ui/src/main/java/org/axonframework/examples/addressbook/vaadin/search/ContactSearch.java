@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2010. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.axonframework.examples.addressbook.vaadin.search;
+
+import org.axonframework.eventhandling.annotation.EventHandler;
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.sample.app.query.ContactIdentifierPage;
+import org.axonframework.sample.app.query.ContactRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Runs the contact searches of all vaadin applications against the query database. Searches match the start of the
+ * name or the identifier of a contact, which the database can answer from an index.</p>
+ * <p>The identifiers found by saved searches are cached, so opening a saved search does not query the database. The
+ * contact events invalidate the cached identifiers of every saved search the event could affect: searches that found
+ * the contact, and searches that match its new name or identifier. Invalidated searches are run again when they are
+ * opened. At most <code>maxSavedSearches</code> searches are kept, the least recently used search is dropped
+ * first.</p>
+ * <p>A search reads the identifiers page by page, using the continuation token of the repository, so every query
+ * reads a single page from the index. It stops after <code>maxResults</code> identifiers. When more contacts match,
+ * the result is marked as not complete, so the user can be asked to refine the search. Changing a contact that is
+ * not in such a result does not change the first <code>maxResults</code> contacts, unless its new name or identifier
+ * matches the search, which invalidates the result as usual.</p>
+ */
+@Component
+public class ContactSearch {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final Map<SearchKey, SearchResults> savedSearches =
+            new LinkedHashMap<SearchKey, SearchResults>(16, 0.75f, true) {
+                private static final long serialVersionUID = -3946016519843375214L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<SearchKey, SearchResults> eldest) {
+                    return size() > maxSavedSearches;
+                }
+            };
+    private long invalidationCount;
+    private volatile int maxSavedSearches = 1000;
+    private volatile int maxResults = 10000;
+    private ContactRepository contactRepository;
+
+    /**
+     * Returns the identifiers of the contacts found by the given search, from the cache if the search was saved.
+     *
+     * @param searchFilter the search to run
+     * @return the identifiers of the found contacts, ordered by the searched property, at most <code>maxResults</code>
+     */
+    public SearchResult search(SearchFilter searchFilter) {
+        SearchKey key = new SearchKey(searchFilter);
+        long invalidationsBeforeSearch;
+        synchronized (savedSearches) {
+            SearchResults cached = savedSearches.get(key);
+            if (cached != null && cached.result != null) {
+                return cached.result;
+            }
+            invalidationsBeforeSearch = invalidationCount;
+        }
+        SearchResult result = find(key);
+        synchronized (savedSearches) {
+            SearchResults saved = savedSearches.get(key);
+            // results of a search that ran while contacts changed may already be outdated
+            if (saved != null && invalidationCount == invalidationsBeforeSearch) {
+                saved.setResult(result);
+            }
+        }
+        return result;
+    }
+
+    private SearchResult find(SearchKey key) {
+        int limit = maxResults;
+        List<String> identifiers = new ArrayList<String>();
+        String continuationToken = null;
+        do {
+            int pageSize = Math.min(PAGE_SIZE, limit - identifiers.size());
+            ContactIdentifierPage page = contactRepository.findContactIdentifiers(key.propertyId, key.term,
+                                                                                  continuationToken, pageSize);
+            identifiers.addAll(page.getIdentifiers());
+            continuationToken = page.getContinuationToken();
+        } while (continuationToken != null && identifiers.size() < limit);
+        return new SearchResult(Collections.unmodifiableList(identifiers), continuationToken == null);
+    }
+
+    /**
+     * Saves the search, so the identifiers it finds are cached.
+     *
+     * @param searchFilter the search to save
+     */
+    public void save(SearchFilter searchFilter) {
+        SearchKey key = new SearchKey(searchFilter);
+        synchronized (savedSearches) {
+            if (!savedSearches.containsKey(key)) {
+                savedSearches.put(key, new SearchResults());
+            }
+        }
+    }
+
+    @EventHandler
+    public void handleContactCreatedEvent(ContactCreatedEvent event) {
+        invalidate(event.getContactId(), event.getName());
+    }
+
+    @EventHandler
+    public void handleContactNameChangedEvent(ContactNameChangedEvent event) {
+        invalidate(event.getContactId(), event.getNewName());
+    }
+
+    @EventHandler
+    public void handleContactDeletedEvent(ContactDeletedEvent event) {
+        invalidate(event.getContactId(), null);
+    }
+
+    private void invalidate(String identifier, String name) {
+        synchronized (savedSearches) {
+            invalidationCount++;
+            for (Map.Entry<SearchKey, SearchResults> savedSearch : savedSearches.entrySet()) {
+                SearchResults results = savedSearch.getValue();
+                if (results.result != null
+                        && (results.identifierSet.contains(identifier)
+                        || savedSearch.getKey().matches(identifier, name))) {
+                    results.setResult(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the maximum number of saved searches of which the results are cached. Defaults to 1000.
+     *
+     * @param maxSavedSearches the maximum number of saved searches
+     */
+    public void setMaxSavedSearches(int maxSavedSearches) {
+        this.maxSavedSearches = maxSavedSearches;
+    }
+
+    /**
+     * Sets the maximum number of contacts a search returns. Must be at least 1. Defaults to 10000.
+     *
+     * @param maxResults the maximum number of identifiers in a search result
+     */
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    @Autowired
+    public void setContactRepository(ContactRepository contactRepository) {
+        this.contactRepository = contactRepository;
+    }
+
+    private static class SearchKey {
+
+        private final String propertyId;
+        private final String term;
+
+        private SearchKey(SearchFilter searchFilter) {
+            this.propertyId = String.valueOf(searchFilter.getPropertyId());
+            this.term = searchFilter.getTerm() == null ? "" : searchFilter.getTerm().trim();
+        }
+
+        private boolean matches(String identifier, String name) {
+            String value = "identifier".equals(propertyId) ? identifier : name;
+            return value != null && value.startsWith(term);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SearchKey other = (SearchKey) o;
+            return propertyId.equals(other.propertyId) && term.equals(other.term);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * propertyId.hashCode() + term.hashCode();
+        }
+    }
+
+    private static class SearchResults {
+
+        private SearchResult result;
+        private Set<String> identifierSet = Collections.emptySet();
+
+        private void setResult(SearchResult result) {
+            this.result = result;
+            this.identifierSet = result == null
+                    ? Collections.<String>emptySet() : new HashSet<String>(result.getIdentifiers());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2010. Axon Framework
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.axonframework.examples.addressbook.vaadin.search;
+
+import java.util.List;
+
+/**
+ * <p>The identifiers of the contacts found by a search, ordered by the searched property. When more contacts match
+ * than a search may return, the result holds the first ones and is not complete.</p>
+ */
+public class SearchResult {
+
+    private final List<String> identifiers;
+    private final boolean complete;
+
+    public SearchResult(List<String> identifiers, boolean complete) {
+        this.identifiers = identifiers;
+        this.complete = complete;
+    }
+
+    public List<String> getIdentifiers() {
+        return identifiers;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+}
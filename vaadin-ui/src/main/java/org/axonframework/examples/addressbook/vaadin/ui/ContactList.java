@@ -24,13 +24,16 @@ import org.axonframework.examples.addressbook.vaadin.data.ContactContainer;
  */
 public class ContactList extends Table {
     public ContactList(ContactContainer fromRepository) {
-        setContainerDataSource(fromRepository);
-
-        setVisibleColumns(ContactContainer.NATURAL_COL_ORDER);
-        setColumnHeaders(ContactContainer.COL_HEADERS_ENGLISH);
+        showContacts(fromRepository);
         setSelectable(true);
         setImmediate(true);
         setNullSelectionAllowed(false);
         setSizeFull();
     }
+
+    public void showContacts(ContactContainer contacts) {
+        setContainerDataSource(contacts);
+        setVisibleColumns(ContactContainer.NATURAL_COL_ORDER);
+        setColumnHeaders(ContactContainer.COL_HEADERS_ENGLISH);
+    }
 }
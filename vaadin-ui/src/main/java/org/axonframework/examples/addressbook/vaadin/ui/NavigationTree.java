@@ -17,6 +17,7 @@
 package org.axonframework.examples.addressbook.vaadin.ui;
 
 import com.vaadin.ui.Tree;
+import org.axonframework.examples.addressbook.vaadin.search.SearchFilter;
 
 /**
  * @author Jettro Coenradie
@@ -31,4 +32,13 @@ public class NavigationTree extends Tree {
         setSelectable(true);
         setNullSelectionAllowed(false);
     }
+
+    public void addSavedSearch(SearchFilter searchFilter) {
+        addItem(searchFilter);
+        setItemCaption(searchFilter, searchFilter.getSearchName());
+        setParent(searchFilter, SEARCH);
+        setChildrenAllowed(searchFilter, false);
+        expandItem(SEARCH);
+        setValue(searchFilter);
+    }
 }
@@ -17,18 +17,22 @@
 package org.axonframework.examples.addressbook.vaadin.ui;
 
 import com.vaadin.ui.*;
+import org.axonframework.examples.addressbook.vaadin.AddressbookApplication;
 import org.axonframework.examples.addressbook.vaadin.data.ContactContainer;
+import org.axonframework.examples.addressbook.vaadin.search.SearchFilter;
 
 /**
  * @author Jettro Coenradie
  */
 public class SearchView extends Panel {
+    private final AddressbookApplication app;
     private TextField tf;
     private NativeSelect fieldToSearch;
     private CheckBox saveSearch;
     private TextField searchName;
 
-    public SearchView() {
+    public SearchView(AddressbookApplication app) {
+        this.app = app;
         setCaption("Search for contacts");
         setSizeFull();
 
@@ -68,12 +72,19 @@ public class SearchView extends Panel {
     }
 
     private void performSearch() {
-//        String searchTerm = (String) tf.getValue();
-//         SearchFilter searchFilter = new SearchFilter(fieldToSearch.getValue(),
-//                 searchTerm, (String) searchName.getValue());
-//         if (saveSearch.booleanValue()) {
-//             app.saveSearch(searchFilter);
-//         }
-//         app.search(searchFilter);
+        String searchTerm = (String) tf.getValue();
+        if (searchTerm == null || searchTerm.trim().length() == 0) {
+            getWindow().showNotification("Enter the start of the value to search for");
+            return;
+        }
+        String name = (String) searchName.getValue();
+        if (name == null || name.trim().length() == 0) {
+            name = searchTerm;
+        }
+        SearchFilter searchFilter = new SearchFilter(fieldToSearch.getValue(), searchTerm, name);
+        if (saveSearch.booleanValue()) {
+            app.saveSearch(searchFilter);
+        }
+        app.search(searchFilter);
     }
 }
@@ -0,0 +1,134 @@
+package org.axonframework.examples.addressbook.vaadin.data;
+
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.sample.app.query.ContactEntry;
+import org.axonframework.sample.app.query.ContactPage;
+import org.axonframework.sample.app.query.ContactRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the contact snapshot shared by the vaadin applications
+ */
+public class SharedContactSnapshotTest {
+
+    private ContactRepository contactRepository;
+    private SharedContactSnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        contactRepository = mock(ContactRepository.class);
+        snapshot = new SharedContactSnapshot();
+        snapshot.setContactRepository(contactRepository);
+    }
+
+    @Test
+    public void testContactsAreLoadedPageByPageInContactOrder() {
+        when(contactRepository.findContacts(null, 1000))
+                .thenReturn(new ContactPage(Arrays.asList(contact("2", "Jettro")), "next"));
+        when(contactRepository.findContacts("next", 1000))
+                .thenReturn(new ContactPage(Arrays.asList(contact("1", "Allard")), null));
+
+        snapshot.afterPropertiesSet();
+
+        assertEquals(2, snapshot.size());
+        assertNames(snapshot.getContacts(0, 10), "Allard", "Jettro");
+        assertEquals("Jettro", snapshot.getContact("2").getName());
+    }
+
+    @Test
+    public void testEventsKeepTheContactsInOrder() {
+        loadNoContacts();
+
+        snapshot.handleContactCreatedEvent(new ContactCreatedEvent("1", "Jettro"));
+        snapshot.handleContactCreatedEvent(new ContactCreatedEvent("2", "Allard"));
+        snapshot.handleContactCreatedEvent(new ContactCreatedEvent("3", "Bert"));
+        assertNames(snapshot.getContacts(0, 10), "Allard", "Bert", "Jettro");
+
+        snapshot.handleContactNameChangedEvent(new ContactNameChangedEvent("2", "Zoe"));
+        snapshot.handleContactDeletedEvent(new ContactDeletedEvent("3"));
+
+        assertEquals(2, snapshot.size());
+        assertNames(snapshot.getContacts(0, 10), "Jettro", "Zoe");
+        assertEquals("Zoe", snapshot.getContact("2").getName());
+        assertNull(snapshot.getContact("3"));
+    }
+
+    @Test
+    public void testListReadBeforeAChangeIsNotModified() {
+        loadNoContacts();
+        snapshot.handleContactCreatedEvent(new ContactCreatedEvent("1", "Allard"));
+        List<ContactEntry> contacts = snapshot.getContacts(0, 10);
+
+        snapshot.handleContactCreatedEvent(new ContactCreatedEvent("2", "Jettro"));
+        snapshot.handleContactDeletedEvent(new ContactDeletedEvent("1"));
+
+        assertNames(contacts, "Allard");
+        assertNames(snapshot.getContacts(0, 10), "Jettro");
+    }
+
+    @Test
+    public void testContactsFromEventsAreKeptWhenLoading() {
+        snapshot.handleContactCreatedEvent(new ContactCreatedEvent("1", "Allard Buijze"));
+        when(contactRepository.findContacts(null, 1000))
+                .thenReturn(new ContactPage(Arrays.asList(contact("1", "Allard"), contact("2", "Jettro")), null));
+
+        snapshot.afterPropertiesSet();
+
+        assertNames(snapshot.getContacts(0, 10), "Allard Buijze", "Jettro");
+    }
+
+    @Test
+    public void testPagesOutsideTheListAreEmpty() {
+        loadNoContacts();
+        for (int i = 0; i < 5; i++) {
+            snapshot.handleContactCreatedEvent(new ContactCreatedEvent(Integer.toString(i), "Contact " + i));
+        }
+
+        assertNames(snapshot.getContacts(3, 10), "Contact 3", "Contact 4");
+        assertTrue(snapshot.getContacts(10, 10).isEmpty());
+        assertNames(snapshot.getContacts(-1, 1), "Contact 0");
+    }
+
+    @Test
+    public void testManyEventsAreAppliedIncrementally() {
+        loadNoContacts();
+        int count = 100000;
+        for (int i = count - 1; i >= 0; i--) {
+            snapshot.handleContactCreatedEvent(new ContactCreatedEvent(Integer.toString(i), String.format("%06d", i)));
+        }
+
+        assertEquals(count, snapshot.size());
+        assertEquals("000000", snapshot.getContacts(0, 1).get(0).getName());
+        assertEquals(String.format("%06d", count - 1), snapshot.getContacts(count - 1, 1).get(0).getName());
+    }
+
+    private void loadNoContacts() {
+        when(contactRepository.findContacts(null, 1000))
+                .thenReturn(new ContactPage(Collections.<ContactEntry>emptyList(), null));
+        snapshot.afterPropertiesSet();
+    }
+
+    private static void assertNames(List<ContactEntry> contacts, String... names) {
+        assertEquals(names.length, contacts.size());
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(names[i], contacts.get(i).getName());
+        }
+    }
+
+    private static ContactEntry contact(String identifier, String name) {
+        ContactEntry contact = new ContactEntry();
+        contact.setIdentifier(identifier);
+        contact.setName(name);
+        return contact;
+    }
+}
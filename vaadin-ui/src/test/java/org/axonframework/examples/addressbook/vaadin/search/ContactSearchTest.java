@@ -0,0 +1,150 @@
+package org.axonframework.examples.addressbook.vaadin.search;
+
+import org.axonframework.sample.app.api.ContactCreatedEvent;
+import org.axonframework.sample.app.api.ContactDeletedEvent;
+import org.axonframework.sample.app.api.ContactNameChangedEvent;
+import org.axonframework.sample.app.query.ContactIdentifierPage;
+import org.axonframework.sample.app.query.ContactRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the contact searches and the cached results of saved searches
+ */
+public class ContactSearchTest {
+
+    private static final SearchFilter NAME_SEARCH = new SearchFilter("name", "Al", "Al");
+
+    private ContactRepository contactRepository;
+    private ContactSearch contactSearch;
+
+    @Before
+    public void setUp() {
+        contactRepository = mock(ContactRepository.class);
+        contactSearch = new ContactSearch();
+        contactSearch.setContactRepository(contactRepository);
+        when(contactRepository.findContactIdentifiers("name", "Al", null, 1000)).thenReturn(page(null, "1", "2"));
+    }
+
+    @Test
+    public void testResultsOfSavedSearchesAreCached() {
+        contactSearch.save(NAME_SEARCH);
+
+        assertEquals(Arrays.asList("1", "2"), contactSearch.search(NAME_SEARCH).getIdentifiers());
+        assertEquals(Arrays.asList("1", "2"), contactSearch.search(NAME_SEARCH).getIdentifiers());
+
+        verify(contactRepository, times(1)).findContactIdentifiers("name", "Al", null, 1000);
+    }
+
+    @Test
+    public void testResultsOfOtherSearchesAreNotCached() {
+        contactSearch.search(NAME_SEARCH);
+        contactSearch.search(NAME_SEARCH);
+
+        verify(contactRepository, times(2)).findContactIdentifiers("name", "Al", null, 1000);
+    }
+
+    @Test
+    public void testCreatedContactInvalidatesTheSearchesItMatches() {
+        contactSearch.save(NAME_SEARCH);
+        contactSearch.search(NAME_SEARCH);
+
+        contactSearch.handleContactCreatedEvent(new ContactCreatedEvent("3", "Bert"));
+        contactSearch.search(NAME_SEARCH);
+        verify(contactRepository, times(1)).findContactIdentifiers("name", "Al", null, 1000);
+
+        contactSearch.handleContactCreatedEvent(new ContactCreatedEvent("4", "Alice"));
+        contactSearch.search(NAME_SEARCH);
+        verify(contactRepository, times(2)).findContactIdentifiers("name", "Al", null, 1000);
+    }
+
+    @Test
+    public void testRenamedContactInvalidatesTheSearchesThatFoundItOrMatchItsNewName() {
+        contactSearch.save(NAME_SEARCH);
+        contactSearch.search(NAME_SEARCH);
+
+        contactSearch.handleContactNameChangedEvent(new ContactNameChangedEvent("3", "Bert"));
+        contactSearch.search(NAME_SEARCH);
+        verify(contactRepository, times(1)).findContactIdentifiers("name", "Al", null, 1000);
+
+        contactSearch.handleContactNameChangedEvent(new ContactNameChangedEvent("1", "Bert"));
+        contactSearch.search(NAME_SEARCH);
+        verify(contactRepository, times(2)).findContactIdentifiers("name", "Al", null, 1000);
+
+        contactSearch.handleContactNameChangedEvent(new ContactNameChangedEvent("3", "Alice"));
+        contactSearch.search(NAME_SEARCH);
+        verify(contactRepository, times(3)).findContactIdentifiers("name", "Al", null, 1000);
+    }
+
+    @Test
+    public void testDeletedContactInvalidatesTheSearchesThatFoundIt() {
+        contactSearch.save(NAME_SEARCH);
+        contactSearch.search(NAME_SEARCH);
+
+        contactSearch.handleContactDeletedEvent(new ContactDeletedEvent("3"));
+        contactSearch.search(NAME_SEARCH);
+        verify(contactRepository, times(1)).findContactIdentifiers("name", "Al", null, 1000);
+
+        contactSearch.handleContactDeletedEvent(new ContactDeletedEvent("2"));
+        contactSearch.search(NAME_SEARCH);
+        verify(contactRepository, times(2)).findContactIdentifiers("name", "Al", null, 1000);
+    }
+
+    @Test
+    public void testResultsOfASearchThatRanWhileAContactChangedAreNotCached() {
+        when(contactRepository.findContactIdentifiers("name", "Al", null, 1000))
+                .thenAnswer(new Answer<ContactIdentifierPage>() {
+                    private boolean first = true;
+
+                    @Override
+                    public ContactIdentifierPage answer(InvocationOnMock invocation) {
+                        if (first) {
+                            first = false;
+                            contactSearch.handleContactCreatedEvent(new ContactCreatedEvent("3", "Bert"));
+                        }
+                        return page(null, "1", "2");
+                    }
+                });
+        contactSearch.save(NAME_SEARCH);
+
+        contactSearch.search(NAME_SEARCH);
+        contactSearch.search(NAME_SEARCH);
+        contactSearch.search(NAME_SEARCH);
+
+        verify(contactRepository, times(2)).findContactIdentifiers("name", "Al", null, 1000);
+    }
+
+    @Test
+    public void testAllPagesAreRead() {
+        when(contactRepository.findContactIdentifiers("name", "Al", null, 1000)).thenReturn(page("next", "1"));
+        when(contactRepository.findContactIdentifiers("name", "Al", "next", 999)).thenReturn(page(null, "2"));
+
+        SearchResult result = contactSearch.search(NAME_SEARCH);
+
+        assertEquals(Arrays.asList("1", "2"), result.getIdentifiers());
+        assertTrue(result.isComplete());
+    }
+
+    @Test
+    public void testResultIsIncompleteWhenMoreContactsMatch() {
+        contactSearch.setMaxResults(2);
+        when(contactRepository.findContactIdentifiers("name", "Al", null, 2)).thenReturn(page("next", "1", "2"));
+
+        SearchResult result = contactSearch.search(NAME_SEARCH);
+
+        assertEquals(Arrays.asList("1", "2"), result.getIdentifiers());
+        assertFalse(result.isComplete());
+        verify(contactRepository, never()).findContactIdentifiers(eq("name"), eq("Al"), eq("next"), anyInt());
+    }
+
+    private static ContactIdentifierPage page(String continuationToken, String... identifiers) {
+        return new ContactIdentifierPage(Arrays.asList(identifiers), continuationToken);
+    }
+}
@@ -26,6 +26,7 @@ import org.axonframework.sample.app.api.RemoveAddressCommand;
 import org.axonframework.sample.app.api.RemoveContactCommand;
 import org.axonframework.sample.app.command.ContactNameRepository;
 import org.axonframework.sample.app.query.AddressEntry;
+import org.axonframework.sample.app.query.ContactDetailsView;
 import org.axonframework.sample.app.query.ContactEntry;
 import org.axonframework.sample.app.query.ContactRepository;
 import org.slf4j.Logger;
@@ -41,7 +42,6 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 
-import java.util.List;
 import javax.validation.Valid;
 
 /**
@@ -69,16 +69,10 @@ public class ContactsController {
 
     @RequestMapping(value = "{identifier}", method = RequestMethod.GET)
     public String details(@PathVariable String identifier, Model model) {
-        List<AddressEntry> addressesForContact = repository.findAllAddressesForContact(identifier);
-        String name;
-        if (addressesForContact.size() > 0) {
-            name = addressesForContact.get(0).getName();
-        } else {
-            name = repository.loadContactDetails(identifier).getName();
-        }
-        model.addAttribute("addresses", addressesForContact);
+        ContactDetailsView contact = repository.loadContactDetailsView(identifier);
+        model.addAttribute("addresses", contact.getAddresses());
         model.addAttribute("identifier", identifier);
-        model.addAttribute("name", name);
+        model.addAttribute("name", contact.getName());
         return "contacts/details";
     }
 